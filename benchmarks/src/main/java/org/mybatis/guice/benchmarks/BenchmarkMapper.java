@@ -0,0 +1,37 @@
+/**
+ *    Copyright 2009-2017 the original author or authors.
+ *
+ *    Licensed under the Apache License, Version 2.0 (the "License");
+ *    you may not use this file except in compliance with the License.
+ *    You may obtain a copy of the License at
+ *
+ *       http://www.apache.org/licenses/LICENSE-2.0
+ *
+ *    Unless required by applicable law or agreed to in writing, software
+ *    distributed under the License is distributed on an "AS IS" BASIS,
+ *    WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ *    See the License for the specific language governing permissions and
+ *    limitations under the License.
+ */
+package org.mybatis.guice.benchmarks;
+
+import org.apache.ibatis.annotations.Insert;
+import org.apache.ibatis.annotations.Param;
+import org.apache.ibatis.annotations.Select;
+import org.apache.ibatis.annotations.Update;
+
+public interface BenchmarkMapper {
+
+  @Update("create table benchmark_row (id integer not null primary key, name varchar(80) not null)")
+  void createTable();
+
+  @Insert("insert into benchmark_row (id, name) values (#{id}, #{name})")
+  int insert(@Param("id") int id, @Param("name") String name);
+
+  @Select("select id, name from benchmark_row where id = #{id}")
+  BenchmarkRow selectById(int id);
+
+  @Update("update benchmark_row set name = #{name} where id = #{id}")
+  int updateName(@Param("id") int id, @Param("name") String name);
+
+}
@@ -0,0 +1,133 @@
+/**
+ *    Copyright 2009-2017 the original author or authors.
+ *
+ *    Licensed under the Apache License, Version 2.0 (the "License");
+ *    you may not use this file except in compliance with the License.
+ *    You may obtain a copy of the License at
+ *
+ *       http://www.apache.org/licenses/LICENSE-2.0
+ *
+ *    Unless required by applicable law or agreed to in writing, software
+ *    distributed under the License is distributed on an "AS IS" BASIS,
+ *    WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ *    See the License for the specific language governing permissions and
+ *    limitations under the License.
+ */
+package org.mybatis.guice.benchmarks;
+
+import com.google.inject.Injector;
+import com.google.inject.Module;
+import com.google.inject.name.Names;
+
+import java.util.Properties;
+
+import javax.sql.DataSource;
+import javax.transaction.TransactionManager;
+
+import org.apache.ibatis.session.SqlSession;
+import org.apache.ibatis.session.SqlSessionManager;
+import org.apache.ibatis.transaction.jdbc.JdbcTransactionFactory;
+import org.mybatis.guice.MyBatisJtaModule;
+import org.mybatis.guice.MyBatisModule;
+import org.mybatis.guice.XMLMyBatisModule;
+import org.mybatis.guice.datasource.builtin.PooledDataSourceProvider;
+import org.mybatis.guice.datasource.helper.JdbcHelper;
+
+/**
+ * The modules and in-memory databases shared by the benchmarks.
+ */
+final class BenchmarkModules {
+
+  static final int ROWS = 100;
+
+  private BenchmarkModules() {
+    // do nothing
+  }
+
+  /**
+   * A {@link MyBatisModule} bound to a pooled HSQLDB in-memory database.
+   *
+   * @param schema the in-memory database name, benchmarks should not share it
+   * @return the module
+   */
+  static Module myBatisModule(final String schema) {
+    return new MyBatisModule() {
+      @Override
+      protected void initialize() {
+        environmentId("benchmark");
+        bindDataSourceProviderType(PooledDataSourceProvider.class);
+        bindTransactionFactoryType(JdbcTransactionFactory.class);
+        install(JdbcHelper.HSQLDB_IN_MEMORY_NAMED);
+        Names.bindProperties(binder(), connectionProperties(schema));
+
+        addMapperClass(BenchmarkMapper.class);
+        bind(BenchmarkService.class);
+      }
+    };
+  }
+
+  /**
+   * A {@link XMLMyBatisModule} reading {@code org/mybatis/guice/benchmarks/mybatis-config.xml}.
+   *
+   * @return the module
+   */
+  static Module xmlMyBatisModule() {
+    return new XMLMyBatisModule() {
+      @Override
+      protected void initialize() {
+        setClassPathResource("org/mybatis/guice/benchmarks/mybatis-config.xml");
+        bind(BenchmarkService.class);
+      }
+    };
+  }
+
+  /**
+   * A {@link MyBatisJtaModule} enlisting the sessions in the given transaction manager.
+   *
+   * @param manager the JTA transaction manager
+   * @param dataSource the data source managed by the transaction manager
+   * @return the module
+   */
+  static Module myBatisJtaModule(final TransactionManager manager, final DataSource dataSource) {
+    return new MyBatisJtaModule(manager) {
+      @Override
+      protected void initialize() {
+        environmentId("benchmark");
+        bindDataSourceProvider(new ProviderImpl<DataSource>(dataSource));
+        bindDefaultTransactionProvider();
+
+        addMapperClass(BenchmarkMapper.class);
+        bind(BenchmarkService.class);
+      }
+    };
+  }
+
+  static Properties connectionProperties(String schema) {
+    Properties properties = new Properties();
+    properties.setProperty("JDBC.schema", schema);
+    properties.setProperty("JDBC.username", "sa");
+    properties.setProperty("JDBC.password", "");
+    properties.setProperty("JDBC.autoCommit", "false");
+    return properties;
+  }
+
+  /**
+   * Creates and fills the benchmark table.
+   *
+   * @param injector the injector of one of the benchmark modules
+   */
+  static void createTable(Injector injector) {
+    SqlSessionManager sqlSessionManager = injector.getInstance(SqlSessionManager.class);
+    SqlSession session = sqlSessionManager.openSession(true);
+    try {
+      BenchmarkMapper mapper = session.getMapper(BenchmarkMapper.class);
+      mapper.createTable();
+      for (int i = 0; i < ROWS; i++) {
+        mapper.insert(i, "name" + i);
+      }
+    } finally {
+      session.close();
+    }
+  }
+
+}
@@ -0,0 +1,44 @@
+/**
+ *    Copyright 2009-2017 the original author or authors.
+ *
+ *    Licensed under the Apache License, Version 2.0 (the "License");
+ *    you may not use this file except in compliance with the License.
+ *    You may obtain a copy of the License at
+ *
+ *       http://www.apache.org/licenses/LICENSE-2.0
+ *
+ *    Unless required by applicable law or agreed to in writing, software
+ *    distributed under the License is distributed on an "AS IS" BASIS,
+ *    WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ *    See the License for the specific language governing permissions and
+ *    limitations under the License.
+ */
+package org.mybatis.guice.benchmarks;
+
+import javax.inject.Inject;
+
+import org.mybatis.guice.transactional.Transactional;
+
+public class BenchmarkService {
+
+  @Inject
+  private BenchmarkMapper mapper;
+
+  /**
+   * Does not touch the database, measures the interceptor and session handling only.
+   */
+  @Transactional
+  public void noop() {
+  }
+
+  @Transactional
+  public BenchmarkRow select(int id) {
+    return mapper.selectById(id);
+  }
+
+  @Transactional
+  public int update(int id, String name) {
+    return mapper.updateName(id, name);
+  }
+
+}
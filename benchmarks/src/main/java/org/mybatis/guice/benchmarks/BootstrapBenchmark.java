@@ -0,0 +1,58 @@
+/**
+ *    Copyright 2009-2017 the original author or authors.
+ *
+ *    Licensed under the Apache License, Version 2.0 (the "License");
+ *    you may not use this file except in compliance with the License.
+ *    You may obtain a copy of the License at
+ *
+ *       http://www.apache.org/licenses/LICENSE-2.0
+ *
+ *    Unless required by applicable law or agreed to in writing, software
+ *    distributed under the License is distributed on an "AS IS" BASIS,
+ *    WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ *    See the License for the specific language governing permissions and
+ *    limitations under the License.
+ */
+package org.mybatis.guice.benchmarks;
+
+import com.google.inject.Guice;
+import com.google.inject.Injector;
+import com.google.inject.Stage;
+
+import java.util.concurrent.TimeUnit;
+
+import org.apache.ibatis.session.SqlSessionFactory;
+import org.mybatis.guice.MyBatisModule;
+import org.mybatis.guice.XMLMyBatisModule;
+import org.openjdk.jmh.annotations.Benchmark;
+import org.openjdk.jmh.annotations.BenchmarkMode;
+import org.openjdk.jmh.annotations.Fork;
+import org.openjdk.jmh.annotations.Measurement;
+import org.openjdk.jmh.annotations.Mode;
+import org.openjdk.jmh.annotations.OutputTimeUnit;
+import org.openjdk.jmh.annotations.Warmup;
+
+/**
+ * Measures the injector creation, up to a usable {@link SqlSessionFactory}, for {@link MyBatisModule} and
+ * {@link XMLMyBatisModule}.
+ */
+@BenchmarkMode(Mode.AverageTime)
+@OutputTimeUnit(TimeUnit.MILLISECONDS)
+@Warmup(iterations = 5, time = 1)
+@Measurement(iterations = 10, time = 1)
+@Fork(1)
+public class BootstrapBenchmark {
+
+  @Benchmark
+  public SqlSessionFactory myBatisModule() {
+    Injector injector = Guice.createInjector(Stage.PRODUCTION, BenchmarkModules.myBatisModule("bootstrap"));
+    return injector.getInstance(SqlSessionFactory.class);
+  }
+
+  @Benchmark
+  public SqlSessionFactory xmlMyBatisModule() {
+    Injector injector = Guice.createInjector(Stage.PRODUCTION, BenchmarkModules.xmlMyBatisModule());
+    return injector.getInstance(SqlSessionFactory.class);
+  }
+
+}
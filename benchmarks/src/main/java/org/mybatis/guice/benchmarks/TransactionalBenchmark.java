@@ -0,0 +1,111 @@
+/**
+ *    Copyright 2009-2017 the original author or authors.
+ *
+ *    Licensed under the Apache License, Version 2.0 (the "License");
+ *    you may not use this file except in compliance with the License.
+ *    You may obtain a copy of the License at
+ *
+ *       http://www.apache.org/licenses/LICENSE-2.0
+ *
+ *    Unless required by applicable law or agreed to in writing, software
+ *    distributed under the License is distributed on an "AS IS" BASIS,
+ *    WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ *    See the License for the specific language governing permissions and
+ *    limitations under the License.
+ */
+package org.mybatis.guice.benchmarks;
+
+import com.google.inject.Guice;
+import com.google.inject.Injector;
+
+import java.util.concurrent.TimeUnit;
+
+import org.apache.ibatis.session.SqlSessionManager;
+import org.mybatis.guice.transactional.TransactionalMethodInterceptor;
+import org.openjdk.jmh.annotations.Benchmark;
+import org.openjdk.jmh.annotations.BenchmarkMode;
+import org.openjdk.jmh.annotations.Fork;
+import org.openjdk.jmh.annotations.Level;
+import org.openjdk.jmh.annotations.Measurement;
+import org.openjdk.jmh.annotations.Mode;
+import org.openjdk.jmh.annotations.OutputTimeUnit;
+import org.openjdk.jmh.annotations.Scope;
+import org.openjdk.jmh.annotations.Setup;
+import org.openjdk.jmh.annotations.State;
+import org.openjdk.jmh.annotations.TearDown;
+import org.openjdk.jmh.annotations.Warmup;
+
+/**
+ * Measures {@link TransactionalMethodInterceptor#invoke} when it starts a new session and when it inherits
+ * the session already started for the thread.
+ */
+@State(Scope.Benchmark)
+@BenchmarkMode(Mode.AverageTime)
+@OutputTimeUnit(TimeUnit.NANOSECONDS)
+@Warmup(iterations = 5, time = 1)
+@Measurement(iterations = 10, time = 1)
+@Fork(1)
+public class TransactionalBenchmark {
+
+  private SqlSessionManager sqlSessionManager;
+
+  private BenchmarkService service;
+
+  private int id;
+
+  @Setup
+  public void setup() {
+    Injector injector = Guice.createInjector(BenchmarkModules.myBatisModule("transactional"));
+    BenchmarkModules.createTable(injector);
+    sqlSessionManager = injector.getInstance(SqlSessionManager.class);
+    service = injector.getInstance(BenchmarkService.class);
+  }
+
+  /**
+   * Keeps a managed session started on the benchmark thread, so that every intercepted call inherits it.
+   */
+  @State(Scope.Thread)
+  public static class InheritedSession {
+
+    private SqlSessionManager sqlSessionManager;
+
+    @Setup(Level.Iteration)
+    public void start(TransactionalBenchmark benchmark) {
+      sqlSessionManager = benchmark.sqlSessionManager;
+      sqlSessionManager.startManagedSession();
+    }
+
+    @TearDown(Level.Iteration)
+    public void close() {
+      sqlSessionManager.rollback(true);
+      sqlSessionManager.close();
+    }
+
+  }
+
+  @Benchmark
+  public void newSession() {
+    service.noop();
+  }
+
+  @Benchmark
+  public void inheritedSession(InheritedSession session) {
+    service.noop();
+  }
+
+  @Benchmark
+  public BenchmarkRow newSessionSelect() {
+    return service.select(nextId());
+  }
+
+  @Benchmark
+  public BenchmarkRow inheritedSessionSelect(InheritedSession session) {
+    return service.select(nextId());
+  }
+
+  private int nextId() {
+    id = (id + 1) % BenchmarkModules.ROWS;
+    return id;
+  }
+
+}
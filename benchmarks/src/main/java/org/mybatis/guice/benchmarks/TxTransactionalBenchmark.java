@@ -0,0 +1,127 @@
+/**
+ *    Copyright 2009-2017 the original author or authors.
+ *
+ *    Licensed under the Apache License, Version 2.0 (the "License");
+ *    you may not use this file except in compliance with the License.
+ *    You may obtain a copy of the License at
+ *
+ *       http://www.apache.org/licenses/LICENSE-2.0
+ *
+ *    Unless required by applicable law or agreed to in writing, software
+ *    distributed under the License is distributed on an "AS IS" BASIS,
+ *    WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ *    See the License for the specific language governing permissions and
+ *    limitations under the License.
+ */
+package org.mybatis.guice.benchmarks;
+
+import com.google.inject.Guice;
+import com.google.inject.Injector;
+
+import java.util.concurrent.TimeUnit;
+
+import org.apache.aries.transaction.AriesTransactionManager;
+import org.apache.aries.transaction.internal.AriesTransactionManagerImpl;
+import org.apache.aries.transaction.jdbc.RecoverableDataSource;
+import org.hsqldb.jdbc.JDBCDataSource;
+import org.mybatis.guice.transactional.TxTransactionalMethodInterceptor;
+import org.openjdk.jmh.annotations.Benchmark;
+import org.openjdk.jmh.annotations.BenchmarkMode;
+import org.openjdk.jmh.annotations.Fork;
+import org.openjdk.jmh.annotations.Level;
+import org.openjdk.jmh.annotations.Measurement;
+import org.openjdk.jmh.annotations.Mode;
+import org.openjdk.jmh.annotations.OutputTimeUnit;
+import org.openjdk.jmh.annotations.Scope;
+import org.openjdk.jmh.annotations.Setup;
+import org.openjdk.jmh.annotations.State;
+import org.openjdk.jmh.annotations.TearDown;
+import org.openjdk.jmh.annotations.Warmup;
+
+/**
+ * Measures {@link TxTransactionalMethodInterceptor} with the Aries transaction manager, either beginning a JTA
+ * transaction per call or joining the one already active on the thread.
+ */
+@State(Scope.Benchmark)
+@BenchmarkMode(Mode.AverageTime)
+@OutputTimeUnit(TimeUnit.MICROSECONDS)
+@Warmup(iterations = 5, time = 1)
+@Measurement(iterations = 10, time = 1)
+@Fork(1)
+public class TxTransactionalBenchmark {
+
+  private AriesTransactionManager manager;
+
+  private BenchmarkService service;
+
+  private int id;
+
+  @Setup
+  public void setup() throws Exception {
+    manager = new AriesTransactionManagerImpl();
+
+    JDBCDataSource localDataSource = new JDBCDataSource();
+    localDataSource.setUrl("jdbc:hsqldb:mem:jta");
+    localDataSource.setUser("sa");
+    localDataSource.setPassword("");
+
+    RecoverableDataSource dataSource = new RecoverableDataSource();
+    dataSource.setDataSource(localDataSource);
+    dataSource.setUsername("sa");
+    dataSource.setPassword("");
+    dataSource.setTransactionManager(manager);
+    dataSource.setTransaction("local");
+    dataSource.start();
+
+    Injector injector = Guice.createInjector(BenchmarkModules.myBatisJtaModule(manager, dataSource));
+    BenchmarkModules.createTable(injector);
+    service = injector.getInstance(BenchmarkService.class);
+  }
+
+  /**
+   * Keeps a JTA transaction active on the benchmark thread, so that every intercepted call joins it.
+   */
+  @State(Scope.Thread)
+  public static class ActiveTransaction {
+
+    private AriesTransactionManager manager;
+
+    @Setup(Level.Iteration)
+    public void begin(TxTransactionalBenchmark benchmark) throws Exception {
+      manager = benchmark.manager;
+      manager.begin();
+    }
+
+    @TearDown(Level.Iteration)
+    public void rollback() throws Exception {
+      manager.rollback();
+    }
+
+  }
+
+  @Benchmark
+  public void required() {
+    service.noop();
+  }
+
+  @Benchmark
+  public void requiredJoin(ActiveTransaction transaction) {
+    service.noop();
+  }
+
+  @Benchmark
+  public BenchmarkRow requiredSelect() {
+    return service.select(nextId());
+  }
+
+  @Benchmark
+  public BenchmarkRow requiredJoinSelect(ActiveTransaction transaction) {
+    return service.select(nextId());
+  }
+
+  private int nextId() {
+    id = (id + 1) % BenchmarkModules.ROWS;
+    return id;
+  }
+
+}
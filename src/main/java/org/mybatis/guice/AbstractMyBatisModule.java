@@ -28,10 +28,15 @@ import com.google.inject.matcher.AbstractMatcher;
 
 import java.lang.reflect.Method;
 
+import javax.inject.Inject;
+
+import org.aopalliance.intercept.MethodInterceptor;
 import org.apache.ibatis.session.SqlSession;
 import org.apache.ibatis.session.SqlSessionManager;
 import org.mybatis.guice.mappers.MapperProvider;
 import org.mybatis.guice.session.SqlSessionManagerProvider;
+import org.mybatis.guice.session.SqlSessionManagerRegistry;
+import org.mybatis.guice.session.SuspendableSqlSessionFactory;
 import org.mybatis.guice.transactional.Transactional;
 import org.mybatis.guice.transactional.TransactionalMethodInterceptor;
 
@@ -59,8 +64,11 @@ abstract class AbstractMyBatisModule extends AbstractModule {
   protected final void configure() {
     try {
       // sql session manager
+      bind(SuspendableSqlSessionFactory.class).in(Scopes.SINGLETON);
       bind(SqlSessionManager.class).toProvider(SqlSessionManagerProvider.class).in(Scopes.SINGLETON);
       bind(SqlSession.class).to(SqlSessionManager.class).in(Scopes.SINGLETON);
+      // lets the chained transactions reach the manager from outside a private module
+      requestInjection(new SqlSessionManagerRegistration());
 
       internalConfigure();
 
@@ -87,6 +95,18 @@ abstract class AbstractMyBatisModule extends AbstractModule {
     // class.
     bindInterceptor(annotatedWith(Transactional.class),
         not(SYNTHETIC).and(not(DECLARED_BY_OBJECT)).and(not(annotatedWith(Transactional.class))), interceptor);
+    // check the rethrow exception types while creating the injector
+    install(new TransactionalTypeListenerModule());
+    useTransactionalInterceptors(interceptor);
+  }
+
+  /**
+   * Receives the interceptors installed for the {@link Transactional} methods, in their order.
+   *
+   * @param interceptors the transactional interceptors
+   */
+  void useTransactionalInterceptors(MethodInterceptor... interceptors) {
+    // nothing to do by default
   }
 
   /**
@@ -149,4 +169,11 @@ abstract class AbstractMyBatisModule extends AbstractModule {
    */
   protected abstract void initialize();
 
+  private static final class SqlSessionManagerRegistration {
+    @Inject
+    void register(SqlSessionManagerRegistry registry, SqlSessionManager sqlSessionManager) {
+      registry.register(sqlSessionManager);
+    }
+  }
+
 }
@@ -0,0 +1,51 @@
+/**
+ *    Copyright 2009-2017 the original author or authors.
+ *
+ *    Licensed under the Apache License, Version 2.0 (the "License");
+ *    you may not use this file except in compliance with the License.
+ *    You may obtain a copy of the License at
+ *
+ *       http://www.apache.org/licenses/LICENSE-2.0
+ *
+ *    Unless required by applicable law or agreed to in writing, software
+ *    distributed under the License is distributed on an "AS IS" BASIS,
+ *    WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ *    See the License for the specific language governing permissions and
+ *    limitations under the License.
+ */
+package org.mybatis.guice;
+
+import static com.google.inject.matcher.Matchers.annotatedWith;
+import static com.google.inject.matcher.Matchers.any;
+import static com.google.inject.matcher.Matchers.not;
+import static org.mybatis.guice.AbstractMyBatisModule.DECLARED_BY_OBJECT;
+import static org.mybatis.guice.AbstractMyBatisModule.SYNTHETIC;
+
+import org.mybatis.guice.transactional.ChainedTransactional;
+import org.mybatis.guice.transactional.ChainedTransactionalMethodInterceptor;
+
+import com.google.inject.AbstractModule;
+
+/**
+ * Intercepts the {@link ChainedTransactional} methods, running one local transaction per named environment.
+ * <p>
+ * Install it next to the MyBatis modules of the environments, usually in the parent of their private modules.
+ * </p>
+ *
+ * @since 3.10
+ */
+public final class MyBatisChainedTransactionModule extends AbstractModule {
+
+  @Override
+  protected void configure() {
+    ChainedTransactionalMethodInterceptor interceptor = new ChainedTransactionalMethodInterceptor();
+    requestInjection(interceptor);
+    bindInterceptor(any(),
+        not(SYNTHETIC).and(not(DECLARED_BY_OBJECT)).and(annotatedWith(ChainedTransactional.class)), interceptor);
+    // avoid "double" interception when a method is also annotated inside an annotated class
+    bindInterceptor(annotatedWith(ChainedTransactional.class),
+        not(SYNTHETIC).and(not(DECLARED_BY_OBJECT)).and(not(annotatedWith(ChainedTransactional.class))),
+        interceptor);
+  }
+
+}
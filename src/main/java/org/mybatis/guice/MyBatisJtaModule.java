@@ -21,6 +21,7 @@ import static com.google.inject.matcher.Matchers.not;
 import static org.mybatis.guice.Preconditions.checkArgument;
 
 import javax.inject.Provider;
+import javax.sql.XADataSource;
 import javax.transaction.TransactionManager;
 import javax.transaction.xa.XAResource;
 
@@ -32,13 +33,13 @@ import org.apache.ibatis.transaction.managed.ManagedTransactionFactory;
 import org.mybatis.guice.transactional.Transactional;
 import org.mybatis.guice.transactional.TransactionalMethodInterceptor;
 import org.mybatis.guice.transactional.TxTransactionalMethodInterceptor;
-import org.mybatis.guice.transactional.XASqlSessionManagerProvider;
+import org.mybatis.guice.transactional.XADataSourceRecovery;
 
 public abstract class MyBatisJtaModule extends MyBatisModule {
   private final Log log = LogFactory.getLog(getClass());
 
   private TransactionManager transactionManager;
-  private Class<? extends Provider<? extends XAResource>> xaResourceProvider = XASqlSessionManagerProvider.class;
+  private Class<? extends Provider<? extends XAResource>> xaResourceProvider;
 
   public MyBatisJtaModule() {
   }
@@ -59,12 +60,17 @@ public abstract class MyBatisJtaModule extends MyBatisModule {
 
       // transactional interceptor
       TransactionalMethodInterceptor interceptor = new TransactionalMethodInterceptor();
+      // the JTA interceptor demarcates the propagation and the retries itself
+      interceptor.setLocalPropagation(false);
       requestInjection(interceptor);
 
       // jta transactional interceptor
       TxTransactionalMethodInterceptor interceptorTx = new TxTransactionalMethodInterceptor();
       requestInjection(interceptorTx);
-      bind(XAResource.class).toProvider(xaResourceProvider);
+      // without a resource of its own, a transaction on a single data source commits in one phase
+      if (xaResourceProvider != null) {
+        bind(XAResource.class).toProvider(xaResourceProvider);
+      }
 
       bind(TransactionManager.class).toInstance(manager);
 
@@ -75,6 +81,9 @@ public abstract class MyBatisJtaModule extends MyBatisModule {
       // class.
       bindInterceptor(annotatedWith(Transactional.class),
           not(DECLARED_BY_OBJECT).and(not(annotatedWith(Transactional.class))), interceptorTx, interceptor);
+      // check the rethrow exception types and the propagations while creating the injector
+      install(new TransactionalTypeListenerModule(true));
+      useTransactionalInterceptors(interceptorTx, interceptor);
     }
   }
 
@@ -98,6 +107,21 @@ public abstract class MyBatisJtaModule extends MyBatisModule {
     this.xaResourceProvider = xaResourceProvider;
   }
 
+  /**
+   * Registers the XAResource of the given XA data source with the recovery of the transaction manager, an Aries or
+   * Geronimo one, so that the branches a crash left prepared in the database are completed once the injector is
+   * created.
+   *
+   * @param resourceName the name the connection pool enlists the XAResources of the data source with
+   * @param xaDataSource the XA data source behind the connection pool
+   * @since 3.10
+   */
+  protected void bindXARecovery(String resourceName, XADataSource xaDataSource) {
+    checkArgument(resourceName != null, "Parameter 'resourceName' must be not null");
+    checkArgument(xaDataSource != null, "Parameter 'xaDataSource' must be not null");
+    requestInjection(new XADataSourceRecovery(resourceName, xaDataSource));
+  }
+
   protected static class ProviderImpl<T> implements Provider<T> {
     private T wrapper;
 
@@ -23,12 +23,17 @@ import com.google.inject.Key;
 import com.google.inject.Scopes;
 import com.google.inject.TypeLiteral;
 
+import java.util.Arrays;
 import java.util.Collection;
+import java.util.HashSet;
+import java.util.Properties;
 import java.util.Set;
 
 import javax.inject.Provider;
 import javax.sql.DataSource;
 
+import org.aopalliance.intercept.MethodInterceptor;
+import org.apache.ibatis.cache.Cache;
 import org.apache.ibatis.io.ResolverUtil;
 import org.apache.ibatis.mapping.DatabaseIdProvider;
 import org.apache.ibatis.mapping.Environment;
@@ -47,12 +52,18 @@ import org.apache.ibatis.session.SqlSessionFactory;
 import org.apache.ibatis.transaction.TransactionFactory;
 import org.apache.ibatis.type.Alias;
 import org.apache.ibatis.type.TypeHandler;
+import org.mybatis.guice.async.AsyncMapper;
+import org.mybatis.guice.async.AsyncMapperExecutor;
+import org.mybatis.guice.async.AsyncMapperExecutorProvider;
+import org.mybatis.guice.async.AsyncMapperProvider;
 import org.mybatis.guice.binder.AliasBinder;
+import org.mybatis.guice.binder.CacheBinder;
 import org.mybatis.guice.binder.TypeHandlerBinder;
 import org.mybatis.guice.configuration.ConfigurationProvider;
 import org.mybatis.guice.configuration.settings.AggressiveLazyLoadingConfigurationSetting;
 import org.mybatis.guice.configuration.settings.AliasConfigurationSetting;
 import org.mybatis.guice.configuration.settings.AutoMappingBehaviorConfigurationSetting;
+import org.mybatis.guice.configuration.settings.CacheConfigurationSetting;
 import org.mybatis.guice.configuration.settings.CacheEnabledConfigurationSetting;
 import org.mybatis.guice.configuration.settings.ConfigurationSetting;
 import org.mybatis.guice.configuration.settings.DefaultExecutorTypeConfigurationSetting;
@@ -71,6 +82,7 @@ import org.mybatis.guice.configuration.settings.TypeHandlerConfigurationSettingP
 import org.mybatis.guice.configuration.settings.UseColumnLabelConfigurationSetting;
 import org.mybatis.guice.configuration.settings.UseGeneratedKeysConfigurationSetting;
 import org.mybatis.guice.environment.EnvironmentProvider;
+import org.mybatis.guice.index.TypeIndex;
 import org.mybatis.guice.provision.ConfigurationProviderProvisionListener;
 import org.mybatis.guice.provision.KeyMatcher;
 import org.mybatis.guice.session.SqlSessionFactoryProvider;
@@ -100,6 +112,16 @@ public abstract class MyBatisModule extends AbstractMyBatisModule {
 
   private Class<? extends Provider<? extends Configuration>> configurationProviderType = ConfigurationProvider.class;
 
+  /**
+   * The mapper classes already added.
+   */
+  private final Set<Class<?>> mapperClasses = new HashSet<Class<?>>();
+
+  /**
+   * The provider of the {@link AsyncMapperExecutor}, once bound.
+   */
+  private AsyncMapperExecutorProvider asyncMapperExecutorProvider;
+
   @Override
   final void internalConfigure() {
     try {
@@ -218,6 +240,30 @@ public abstract class MyBatisModule extends AbstractMyBatisModule {
     bindBoolean("mybatis.configuration.failFast", failFast);
   }
 
+  /**
+   * Compiles the mappers on first use instead of when the configuration is created, see
+   * {@link org.mybatis.guice.configuration.LazyMapperConfiguration}; {@link #failFast(boolean)} still compiles all
+   * the mappers at startup.
+   *
+   * @param lazyMapperRegistration true to compile the mappers on first use
+   * @since 3.10
+   */
+  protected final void lazyMapperRegistration(boolean lazyMapperRegistration) {
+    bindBoolean("mybatis.configuration.lazyMapperRegistration", lazyMapperRegistration);
+  }
+
+  /**
+   * Prepares the mappers on the given number of threads before registering them, parsing their XML documents
+   * and loading the types they reference concurrently; mappers are still registered one after the other.
+   *
+   * @param threads the number of threads, 0 or 1 to prepare the mappers while registering them
+   * @since 3.10
+   */
+  protected final void mapperRegistrationThreads(int threads) {
+    checkArgument(threads >= 0, "Parameter 'threads' must not be negative");
+    bindConstant().annotatedWith(named("mybatis.configuration.mapperRegistrationThreads")).to(threads);
+  }
+
   /**
    * Maps underscores to camel case.
    *
@@ -559,8 +605,8 @@ public abstract class MyBatisModule extends AbstractMyBatisModule {
    */
   protected final void addTypeHandlerClasses(String packageName) {
     checkArgument(packageName != null, "Parameter 'packageName' must not be null");
-    addTypeHandlersClasses(
-        new ResolverUtil<TypeHandler<?>>().find(new ResolverUtil.IsA(TypeHandler.class), packageName).getClasses());
+    addTypeHandlersClasses(MyBatisModule.<TypeHandler<?>> findClasses(new ResolverUtil.IsA(TypeHandler.class),
+        packageName));
   }
 
   /**
@@ -597,7 +643,7 @@ public abstract class MyBatisModule extends AbstractMyBatisModule {
   protected final void addInterceptorsClasses(String packageName) {
     checkArgument(packageName != null, "Parameter 'packageName' must not be null");
     addInterceptorsClasses(
-        new ResolverUtil<Interceptor>().find(new ResolverUtil.IsA(Interceptor.class), packageName).getClasses());
+        MyBatisModule.<Interceptor> findClasses(new ResolverUtil.IsA(Interceptor.class), packageName));
   }
 
   /**
@@ -607,6 +653,9 @@ public abstract class MyBatisModule extends AbstractMyBatisModule {
    */
   protected final void addMapperClass(Class<?> mapperClass) {
     checkArgument(mapperClass != null, "Parameter 'mapperClass' must not be null");
+    if (!mapperClasses.add(mapperClass)) {
+      return;
+    }
 
     bindListener(KeyMatcher.create(Key.get(ConfigurationProvider.class)),
         ConfigurationProviderProvisionListener.create(new MapperConfigurationSetting(mapperClass)));
@@ -645,6 +694,113 @@ public abstract class MyBatisModule extends AbstractMyBatisModule {
     addMapperClasses(getClasses(test, packageName));
   }
 
+  /**
+   * Adds the user defined asynchronous mapper facade, see {@link AsyncMapper}; the mapper it calls is added too.
+   *
+   * @param asyncMapperClass the facade interface, annotated with {@link AsyncMapper}
+   * @since 3.10
+   */
+  protected final void addAsyncMapperClass(Class<?> asyncMapperClass) {
+    checkArgument(asyncMapperClass != null, "Parameter 'asyncMapperClass' must not be null");
+    checkArgument(asyncMapperClass.isAnnotationPresent(AsyncMapper.class),
+        "Async mapper '%s' must be annotated with @AsyncMapper", asyncMapperClass.getName());
+
+    if (asyncMapperExecutorProvider == null) {
+      asyncMapperExecutorProvider = new AsyncMapperExecutorProvider();
+      bind(AsyncMapperExecutor.class).toProvider(guicify(asyncMapperExecutorProvider)).in(Scopes.SINGLETON);
+    }
+    addMapperClass(asyncMapperClass.getAnnotation(AsyncMapper.class).value());
+    bindAsyncMapper(asyncMapperClass);
+  }
+
+  /**
+   * Runs the transactional tasks of the async mappers through the installed interceptors.
+   */
+  @Override
+  final void useTransactionalInterceptors(MethodInterceptor... interceptors) {
+    if (asyncMapperExecutorProvider != null) {
+      asyncMapperExecutorProvider.setTransactionalInterceptors(Arrays.asList(interceptors));
+    }
+  }
+
+  private <A> void bindAsyncMapper(Class<A> asyncMapperType) {
+    bind(asyncMapperType).toProvider(guicify(new AsyncMapperProvider<A>(asyncMapperType))).in(Scopes.SINGLETON);
+  }
+
+  /**
+   * Runs the asynchronous mapper calls on the given number of threads, instead of as many as the connections of
+   * the data source pool.
+   *
+   * @param threads the number of threads
+   * @since 3.10
+   */
+  protected final void asyncMapperThreads(int threads) {
+    checkArgument(threads > 0, "Parameter 'threads' must be positive");
+    bindConstant().annotatedWith(named("mybatis.async.threads")).to(threads);
+  }
+
+  /**
+   * Lets at most the given number of asynchronous mapper calls wait for a thread, instead of 100 per thread;
+   * further calls return a failed future.
+   *
+   * @param queueCapacity the maximum number of waiting calls
+   * @since 3.10
+   */
+  protected final void asyncMapperQueueCapacity(int queueCapacity) {
+    checkArgument(queueCapacity > 0, "Parameter 'queueCapacity' must be positive");
+    bindConstant().annotatedWith(named("mybatis.async.queueCapacity")).to(queueCapacity);
+  }
+
+  /**
+   * Bind a google-guice managed second level cache to the given mapper namespace, that must not declare its
+   * own cache.
+   *
+   * @param namespace the mapper namespace
+   * @return the cache binder
+   * @since 3.10
+   */
+  protected final CacheBinder bindCache(final String namespace) {
+    checkArgument(namespace != null && namespace.length() > 0, "Empty or null 'namespace' is not valid");
+
+    return new CacheBinder() {
+
+      @Override
+      public void to(Class<? extends Cache> cacheType) {
+        to(cacheType, null);
+      }
+
+      @Override
+      public void to(Class<? extends Cache> cacheType, Properties properties) {
+        bind(cacheType, properties, false);
+      }
+
+      @Override
+      public void toReadOnly(Class<? extends Cache> cacheType, Properties properties) {
+        bind(cacheType, properties, true);
+      }
+
+      private void bind(Class<? extends Cache> cacheType, Properties properties, boolean readOnly) {
+        checkArgument(cacheType != null, "Null cache type not valid for namespace '%s'", namespace);
+        bindListener(KeyMatcher.create(Key.get(ConfigurationProvider.class)), ConfigurationProviderProvisionListener
+            .create(new CacheConfigurationSetting(namespace, cacheType, properties, readOnly), binder()));
+      }
+
+    };
+  }
+
+  /**
+   * Bind a google-guice managed second level cache to the namespace of the given mapper class, that must not
+   * declare its own cache.
+   *
+   * @param mapperClass the mapper class
+   * @return the cache binder
+   * @since 3.10
+   */
+  protected final CacheBinder bindCache(final Class<?> mapperClass) {
+    checkArgument(mapperClass != null, "Parameter 'mapperClass' must not be null");
+    return bindCache(mapperClass.getName());
+  }
+
   /**
    * Return a set of all classes contained in the given package.
    *
@@ -666,6 +822,23 @@ public abstract class MyBatisModule extends AbstractMyBatisModule {
   private static Set<Class<?>> getClasses(ResolverUtil.Test test, String packageName) {
     checkArgument(test != null, "Parameter 'test' must not be null");
     checkArgument(packageName != null, "Parameter 'packageName' must not be null");
-    return new ResolverUtil<Object>().find(test, packageName).getClasses();
+    return MyBatisModule.<Object> findClasses(test, packageName);
+  }
+
+  /**
+   * Return a set of all classes contained in the given package that match with
+   * the given test requirement, looking them up in the {@link TypeIndex} when
+   * the package is indexed, scanning the classpath otherwise.
+   *
+   * @param test the class filter on the given package.
+   * @param packageName the package has to be analyzed.
+   * @return a set of all classes contained in the given package.
+   */
+  private static <T> Set<Class<? extends T>> findClasses(ResolverUtil.Test test, String packageName) {
+    Set<Class<? extends T>> classes = TypeIndex.find(test, packageName);
+    if (classes == null) {
+      classes = new ResolverUtil<T>().find(test, packageName).getClasses();
+    }
+    return classes;
   }
 }
@@ -0,0 +1,61 @@
+/**
+ *    Copyright 2009-2017 the original author or authors.
+ *
+ *    Licensed under the Apache License, Version 2.0 (the "License");
+ *    you may not use this file except in compliance with the License.
+ *    You may obtain a copy of the License at
+ *
+ *       http://www.apache.org/licenses/LICENSE-2.0
+ *
+ *    Unless required by applicable law or agreed to in writing, software
+ *    distributed under the License is distributed on an "AS IS" BASIS,
+ *    WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ *    See the License for the specific language governing permissions and
+ *    limitations under the License.
+ */
+package org.mybatis.guice;
+
+import static com.google.inject.matcher.Matchers.any;
+
+import org.mybatis.guice.transactional.TransactionalTypeListener;
+
+import com.google.inject.AbstractModule;
+
+/**
+ * Binds the {@link TransactionalTypeListener}.
+ * <p>
+ * Every instance is equal to the others, so that Guice installs the module once per binder however many MyBatis
+ * modules install it, and the methods of a type are checked, and their errors reported, only once. The module
+ * installed by the JTA modules, checking the propagations as well, is equal to the JTA ones only.
+ * </p>
+ *
+ * @since 3.10
+ */
+final class TransactionalTypeListenerModule extends AbstractModule {
+
+  private final boolean jta;
+
+  TransactionalTypeListenerModule() {
+    this(false);
+  }
+
+  TransactionalTypeListenerModule(boolean jta) {
+    this.jta = jta;
+  }
+
+  @Override
+  protected void configure() {
+    bindListener(any(), new TransactionalTypeListener(jta));
+  }
+
+  @Override
+  public boolean equals(Object obj) {
+    return obj instanceof TransactionalTypeListenerModule && ((TransactionalTypeListenerModule) obj).jta == jta;
+  }
+
+  @Override
+  public int hashCode() {
+    return TransactionalTypeListenerModule.class.hashCode() + (jta ? 1 : 0);
+  }
+
+}
@@ -16,9 +16,14 @@
 package org.mybatis.guice;
 
 import static org.apache.ibatis.io.Resources.getResourceAsReader;
+import static org.apache.ibatis.io.Resources.getResourceAsStream;
 import static org.mybatis.guice.Preconditions.checkArgument;
 
+import java.io.ByteArrayInputStream;
+import java.io.ByteArrayOutputStream;
+import java.io.File;
 import java.io.IOException;
+import java.io.InputStream;
 import java.io.Reader;
 import java.util.Collection;
 import java.util.Properties;
@@ -28,6 +33,7 @@ import org.apache.ibatis.session.Configuration;
 import org.apache.ibatis.session.SqlSessionFactory;
 import org.apache.ibatis.session.SqlSessionFactoryBuilder;
 import org.apache.ibatis.type.TypeHandler;
+import org.mybatis.guice.configuration.snapshot.ConfigurationSnapshot;
 
 /**
  * Easy to use helper Module that alleviates users to write the boilerplate
@@ -45,6 +51,8 @@ public abstract class XMLMyBatisModule extends AbstractMyBatisModule {
 
   private Properties properties = new Properties();
 
+  private File snapshotFile;
+
   /**
    * Set the MyBatis configuration class path resource.
    *
@@ -75,6 +83,19 @@ public abstract class XMLMyBatisModule extends AbstractMyBatisModule {
     }
   }
 
+  /**
+   * Restores the mapper elements from the given snapshot file instead of parsing the mappers, writing the
+   * snapshot when it is missing or stale.
+   *
+   * @param snapshotFile the snapshot file
+   * @see ConfigurationSnapshot
+   * @since 3.10
+   */
+  protected final void useConfigurationSnapshot(File snapshotFile) {
+    checkArgument(snapshotFile != null, "Parameter 'snapshotFile' must be not null");
+    this.snapshotFile = snapshotFile;
+  }
+
   /**
    * {@inheritDoc}
    */
@@ -82,10 +103,9 @@ public abstract class XMLMyBatisModule extends AbstractMyBatisModule {
   final void internalConfigure() {
     this.initialize();
 
-    Reader reader = null;
     try {
-      reader = getResourceAsReader(getResourceClassLoader(), classPathResource);
-      SqlSessionFactory sessionFactory = new SqlSessionFactoryBuilder().build(reader, environmentId, properties);
+      SqlSessionFactory sessionFactory = snapshotFile == null ? parseSqlSessionFactory()
+          : restoreSqlSessionFactory();
       bind(SqlSessionFactory.class).toInstance(sessionFactory);
 
       Configuration configuration = sessionFactory.getConfiguration();
@@ -116,13 +136,61 @@ public abstract class XMLMyBatisModule extends AbstractMyBatisModule {
     } catch (Exception e) {
       addError("Impossible to read classpath resource '%s', see nested exceptions: %s", classPathResource,
           e.getMessage());
+    }
+  }
+
+  private SqlSessionFactory parseSqlSessionFactory() throws IOException {
+    Reader reader = getResourceAsReader(getResourceClassLoader(), classPathResource);
+    try {
+      return new SqlSessionFactoryBuilder().build(reader, environmentId, properties);
+    } finally {
+      try {
+        reader.close();
+      } catch (IOException e) {
+        // close quietly
+      }
+    }
+  }
+
+  private SqlSessionFactory restoreSqlSessionFactory() throws IOException {
+    byte[] configurationDocument = readConfigurationDocument();
+    if (!ConfigurationSnapshot.isSupported(configurationDocument)) {
+      return new SqlSessionFactoryBuilder().build(new ByteArrayInputStream(configurationDocument), environmentId,
+          properties);
+    }
+    String key = ConfigurationSnapshot.key(configurationDocument, environmentId, properties);
+
+    ConfigurationSnapshot snapshot = ConfigurationSnapshot.load(snapshotFile, key, getResourceClassLoader());
+    if (snapshot != null) {
+      SqlSessionFactory sessionFactory = new SqlSessionFactoryBuilder().build(
+          new ByteArrayInputStream(ConfigurationSnapshot.withoutMappers(configurationDocument)), environmentId,
+          properties);
+      if (snapshot.restore(sessionFactory.getConfiguration())) {
+        return sessionFactory;
+      }
+    }
+
+    SqlSessionFactory sessionFactory = new SqlSessionFactoryBuilder()
+        .build(new ByteArrayInputStream(configurationDocument), environmentId, properties);
+    ConfigurationSnapshot.save(snapshotFile, key, sessionFactory.getConfiguration(), getResourceClassLoader());
+    return sessionFactory;
+  }
+
+  private byte[] readConfigurationDocument() throws IOException {
+    InputStream inputStream = getResourceAsStream(getResourceClassLoader(), classPathResource);
+    try {
+      ByteArrayOutputStream content = new ByteArrayOutputStream();
+      byte[] buffer = new byte[8192];
+      int read;
+      while ((read = inputStream.read(buffer)) != -1) {
+        content.write(buffer, 0, read);
+      }
+      return content.toByteArray();
     } finally {
-      if (reader != null) {
-        try {
-          reader.close();
-        } catch (IOException e) {
-          // close quietly
-        }
+      try {
+        inputStream.close();
+      } catch (IOException e) {
+        // close quietly
       }
     }
   }
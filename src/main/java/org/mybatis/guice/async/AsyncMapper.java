@@ -0,0 +1,48 @@
+/**
+ *    Copyright 2009-2017 the original author or authors.
+ *
+ *    Licensed under the Apache License, Version 2.0 (the "License");
+ *    you may not use this file except in compliance with the License.
+ *    You may obtain a copy of the License at
+ *
+ *       http://www.apache.org/licenses/LICENSE-2.0
+ *
+ *    Unless required by applicable law or agreed to in writing, software
+ *    distributed under the License is distributed on an "AS IS" BASIS,
+ *    WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ *    See the License for the specific language governing permissions and
+ *    limitations under the License.
+ */
+package org.mybatis.guice.async;
+
+import java.lang.annotation.Documented;
+import java.lang.annotation.ElementType;
+import java.lang.annotation.Retention;
+import java.lang.annotation.RetentionPolicy;
+import java.lang.annotation.Target;
+
+/**
+ * Marks an interface as the asynchronous facade of a mapper.
+ * <p>
+ * Every method of the facade has to return a {@link com.google.common.util.concurrent.ListenableFuture} (or a
+ * {@link java.util.concurrent.Future}) and to match, by name and parameter types, a method of the mapper; calling
+ * it runs the mapper method on the {@link AsyncMapperExecutor}. Methods annotated with
+ * {@link org.mybatis.guice.transactional.Transactional}, or declared by an annotated facade, run in their own
+ * transaction.
+ * </p>
+ *
+ * @since 3.10
+ */
+@Documented
+@Retention(RetentionPolicy.RUNTIME)
+@Target(ElementType.TYPE)
+public @interface AsyncMapper {
+
+  /**
+   * Returns the mapper type the facade calls.
+   *
+   * @return the mapper type the facade calls.
+   */
+  Class<?> value();
+
+}
@@ -0,0 +1,223 @@
+/**
+ *    Copyright 2009-2017 the original author or authors.
+ *
+ *    Licensed under the Apache License, Version 2.0 (the "License");
+ *    you may not use this file except in compliance with the License.
+ *    You may obtain a copy of the License at
+ *
+ *       http://www.apache.org/licenses/LICENSE-2.0
+ *
+ *    Unless required by applicable law or agreed to in writing, software
+ *    distributed under the License is distributed on an "AS IS" BASIS,
+ *    WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ *    See the License for the specific language governing permissions and
+ *    limitations under the License.
+ */
+package org.mybatis.guice.async;
+
+import com.google.common.util.concurrent.Futures;
+import com.google.common.util.concurrent.ListenableFuture;
+import com.google.common.util.concurrent.ListeningExecutorService;
+import com.google.common.util.concurrent.MoreExecutors;
+
+import java.lang.reflect.Method;
+import java.lang.reflect.UndeclaredThrowableException;
+import java.util.Arrays;
+import java.util.List;
+import java.util.concurrent.ArrayBlockingQueue;
+import java.util.concurrent.Callable;
+import java.util.concurrent.RejectedExecutionException;
+import java.util.concurrent.ThreadFactory;
+import java.util.concurrent.ThreadPoolExecutor;
+import java.util.concurrent.TimeUnit;
+import java.util.concurrent.atomic.AtomicInteger;
+
+import org.aopalliance.intercept.MethodInterceptor;
+import org.mybatis.guice.transactional.Transactional;
+
+/**
+ * Runs the calls of the {@link AsyncMapper} facades on a fixed number of daemon threads, by default as many as the
+ * connections of the bound {@code DataSource} pool, so that calls wait in the executor queue rather than for a
+ * connection.
+ * <p>
+ * Transactional tasks run in their own transaction on the executor thread, demarcated as a {@link Transactional}
+ * method would be; the mappers they call, through the facades or directly, join it.
+ * </p>
+ * <p>
+ * At most {@link #getQueueCapacity()} calls wait for a thread, further ones fail with a
+ * {@link RejectedExecutionException}. Idle threads stop after a minute; an application discarding its injector
+ * should still {@link #shutdown()} the executor.
+ * </p>
+ *
+ * @since 3.10
+ */
+public final class AsyncMapperExecutor {
+
+  /**
+   * The method whose default {@link Transactional} settings apply to {@link #submitTransactional(Callable)}.
+   */
+  private static final Method DEFAULT_TRANSACTION = findDefaultTransaction();
+
+  /**
+   * The number of calls waiting for a thread, per thread, unless a capacity is given.
+   */
+  static final int DEFAULT_QUEUE_CAPACITY_PER_THREAD = 100;
+
+  private static final long KEEP_ALIVE_SECONDS = 60;
+
+  private final ListeningExecutorService executorService;
+
+  private final int threads;
+
+  private final int queueCapacity;
+
+  private final List<MethodInterceptor> transactionalInterceptors;
+
+  /**
+   * Creates an executor running the calls on the given number of threads, queueing up to
+   * {@value #DEFAULT_QUEUE_CAPACITY_PER_THREAD} calls per thread.
+   *
+   * @param threads the number of threads
+   * @param transactionalInterceptors the interceptors demarcating the transactional tasks, in their order
+   */
+  public AsyncMapperExecutor(int threads, MethodInterceptor... transactionalInterceptors) {
+    this(threads, threads * DEFAULT_QUEUE_CAPACITY_PER_THREAD, transactionalInterceptors);
+  }
+
+  /**
+   * Creates an executor running the calls on the given number of threads.
+   *
+   * @param threads the number of threads
+   * @param queueCapacity the maximum number of calls waiting for a thread
+   * @param transactionalInterceptors the interceptors demarcating the transactional tasks, in their order
+   */
+  public AsyncMapperExecutor(int threads, int queueCapacity, MethodInterceptor... transactionalInterceptors) {
+    if (threads < 1) {
+      throw new IllegalArgumentException("The async mapper threads must be at least 1, was " + threads);
+    }
+    if (queueCapacity < 1) {
+      throw new IllegalArgumentException("The async mapper queue capacity must be at least 1, was " + queueCapacity);
+    }
+    this.threads = threads;
+    this.queueCapacity = queueCapacity;
+    this.transactionalInterceptors = Arrays.asList(transactionalInterceptors.clone());
+    ThreadPoolExecutor threadPoolExecutor = new ThreadPoolExecutor(threads, threads, KEEP_ALIVE_SECONDS,
+        TimeUnit.SECONDS, new ArrayBlockingQueue<Runnable>(queueCapacity), new AsyncThreadFactory());
+    threadPoolExecutor.allowCoreThreadTimeOut(true);
+    this.executorService = MoreExecutors.listeningDecorator(threadPoolExecutor);
+  }
+
+  private static Method findDefaultTransaction() {
+    try {
+      return AsyncMapperExecutor.class.getDeclaredMethod("defaultTransaction");
+    } catch (NoSuchMethodException e) {
+      throw new IllegalStateException(e);
+    }
+  }
+
+  @Transactional
+  @SuppressWarnings("unused")
+  private void defaultTransaction() {
+    // only holds the default settings
+  }
+
+  /**
+   * Returns the number of threads running the calls.
+   *
+   * @return the number of threads running the calls
+   */
+  public int getThreads() {
+    return threads;
+  }
+
+  /**
+   * Returns the maximum number of calls waiting for a thread.
+   *
+   * @return the maximum number of calls waiting for a thread
+   */
+  public int getQueueCapacity() {
+    return queueCapacity;
+  }
+
+  /**
+   * Runs the given task on the executor, outside any transaction.
+   *
+   * @param <T> the task result type
+   * @param task the task
+   * @return the future result of the task, failed with a {@link RejectedExecutionException} if the queue is full
+   *         or the executor is shut down
+   */
+  public <T> ListenableFuture<T> submit(Callable<T> task) {
+    try {
+      return executorService.submit(task);
+    } catch (RejectedExecutionException e) {
+      return Futures.immediateFailedFuture(e);
+    }
+  }
+
+  /**
+   * Runs the given task on the executor in a transaction with the default {@link Transactional} settings.
+   *
+   * @param <T> the task result type
+   * @param task the task
+   * @return the future result of the task, failed if the transaction is rolled back, the queue is full or the
+   *         executor is shut down
+   */
+  public <T> ListenableFuture<T> submitTransactional(Callable<T> task) {
+    return submitTransactional(DEFAULT_TRANSACTION, null, task);
+  }
+
+  /**
+   * Runs the given task on the executor in a transaction with the {@link Transactional} settings of the given
+   * method.
+   *
+   * @param <T> the task result type
+   * @param method the method declaring the transactional settings
+   * @param arguments the method arguments, formatting the exception messages
+   * @param task the task
+   * @return the future result of the task, failed if the transaction is rolled back, the queue is full or the
+   *         executor is shut down
+   */
+  <T> ListenableFuture<T> submitTransactional(Method method, Object[] arguments, Callable<T> task) {
+    final TransactionalCall call = new TransactionalCall(method, arguments, task, transactionalInterceptors);
+    return submit(new Callable<T>() {
+
+      @Override
+      @SuppressWarnings("unchecked")
+      public T call() throws Exception {
+        try {
+          return (T) call.proceed();
+        } catch (Exception e) {
+          throw e;
+        } catch (Error e) {
+          throw e;
+        } catch (Throwable t) {
+          throw new UndeclaredThrowableException(t);
+        }
+      }
+
+    });
+  }
+
+  /**
+   * Stops accepting calls, the submitted ones still run; to be called when the injector is discarded, since the
+   * executor is a singleton of the injector.
+   */
+  public void shutdown() {
+    executorService.shutdown();
+  }
+
+  private static final class AsyncThreadFactory implements ThreadFactory {
+
+    private final AtomicInteger count = new AtomicInteger();
+
+    @Override
+    public Thread newThread(Runnable runnable) {
+      Thread thread = new Thread(runnable, "mybatis-guice-async-" + count.incrementAndGet());
+      thread.setDaemon(true);
+      return thread;
+    }
+
+  }
+
+}
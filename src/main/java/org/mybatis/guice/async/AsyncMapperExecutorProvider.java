@@ -0,0 +1,128 @@
+/**
+ *    Copyright 2009-2017 the original author or authors.
+ *
+ *    Licensed under the Apache License, Version 2.0 (the "License");
+ *    you may not use this file except in compliance with the License.
+ *    You may obtain a copy of the License at
+ *
+ *       http://www.apache.org/licenses/LICENSE-2.0
+ *
+ *    Unless required by applicable law or agreed to in writing, software
+ *    distributed under the License is distributed on an "AS IS" BASIS,
+ *    WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ *    See the License for the specific language governing permissions and
+ *    limitations under the License.
+ */
+package org.mybatis.guice.async;
+
+import java.util.List;
+
+import javax.inject.Inject;
+import javax.inject.Named;
+import javax.inject.Provider;
+import javax.sql.DataSource;
+
+import org.aopalliance.intercept.MethodInterceptor;
+import org.apache.ibatis.logging.Log;
+import org.apache.ibatis.logging.LogFactory;
+import org.apache.ibatis.session.SqlSessionManager;
+import org.mybatis.guice.transactional.TransactionEventSink;
+import org.mybatis.guice.transactional.TransactionalMethodInterceptor;
+
+/**
+ * Provides the {@link AsyncMapperExecutor}, sized to the maximum number of connections of the bound
+ * {@code DataSource} unless {@code mybatis.async.threads} is bound, and queueing
+ * {@code mybatis.async.queueCapacity} calls when bound.
+ * <p>
+ * The transactional tasks run through the interceptors the MyBatis module installed for the {@code Transactional}
+ * methods, the JTA ones under a {@code MyBatisJtaModule}; without them, through a local
+ * {@link TransactionalMethodInterceptor} of the bound {@code SqlSessionManager}.
+ * </p>
+ *
+ * @since 3.10
+ */
+public final class AsyncMapperExecutorProvider implements Provider<AsyncMapperExecutor> {
+
+  /**
+   * The number of threads when the pool size of the data source cannot be read, the MyBatis pool default.
+   */
+  static final int DEFAULT_THREADS = 10;
+
+  private final Log log = LogFactory.getLog(getClass());
+
+  @com.google.inject.Inject(optional = true)
+  @Named("mybatis.async.threads")
+  private int threads;
+
+  @com.google.inject.Inject(optional = true)
+  @Named("mybatis.async.queueCapacity")
+  private int queueCapacity;
+
+  @Inject
+  private DataSource dataSource;
+
+  @Inject
+  private SqlSessionManager sqlSessionManager;
+
+  @com.google.inject.Inject(optional = true)
+  private TransactionEventSink transactionEventSink;
+
+  /**
+   * The interceptors installed by the module, in their order.
+   */
+  private List<MethodInterceptor> transactionalInterceptors;
+
+  public void setThreads(int threads) {
+    this.threads = threads;
+  }
+
+  public void setQueueCapacity(int queueCapacity) {
+    this.queueCapacity = queueCapacity;
+  }
+
+  public void setDataSource(DataSource dataSource) {
+    this.dataSource = dataSource;
+  }
+
+  public void setSqlSessionManager(SqlSessionManager sqlSessionManager) {
+    this.sqlSessionManager = sqlSessionManager;
+  }
+
+  public void setTransactionalInterceptors(List<MethodInterceptor> transactionalInterceptors) {
+    this.transactionalInterceptors = transactionalInterceptors;
+  }
+
+  @Override
+  public AsyncMapperExecutor get() {
+    int resolvedThreads = resolveThreads();
+    return new AsyncMapperExecutor(resolvedThreads,
+        queueCapacity > 0 ? queueCapacity : resolvedThreads * AsyncMapperExecutor.DEFAULT_QUEUE_CAPACITY_PER_THREAD,
+        resolveTransactionalInterceptors());
+  }
+
+  private MethodInterceptor[] resolveTransactionalInterceptors() {
+    if (transactionalInterceptors != null) {
+      return transactionalInterceptors.toArray(new MethodInterceptor[transactionalInterceptors.size()]);
+    }
+    TransactionalMethodInterceptor interceptor = new TransactionalMethodInterceptor();
+    interceptor.setSqlSessionManager(sqlSessionManager);
+    interceptor.setTransactionEventSink(transactionEventSink);
+    return new MethodInterceptor[] { interceptor };
+  }
+
+  private int resolveThreads() {
+    if (threads > 0) {
+      return threads;
+    }
+    int poolSize = DataSourcePoolSize.of(dataSource);
+    if (poolSize > 0) {
+      return poolSize;
+    }
+    if (log.isDebugEnabled()) {
+      log.debug("Impossible to read the pool size of " + dataSource + ", running async mappers on "
+          + DEFAULT_THREADS + " threads");
+    }
+    return DEFAULT_THREADS;
+  }
+
+}
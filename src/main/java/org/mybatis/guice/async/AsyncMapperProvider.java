@@ -0,0 +1,177 @@
+/**
+ *    Copyright 2009-2017 the original author or authors.
+ *
+ *    Licensed under the Apache License, Version 2.0 (the "License");
+ *    you may not use this file except in compliance with the License.
+ *    You may obtain a copy of the License at
+ *
+ *       http://www.apache.org/licenses/LICENSE-2.0
+ *
+ *    Unless required by applicable law or agreed to in writing, software
+ *    distributed under the License is distributed on an "AS IS" BASIS,
+ *    WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ *    See the License for the specific language governing permissions and
+ *    limitations under the License.
+ */
+package org.mybatis.guice.async;
+
+import com.google.common.util.concurrent.ListenableFuture;
+
+import java.lang.reflect.InvocationHandler;
+import java.lang.reflect.InvocationTargetException;
+import java.lang.reflect.Method;
+import java.lang.reflect.Proxy;
+import java.lang.reflect.UndeclaredThrowableException;
+import java.util.HashMap;
+import java.util.HashSet;
+import java.util.Map;
+import java.util.Set;
+import java.util.concurrent.Callable;
+import java.util.concurrent.Future;
+
+import javax.inject.Inject;
+import javax.inject.Provider;
+
+import org.apache.ibatis.session.SqlSessionManager;
+import org.mybatis.guice.transactional.Transactional;
+
+/**
+ * Provides the facade of an {@link AsyncMapper} interface, running its calls on the {@link AsyncMapperExecutor}.
+ *
+ * @since 3.10
+ */
+public final class AsyncMapperProvider<A> implements Provider<A> {
+
+  private final Class<A> asyncMapperType;
+
+  private final Class<?> mapperType;
+
+  /**
+   * The mapper method called by each facade method.
+   */
+  private final Map<Method, Method> mapperMethods = new HashMap<Method, Method>();
+
+  private final Set<Method> transactionalMethods = new HashSet<Method>();
+
+  @Inject
+  private SqlSessionManager sqlSessionManager;
+
+  @Inject
+  private AsyncMapperExecutor asyncMapperExecutor;
+
+  /**
+   * Creates the provider of the given facade, checking its methods.
+   *
+   * @param asyncMapperType the facade type, annotated with {@link AsyncMapper}
+   * @throws IllegalArgumentException if the facade does not match its mapper
+   */
+  public AsyncMapperProvider(Class<A> asyncMapperType) {
+    AsyncMapper asyncMapper = asyncMapperType.getAnnotation(AsyncMapper.class);
+    if (!asyncMapperType.isInterface() || asyncMapper == null) {
+      throw new IllegalArgumentException(
+          "Async mapper '" + asyncMapperType.getName() + "' must be an interface annotated with @AsyncMapper");
+    }
+    this.asyncMapperType = asyncMapperType;
+    this.mapperType = asyncMapper.value();
+
+    for (Method method : asyncMapperType.getMethods()) {
+      Class<?> returnType = method.getReturnType();
+      if (!Future.class.isAssignableFrom(returnType) || !returnType.isAssignableFrom(ListenableFuture.class)) {
+        throw new IllegalArgumentException("Async mapper method '" + method.toGenericString()
+            + "' must return a " + ListenableFuture.class.getName());
+      }
+      try {
+        mapperMethods.put(method, mapperType.getMethod(method.getName(), method.getParameterTypes()));
+      } catch (NoSuchMethodException e) {
+        throw new IllegalArgumentException("Async mapper method '" + method.toGenericString()
+            + "' does not match any method of '" + mapperType.getName() + "'");
+      }
+      if (method.isAnnotationPresent(Transactional.class)
+          || method.getDeclaringClass().isAnnotationPresent(Transactional.class)) {
+        transactionalMethods.add(method);
+      }
+    }
+  }
+
+  public void setSqlSessionManager(SqlSessionManager sqlSessionManager) {
+    this.sqlSessionManager = sqlSessionManager;
+  }
+
+  public void setAsyncMapperExecutor(AsyncMapperExecutor asyncMapperExecutor) {
+    this.asyncMapperExecutor = asyncMapperExecutor;
+  }
+
+  /**
+   * Returns the mapper type the facade calls.
+   *
+   * @return the mapper type the facade calls
+   */
+  public Class<?> getMapperType() {
+    return mapperType;
+  }
+
+  @Override
+  public A get() {
+    final Object mapper = sqlSessionManager.getMapper(mapperType);
+    return asyncMapperType.cast(Proxy.newProxyInstance(asyncMapperType.getClassLoader(),
+        new Class<?>[] { asyncMapperType }, new InvocationHandler() {
+
+          @Override
+          public Object invoke(Object proxy, Method method, Object[] args) throws Throwable {
+            if (Object.class.equals(method.getDeclaringClass())) {
+              return invokeObjectMethod(proxy, method, args);
+            }
+
+            Callable<Object> call = new MapperCall(mapper, mapperMethods.get(method), args);
+            if (transactionalMethods.contains(method)) {
+              return asyncMapperExecutor.submitTransactional(method, args, call);
+            }
+            return asyncMapperExecutor.submit(call);
+          }
+
+        }));
+  }
+
+  private Object invokeObjectMethod(Object proxy, Method method, Object[] args) {
+    if ("equals".equals(method.getName())) {
+      return proxy == args[0];
+    }
+    if ("hashCode".equals(method.getName())) {
+      return System.identityHashCode(proxy);
+    }
+    return "Async mapper " + asyncMapperType.getName();
+  }
+
+  private static final class MapperCall implements Callable<Object> {
+
+    private final Object mapper;
+
+    private final Method method;
+
+    private final Object[] args;
+
+    MapperCall(Object mapper, Method method, Object[] args) {
+      this.mapper = mapper;
+      this.method = method;
+      this.args = args;
+    }
+
+    @Override
+    public Object call() throws Exception {
+      try {
+        return method.invoke(mapper, args);
+      } catch (InvocationTargetException e) {
+        Throwable cause = e.getTargetException();
+        if (cause instanceof Exception) {
+          throw (Exception) cause;
+        }
+        if (cause instanceof Error) {
+          throw (Error) cause;
+        }
+        throw new UndeclaredThrowableException(cause);
+      }
+    }
+
+  }
+
+}
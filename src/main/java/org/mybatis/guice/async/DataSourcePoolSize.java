@@ -0,0 +1,77 @@
+/**
+ *    Copyright 2009-2017 the original author or authors.
+ *
+ *    Licensed under the Apache License, Version 2.0 (the "License");
+ *    you may not use this file except in compliance with the License.
+ *    You may obtain a copy of the License at
+ *
+ *       http://www.apache.org/licenses/LICENSE-2.0
+ *
+ *    Unless required by applicable law or agreed to in writing, software
+ *    distributed under the License is distributed on an "AS IS" BASIS,
+ *    WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ *    See the License for the specific language governing permissions and
+ *    limitations under the License.
+ */
+package org.mybatis.guice.async;
+
+import java.lang.reflect.Method;
+
+import javax.sql.DataSource;
+
+/**
+ * Reads the maximum number of connections of the connection pools supported by the data source providers.
+ *
+ * @since 3.10
+ */
+final class DataSourcePoolSize {
+
+  /**
+   * The getters of the maximum number of connections: MyBatis pooled data source, HikariCP, DBCP 2, DBCP and
+   * Druid, c3p0.
+   */
+  private static final String[] POOL_SIZE_GETTERS = { "getPoolMaximumActiveConnections", "getMaximumPoolSize",
+      "getMaxTotal", "getMaxActive", "getMaxPoolSize" };
+
+  private DataSourcePoolSize() {
+    // do nothing
+  }
+
+  /**
+   * Returns the maximum number of connections of the given data source.
+   *
+   * @param dataSource the data source
+   * @return the maximum number of connections, or -1 if unknown
+   */
+  static int of(DataSource dataSource) {
+    if (dataSource == null) {
+      return -1;
+    }
+    Class<?> type = dataSource.getClass();
+    for (String getter : POOL_SIZE_GETTERS) {
+      int size = invoke(dataSource, type, getter);
+      if (size > 0) {
+        return size;
+      }
+    }
+
+    // BoneCP splits the connections in partitions
+    int connectionsPerPartition = invoke(dataSource, type, "getMaxConnectionsPerPartition");
+    int partitions = invoke(dataSource, type, "getPartitionCount");
+    if (connectionsPerPartition > 0 && partitions > 0) {
+      return connectionsPerPartition * partitions;
+    }
+    return -1;
+  }
+
+  private static int invoke(DataSource dataSource, Class<?> type, String getter) {
+    try {
+      Method method = type.getMethod(getter);
+      Object value = method.invoke(dataSource);
+      return value instanceof Number ? ((Number) value).intValue() : -1;
+    } catch (Exception e) {
+      return -1;
+    }
+  }
+
+}
@@ -0,0 +1,88 @@
+/**
+ *    Copyright 2009-2017 the original author or authors.
+ *
+ *    Licensed under the Apache License, Version 2.0 (the "License");
+ *    you may not use this file except in compliance with the License.
+ *    You may obtain a copy of the License at
+ *
+ *       http://www.apache.org/licenses/LICENSE-2.0
+ *
+ *    Unless required by applicable law or agreed to in writing, software
+ *    distributed under the License is distributed on an "AS IS" BASIS,
+ *    WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ *    See the License for the specific language governing permissions and
+ *    limitations under the License.
+ */
+package org.mybatis.guice.async;
+
+import java.lang.reflect.AccessibleObject;
+import java.lang.reflect.Method;
+import java.util.List;
+import java.util.concurrent.Callable;
+
+import org.aopalliance.intercept.MethodInterceptor;
+import org.aopalliance.intercept.MethodInvocation;
+
+/**
+ * Presents a task to the transactional interceptors, in their order, as the invocation of the method whose
+ * {@link org.mybatis.guice.transactional.Transactional} settings apply.
+ *
+ * @since 3.10
+ */
+final class TransactionalCall implements MethodInvocation {
+
+  private final Method method;
+
+  private final Object[] arguments;
+
+  private final Callable<?> task;
+
+  private final List<MethodInterceptor> interceptors;
+
+  /**
+   * The index of the interceptor proceeding the call.
+   */
+  private final int index;
+
+  TransactionalCall(Method method, Object[] arguments, Callable<?> task, List<MethodInterceptor> interceptors) {
+    this(method, arguments != null ? arguments : new Object[0], task, interceptors, 0);
+  }
+
+  private TransactionalCall(Method method, Object[] arguments, Callable<?> task, List<MethodInterceptor> interceptors,
+      int index) {
+    this.method = method;
+    this.arguments = arguments;
+    this.task = task;
+    this.interceptors = interceptors;
+    this.index = index;
+  }
+
+  @Override
+  public Method getMethod() {
+    return method;
+  }
+
+  @Override
+  public Object[] getArguments() {
+    return arguments;
+  }
+
+  @Override
+  public Object proceed() throws Throwable {
+    if (index < interceptors.size()) {
+      return interceptors.get(index).invoke(new TransactionalCall(method, arguments, task, interceptors, index + 1));
+    }
+    return task.call();
+  }
+
+  @Override
+  public Object getThis() {
+    return null;
+  }
+
+  @Override
+  public AccessibleObject getStaticPart() {
+    return method;
+  }
+
+}
@@ -0,0 +1,56 @@
+/**
+ *    Copyright 2009-2017 the original author or authors.
+ *
+ *    Licensed under the Apache License, Version 2.0 (the "License");
+ *    you may not use this file except in compliance with the License.
+ *    You may obtain a copy of the License at
+ *
+ *       http://www.apache.org/licenses/LICENSE-2.0
+ *
+ *    Unless required by applicable law or agreed to in writing, software
+ *    distributed under the License is distributed on an "AS IS" BASIS,
+ *    WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ *    See the License for the specific language governing permissions and
+ *    limitations under the License.
+ */
+package org.mybatis.guice.binder;
+
+import java.util.Properties;
+
+import org.apache.ibatis.cache.Cache;
+
+/**
+ * Bind the second level cache of an already defined mapper namespace.
+ *
+ * @since 3.10
+ */
+public interface CacheBinder {
+
+  /**
+   * Bind the given {@code Cache} type to an already defined mapper namespace.
+   *
+   * @param cacheType The {@code Cache} type has to be bound, it requires a constructor with the namespace as
+   *          {@code String} single argument
+   */
+  void to(Class<? extends Cache> cacheType);
+
+  /**
+   * Bind the given {@code Cache} type to an already defined mapper namespace.
+   *
+   * @param cacheType The {@code Cache} type has to be bound, it requires a constructor with the namespace as
+   *          {@code String} single argument
+   * @param properties The cache properties, set as in the XML {@code cache} element
+   */
+  void to(Class<? extends Cache> cacheType, Properties properties);
+
+  /**
+   * Bind the given {@code Cache} type to an already defined mapper namespace, sharing the cached objects with the
+   * callers instead of serialized copies, as a {@code readOnly} XML {@code cache} element.
+   *
+   * @param cacheType The {@code Cache} type has to be bound, it requires a constructor with the namespace as
+   *          {@code String} single argument
+   * @param properties The cache properties, set as in the XML {@code cache} element
+   */
+  void toReadOnly(Class<? extends Cache> cacheType, Properties properties);
+
+}
@@ -0,0 +1,74 @@
+/**
+ *    Copyright 2009-2017 the original author or authors.
+ *
+ *    Licensed under the Apache License, Version 2.0 (the "License");
+ *    you may not use this file except in compliance with the License.
+ *    You may obtain a copy of the License at
+ *
+ *       http://www.apache.org/licenses/LICENSE-2.0
+ *
+ *    Unless required by applicable law or agreed to in writing, software
+ *    distributed under the License is distributed on an "AS IS" BASIS,
+ *    WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ *    See the License for the specific language governing permissions and
+ *    limitations under the License.
+ */
+package org.mybatis.guice.cache;
+
+/**
+ * A snapshot of the statistics of a {@link ConcurrentLruCache}.
+ *
+ * @since 3.10
+ */
+public final class CacheStats {
+
+  private final long hitCount;
+
+  private final long missCount;
+
+  private final long evictionCount;
+
+  CacheStats(long hitCount, long missCount, long evictionCount) {
+    this.hitCount = hitCount;
+    this.missCount = missCount;
+    this.evictionCount = evictionCount;
+  }
+
+  public long getHitCount() {
+    return hitCount;
+  }
+
+  public long getMissCount() {
+    return missCount;
+  }
+
+  /**
+   * Returns the number of entries removed because of the size or weight bound, or because they expired.
+   *
+   * @return the number of evicted entries
+   */
+  public long getEvictionCount() {
+    return evictionCount;
+  }
+
+  public long getRequestCount() {
+    return hitCount + missCount;
+  }
+
+  /**
+   * Returns the ratio of lookups that found an entry, 1 when no lookup was made yet.
+   *
+   * @return the hit ratio
+   */
+  public double getHitRate() {
+    long requestCount = getRequestCount();
+    return requestCount == 0 ? 1.0 : (double) hitCount / requestCount;
+  }
+
+  @Override
+  public String toString() {
+    return "CacheStats [hitCount=" + hitCount + ", missCount=" + missCount + ", evictionCount=" + evictionCount
+        + "]";
+  }
+
+}
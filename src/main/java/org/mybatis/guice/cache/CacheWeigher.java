@@ -0,0 +1,35 @@
+/**
+ *    Copyright 2009-2017 the original author or authors.
+ *
+ *    Licensed under the Apache License, Version 2.0 (the "License");
+ *    you may not use this file except in compliance with the License.
+ *    You may obtain a copy of the License at
+ *
+ *       http://www.apache.org/licenses/LICENSE-2.0
+ *
+ *    Unless required by applicable law or agreed to in writing, software
+ *    distributed under the License is distributed on an "AS IS" BASIS,
+ *    WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ *    See the License for the specific language governing permissions and
+ *    limitations under the License.
+ */
+package org.mybatis.guice.cache;
+
+/**
+ * Computes the weight of a cache entry, for caches bounded by the total weight of their entries
+ * instead of their number.
+ *
+ * @since 3.10
+ */
+public interface CacheWeigher {
+
+  /**
+   * Computes the weight of a cache entry.
+   *
+   * @param key the entry key
+   * @param value the entry value, may be null
+   * @return the entry weight, must be not negative
+   */
+  int weigh(Object key, Object value);
+
+}
@@ -0,0 +1,302 @@
+/**
+ *    Copyright 2009-2017 the original author or authors.
+ *
+ *    Licensed under the Apache License, Version 2.0 (the "License");
+ *    you may not use this file except in compliance with the License.
+ *    You may obtain a copy of the License at
+ *
+ *       http://www.apache.org/licenses/LICENSE-2.0
+ *
+ *    Unless required by applicable law or agreed to in writing, software
+ *    distributed under the License is distributed on an "AS IS" BASIS,
+ *    WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ *    See the License for the specific language governing permissions and
+ *    limitations under the License.
+ */
+package org.mybatis.guice.cache;
+
+import java.util.Iterator;
+import java.util.LinkedHashMap;
+import java.util.Map;
+import java.util.concurrent.atomic.AtomicLong;
+import java.util.concurrent.locks.ReadWriteLock;
+import java.util.concurrent.locks.ReentrantLock;
+
+import org.apache.ibatis.cache.Cache;
+
+/**
+ * A second level cache split in independently locked segments, each one evicting its least recently used
+ * entries, so that concurrent sessions rarely contend on the same lock.
+ * <p>
+ * The cache is bounded by the number of its entries ({@code maximumSize}, 1024 by default) or, when both a
+ * {@link CacheWeigher} and {@code maximumWeight} are set, by their total weight; entries can also expire a
+ * given number of milliseconds after they were written ({@code expireAfterWrite}). Bounds are enforced per
+ * segment, so the cache may evict entries slightly before reaching them.
+ * </p>
+ * <p>
+ * Settings can be given as cache properties, both with
+ * {@link org.mybatis.guice.MyBatisModule#bindCache(String)} and in XML mappers.
+ * </p>
+ *
+ * @since 3.10
+ */
+public class ConcurrentLruCache implements Cache {
+
+  private static final int SEGMENTS_COUNT = 16;
+
+  private final String id;
+
+  private final Segment[] segments;
+
+  private final AtomicLong hitCount = new AtomicLong();
+
+  private final AtomicLong missCount = new AtomicLong();
+
+  private final AtomicLong evictionCount = new AtomicLong();
+
+  private volatile long maximumSize = 1024;
+
+  private volatile long maximumWeight = -1;
+
+  private volatile CacheWeigher weigher;
+
+  private volatile long expireAfterWriteNanos = -1;
+
+  public ConcurrentLruCache(String id) {
+    this.id = id;
+    this.segments = new Segment[SEGMENTS_COUNT];
+    for (int i = 0; i < SEGMENTS_COUNT; i++) {
+      segments[i] = new Segment();
+    }
+  }
+
+  /**
+   * Sets the maximum number of entries, ignored when the cache is bounded by weight.
+   *
+   * @param maximumSize the maximum number of entries
+   */
+  public void setMaximumSize(long maximumSize) {
+    if (maximumSize < 0) {
+      throw new IllegalArgumentException("Parameter 'maximumSize' must be not negative");
+    }
+    this.maximumSize = maximumSize;
+  }
+
+  /**
+   * Sets the maximum total weight of the entries, used when a {@link CacheWeigher} is set too.
+   *
+   * @param maximumWeight the maximum total weight of the entries
+   */
+  public void setMaximumWeight(long maximumWeight) {
+    if (maximumWeight < 0) {
+      throw new IllegalArgumentException("Parameter 'maximumWeight' must be not negative");
+    }
+    this.maximumWeight = maximumWeight;
+  }
+
+  @com.google.inject.Inject(optional = true)
+  public void setWeigher(CacheWeigher weigher) {
+    this.weigher = weigher;
+  }
+
+  /**
+   * Sets how long entries live after being written, in milliseconds; entries never expire by default.
+   *
+   * @param expireAfterWrite the entries time to live in milliseconds
+   */
+  public void setExpireAfterWrite(long expireAfterWrite) {
+    if (expireAfterWrite < 0) {
+      throw new IllegalArgumentException("Parameter 'expireAfterWrite' must be not negative");
+    }
+    this.expireAfterWriteNanos = expireAfterWrite * 1000000L;
+  }
+
+  /**
+   * Returns a snapshot of the cache statistics.
+   *
+   * @return the cache statistics
+   */
+  public CacheStats getStats() {
+    return new CacheStats(hitCount.get(), missCount.get(), evictionCount.get());
+  }
+
+  @Override
+  public String getId() {
+    return id;
+  }
+
+  @Override
+  public void putObject(Object key, Object value) {
+    CacheWeigher currentWeigher = weigher;
+    int weight = 1;
+    if (currentWeigher != null) {
+      weight = currentWeigher.weigh(key, value);
+      if (weight < 0) {
+        throw new IllegalStateException("Cache weigher returned a negative weight for key " + key);
+      }
+    }
+    boolean weighted = currentWeigher != null && maximumWeight >= 0;
+    segmentFor(key).put(key, new Entry(value, weight, System.nanoTime()), weighted);
+  }
+
+  @Override
+  public Object getObject(Object key) {
+    Entry entry = segmentFor(key).get(key);
+    if (entry == null) {
+      missCount.incrementAndGet();
+      return null;
+    }
+    hitCount.incrementAndGet();
+    return entry.value;
+  }
+
+  @Override
+  public Object removeObject(Object key) {
+    Entry entry = segmentFor(key).remove(key);
+    return entry == null ? null : entry.value;
+  }
+
+  @Override
+  public void clear() {
+    for (Segment segment : segments) {
+      segment.clear();
+    }
+  }
+
+  @Override
+  public int getSize() {
+    int size = 0;
+    for (Segment segment : segments) {
+      size += segment.size();
+    }
+    return size;
+  }
+
+  /**
+   * Not used by MyBatis, every segment is locked on its own.
+   */
+  @Override
+  public ReadWriteLock getReadWriteLock() {
+    return null;
+  }
+
+  private Segment segmentFor(Object key) {
+    int hash = key.hashCode();
+    hash ^= (hash >>> 16);
+    return segments[hash & (SEGMENTS_COUNT - 1)];
+  }
+
+  private boolean isExpired(Entry entry, long now) {
+    long expireNanos = expireAfterWriteNanos;
+    return expireNanos >= 0 && now - entry.writeNanos >= expireNanos;
+  }
+
+  private static long segmentBound(long bound) {
+    return (bound + SEGMENTS_COUNT - 1) / SEGMENTS_COUNT;
+  }
+
+  private static final class Entry {
+
+    final Object value;
+
+    final int weight;
+
+    final long writeNanos;
+
+    Entry(Object value, int weight, long writeNanos) {
+      this.value = value;
+      this.weight = weight;
+      this.writeNanos = writeNanos;
+    }
+
+  }
+
+  private final class Segment extends ReentrantLock {
+
+    private static final long serialVersionUID = 1L;
+
+    private final LinkedHashMap<Object, Entry> entries = new LinkedHashMap<Object, Entry>(16, 0.75f, true);
+
+    private long totalWeight;
+
+    Entry get(Object key) {
+      lock();
+      try {
+        Entry entry = entries.get(key);
+        if (entry != null && isExpired(entry, System.nanoTime())) {
+          entries.remove(key);
+          totalWeight -= entry.weight;
+          evictionCount.incrementAndGet();
+          return null;
+        }
+        return entry;
+      } finally {
+        unlock();
+      }
+    }
+
+    void put(Object key, Entry entry, boolean weighted) {
+      lock();
+      try {
+        Entry previous = entries.put(key, entry);
+        if (previous != null) {
+          totalWeight -= previous.weight;
+        }
+        totalWeight += entry.weight;
+        evict(weighted);
+      } finally {
+        unlock();
+      }
+    }
+
+    Entry remove(Object key) {
+      lock();
+      try {
+        Entry entry = entries.remove(key);
+        if (entry != null) {
+          totalWeight -= entry.weight;
+        }
+        return entry;
+      } finally {
+        unlock();
+      }
+    }
+
+    void clear() {
+      lock();
+      try {
+        entries.clear();
+        totalWeight = 0;
+      } finally {
+        unlock();
+      }
+    }
+
+    int size() {
+      lock();
+      try {
+        return entries.size();
+      } finally {
+        unlock();
+      }
+    }
+
+    private void evict(boolean weighted) {
+      long now = System.nanoTime();
+      long bound = weighted ? segmentBound(maximumWeight) : segmentBound(maximumSize);
+      Iterator<Map.Entry<Object, Entry>> iterator = entries.entrySet().iterator();
+      while (iterator.hasNext()) {
+        Entry eldest = iterator.next().getValue();
+        boolean overBound = weighted ? totalWeight > bound : entries.size() > bound;
+        if (!overBound && !isExpired(eldest, now)) {
+          break;
+        }
+        iterator.remove();
+        totalWeight -= eldest.weight;
+        evictionCount.incrementAndGet();
+      }
+    }
+
+  }
+
+}
@@ -0,0 +1,118 @@
+/**
+ *    Copyright 2009-2017 the original author or authors.
+ *
+ *    Licensed under the Apache License, Version 2.0 (the "License");
+ *    you may not use this file except in compliance with the License.
+ *    You may obtain a copy of the License at
+ *
+ *       http://www.apache.org/licenses/LICENSE-2.0
+ *
+ *    Unless required by applicable law or agreed to in writing, software
+ *    distributed under the License is distributed on an "AS IS" BASIS,
+ *    WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ *    See the License for the specific language governing permissions and
+ *    limitations under the License.
+ */
+package org.mybatis.guice.configuration;
+
+import java.util.HashMap;
+import java.util.Map;
+
+import org.apache.ibatis.cache.Cache;
+import org.apache.ibatis.cache.CacheException;
+import org.apache.ibatis.mapping.Environment;
+import org.apache.ibatis.mapping.MappedStatement;
+import org.apache.ibatis.session.Configuration;
+
+/**
+ * A {@code Configuration} giving the caches bound to mapper namespaces to the statements of the namespace as the
+ * mappers add them, as if the namespace declared the cache itself.
+ * <p>
+ * The caches are bound before the mappers are added; a namespace declaring its own cache then fails to be added.
+ * </p>
+ *
+ * @since 3.10
+ */
+public class CacheBindingConfiguration extends Configuration {
+
+  /**
+   * The bound caches, by namespace.
+   */
+  private final Map<String, Cache> boundCaches = new HashMap<String, Cache>();
+
+  public CacheBindingConfiguration() {
+    super();
+  }
+
+  public CacheBindingConfiguration(Environment environment) {
+    super(environment);
+  }
+
+  /**
+   * Binds the given cache to the namespace of its id.
+   *
+   * @param cache
+   *          the cache
+   */
+  public void bindCache(Cache cache) {
+    super.addCache(cache);
+    boundCaches.put(cache.getId(), cache);
+  }
+
+  @Override
+  public void addCache(Cache cache) {
+    if (boundCaches.containsKey(cache.getId())) {
+      throw new CacheException("Namespace '" + cache.getId() + "' declares a cache, while the cache "
+          + boundCaches.get(cache.getId()) + " is bound to it");
+    }
+    super.addCache(cache);
+  }
+
+  @Override
+  public void addMappedStatement(MappedStatement ms) {
+    Cache cache = ms.getCache() == null ? boundCaches.get(namespaceOf(ms.getId())) : null;
+    super.addMappedStatement(cache == null ? ms : withCache(ms, cache));
+  }
+
+  private static String namespaceOf(String statementId) {
+    int lastDot = statementId.lastIndexOf('.');
+    return lastDot < 0 ? null : statementId.substring(0, lastDot);
+  }
+
+  private MappedStatement withCache(MappedStatement ms, Cache cache) {
+    return new MappedStatement.Builder(this, ms.getId(), ms.getSqlSource(), ms.getSqlCommandType())
+        .resource(ms.getResource())
+        .parameterMap(ms.getParameterMap())
+        .resultMaps(ms.getResultMaps())
+        .fetchSize(ms.getFetchSize())
+        .timeout(ms.getTimeout())
+        .statementType(ms.getStatementType())
+        .resultSetType(ms.getResultSetType())
+        .cache(cache)
+        .flushCacheRequired(ms.isFlushCacheRequired())
+        .useCache(ms.isUseCache())
+        .resultOrdered(ms.isResultOrdered())
+        .keyGenerator(ms.getKeyGenerator())
+        .keyProperty(join(ms.getKeyProperties()))
+        .keyColumn(join(ms.getKeyColumns()))
+        .databaseId(ms.getDatabaseId())
+        .lang(ms.getLang())
+        .resultSets(join(ms.getResultSets()))
+        .build();
+  }
+
+  private static String join(String[] values) {
+    if (values == null) {
+      return null;
+    }
+    StringBuilder joined = new StringBuilder();
+    for (String value : values) {
+      if (joined.length() > 0) {
+        joined.append(',');
+      }
+      joined.append(value);
+    }
+    return joined.toString();
+  }
+
+}
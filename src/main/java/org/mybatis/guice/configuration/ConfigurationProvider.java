@@ -33,6 +33,7 @@ import org.apache.ibatis.mapping.Environment;
 import org.apache.ibatis.session.AutoMappingBehavior;
 import org.apache.ibatis.session.Configuration;
 import org.apache.ibatis.session.ExecutorType;
+import org.mybatis.guice.configuration.settings.CacheConfigurationSetting;
 import org.mybatis.guice.configuration.settings.ConfigurationSetting;
 import org.mybatis.guice.configuration.settings.MapperConfigurationSetting;
 
@@ -96,6 +97,20 @@ public class ConfigurationProvider implements Provider<Configuration> {
   @Named("mybatis.configuration.failFast")
   private boolean failFast = false;
 
+  /**
+   * @since 3.10
+   */
+  @com.google.inject.Inject(optional = true)
+  @Named("mybatis.configuration.mapperRegistrationThreads")
+  private int mapperRegistrationThreads = 0;
+
+  /**
+   * @since 3.10
+   */
+  @com.google.inject.Inject(optional = true)
+  @Named("mybatis.configuration.lazyMapperRegistration")
+  private boolean lazyMapperRegistration = false;
+
   @com.google.inject.Inject(optional = true)
   private DatabaseIdProvider databaseIdProvider;
 
@@ -104,6 +119,7 @@ public class ConfigurationProvider implements Provider<Configuration> {
 
   private Set<ConfigurationSetting> configurationSettings = new HashSet<ConfigurationSetting>();
   private Set<MapperConfigurationSetting> mapperConfigurationSettings = new HashSet<MapperConfigurationSetting>();
+  private Set<CacheConfigurationSetting> cacheConfigurationSettings = new HashSet<CacheConfigurationSetting>();
 
   /**
    * @since 1.0.1
@@ -138,14 +154,29 @@ public class ConfigurationProvider implements Provider<Configuration> {
   }
 
   /**
-   * New configuration.
+   * Adds a cache setting, applied once all the mappers are registered.
+   *
+   * @param cacheConfigurationSetting
+   *          the cache setting
+   * @since 3.10
+   */
+  public void addCacheConfigurationSetting(CacheConfigurationSetting cacheConfigurationSetting) {
+    this.cacheConfigurationSettings.add(cacheConfigurationSetting);
+  }
+
+  /**
+   * New configuration, a {@link LazyMapperConfiguration} when the lazy mapper registration is enabled, a
+   * {@link CacheBindingConfiguration} otherwise.
    *
    * @param environment
    *          the environment
    * @return new configuration
    */
   protected Configuration newConfiguration(Environment environment) {
-    return new Configuration(environment);
+    if (lazyMapperRegistration) {
+      return new LazyMapperConfiguration(environment);
+    }
+    return new CacheBindingConfiguration(environment);
   }
 
   @Override
@@ -172,10 +203,20 @@ public class ConfigurationProvider implements Provider<Configuration> {
         configuration.setDatabaseId(databaseIdProvider.getDatabaseId(dataSource));
       }
 
-      for (MapperConfigurationSetting setting : mapperConfigurationSettings) {
+      // the bound caches are given to the statements as the mappers add them
+      for (CacheConfigurationSetting setting : cacheConfigurationSettings) {
         setting.applyConfigurationSetting(configuration);
       }
 
+      if (mapperRegistrationThreads > 1 && !(configuration instanceof LazyMapperConfiguration)) {
+        new ParallelMapperRegistration(mapperRegistrationThreads).register(configuration,
+            mapperConfigurationSettings);
+      } else {
+        for (MapperConfigurationSetting setting : mapperConfigurationSettings) {
+          setting.applyConfigurationSetting(configuration);
+        }
+      }
+
       if (failFast) {
         configuration.getMappedStatementNames();
       }
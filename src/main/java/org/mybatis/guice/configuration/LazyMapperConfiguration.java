@@ -0,0 +1,293 @@
+/**
+ *    Copyright 2009-2017 the original author or authors.
+ *
+ *    Licensed under the Apache License, Version 2.0 (the "License");
+ *    you may not use this file except in compliance with the License.
+ *    You may obtain a copy of the License at
+ *
+ *       http://www.apache.org/licenses/LICENSE-2.0
+ *
+ *    Unless required by applicable law or agreed to in writing, software
+ *    distributed under the License is distributed on an "AS IS" BASIS,
+ *    WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ *    See the License for the specific language governing permissions and
+ *    limitations under the License.
+ */
+package org.mybatis.guice.configuration;
+
+import java.util.ArrayList;
+import java.util.Collection;
+import java.util.Collections;
+import java.util.concurrent.ConcurrentHashMap;
+import java.util.concurrent.ConcurrentMap;
+import java.util.concurrent.locks.ReadWriteLock;
+import java.util.concurrent.locks.ReentrantReadWriteLock;
+
+import org.apache.ibatis.executor.ErrorContext;
+import org.apache.ibatis.mapping.Environment;
+import org.apache.ibatis.mapping.MappedStatement;
+import org.apache.ibatis.mapping.ResultMap;
+import org.apache.ibatis.session.SqlSession;
+
+/**
+ * A {@code Configuration} compiling the mappers on first use.
+ * <p>
+ * Lazy mappers are only recorded when added; the statements of a mapper namespace are built, once, the first time
+ * the mapper is requested or one of its statements or result maps is looked up. Views over all the statements,
+ * such as {@link #getMappedStatementNames()}, compile all the pending mappers first.
+ * </p>
+ * <p>
+ * Mappers referencing elements of a namespace still pending are completed by compiling all the pending mappers.
+ * While mappers are pending, lookups are guarded by a read lock since the {@code Configuration} maps are not thread
+ * safe; once they are all compiled lookups are no longer locked.
+ * </p>
+ *
+ * @since 3.10
+ */
+public class LazyMapperConfiguration extends CacheBindingConfiguration {
+
+  private final ConcurrentMap<String, Class<?>> pendingMappers = new ConcurrentHashMap<String, Class<?>>();
+
+  private final ReadWriteLock lock = new ReentrantReadWriteLock();
+
+  private volatile boolean compiling;
+
+  public LazyMapperConfiguration() {
+    super();
+  }
+
+  public LazyMapperConfiguration(Environment environment) {
+    super(environment);
+  }
+
+  /**
+   * Records a mapper to compile on first use.
+   *
+   * @param type
+   *          the mapper type
+   */
+  public void addLazyMapper(Class<?> type) {
+    // non interfaces are ignored, as by the mapper registry
+    if (type.isInterface() && !hasMapper(type)) {
+      compiling = true;
+      pendingMappers.putIfAbsent(type.getName(), type);
+    }
+  }
+
+  /**
+   * Gets the mappers not compiled yet.
+   *
+   * @return the mappers not compiled yet
+   */
+  public Collection<Class<?>> getPendingMappers() {
+    return Collections.unmodifiableCollection(new ArrayList<Class<?>>(pendingMappers.values()));
+  }
+
+  /**
+   * Compiles the mapper bound to the given namespace, if still pending.
+   *
+   * @param namespace
+   *          the mapper namespace
+   */
+  public void compileMapper(String namespace) {
+    if (!pendingMappers.containsKey(namespace)) {
+      return;
+    }
+    lock.writeLock().lock();
+    try {
+      Class<?> type = pendingMappers.remove(namespace);
+      if (type != null) {
+        compile(type);
+      }
+    } finally {
+      completeCompilation();
+      lock.writeLock().unlock();
+    }
+  }
+
+  /**
+   * Compiles all the pending mappers.
+   */
+  public void compileMappers() {
+    if (pendingMappers.isEmpty()) {
+      return;
+    }
+    lock.writeLock().lock();
+    try {
+      compilePendingMappers();
+    } finally {
+      completeCompilation();
+      lock.writeLock().unlock();
+    }
+  }
+
+  /**
+   * Gets the names of the statements compiled so far, without compiling the pending mappers.
+   *
+   * @return the names of the statements compiled so far
+   */
+  public Collection<String> getCompiledStatementNames() {
+    lock.readLock().lock();
+    try {
+      return new ArrayList<String>(super.getMappedStatementNames());
+    } finally {
+      lock.readLock().unlock();
+    }
+  }
+
+  private void compilePendingMappers() {
+    for (String namespace : new ArrayList<String>(pendingMappers.keySet())) {
+      Class<?> type = pendingMappers.remove(namespace);
+      if (type != null) {
+        compile(type);
+      }
+    }
+  }
+
+  private void compile(Class<?> type) {
+    try {
+      if (!super.hasMapper(type)) {
+        super.addMapper(type);
+      }
+    } finally {
+      ErrorContext.instance().reset();
+    }
+
+    // the mapper references elements of mappers not compiled yet
+    if (!pendingMappers.isEmpty() && hasIncompleteElements()) {
+      compilePendingMappers();
+    }
+  }
+
+  private boolean hasIncompleteElements() {
+    return !getIncompleteStatements().isEmpty() || !getIncompleteResultMaps().isEmpty()
+        || !getIncompleteCacheRefs().isEmpty() || !getIncompleteMethods().isEmpty();
+  }
+
+  private void completeCompilation() {
+    if (pendingMappers.isEmpty()) {
+      compiling = false;
+    }
+  }
+
+  private void compileNamespaceOf(String id) {
+    int lastDot = id.lastIndexOf('.');
+    if (lastDot < 0) {
+      // short names may belong to any namespace
+      compileMappers();
+    } else {
+      compileMapper(id.substring(0, lastDot));
+    }
+  }
+
+  @Override
+  public <T> T getMapper(Class<T> type, SqlSession sqlSession) {
+    if (!compiling) {
+      return super.getMapper(type, sqlSession);
+    }
+    compileMapper(type.getName());
+    lock.readLock().lock();
+    try {
+      return super.getMapper(type, sqlSession);
+    } finally {
+      lock.readLock().unlock();
+    }
+  }
+
+  @Override
+  public boolean hasMapper(Class<?> type) {
+    if (!compiling) {
+      return super.hasMapper(type);
+    }
+    if (pendingMappers.containsKey(type.getName())) {
+      return true;
+    }
+    lock.readLock().lock();
+    try {
+      return super.hasMapper(type);
+    } finally {
+      lock.readLock().unlock();
+    }
+  }
+
+  @Override
+  public MappedStatement getMappedStatement(String id, boolean validateIncompleteStatements) {
+    if (!compiling) {
+      return super.getMappedStatement(id, validateIncompleteStatements);
+    }
+    compileNamespaceOf(id);
+    lock.readLock().lock();
+    try {
+      return super.getMappedStatement(id, validateIncompleteStatements);
+    } finally {
+      lock.readLock().unlock();
+    }
+  }
+
+  @Override
+  public boolean hasStatement(String statementName, boolean validateIncompleteStatements) {
+    if (!compiling) {
+      return super.hasStatement(statementName, validateIncompleteStatements);
+    }
+    compileNamespaceOf(statementName);
+    lock.readLock().lock();
+    try {
+      return super.hasStatement(statementName, validateIncompleteStatements);
+    } finally {
+      lock.readLock().unlock();
+    }
+  }
+
+  @Override
+  public Collection<String> getMappedStatementNames() {
+    compileMappers();
+    return super.getMappedStatementNames();
+  }
+
+  @Override
+  public Collection<MappedStatement> getMappedStatements() {
+    compileMappers();
+    return super.getMappedStatements();
+  }
+
+  @Override
+  public ResultMap getResultMap(String id) {
+    if (!compiling) {
+      return super.getResultMap(id);
+    }
+    compileNamespaceOf(id);
+    lock.readLock().lock();
+    try {
+      return super.getResultMap(id);
+    } finally {
+      lock.readLock().unlock();
+    }
+  }
+
+  @Override
+  public boolean hasResultMap(String id) {
+    if (!compiling) {
+      return super.hasResultMap(id);
+    }
+    compileNamespaceOf(id);
+    lock.readLock().lock();
+    try {
+      return super.hasResultMap(id);
+    } finally {
+      lock.readLock().unlock();
+    }
+  }
+
+  @Override
+  public Collection<String> getResultMapNames() {
+    compileMappers();
+    return super.getResultMapNames();
+  }
+
+  @Override
+  public Collection<ResultMap> getResultMaps() {
+    compileMappers();
+    return super.getResultMaps();
+  }
+
+}
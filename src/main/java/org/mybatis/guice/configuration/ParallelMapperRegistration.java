@@ -0,0 +1,150 @@
+/**
+ *    Copyright 2009-2017 the original author or authors.
+ *
+ *    Licensed under the Apache License, Version 2.0 (the "License");
+ *    you may not use this file except in compliance with the License.
+ *    You may obtain a copy of the License at
+ *
+ *       http://www.apache.org/licenses/LICENSE-2.0
+ *
+ *    Unless required by applicable law or agreed to in writing, software
+ *    distributed under the License is distributed on an "AS IS" BASIS,
+ *    WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ *    See the License for the specific language governing permissions and
+ *    limitations under the License.
+ */
+package org.mybatis.guice.configuration;
+
+import java.io.IOException;
+import java.io.InputStream;
+import java.lang.reflect.Method;
+import java.util.ArrayList;
+import java.util.Collection;
+import java.util.List;
+import java.util.concurrent.Callable;
+import java.util.concurrent.ExecutionException;
+import java.util.concurrent.ExecutorService;
+import java.util.concurrent.Executors;
+import java.util.concurrent.Future;
+import java.util.concurrent.ThreadFactory;
+import java.util.concurrent.atomic.AtomicInteger;
+
+import org.apache.ibatis.builder.xml.XMLMapperBuilder;
+import org.apache.ibatis.executor.ErrorContext;
+import org.apache.ibatis.io.Resources;
+import org.apache.ibatis.session.Configuration;
+import org.mybatis.guice.configuration.settings.MapperConfigurationSetting;
+
+/**
+ * Registers mappers preparing them on a bounded pool: the mapper XML documents are loaded and parsed, and the
+ * types referenced by the mapper methods are loaded, concurrently.
+ * <p>
+ * The {@code Configuration} is not thread safe, so the prepared mappers are then registered one after the other,
+ * in the same order and with the same rules as {@link MapperConfigurationSetting#applyConfigurationSetting}; the
+ * XML mapper of a type is parsed right before the type is added, as {@code MapperAnnotationBuilder} does.
+ * </p>
+ *
+ * @since 3.10
+ */
+final class ParallelMapperRegistration {
+
+  private final int threads;
+
+  ParallelMapperRegistration(int threads) {
+    this.threads = threads;
+  }
+
+  void register(final Configuration configuration, Collection<MapperConfigurationSetting> mapperConfigurationSettings)
+      throws Throwable {
+    List<MapperConfigurationSetting> settings = new ArrayList<MapperConfigurationSetting>(mapperConfigurationSettings);
+    if (settings.isEmpty()) {
+      return;
+    }
+
+    ExecutorService executor = Executors.newFixedThreadPool(Math.min(threads, settings.size()),
+        new RegistrationThreadFactory());
+    try {
+      List<Future<XMLMapperBuilder>> preparedMappers = new ArrayList<Future<XMLMapperBuilder>>(settings.size());
+      for (final MapperConfigurationSetting setting : settings) {
+        preparedMappers.add(executor.submit(new Callable<XMLMapperBuilder>() {
+          @Override
+          public XMLMapperBuilder call() throws Exception {
+            return prepare(configuration, setting.getMapperClass());
+          }
+        }));
+      }
+
+      for (int i = 0; i < settings.size(); i++) {
+        MapperConfigurationSetting setting = settings.get(i);
+        // preparation errors surface when their mapper is registered, as they would serially
+        XMLMapperBuilder xmlMapperBuilder = await(preparedMappers.get(i));
+        Class<?> type = setting.getMapperClass();
+        if (xmlMapperBuilder != null && !configuration.hasMapper(type)
+            && !configuration.isResourceLoaded(type.toString())
+            && !configuration.isResourceLoaded("namespace:" + type.getName())) {
+          xmlMapperBuilder.parse();
+        }
+        setting.applyConfigurationSetting(configuration);
+      }
+    } finally {
+      executor.shutdownNow();
+    }
+  }
+
+  /**
+   * Loads the types referenced by the mapper methods and parses the mapper XML document, if any, without
+   * modifying the configuration.
+   */
+  private static XMLMapperBuilder prepare(Configuration configuration, Class<?> type) throws IOException {
+    if (!type.isInterface()) {
+      return null;
+    }
+
+    try {
+      for (Method method : type.getMethods()) {
+        method.getAnnotations();
+        method.getGenericReturnType();
+        method.getGenericParameterTypes();
+      }
+
+      String xmlResource = type.getName().replace('.', '/') + ".xml";
+      InputStream inputStream;
+      try {
+        inputStream = Resources.getResourceAsStream(type.getClassLoader(), xmlResource);
+      } catch (IOException e) {
+        // no XML mapper
+        return null;
+      }
+      try {
+        return new XMLMapperBuilder(inputStream, configuration, xmlResource, configuration.getSqlFragments(),
+            type.getName());
+      } finally {
+        inputStream.close();
+      }
+    } finally {
+      ErrorContext.instance().reset();
+    }
+  }
+
+  private static <T> T await(Future<T> future) throws Throwable {
+    try {
+      return future.get();
+    } catch (ExecutionException e) {
+      throw e.getCause();
+    }
+  }
+
+  private static final class RegistrationThreadFactory implements ThreadFactory {
+
+    private final AtomicInteger count = new AtomicInteger();
+
+    @Override
+    public Thread newThread(Runnable runnable) {
+      Thread thread = new Thread(runnable, "mybatis-guice-mapper-registration-" + count.incrementAndGet());
+      thread.setDaemon(true);
+      return thread;
+    }
+
+  }
+
+}
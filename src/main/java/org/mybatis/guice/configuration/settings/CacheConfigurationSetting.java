@@ -0,0 +1,138 @@
+/**
+ *    Copyright 2009-2017 the original author or authors.
+ *
+ *    Licensed under the Apache License, Version 2.0 (the "License");
+ *    you may not use this file except in compliance with the License.
+ *    You may obtain a copy of the License at
+ *
+ *       http://www.apache.org/licenses/LICENSE-2.0
+ *
+ *    Unless required by applicable law or agreed to in writing, software
+ *    distributed under the License is distributed on an "AS IS" BASIS,
+ *    WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ *    See the License for the specific language governing permissions and
+ *    limitations under the License.
+ */
+package org.mybatis.guice.configuration.settings;
+
+import com.google.inject.Inject;
+import com.google.inject.Injector;
+
+import java.lang.reflect.Constructor;
+import java.util.Properties;
+
+import org.apache.ibatis.cache.Cache;
+import org.apache.ibatis.cache.CacheException;
+import org.apache.ibatis.cache.decorators.LoggingCache;
+import org.apache.ibatis.cache.decorators.SerializedCache;
+import org.apache.ibatis.reflection.MetaObject;
+import org.apache.ibatis.reflection.SystemMetaObject;
+import org.apache.ibatis.session.Configuration;
+import org.mybatis.guice.configuration.CacheBindingConfiguration;
+
+/**
+ * Binds a Guice managed second level cache to a mapper namespace, before the mappers are added, so that the
+ * namespace statements use it without the namespace declaring the cache itself.
+ * <p>
+ * As a cache declared by the namespace, the cache logs its hit ratio and, unless read-only, stores serialized
+ * copies of the cached objects, which must then be {@code Serializable}.
+ * </p>
+ *
+ * @since 3.10
+ */
+public final class CacheConfigurationSetting {
+
+  @Inject
+  private Injector injector;
+
+  private final String namespace;
+
+  private final Class<? extends Cache> cacheType;
+
+  private final Properties properties;
+
+  private final boolean readOnly;
+
+  public CacheConfigurationSetting(String namespace, Class<? extends Cache> cacheType, Properties properties) {
+    this(namespace, cacheType, properties, false);
+  }
+
+  /**
+   * Instantiates a new cache setting.
+   *
+   * @param namespace the mapper namespace
+   * @param cacheType the cache type
+   * @param properties the cache properties, may be null
+   * @param readOnly true to share the cached objects with the callers instead of serialized copies
+   */
+  public CacheConfigurationSetting(String namespace, Class<? extends Cache> cacheType, Properties properties,
+      boolean readOnly) {
+    this.namespace = namespace;
+    this.cacheType = cacheType;
+    this.properties = properties;
+    this.readOnly = readOnly;
+  }
+
+  public void applyConfigurationSetting(Configuration configuration) {
+    if (!(configuration instanceof CacheBindingConfiguration)) {
+      throw new CacheException("Impossible to bind " + cacheType.getName() + " to namespace '" + namespace
+          + "', the configuration is not a " + CacheBindingConfiguration.class.getName());
+    }
+    if (configuration.hasCache(namespace)) {
+      throw new CacheException("Namespace '" + namespace + "' already declares a cache, it can not be bound to "
+          + cacheType.getName());
+    }
+
+    Cache cache = newCache();
+    injector.injectMembers(cache);
+    setCacheProperties(cache);
+    ((CacheBindingConfiguration) configuration)
+        .bindCache(new LoggingCache(readOnly ? cache : new SerializedCache(cache)));
+  }
+
+  private Cache newCache() {
+    try {
+      Constructor<? extends Cache> constructor = cacheType.getConstructor(String.class);
+      return constructor.newInstance(namespace);
+    } catch (Exception e) {
+      throw new CacheException("Could not instantiate cache " + cacheType.getName() + " for namespace '"
+          + namespace + "', it requires a public constructor with the namespace as single argument", e);
+    }
+  }
+
+  private void setCacheProperties(Cache cache) {
+    if (properties == null) {
+      return;
+    }
+    MetaObject metaCache = SystemMetaObject.forObject(cache);
+    for (String name : properties.stringPropertyNames()) {
+      if (!metaCache.hasSetter(name)) {
+        throw new CacheException("Unknown property '" + name + "' on cache " + cacheType.getName());
+      }
+      metaCache.setValue(name, convert(name, properties.getProperty(name), metaCache.getSetterType(name)));
+    }
+  }
+
+  private Object convert(String name, String value, Class<?> type) {
+    if (String.class == type) {
+      return value;
+    } else if (int.class == type || Integer.class == type) {
+      return Integer.valueOf(value);
+    } else if (long.class == type || Long.class == type) {
+      return Long.valueOf(value);
+    } else if (short.class == type || Short.class == type) {
+      return Short.valueOf(value);
+    } else if (byte.class == type || Byte.class == type) {
+      return Byte.valueOf(value);
+    } else if (float.class == type || Float.class == type) {
+      return Float.valueOf(value);
+    } else if (boolean.class == type || Boolean.class == type) {
+      return Boolean.valueOf(value);
+    } else if (double.class == type || Double.class == type) {
+      return Double.valueOf(value);
+    }
+    throw new CacheException("Unsupported property type for property '" + name + "' on cache "
+        + cacheType.getName() + ": " + type.getName());
+  }
+
+}
@@ -16,6 +16,7 @@
 package org.mybatis.guice.configuration.settings;
 
 import org.apache.ibatis.session.Configuration;
+import org.mybatis.guice.configuration.LazyMapperConfiguration;
 
 public final class MapperConfigurationSetting {
 
@@ -25,8 +26,20 @@ public final class MapperConfigurationSetting {
     this.mapperClass = mapperClass;
   }
 
+  /**
+   * Gets the mapper class.
+   *
+   * @return the mapper class
+   * @since 3.10
+   */
+  public Class<?> getMapperClass() {
+    return mapperClass;
+  }
+
   public void applyConfigurationSetting(Configuration configuration) {
-    if (!configuration.hasMapper(mapperClass)) {
+    if (configuration instanceof LazyMapperConfiguration) {
+      ((LazyMapperConfiguration) configuration).addLazyMapper(mapperClass);
+    } else if (!configuration.hasMapper(mapperClass)) {
       configuration.addMapper(mapperClass);
     }
   }
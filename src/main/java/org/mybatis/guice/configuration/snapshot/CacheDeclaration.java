@@ -0,0 +1,106 @@
+/**
+ *    Copyright 2009-2017 the original author or authors.
+ *
+ *    Licensed under the Apache License, Version 2.0 (the "License");
+ *    you may not use this file except in compliance with the License.
+ *    You may obtain a copy of the License at
+ *
+ *       http://www.apache.org/licenses/LICENSE-2.0
+ *
+ *    Unless required by applicable law or agreed to in writing, software
+ *    distributed under the License is distributed on an "AS IS" BASIS,
+ *    WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ *    See the License for the specific language governing permissions and
+ *    limitations under the License.
+ */
+package org.mybatis.guice.configuration.snapshot;
+
+import java.util.Properties;
+
+import org.apache.ibatis.annotations.CacheNamespace;
+import org.apache.ibatis.annotations.Property;
+import org.apache.ibatis.cache.Cache;
+import org.apache.ibatis.cache.decorators.LruCache;
+import org.apache.ibatis.cache.impl.PerpetualCache;
+import org.apache.ibatis.mapping.CacheBuilder;
+import org.apache.ibatis.parsing.PropertyParser;
+import org.apache.ibatis.parsing.XNode;
+import org.apache.ibatis.session.Configuration;
+
+/**
+ * The declaration of a mapper namespace cache, the built cache not exposing its settings.
+ */
+final class CacheDeclaration {
+
+  final String namespace;
+
+  final Class<? extends Cache> implementation;
+
+  final Class<? extends Cache> eviction;
+
+  final Long flushInterval;
+
+  final Integer size;
+
+  final boolean readWrite;
+
+  final boolean blocking;
+
+  final Properties properties;
+
+  CacheDeclaration(String namespace, Class<? extends Cache> implementation, Class<? extends Cache> eviction,
+      Long flushInterval, Integer size, boolean readWrite, boolean blocking, Properties properties) {
+    this.namespace = namespace;
+    this.implementation = implementation;
+    this.eviction = eviction;
+    this.flushInterval = flushInterval;
+    this.size = size;
+    this.readWrite = readWrite;
+    this.blocking = blocking;
+    this.properties = properties;
+  }
+
+  /**
+   * Reads a {@code <cache>} element as {@code XMLMapperBuilder} does.
+   */
+  static CacheDeclaration fromXml(String namespace, XNode context, Configuration configuration) {
+    Class<? extends Cache> implementation = configuration.getTypeAliasRegistry()
+        .resolveAlias(context.getStringAttribute("type", "PERPETUAL"));
+    Class<? extends Cache> eviction = configuration.getTypeAliasRegistry()
+        .resolveAlias(context.getStringAttribute("eviction", "LRU"));
+    return new CacheDeclaration(namespace, implementation, eviction, context.getLongAttribute("flushInterval"),
+        context.getIntAttribute("size"), !context.getBooleanAttribute("readOnly", false),
+        context.getBooleanAttribute("blocking", false), context.getChildrenAsProperties());
+  }
+
+  /**
+   * Reads a {@link CacheNamespace} annotation as {@code MapperAnnotationBuilder} does.
+   */
+  static CacheDeclaration fromAnnotation(String namespace, CacheNamespace cacheNamespace,
+      Configuration configuration) {
+    Properties properties = new Properties();
+    for (Property property : cacheNamespace.properties()) {
+      properties.setProperty(property.name(), PropertyParser.parse(property.value(), configuration.getVariables()));
+    }
+    return new CacheDeclaration(namespace, cacheNamespace.implementation(), cacheNamespace.eviction(),
+        cacheNamespace.flushInterval() == 0 ? null : cacheNamespace.flushInterval(),
+        cacheNamespace.size() == 0 ? null : cacheNamespace.size(), cacheNamespace.readWrite(),
+        cacheNamespace.blocking(), properties);
+  }
+
+  /**
+   * Builds the cache as {@code MapperBuilderAssistant.useNewCache} does.
+   */
+  Cache build() {
+    return new CacheBuilder(namespace)
+        .implementation(implementation != null ? implementation : PerpetualCache.class)
+        .addDecorator(eviction != null ? eviction : LruCache.class)
+        .clearInterval(flushInterval)
+        .size(size)
+        .readWrite(readWrite)
+        .blocking(blocking)
+        .properties(properties)
+        .build();
+  }
+
+}
@@ -0,0 +1,404 @@
+/**
+ *    Copyright 2009-2017 the original author or authors.
+ *
+ *    Licensed under the Apache License, Version 2.0 (the "License");
+ *    you may not use this file except in compliance with the License.
+ *    You may obtain a copy of the License at
+ *
+ *       http://www.apache.org/licenses/LICENSE-2.0
+ *
+ *    Unless required by applicable law or agreed to in writing, software
+ *    distributed under the License is distributed on an "AS IS" BASIS,
+ *    WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ *    See the License for the specific language governing permissions and
+ *    limitations under the License.
+ */
+package org.mybatis.guice.configuration.snapshot;
+
+import java.io.ByteArrayInputStream;
+import java.io.ByteArrayOutputStream;
+import java.io.File;
+import java.io.FileInputStream;
+import java.io.FileOutputStream;
+import java.io.IOException;
+import java.io.InputStream;
+import java.io.OutputStream;
+import java.security.MessageDigest;
+import java.security.NoSuchAlgorithmException;
+import java.util.ArrayList;
+import java.util.Arrays;
+import java.util.List;
+import java.util.Properties;
+import java.util.Set;
+import java.util.TreeSet;
+
+import javax.xml.parsers.DocumentBuilder;
+import javax.xml.parsers.DocumentBuilderFactory;
+import javax.xml.transform.OutputKeys;
+import javax.xml.transform.Transformer;
+import javax.xml.transform.TransformerFactory;
+import javax.xml.transform.dom.DOMSource;
+import javax.xml.transform.stream.StreamResult;
+
+import org.apache.ibatis.builder.BuilderException;
+import org.apache.ibatis.builder.xml.XMLMapperEntityResolver;
+import org.apache.ibatis.io.Resources;
+import org.apache.ibatis.logging.Log;
+import org.apache.ibatis.logging.LogFactory;
+import org.apache.ibatis.session.Configuration;
+import org.w3c.dom.Document;
+import org.w3c.dom.DocumentType;
+import org.w3c.dom.Element;
+import org.w3c.dom.Node;
+import org.w3c.dom.NodeList;
+
+/**
+ * A binary snapshot of the mapper elements of a MyBatis configuration: mapped statements with their SQL source
+ * trees, result maps, parameter maps, key generators and caches.
+ * <p>
+ * Restoring a snapshot into a configuration built without its {@code <mappers>} skips the parsing of all the
+ * mapper documents and annotations. A snapshot is bound to a key identifying the configuration document and its
+ * parameters, and is invalidated when any mapper document, mapper interface or class referenced by the mapper
+ * elements changes.
+ * </p>
+ * <p>
+ * Configurations scanning packages for mappers, whose added mappers could not be detected, and configurations
+ * holding elements which can not be restored identically, such as provider SQL sources, custom SQL nodes or
+ * caches not declared by a mapper, are not snapshotted.
+ * </p>
+ *
+ * @since 3.10
+ */
+public final class ConfigurationSnapshot {
+
+  private static final int MAGIC = 0x4d425353;
+
+  private static final int FORMAT_VERSION = 1;
+
+  private static final Log log = LogFactory.getLog(ConfigurationSnapshot.class);
+
+  private final String databaseId;
+
+  private final SnapshotInput body;
+
+  private boolean restored;
+
+  private ConfigurationSnapshot(String databaseId, SnapshotInput body) {
+    this.databaseId = databaseId;
+    this.body = body;
+  }
+
+  /**
+   * Computes the key of a configuration document and of the parameters it is built with.
+   *
+   * @param configuration
+   *          the configuration document
+   * @param environmentId
+   *          the environment id, may be null
+   * @param properties
+   *          the placeholder values, may be null
+   * @return the snapshot key
+   */
+  public static String key(byte[] configuration, String environmentId, Properties properties) {
+    MessageDigest digest = newDigest();
+    digest.update(configuration);
+    update(digest, environmentId);
+    if (properties != null) {
+      for (String name : new TreeSet<String>(properties.stringPropertyNames())) {
+        update(digest, name);
+        update(digest, properties.getProperty(name));
+      }
+    }
+    return toHex(digest.digest());
+  }
+
+  /**
+   * Checks if a configuration document can be snapshotted, that is it does not scan a {@code <package>} for
+   * mappers.
+   *
+   * @param configuration
+   *          the configuration document
+   * @return true if the configuration can be snapshotted
+   */
+  public static boolean isSupported(byte[] configuration) {
+    Document document;
+    try {
+      document = parse(configuration);
+    } catch (Exception e) {
+      throw new BuilderException("Error reading the mappers of the configuration document. Cause: " + e, e);
+    }
+    NodeList mappers = document.getDocumentElement().getElementsByTagName("mappers");
+    for (int i = 0; i < mappers.getLength(); i++) {
+      NodeList children = mappers.item(i).getChildNodes();
+      for (int j = 0; j < children.getLength(); j++) {
+        Node child = children.item(j);
+        if (child.getNodeType() == Node.ELEMENT_NODE && "package".equals(child.getNodeName())) {
+          log.debug("Configuration can not be snapshotted, it scans the mappers of package "
+              + ((Element) child).getAttribute("name"));
+          return false;
+        }
+      }
+    }
+    return true;
+  }
+
+  /**
+   * Removes the {@code <mappers>} element from a configuration document, so it can be built without parsing
+   * the mappers restored from a snapshot.
+   *
+   * @param configuration
+   *          the configuration document
+   * @return the configuration document without mappers
+   */
+  public static byte[] withoutMappers(byte[] configuration) {
+    try {
+      Document document = parse(configuration);
+
+      Element root = document.getDocumentElement();
+      NodeList mappers = root.getElementsByTagName("mappers");
+      for (int i = mappers.getLength() - 1; i >= 0; i--) {
+        Node mapper = mappers.item(i);
+        mapper.getParentNode().removeChild(mapper);
+      }
+
+      Transformer transformer = TransformerFactory.newInstance().newTransformer();
+      DocumentType doctype = document.getDoctype();
+      if (doctype != null) {
+        if (doctype.getPublicId() != null) {
+          transformer.setOutputProperty(OutputKeys.DOCTYPE_PUBLIC, doctype.getPublicId());
+        }
+        if (doctype.getSystemId() != null) {
+          transformer.setOutputProperty(OutputKeys.DOCTYPE_SYSTEM, doctype.getSystemId());
+        }
+      }
+      ByteArrayOutputStream result = new ByteArrayOutputStream(configuration.length);
+      transformer.transform(new DOMSource(document), new StreamResult(result));
+      return result.toByteArray();
+    } catch (Exception e) {
+      throw new BuilderException("Error removing the mappers of the configuration document. Cause: " + e, e);
+    }
+  }
+
+  private static Document parse(byte[] configuration) throws Exception {
+    DocumentBuilderFactory factory = DocumentBuilderFactory.newInstance();
+    factory.setValidating(false);
+    DocumentBuilder builder = factory.newDocumentBuilder();
+    builder.setEntityResolver(new XMLMapperEntityResolver());
+    return builder.parse(new ByteArrayInputStream(configuration));
+  }
+
+  /**
+   * Loads a snapshot.
+   *
+   * @param file
+   *          the snapshot file
+   * @param key
+   *          the key the snapshot has to be bound to
+   * @param classLoader
+   *          the class loader of the snapshotted sources, may be null
+   * @return the snapshot, or null if missing, unreadable, bound to another key or stale
+   */
+  public static ConfigurationSnapshot load(File file, String key, ClassLoader classLoader) {
+    if (!file.isFile()) {
+      return null;
+    }
+    try {
+      InputStream content = new ByteArrayInputStream(readFully(new FileInputStream(file)));
+      SnapshotInput in = new SnapshotInput(content);
+      if (in.readInt() != MAGIC || in.readInt() != FORMAT_VERSION || !key.equals(in.readString())
+          || !equal(getMyBatisVersion(), in.readString())) {
+        log.debug("Snapshot " + file + " was written for another configuration");
+        return null;
+      }
+      String databaseId = in.readString();
+
+      List<String> sources = new ArrayList<String>();
+      int sourceCount = in.readInt();
+      for (int i = 0; i < sourceCount; i++) {
+        sources.add(in.readString());
+      }
+      if (!Arrays.equals(in.readBytes(), digest(sources, classLoader))) {
+        log.debug("Snapshot " + file + " is stale");
+        return null;
+      }
+      // the body has its own string table
+      return new ConfigurationSnapshot(databaseId, new SnapshotInput(content));
+    } catch (IOException e) {
+      log.warn("Could not read snapshot " + file + ": " + e);
+      return null;
+    }
+  }
+
+  /**
+   * Restores the snapshot into a configuration built without mappers. When the snapshot can not be restored,
+   * the configuration is left partially populated and has to be discarded.
+   *
+   * @param configuration
+   *          the configuration built without mappers
+   * @return true if the snapshot was restored
+   */
+  public synchronized boolean restore(Configuration configuration) {
+    if (restored) {
+      throw new IllegalStateException("The snapshot was already restored");
+    }
+    restored = true;
+    if (!equal(databaseId, configuration.getDatabaseId())) {
+      log.debug("Snapshot was written for database id " + databaseId);
+      return false;
+    }
+    try {
+      new SnapshotReader(configuration, body).read();
+      return true;
+    } catch (Exception e) {
+      log.warn("Could not restore snapshot: " + e);
+      return false;
+    }
+  }
+
+  /**
+   * Writes a snapshot of the mapper elements of a built configuration, replacing the given file atomically.
+   *
+   * @param file
+   *          the snapshot file
+   * @param key
+   *          the key to bind the snapshot to
+   * @param configuration
+   *          the built configuration
+   * @param classLoader
+   *          the class loader of the snapshotted sources, may be null
+   * @return true if the snapshot was written, false if the configuration can not be snapshotted or the file
+   *         could not be written
+   */
+  public static boolean save(File file, String key, Configuration configuration, ClassLoader classLoader) {
+    ByteArrayOutputStream body = new ByteArrayOutputStream();
+    SnapshotWriter writer = new SnapshotWriter(configuration, new SnapshotOutput(body));
+    try {
+      writer.write();
+    } catch (SnapshotWriter.UnsupportedElementException e) {
+      log.debug("Configuration can not be snapshotted, it holds an unsupported " + e.getMessage());
+      return false;
+    } catch (IOException e) {
+      throw new BuilderException("Error writing the configuration snapshot. Cause: " + e, e);
+    }
+
+    Set<String> sources = new TreeSet<String>();
+    for (String loadedResource : writer.getLoadedResources()) {
+      if (SnapshotWriter.isMapperDocument(loadedResource)) {
+        sources.add(loadedResource);
+      }
+    }
+    for (String className : writer.getReferencedClasses()) {
+      if (!className.startsWith("java.") && !className.startsWith("javax.")
+          && !className.startsWith("org.apache.ibatis.")) {
+        sources.add(className.replace('.', '/') + ".class");
+      }
+    }
+
+    File directory = file.getAbsoluteFile().getParentFile();
+    File temporaryFile = null;
+    try {
+      if (!directory.isDirectory() && !directory.mkdirs()) {
+        throw new IOException("Could not create directory " + directory);
+      }
+      temporaryFile = File.createTempFile(file.getName(), ".tmp", directory);
+      OutputStream outputStream = new FileOutputStream(temporaryFile);
+      try {
+        SnapshotOutput header = new SnapshotOutput(outputStream);
+        header.writeInt(MAGIC);
+        header.writeInt(FORMAT_VERSION);
+        header.writeString(key);
+        header.writeString(getMyBatisVersion());
+        header.writeString(configuration.getDatabaseId());
+        header.writeInt(sources.size());
+        for (String source : sources) {
+          header.writeString(source);
+        }
+        header.writeBytes(digest(new ArrayList<String>(sources), classLoader));
+        header.flush();
+        body.writeTo(outputStream);
+      } finally {
+        outputStream.close();
+      }
+      if (!temporaryFile.renameTo(file) && !(file.delete() && temporaryFile.renameTo(file))) {
+        throw new IOException("Could not rename " + temporaryFile + " to " + file);
+      }
+      return true;
+    } catch (IOException e) {
+      log.warn("Could not write snapshot " + file + ": " + e);
+      if (temporaryFile != null && temporaryFile.exists() && !temporaryFile.delete()) {
+        temporaryFile.deleteOnExit();
+      }
+      return false;
+    }
+  }
+
+  /**
+   * Digests the snapshotted sources, missing sources included.
+   */
+  private static byte[] digest(List<String> sources, ClassLoader classLoader) throws IOException {
+    MessageDigest digest = newDigest();
+    for (String source : sources) {
+      update(digest, source);
+      InputStream inputStream;
+      try {
+        inputStream = SnapshotWriter.isUrl(source) ? Resources.getUrlAsStream(source)
+            : Resources.getResourceAsStream(classLoader, source);
+      } catch (IOException e) {
+        digest.update((byte) 0);
+        continue;
+      }
+      digest.update((byte) 1);
+      digest.update(readFully(inputStream));
+    }
+    return digest.digest();
+  }
+
+  private static byte[] readFully(InputStream inputStream) throws IOException {
+    try {
+      ByteArrayOutputStream content = new ByteArrayOutputStream();
+      byte[] buffer = new byte[8192];
+      int read;
+      while ((read = inputStream.read(buffer)) != -1) {
+        content.write(buffer, 0, read);
+      }
+      return content.toByteArray();
+    } finally {
+      inputStream.close();
+    }
+  }
+
+  private static MessageDigest newDigest() {
+    try {
+      return MessageDigest.getInstance("SHA-256");
+    } catch (NoSuchAlgorithmException e) {
+      throw new IllegalStateException("SHA-256 is not supported", e);
+    }
+  }
+
+  private static void update(MessageDigest digest, String value) {
+    if (value == null) {
+      digest.update((byte) 0);
+    } else {
+      digest.update((byte) 1);
+      digest.update(value.getBytes(SnapshotOutput.UTF_8));
+    }
+  }
+
+  private static String toHex(byte[] bytes) {
+    StringBuilder hex = new StringBuilder(bytes.length * 2);
+    for (byte b : bytes) {
+      hex.append(Character.forDigit((b >> 4) & 0xf, 16)).append(Character.forDigit(b & 0xf, 16));
+    }
+    return hex.toString();
+  }
+
+  private static String getMyBatisVersion() {
+    Package myBatisPackage = Configuration.class.getPackage();
+    return myBatisPackage == null ? null : myBatisPackage.getImplementationVersion();
+  }
+
+  private static boolean equal(Object a, Object b) {
+    return a == null ? b == null : a.equals(b);
+  }
+
+}
@@ -0,0 +1,89 @@
+/**
+ *    Copyright 2009-2017 the original author or authors.
+ *
+ *    Licensed under the Apache License, Version 2.0 (the "License");
+ *    you may not use this file except in compliance with the License.
+ *    You may obtain a copy of the License at
+ *
+ *       http://www.apache.org/licenses/LICENSE-2.0
+ *
+ *    Unless required by applicable law or agreed to in writing, software
+ *    distributed under the License is distributed on an "AS IS" BASIS,
+ *    WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ *    See the License for the specific language governing permissions and
+ *    limitations under the License.
+ */
+package org.mybatis.guice.configuration.snapshot;
+
+import java.io.DataInputStream;
+import java.io.IOException;
+import java.io.InputStream;
+import java.util.ArrayList;
+import java.util.List;
+
+/**
+ * Reads the primitives written by a {@link SnapshotOutput}.
+ */
+final class SnapshotInput {
+
+  private final DataInputStream in;
+
+  private final List<String> strings = new ArrayList<String>();
+
+  SnapshotInput(InputStream in) {
+    this.in = new DataInputStream(in);
+  }
+
+  int readInt() throws IOException {
+    return in.readInt();
+  }
+
+  long readLong() throws IOException {
+    return in.readLong();
+  }
+
+  boolean readBoolean() throws IOException {
+    return in.readBoolean();
+  }
+
+  byte[] readBytes() throws IOException {
+    byte[] value = new byte[in.readInt()];
+    in.readFully(value);
+    return value;
+  }
+
+  String readString() throws IOException {
+    int index = in.readInt();
+    if (index < 0) {
+      return null;
+    }
+    if (index < strings.size()) {
+      return strings.get(index);
+    }
+    if (index != strings.size()) {
+      throw new IOException("Corrupted snapshot, unexpected string index " + index);
+    }
+    String value = new String(readBytes(), SnapshotOutput.UTF_8);
+    strings.add(value);
+    return value;
+  }
+
+  Integer readNullableInt() throws IOException {
+    return in.readBoolean() ? Integer.valueOf(in.readInt()) : null;
+  }
+
+  Long readNullableLong() throws IOException {
+    return in.readBoolean() ? Long.valueOf(in.readLong()) : null;
+  }
+
+  Boolean readNullableBoolean() throws IOException {
+    Integer value = readNullableInt();
+    return value == null ? null : Boolean.valueOf(value.intValue() != 0);
+  }
+
+  <E extends Enum<E>> E readEnum(Class<E> type) throws IOException {
+    String name = readString();
+    return name == null ? null : Enum.valueOf(type, name);
+  }
+
+}
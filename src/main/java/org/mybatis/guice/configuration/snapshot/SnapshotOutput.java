@@ -0,0 +1,99 @@
+/**
+ *    Copyright 2009-2017 the original author or authors.
+ *
+ *    Licensed under the Apache License, Version 2.0 (the "License");
+ *    you may not use this file except in compliance with the License.
+ *    You may obtain a copy of the License at
+ *
+ *       http://www.apache.org/licenses/LICENSE-2.0
+ *
+ *    Unless required by applicable law or agreed to in writing, software
+ *    distributed under the License is distributed on an "AS IS" BASIS,
+ *    WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ *    See the License for the specific language governing permissions and
+ *    limitations under the License.
+ */
+package org.mybatis.guice.configuration.snapshot;
+
+import java.io.DataOutputStream;
+import java.io.IOException;
+import java.io.OutputStream;
+import java.nio.charset.Charset;
+import java.util.HashMap;
+import java.util.Map;
+
+/**
+ * Writes the snapshot primitives, each string being written once and then referenced by index.
+ */
+final class SnapshotOutput {
+
+  static final Charset UTF_8 = Charset.forName("UTF-8");
+
+  private final DataOutputStream out;
+
+  private final Map<String, Integer> strings = new HashMap<String, Integer>();
+
+  SnapshotOutput(OutputStream out) {
+    this.out = new DataOutputStream(out);
+  }
+
+  void writeInt(int value) throws IOException {
+    out.writeInt(value);
+  }
+
+  void writeLong(long value) throws IOException {
+    out.writeLong(value);
+  }
+
+  void writeBoolean(boolean value) throws IOException {
+    out.writeBoolean(value);
+  }
+
+  void writeBytes(byte[] value) throws IOException {
+    out.writeInt(value.length);
+    out.write(value);
+  }
+
+  void writeString(String value) throws IOException {
+    if (value == null) {
+      out.writeInt(-1);
+      return;
+    }
+    Integer index = strings.get(value);
+    if (index != null) {
+      out.writeInt(index);
+      return;
+    }
+    index = strings.size();
+    strings.put(value, index);
+    out.writeInt(index);
+    writeBytes(value.getBytes(UTF_8));
+  }
+
+  void writeNullableInt(Integer value) throws IOException {
+    out.writeBoolean(value != null);
+    if (value != null) {
+      out.writeInt(value);
+    }
+  }
+
+  void writeNullableLong(Long value) throws IOException {
+    out.writeBoolean(value != null);
+    if (value != null) {
+      out.writeLong(value);
+    }
+  }
+
+  void writeNullableBoolean(Boolean value) throws IOException {
+    writeNullableInt(value == null ? null : value ? 1 : 0);
+  }
+
+  void writeEnum(Enum<?> value) throws IOException {
+    writeString(value == null ? null : value.name());
+  }
+
+  void flush() throws IOException {
+    out.flush();
+  }
+
+}
@@ -0,0 +1,456 @@
+/**
+ *    Copyright 2009-2017 the original author or authors.
+ *
+ *    Licensed under the Apache License, Version 2.0 (the "License");
+ *    you may not use this file except in compliance with the License.
+ *    You may obtain a copy of the License at
+ *
+ *       http://www.apache.org/licenses/LICENSE-2.0
+ *
+ *    Unless required by applicable law or agreed to in writing, software
+ *    distributed under the License is distributed on an "AS IS" BASIS,
+ *    WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ *    See the License for the specific language governing permissions and
+ *    limitations under the License.
+ */
+package org.mybatis.guice.configuration.snapshot;
+
+import static org.mybatis.guice.configuration.snapshot.SnapshotWriter.KEY_GENERATOR_JDBC3;
+import static org.mybatis.guice.configuration.snapshot.SnapshotWriter.KEY_GENERATOR_NONE;
+import static org.mybatis.guice.configuration.snapshot.SnapshotWriter.KEY_GENERATOR_NULL;
+import static org.mybatis.guice.configuration.snapshot.SnapshotWriter.KEY_GENERATOR_REGISTERED;
+import static org.mybatis.guice.configuration.snapshot.SnapshotWriter.KEY_GENERATOR_SELECT;
+import static org.mybatis.guice.configuration.snapshot.SnapshotWriter.NODE_CHOOSE;
+import static org.mybatis.guice.configuration.snapshot.SnapshotWriter.NODE_FOREACH;
+import static org.mybatis.guice.configuration.snapshot.SnapshotWriter.NODE_IF;
+import static org.mybatis.guice.configuration.snapshot.SnapshotWriter.NODE_MIXED;
+import static org.mybatis.guice.configuration.snapshot.SnapshotWriter.NODE_STATIC_TEXT;
+import static org.mybatis.guice.configuration.snapshot.SnapshotWriter.NODE_TEXT;
+import static org.mybatis.guice.configuration.snapshot.SnapshotWriter.NODE_TRIM;
+import static org.mybatis.guice.configuration.snapshot.SnapshotWriter.NODE_VAR_DECL;
+import static org.mybatis.guice.configuration.snapshot.SnapshotWriter.SQL_SOURCE_DYNAMIC;
+import static org.mybatis.guice.configuration.snapshot.SnapshotWriter.SQL_SOURCE_STATIC;
+
+import java.io.IOException;
+import java.util.ArrayList;
+import java.util.HashMap;
+import java.util.HashSet;
+import java.util.List;
+import java.util.Map;
+import java.util.Properties;
+import java.util.Set;
+
+import org.apache.ibatis.builder.StaticSqlSource;
+import org.apache.ibatis.cache.Cache;
+import org.apache.ibatis.executor.keygen.Jdbc3KeyGenerator;
+import org.apache.ibatis.executor.keygen.KeyGenerator;
+import org.apache.ibatis.executor.keygen.NoKeyGenerator;
+import org.apache.ibatis.executor.keygen.SelectKeyGenerator;
+import org.apache.ibatis.io.Resources;
+import org.apache.ibatis.mapping.Discriminator;
+import org.apache.ibatis.mapping.MappedStatement;
+import org.apache.ibatis.mapping.ParameterMap;
+import org.apache.ibatis.mapping.ParameterMapping;
+import org.apache.ibatis.mapping.ParameterMode;
+import org.apache.ibatis.mapping.ResultFlag;
+import org.apache.ibatis.mapping.ResultMap;
+import org.apache.ibatis.mapping.ResultMapping;
+import org.apache.ibatis.mapping.ResultSetType;
+import org.apache.ibatis.mapping.SqlCommandType;
+import org.apache.ibatis.mapping.SqlSource;
+import org.apache.ibatis.mapping.StatementType;
+import org.apache.ibatis.reflection.SystemMetaObject;
+import org.apache.ibatis.scripting.LanguageDriver;
+import org.apache.ibatis.scripting.LanguageDriverRegistry;
+import org.apache.ibatis.scripting.xmltags.ChooseSqlNode;
+import org.apache.ibatis.scripting.xmltags.DynamicSqlSource;
+import org.apache.ibatis.scripting.xmltags.ForEachSqlNode;
+import org.apache.ibatis.scripting.xmltags.IfSqlNode;
+import org.apache.ibatis.scripting.xmltags.MixedSqlNode;
+import org.apache.ibatis.scripting.xmltags.SqlNode;
+import org.apache.ibatis.scripting.xmltags.StaticTextSqlNode;
+import org.apache.ibatis.scripting.xmltags.TextSqlNode;
+import org.apache.ibatis.scripting.xmltags.TrimSqlNode;
+import org.apache.ibatis.scripting.xmltags.VarDeclSqlNode;
+import org.apache.ibatis.session.Configuration;
+import org.apache.ibatis.type.JdbcType;
+import org.apache.ibatis.type.TypeHandler;
+import org.apache.ibatis.type.TypeHandlerRegistry;
+
+/**
+ * Restores the elements written by a {@link SnapshotWriter} into a configuration without mappers.
+ */
+final class SnapshotReader {
+
+  private static final Map<String, Class<?>> PRIMITIVE_TYPES = new HashMap<String, Class<?>>();
+
+  static {
+    for (Class<?> type : new Class<?>[] { boolean.class, byte.class, char.class, short.class, int.class,
+        long.class, float.class, double.class, void.class }) {
+      PRIMITIVE_TYPES.put(type.getName(), type);
+    }
+  }
+
+  private final Configuration configuration;
+
+  private final SnapshotInput in;
+
+  SnapshotReader(Configuration configuration, SnapshotInput in) {
+    this.configuration = configuration;
+    this.in = in;
+  }
+
+  void read() throws IOException, ClassNotFoundException {
+    int caches = in.readInt();
+    for (int i = 0; i < caches; i++) {
+      configuration.addCache(readCacheDeclaration().build());
+    }
+
+    int cacheRefs = in.readInt();
+    for (int i = 0; i < cacheRefs; i++) {
+      configuration.addCacheRef(in.readString(), in.readString());
+    }
+
+    int parameterMaps = in.readInt();
+    for (int i = 0; i < parameterMaps; i++) {
+      configuration.addParameterMap(readParameterMap());
+    }
+
+    int resultMaps = in.readInt();
+    for (int i = 0; i < resultMaps; i++) {
+      configuration.addResultMap(readResultMap());
+    }
+
+    readStatements();
+    int keyGenerators = in.readInt();
+    for (int i = 0; i < keyGenerators; i++) {
+      configuration.addKeyGenerator(in.readString(), readSelectKeyGenerator());
+    }
+    readStatements();
+
+    List<Class<?>> mappers = new ArrayList<Class<?>>();
+    int mapperCount = in.readInt();
+    for (int i = 0; i < mapperCount; i++) {
+      mappers.add(Resources.classForName(in.readString()));
+    }
+
+    // loaded mappers are only bound, their statements are already restored
+    int loadedResources = in.readInt();
+    for (int i = 0; i < loadedResources; i++) {
+      configuration.addLoadedResource(in.readString());
+    }
+    for (Class<?> mapper : mappers) {
+      configuration.addMapper(mapper);
+    }
+  }
+
+  private CacheDeclaration readCacheDeclaration() throws IOException, ClassNotFoundException {
+    String namespace = in.readString();
+    Class<? extends Cache> implementation = readCacheClass();
+    Class<? extends Cache> eviction = readCacheClass();
+    Long flushInterval = in.readNullableLong();
+    Integer size = in.readNullableInt();
+    boolean readWrite = in.readBoolean();
+    boolean blocking = in.readBoolean();
+    return new CacheDeclaration(namespace, implementation, eviction, flushInterval, size, readWrite, blocking,
+        readProperties());
+  }
+
+  @SuppressWarnings("unchecked")
+  private Class<? extends Cache> readCacheClass() throws IOException, ClassNotFoundException {
+    return (Class<? extends Cache>) readClass();
+  }
+
+  private void readStatements() throws IOException, ClassNotFoundException {
+    int statements = in.readInt();
+    for (int i = 0; i < statements; i++) {
+      configuration.addMappedStatement(readStatement());
+    }
+  }
+
+  private MappedStatement readStatement() throws IOException, ClassNotFoundException {
+    String id = in.readString();
+    String resource = in.readString();
+    SqlCommandType sqlCommandType = in.readEnum(SqlCommandType.class);
+    SqlSource sqlSource = readSqlSource();
+    MappedStatement.Builder builder = new MappedStatement.Builder(configuration, id, sqlSource, sqlCommandType)
+        .resource(resource)
+        .statementType(in.readEnum(StatementType.class))
+        .resultSetType(in.readEnum(ResultSetType.class))
+        .fetchSize(in.readNullableInt())
+        .timeout(in.readNullableInt());
+
+    if (in.readBoolean()) {
+      builder.parameterMap(in.readBoolean() ? configuration.getParameterMap(in.readString()) : readParameterMap());
+    }
+
+    List<ResultMap> resultMaps = new ArrayList<ResultMap>();
+    int resultMapCount = in.readInt();
+    for (int i = 0; i < resultMapCount; i++) {
+      resultMaps.add(in.readBoolean() ? configuration.getResultMap(in.readString()) : readResultMap());
+    }
+    builder.resultMaps(resultMaps);
+
+    String cacheId = in.readString();
+    builder.cache(cacheId == null ? null : configuration.getCache(cacheId))
+        .flushCacheRequired(in.readBoolean())
+        .useCache(in.readBoolean())
+        .resultOrdered(in.readBoolean())
+        .keyGenerator(readKeyGenerator())
+        .keyProperty(in.readString())
+        .keyColumn(in.readString())
+        .resultSets(in.readString())
+        .databaseId(in.readString())
+        .lang(readLanguageDriver());
+
+    MappedStatement statement = builder.build();
+    // result maps may have been completed after the statement was built
+    SystemMetaObject.forObject(statement).setValue("hasNestedResultMaps", in.readBoolean());
+    return statement;
+  }
+
+  private KeyGenerator readKeyGenerator() throws IOException {
+    int kind = in.readInt();
+    switch (kind) {
+      case KEY_GENERATOR_NULL:
+        return null;
+      case KEY_GENERATOR_NONE:
+        return NoKeyGenerator.INSTANCE;
+      case KEY_GENERATOR_JDBC3:
+        return Jdbc3KeyGenerator.INSTANCE;
+      case KEY_GENERATOR_REGISTERED:
+        return configuration.getKeyGenerator(in.readString());
+      case KEY_GENERATOR_SELECT:
+        return readSelectKeyGenerator();
+      default:
+        throw new IOException("Corrupted snapshot, unknown key generator " + kind);
+    }
+  }
+
+  private SelectKeyGenerator readSelectKeyGenerator() throws IOException {
+    MappedStatement keyStatement = configuration.getMappedStatement(in.readString(), false);
+    return new SelectKeyGenerator(keyStatement, in.readBoolean());
+  }
+
+  private LanguageDriver readLanguageDriver() throws IOException, ClassNotFoundException {
+    Class<?> type = readClass();
+    if (type == null) {
+      return null;
+    }
+    LanguageDriverRegistry languageRegistry = configuration.getLanguageRegistry();
+    LanguageDriver driver = languageRegistry.getDriver(type);
+    if (driver == null) {
+      languageRegistry.register(type);
+      driver = languageRegistry.getDriver(type);
+    }
+    return driver;
+  }
+
+  private SqlSource readSqlSource() throws IOException, ClassNotFoundException {
+    int kind = in.readInt();
+    switch (kind) {
+      case SQL_SOURCE_STATIC:
+        return new StaticSqlSource(configuration, in.readString(), readParameterMappings());
+      case SQL_SOURCE_DYNAMIC:
+        return new DynamicSqlSource(configuration, readSqlNode());
+      default:
+        throw new IOException("Corrupted snapshot, unknown SQL source " + kind);
+    }
+  }
+
+  private SqlNode readSqlNode() throws IOException {
+    int kind = in.readInt();
+    switch (kind) {
+      case NODE_MIXED:
+        return new MixedSqlNode(readSqlNodes());
+      case NODE_STATIC_TEXT:
+        return new StaticTextSqlNode(in.readString());
+      case NODE_TEXT:
+        return new TextSqlNode(in.readString());
+      case NODE_IF: {
+        String test = in.readString();
+        return new IfSqlNode(readSqlNode(), test);
+      }
+      case NODE_TRIM: {
+        String prefix = in.readString();
+        String prefixesToOverride = in.readString();
+        String suffix = in.readString();
+        String suffixesToOverride = in.readString();
+        return new TrimSqlNode(configuration, readSqlNode(), prefix, prefixesToOverride, suffix,
+            suffixesToOverride);
+      }
+      case NODE_FOREACH: {
+        String collectionExpression = in.readString();
+        String index = in.readString();
+        String item = in.readString();
+        String open = in.readString();
+        String close = in.readString();
+        String separator = in.readString();
+        return new ForEachSqlNode(configuration, readSqlNode(), collectionExpression, index, item, open, close,
+            separator);
+      }
+      case NODE_CHOOSE: {
+        List<SqlNode> ifSqlNodes = readSqlNodes();
+        return new ChooseSqlNode(ifSqlNodes, in.readBoolean() ? readSqlNode() : null);
+      }
+      case NODE_VAR_DECL:
+        return new VarDeclSqlNode(in.readString(), in.readString());
+      default:
+        throw new IOException("Corrupted snapshot, unknown SQL node " + kind);
+    }
+  }
+
+  private List<SqlNode> readSqlNodes() throws IOException {
+    int count = in.readInt();
+    List<SqlNode> sqlNodes = new ArrayList<SqlNode>(count);
+    for (int i = 0; i < count; i++) {
+      sqlNodes.add(readSqlNode());
+    }
+    return sqlNodes;
+  }
+
+  private ParameterMap readParameterMap() throws IOException, ClassNotFoundException {
+    String id = in.readString();
+    Class<?> type = readClass();
+    return new ParameterMap.Builder(configuration, id, type, readParameterMappings()).build();
+  }
+
+  private List<ParameterMapping> readParameterMappings() throws IOException, ClassNotFoundException {
+    int count = in.readInt();
+    List<ParameterMapping> parameterMappings = new ArrayList<ParameterMapping>(count);
+    for (int i = 0; i < count; i++) {
+      String property = in.readString();
+      ParameterMode mode = in.readEnum(ParameterMode.class);
+      Class<?> javaType = readClass();
+      JdbcType jdbcType = in.readEnum(JdbcType.class);
+      ParameterMapping.Builder builder = new ParameterMapping.Builder(configuration, property, javaType)
+          .mode(mode)
+          .jdbcType(jdbcType)
+          .numericScale(in.readNullableInt());
+      TypeHandler<?> typeHandler = resolveTypeHandler(javaType, jdbcType, readClass());
+      if (typeHandler != null) {
+        builder.typeHandler(typeHandler);
+      }
+      parameterMappings.add(builder
+          .resultMapId(in.readString())
+          .jdbcTypeName(in.readString())
+          .expression(in.readString())
+          .build());
+    }
+    return parameterMappings;
+  }
+
+  private ResultMap readResultMap() throws IOException, ClassNotFoundException {
+    String id = in.readString();
+    Class<?> type = readClass();
+    Boolean autoMapping = in.readNullableBoolean();
+    List<ResultMapping> resultMappings = readResultMappings();
+    ResultMap.Builder builder = new ResultMap.Builder(configuration, id, type, resultMappings, autoMapping);
+    if (in.readBoolean()) {
+      ResultMapping resultMapping = readResultMapping();
+      Map<String, String> discriminatorMap = new HashMap<String, String>();
+      int count = in.readInt();
+      for (int i = 0; i < count; i++) {
+        discriminatorMap.put(in.readString(), in.readString());
+      }
+      Discriminator discriminator = new Discriminator.Builder(configuration, resultMapping, discriminatorMap)
+          .build();
+      builder.discriminator(discriminator);
+    }
+    ResultMap resultMap = builder.build();
+    // nested result maps may have been detected while adding discriminated result maps
+    if (in.readBoolean() && !resultMap.hasNestedResultMaps()) {
+      resultMap.forceNestedResultMaps();
+    }
+    return resultMap;
+  }
+
+  private List<ResultMapping> readResultMappings() throws IOException, ClassNotFoundException {
+    int count = in.readInt();
+    List<ResultMapping> resultMappings = new ArrayList<ResultMapping>(count);
+    for (int i = 0; i < count; i++) {
+      resultMappings.add(readResultMapping());
+    }
+    return resultMappings;
+  }
+
+  private ResultMapping readResultMapping() throws IOException, ClassNotFoundException {
+    String property = in.readString();
+    String column = in.readString();
+    Class<?> javaType = readClass();
+    JdbcType jdbcType = in.readEnum(JdbcType.class);
+    TypeHandler<?> typeHandler = resolveTypeHandler(javaType, jdbcType, readClass());
+    ResultMapping.Builder builder = new ResultMapping.Builder(configuration, property)
+        .column(column)
+        .javaType(javaType)
+        .jdbcType(jdbcType)
+        .nestedResultMapId(in.readString())
+        .nestedQueryId(in.readString());
+    if (typeHandler != null) {
+      builder.typeHandler(typeHandler);
+    }
+
+    Set<String> notNullColumns = new HashSet<String>();
+    int notNullColumnCount = in.readInt();
+    for (int i = 0; i < notNullColumnCount; i++) {
+      notNullColumns.add(in.readString());
+    }
+    builder.notNullColumns(notNullColumns).columnPrefix(in.readString());
+
+    List<ResultFlag> flags = new ArrayList<ResultFlag>();
+    int flagCount = in.readInt();
+    for (int i = 0; i < flagCount; i++) {
+      flags.add(in.readEnum(ResultFlag.class));
+    }
+
+    return builder.flags(flags)
+        .composites(readResultMappings())
+        .resultSet(in.readString())
+        .foreignColumn(in.readString())
+        .lazy(in.readBoolean())
+        .build();
+  }
+
+  /**
+   * Resolves a type handler, preferring the handler registered for the java type as the builders do when no
+   * type handler is declared.
+   */
+  @SuppressWarnings("unchecked")
+  private TypeHandler<?> resolveTypeHandler(Class<?> javaType, JdbcType jdbcType, Class<?> typeHandlerType) {
+    if (typeHandlerType == null) {
+      return null;
+    }
+    TypeHandlerRegistry typeHandlerRegistry = configuration.getTypeHandlerRegistry();
+    if (javaType != null) {
+      TypeHandler<?> typeHandler = typeHandlerRegistry.getTypeHandler(javaType, jdbcType);
+      if (typeHandler != null && typeHandler.getClass() == typeHandlerType) {
+        return typeHandler;
+      }
+    }
+    TypeHandler<?> typeHandler = typeHandlerRegistry
+        .getMappingTypeHandler((Class<? extends TypeHandler<?>>) typeHandlerType);
+    if (typeHandler == null) {
+      typeHandler = typeHandlerRegistry.getInstance(javaType, typeHandlerType);
+    }
+    return typeHandler;
+  }
+
+  private Properties readProperties() throws IOException {
+    Properties properties = new Properties();
+    int count = in.readInt();
+    for (int i = 0; i < count; i++) {
+      properties.setProperty(in.readString(), in.readString());
+    }
+    return properties;
+  }
+
+  private Class<?> readClass() throws IOException, ClassNotFoundException {
+    String name = in.readString();
+    if (name == null) {
+      return null;
+    }
+    Class<?> type = PRIMITIVE_TYPES.get(name);
+    return type != null ? type : Resources.classForName(name);
+  }
+
+}
@@ -0,0 +1,614 @@
+/**
+ *    Copyright 2009-2017 the original author or authors.
+ *
+ *    Licensed under the Apache License, Version 2.0 (the "License");
+ *    you may not use this file except in compliance with the License.
+ *    You may obtain a copy of the License at
+ *
+ *       http://www.apache.org/licenses/LICENSE-2.0
+ *
+ *    Unless required by applicable law or agreed to in writing, software
+ *    distributed under the License is distributed on an "AS IS" BASIS,
+ *    WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ *    See the License for the specific language governing permissions and
+ *    limitations under the License.
+ */
+package org.mybatis.guice.configuration.snapshot;
+
+import java.io.IOException;
+import java.io.InputStream;
+import java.net.URL;
+import java.util.ArrayList;
+import java.util.Collection;
+import java.util.Collections;
+import java.util.Comparator;
+import java.util.IdentityHashMap;
+import java.util.List;
+import java.util.Map;
+import java.util.Properties;
+import java.util.Set;
+import java.util.TreeMap;
+import java.util.TreeSet;
+
+import org.apache.ibatis.annotations.CacheNamespace;
+import org.apache.ibatis.builder.StaticSqlSource;
+import org.apache.ibatis.builder.xml.XMLMapperEntityResolver;
+import org.apache.ibatis.cache.Cache;
+import org.apache.ibatis.executor.keygen.Jdbc3KeyGenerator;
+import org.apache.ibatis.executor.keygen.KeyGenerator;
+import org.apache.ibatis.executor.keygen.NoKeyGenerator;
+import org.apache.ibatis.executor.keygen.SelectKeyGenerator;
+import org.apache.ibatis.io.Resources;
+import org.apache.ibatis.mapping.Discriminator;
+import org.apache.ibatis.mapping.MappedStatement;
+import org.apache.ibatis.mapping.ParameterMap;
+import org.apache.ibatis.mapping.ParameterMapping;
+import org.apache.ibatis.mapping.ResultFlag;
+import org.apache.ibatis.mapping.ResultMap;
+import org.apache.ibatis.mapping.ResultMapping;
+import org.apache.ibatis.mapping.SqlSource;
+import org.apache.ibatis.parsing.XNode;
+import org.apache.ibatis.parsing.XPathParser;
+import org.apache.ibatis.reflection.MetaObject;
+import org.apache.ibatis.reflection.SystemMetaObject;
+import org.apache.ibatis.scripting.defaults.RawSqlSource;
+import org.apache.ibatis.scripting.xmltags.ChooseSqlNode;
+import org.apache.ibatis.scripting.xmltags.DynamicSqlSource;
+import org.apache.ibatis.scripting.xmltags.ForEachSqlNode;
+import org.apache.ibatis.scripting.xmltags.IfSqlNode;
+import org.apache.ibatis.scripting.xmltags.MixedSqlNode;
+import org.apache.ibatis.scripting.xmltags.SetSqlNode;
+import org.apache.ibatis.scripting.xmltags.SqlNode;
+import org.apache.ibatis.scripting.xmltags.StaticTextSqlNode;
+import org.apache.ibatis.scripting.xmltags.TextSqlNode;
+import org.apache.ibatis.scripting.xmltags.TrimSqlNode;
+import org.apache.ibatis.scripting.xmltags.VarDeclSqlNode;
+import org.apache.ibatis.scripting.xmltags.WhereSqlNode;
+import org.apache.ibatis.session.Configuration;
+
+/**
+ * Writes the mapper elements of a built configuration, failing with an {@link UnsupportedElementException} on
+ * elements which could not be restored identically.
+ */
+final class SnapshotWriter {
+
+  static final int SQL_SOURCE_STATIC = 0;
+  static final int SQL_SOURCE_DYNAMIC = 1;
+
+  static final int NODE_MIXED = 0;
+  static final int NODE_STATIC_TEXT = 1;
+  static final int NODE_TEXT = 2;
+  static final int NODE_IF = 3;
+  static final int NODE_TRIM = 4;
+  static final int NODE_FOREACH = 5;
+  static final int NODE_CHOOSE = 6;
+  static final int NODE_VAR_DECL = 7;
+
+  static final int KEY_GENERATOR_NULL = -1;
+  static final int KEY_GENERATOR_NONE = 0;
+  static final int KEY_GENERATOR_JDBC3 = 1;
+  static final int KEY_GENERATOR_REGISTERED = 2;
+  static final int KEY_GENERATOR_SELECT = 3;
+
+  private static final Comparator<MappedStatement> STATEMENT_ORDER = new Comparator<MappedStatement>() {
+    @Override
+    public int compare(MappedStatement o1, MappedStatement o2) {
+      return o1.getId().compareTo(o2.getId());
+    }
+  };
+
+  private final Configuration configuration;
+
+  private final MetaObject metaConfiguration;
+
+  private final SnapshotOutput out;
+
+  private final Set<String> referencedClasses = new TreeSet<String>();
+
+  private final Map<KeyGenerator, String> registeredKeyGenerators = new IdentityHashMap<KeyGenerator, String>();
+
+  SnapshotWriter(Configuration configuration, SnapshotOutput out) {
+    this.configuration = configuration;
+    this.metaConfiguration = SystemMetaObject.forObject(configuration);
+    this.out = out;
+  }
+
+  /**
+   * Gets the classes referenced by the written elements, whose changes invalidate the snapshot.
+   */
+  Set<String> getReferencedClasses() {
+    return referencedClasses;
+  }
+
+  @SuppressWarnings("unchecked")
+  Set<String> getLoadedResources() {
+    return new TreeSet<String>((Set<String>) metaConfiguration.getValue("loadedResources"));
+  }
+
+  void write() throws IOException, UnsupportedElementException {
+    // resolves the pending elements first
+    Collection<MappedStatement> statements = distinct(configuration.getMappedStatements(), MappedStatement.class);
+    if (!configuration.getIncompleteStatements().isEmpty() || !configuration.getIncompleteResultMaps().isEmpty()
+        || !configuration.getIncompleteCacheRefs().isEmpty() || !configuration.getIncompleteMethods().isEmpty()) {
+      throw new UnsupportedElementException("the configuration has incomplete elements");
+    }
+
+    writeCaches();
+    writeCacheRefs();
+
+    Map<String, ParameterMap> parameterMaps = new TreeMap<String, ParameterMap>();
+    for (ParameterMap parameterMap : distinct(configuration.getParameterMaps(), ParameterMap.class)) {
+      parameterMaps.put(parameterMap.getId(), parameterMap);
+    }
+    out.writeInt(parameterMaps.size());
+    for (ParameterMap parameterMap : parameterMaps.values()) {
+      writeParameterMap(parameterMap);
+    }
+
+    Map<String, ResultMap> resultMaps = new TreeMap<String, ResultMap>();
+    for (ResultMap resultMap : distinct(configuration.getResultMaps(), ResultMap.class)) {
+      resultMaps.put(resultMap.getId(), resultMap);
+    }
+    out.writeInt(resultMaps.size());
+    for (ResultMap resultMap : resultMaps.values()) {
+      writeResultMap(resultMap);
+    }
+
+    Map<String, SelectKeyGenerator> keyGenerators = new TreeMap<String, SelectKeyGenerator>();
+    for (String id : configuration.getKeyGeneratorNames()) {
+      if (id.indexOf('.') < 0) {
+        // short names are aliases of the full ones
+        continue;
+      }
+      KeyGenerator keyGenerator = configuration.getKeyGenerator(id);
+      if (keyGenerator.getClass() != SelectKeyGenerator.class) {
+        throw new UnsupportedElementException("key generator " + keyGenerator.getClass().getName());
+      }
+      keyGenerators.put(id, (SelectKeyGenerator) keyGenerator);
+      registeredKeyGenerators.put(keyGenerator, id);
+    }
+
+    // the statements of the select keys are restored before the generators using them
+    List<MappedStatement> keyStatements = new ArrayList<MappedStatement>();
+    List<MappedStatement> otherStatements = new ArrayList<MappedStatement>();
+    for (MappedStatement statement : statements) {
+      if (statement.getKeyGenerator() instanceof SelectKeyGenerator) {
+        otherStatements.add(statement);
+      } else {
+        keyStatements.add(statement);
+      }
+    }
+    Collections.sort(keyStatements, STATEMENT_ORDER);
+    Collections.sort(otherStatements, STATEMENT_ORDER);
+
+    writeStatements(keyStatements);
+    out.writeInt(keyGenerators.size());
+    for (Map.Entry<String, SelectKeyGenerator> keyGenerator : keyGenerators.entrySet()) {
+      out.writeString(keyGenerator.getKey());
+      writeSelectKeyGenerator(keyGenerator.getValue());
+    }
+    writeStatements(otherStatements);
+
+    Set<String> mappers = new TreeSet<String>();
+    for (Class<?> mapper : configuration.getMapperRegistry().getMappers()) {
+      mappers.add(mapper.getName());
+      referencedClasses.add(mapper.getName());
+    }
+    out.writeInt(mappers.size());
+    for (String mapper : mappers) {
+      out.writeString(mapper);
+    }
+
+    Set<String> loadedResources = getLoadedResources();
+    out.writeInt(loadedResources.size());
+    for (String loadedResource : loadedResources) {
+      out.writeString(loadedResource);
+    }
+    out.flush();
+  }
+
+  private void writeCaches() throws IOException, UnsupportedElementException {
+    Map<String, CacheDeclaration> declarations = findCacheDeclarations();
+    Map<String, Cache> caches = new TreeMap<String, Cache>();
+    for (Cache cache : distinct(configuration.getCaches(), Cache.class)) {
+      caches.put(cache.getId(), cache);
+    }
+
+    out.writeInt(caches.size());
+    for (String namespace : caches.keySet()) {
+      CacheDeclaration declaration = declarations.get(namespace);
+      if (declaration == null) {
+        throw new UnsupportedElementException("cache " + namespace + " not declared by a mapper");
+      }
+      out.writeString(declaration.namespace);
+      writeClass(declaration.implementation);
+      writeClass(declaration.eviction);
+      out.writeNullableLong(declaration.flushInterval);
+      out.writeNullableInt(declaration.size);
+      out.writeBoolean(declaration.readWrite);
+      out.writeBoolean(declaration.blocking);
+      writeProperties(declaration.properties);
+    }
+  }
+
+  /**
+   * Finds the cache declarations in the loaded mapper documents and in the mapper annotations.
+   */
+  private Map<String, CacheDeclaration> findCacheDeclarations() throws UnsupportedElementException {
+    Map<String, CacheDeclaration> declarations = new TreeMap<String, CacheDeclaration>();
+    for (String resource : getLoadedResources()) {
+      if (isMapperDocument(resource)) {
+        XNode mapper = parseMapperDocument(resource);
+        XNode cache = mapper.evalNode("cache");
+        if (cache != null) {
+          String namespace = mapper.getStringAttribute("namespace");
+          declarations.put(namespace, CacheDeclaration.fromXml(namespace, cache, configuration));
+        }
+      }
+    }
+    for (Class<?> mapper : configuration.getMapperRegistry().getMappers()) {
+      CacheNamespace cacheNamespace = mapper.getAnnotation(CacheNamespace.class);
+      if (cacheNamespace != null) {
+        declarations.put(mapper.getName(),
+            CacheDeclaration.fromAnnotation(mapper.getName(), cacheNamespace, configuration));
+      }
+    }
+    return declarations;
+  }
+
+  static boolean isMapperDocument(String loadedResource) {
+    return !loadedResource.startsWith("namespace:") && !loadedResource.startsWith("interface ");
+  }
+
+  private XNode parseMapperDocument(String resource) throws UnsupportedElementException {
+    InputStream inputStream = null;
+    try {
+      inputStream = isUrl(resource) ? Resources.getUrlAsStream(resource) : Resources.getResourceAsStream(resource);
+      return new XPathParser(inputStream, false, configuration.getVariables(), new XMLMapperEntityResolver())
+          .evalNode("/mapper");
+    } catch (IOException e) {
+      throw new UnsupportedElementException("mapper document " + resource + " could not be read: " + e);
+    } finally {
+      if (inputStream != null) {
+        try {
+          inputStream.close();
+        } catch (IOException e) {
+          // close quietly
+        }
+      }
+    }
+  }
+
+  static boolean isUrl(String resource) {
+    try {
+      new URL(resource);
+      return true;
+    } catch (IOException e) {
+      return false;
+    }
+  }
+
+  @SuppressWarnings("unchecked")
+  private void writeCacheRefs() throws IOException {
+    Map<String, String> cacheRefs = new TreeMap<String, String>(
+        (Map<String, String>) metaConfiguration.getValue("cacheRefMap"));
+    out.writeInt(cacheRefs.size());
+    for (Map.Entry<String, String> cacheRef : cacheRefs.entrySet()) {
+      out.writeString(cacheRef.getKey());
+      out.writeString(cacheRef.getValue());
+    }
+  }
+
+  private void writeStatements(List<MappedStatement> statements) throws IOException, UnsupportedElementException {
+    out.writeInt(statements.size());
+    for (MappedStatement statement : statements) {
+      writeStatement(statement);
+    }
+  }
+
+  private void writeStatement(MappedStatement statement) throws IOException, UnsupportedElementException {
+    out.writeString(statement.getId());
+    out.writeString(statement.getResource());
+    out.writeEnum(statement.getSqlCommandType());
+    writeSqlSource(statement.getId(), statement.getSqlSource());
+    out.writeEnum(statement.getStatementType());
+    out.writeEnum(statement.getResultSetType());
+    out.writeNullableInt(statement.getFetchSize());
+    out.writeNullableInt(statement.getTimeout());
+
+    ParameterMap parameterMap = statement.getParameterMap();
+    out.writeBoolean(parameterMap != null);
+    if (parameterMap != null) {
+      boolean registered = configuration.hasParameterMap(parameterMap.getId())
+          && configuration.getParameterMap(parameterMap.getId()) == parameterMap;
+      out.writeBoolean(registered);
+      if (registered) {
+        out.writeString(parameterMap.getId());
+      } else {
+        writeParameterMap(parameterMap);
+      }
+    }
+
+    out.writeInt(statement.getResultMaps().size());
+    for (ResultMap resultMap : statement.getResultMaps()) {
+      boolean registered = configuration.hasResultMap(resultMap.getId())
+          && configuration.getResultMap(resultMap.getId()) == resultMap;
+      out.writeBoolean(registered);
+      if (registered) {
+        out.writeString(resultMap.getId());
+      } else {
+        writeResultMap(resultMap);
+      }
+    }
+
+    Cache cache = statement.getCache();
+    out.writeString(cache == null ? null : cache.getId());
+    out.writeBoolean(statement.isFlushCacheRequired());
+    out.writeBoolean(statement.isUseCache());
+    out.writeBoolean(statement.isResultOrdered());
+    writeKeyGenerator(statement.getKeyGenerator());
+    out.writeString(join(statement.getKeyProperties()));
+    out.writeString(join(statement.getKeyColumns()));
+    out.writeString(join(statement.getResultSets()));
+    out.writeString(statement.getDatabaseId());
+    writeClass(statement.getLang() == null ? null : statement.getLang().getClass());
+    out.writeBoolean(statement.hasNestedResultMaps());
+  }
+
+  private void writeKeyGenerator(KeyGenerator keyGenerator) throws IOException, UnsupportedElementException {
+    if (keyGenerator == null) {
+      out.writeInt(KEY_GENERATOR_NULL);
+    } else if (keyGenerator.getClass() == NoKeyGenerator.class) {
+      out.writeInt(KEY_GENERATOR_NONE);
+    } else if (keyGenerator.getClass() == Jdbc3KeyGenerator.class) {
+      out.writeInt(KEY_GENERATOR_JDBC3);
+    } else if (registeredKeyGenerators.containsKey(keyGenerator)) {
+      out.writeInt(KEY_GENERATOR_REGISTERED);
+      out.writeString(registeredKeyGenerators.get(keyGenerator));
+    } else if (keyGenerator.getClass() == SelectKeyGenerator.class) {
+      out.writeInt(KEY_GENERATOR_SELECT);
+      writeSelectKeyGenerator((SelectKeyGenerator) keyGenerator);
+    } else {
+      throw new UnsupportedElementException("key generator " + keyGenerator.getClass().getName());
+    }
+  }
+
+  private void writeSelectKeyGenerator(SelectKeyGenerator keyGenerator) throws IOException {
+    MetaObject metaKeyGenerator = SystemMetaObject.forObject(keyGenerator);
+    out.writeString(((MappedStatement) metaKeyGenerator.getValue("keyStatement")).getId());
+    out.writeBoolean((Boolean) metaKeyGenerator.getValue("executeBefore"));
+  }
+
+  private void writeSqlSource(String statementId, SqlSource sqlSource)
+      throws IOException, UnsupportedElementException {
+    if (sqlSource instanceof RawSqlSource && sqlSource.getClass() == RawSqlSource.class) {
+      // a raw source only wraps the static source it parsed
+      sqlSource = (SqlSource) SystemMetaObject.forObject(sqlSource).getValue("sqlSource");
+    }
+
+    if (sqlSource.getClass() == StaticSqlSource.class) {
+      MetaObject metaSqlSource = SystemMetaObject.forObject(sqlSource);
+      out.writeInt(SQL_SOURCE_STATIC);
+      out.writeString((String) metaSqlSource.getValue("sql"));
+      @SuppressWarnings("unchecked")
+      List<ParameterMapping> parameterMappings = (List<ParameterMapping>) metaSqlSource
+          .getValue("parameterMappings");
+      writeParameterMappings(parameterMappings);
+    } else if (sqlSource.getClass() == DynamicSqlSource.class) {
+      out.writeInt(SQL_SOURCE_DYNAMIC);
+      writeSqlNode((SqlNode) SystemMetaObject.forObject(sqlSource).getValue("rootSqlNode"));
+    } else {
+      throw new UnsupportedElementException("SQL source " + sqlSource.getClass().getName() + " of statement "
+          + statementId);
+    }
+  }
+
+  @SuppressWarnings("unchecked")
+  private void writeSqlNode(SqlNode sqlNode) throws IOException, UnsupportedElementException {
+    MetaObject metaSqlNode = SystemMetaObject.forObject(sqlNode);
+    Class<?> type = sqlNode.getClass();
+    if (type == MixedSqlNode.class) {
+      out.writeInt(NODE_MIXED);
+      writeSqlNodes((List<SqlNode>) metaSqlNode.getValue("contents"));
+    } else if (type == StaticTextSqlNode.class) {
+      out.writeInt(NODE_STATIC_TEXT);
+      out.writeString((String) metaSqlNode.getValue("text"));
+    } else if (type == TextSqlNode.class) {
+      if (metaSqlNode.getValue("injectionFilter") != null) {
+        throw new UnsupportedElementException("text node with an injection filter");
+      }
+      out.writeInt(NODE_TEXT);
+      out.writeString((String) metaSqlNode.getValue("text"));
+    } else if (type == IfSqlNode.class) {
+      out.writeInt(NODE_IF);
+      out.writeString((String) metaSqlNode.getValue("test"));
+      writeSqlNode((SqlNode) metaSqlNode.getValue("contents"));
+    } else if (type == TrimSqlNode.class || type == WhereSqlNode.class || type == SetSqlNode.class) {
+      // where and set nodes are trim nodes with fixed overrides
+      out.writeInt(NODE_TRIM);
+      out.writeString((String) metaSqlNode.getValue("prefix"));
+      out.writeString(joinOverrides((List<String>) metaSqlNode.getValue("prefixesToOverride")));
+      out.writeString((String) metaSqlNode.getValue("suffix"));
+      out.writeString(joinOverrides((List<String>) metaSqlNode.getValue("suffixesToOverride")));
+      writeSqlNode((SqlNode) metaSqlNode.getValue("contents"));
+    } else if (type == ForEachSqlNode.class) {
+      out.writeInt(NODE_FOREACH);
+      out.writeString((String) metaSqlNode.getValue("collectionExpression"));
+      out.writeString((String) metaSqlNode.getValue("index"));
+      out.writeString((String) metaSqlNode.getValue("item"));
+      out.writeString((String) metaSqlNode.getValue("open"));
+      out.writeString((String) metaSqlNode.getValue("close"));
+      out.writeString((String) metaSqlNode.getValue("separator"));
+      writeSqlNode((SqlNode) metaSqlNode.getValue("contents"));
+    } else if (type == ChooseSqlNode.class) {
+      out.writeInt(NODE_CHOOSE);
+      writeSqlNodes((List<SqlNode>) metaSqlNode.getValue("ifSqlNodes"));
+      SqlNode defaultSqlNode = (SqlNode) metaSqlNode.getValue("defaultSqlNode");
+      out.writeBoolean(defaultSqlNode != null);
+      if (defaultSqlNode != null) {
+        writeSqlNode(defaultSqlNode);
+      }
+    } else if (type == VarDeclSqlNode.class) {
+      out.writeInt(NODE_VAR_DECL);
+      out.writeString((String) metaSqlNode.getValue("name"));
+      out.writeString((String) metaSqlNode.getValue("expression"));
+    } else {
+      throw new UnsupportedElementException("SQL node " + type.getName());
+    }
+  }
+
+  private void writeSqlNodes(List<SqlNode> sqlNodes) throws IOException, UnsupportedElementException {
+    out.writeInt(sqlNodes.size());
+    for (SqlNode sqlNode : sqlNodes) {
+      writeSqlNode(sqlNode);
+    }
+  }
+
+  private void writeParameterMap(ParameterMap parameterMap) throws IOException {
+    out.writeString(parameterMap.getId());
+    writeClass(parameterMap.getType());
+    writeParameterMappings(parameterMap.getParameterMappings());
+  }
+
+  private void writeParameterMappings(List<ParameterMapping> parameterMappings) throws IOException {
+    out.writeInt(parameterMappings.size());
+    for (ParameterMapping parameterMapping : parameterMappings) {
+      out.writeString(parameterMapping.getProperty());
+      out.writeEnum(parameterMapping.getMode());
+      writeClass(parameterMapping.getJavaType());
+      out.writeEnum(parameterMapping.getJdbcType());
+      out.writeNullableInt(parameterMapping.getNumericScale());
+      writeClass(parameterMapping.getTypeHandler() == null ? null : parameterMapping.getTypeHandler().getClass());
+      out.writeString(parameterMapping.getResultMapId());
+      out.writeString(parameterMapping.getJdbcTypeName());
+      out.writeString(parameterMapping.getExpression());
+    }
+  }
+
+  private void writeResultMap(ResultMap resultMap) throws IOException {
+    out.writeString(resultMap.getId());
+    writeClass(resultMap.getType());
+    out.writeNullableBoolean(resultMap.getAutoMapping());
+    writeResultMappings(resultMap.getResultMappings());
+    Discriminator discriminator = resultMap.getDiscriminator();
+    out.writeBoolean(discriminator != null);
+    if (discriminator != null) {
+      writeResultMapping(discriminator.getResultMapping());
+      Map<String, String> discriminatorMap = new TreeMap<String, String>(discriminator.getDiscriminatorMap());
+      out.writeInt(discriminatorMap.size());
+      for (Map.Entry<String, String> entry : discriminatorMap.entrySet()) {
+        out.writeString(entry.getKey());
+        out.writeString(entry.getValue());
+      }
+    }
+    out.writeBoolean(resultMap.hasNestedResultMaps());
+  }
+
+  private void writeResultMappings(List<ResultMapping> resultMappings) throws IOException {
+    out.writeInt(resultMappings.size());
+    for (ResultMapping resultMapping : resultMappings) {
+      writeResultMapping(resultMapping);
+    }
+  }
+
+  private void writeResultMapping(ResultMapping resultMapping) throws IOException {
+    out.writeString(resultMapping.getProperty());
+    out.writeString(resultMapping.getColumn());
+    writeClass(resultMapping.getJavaType());
+    out.writeEnum(resultMapping.getJdbcType());
+    writeClass(resultMapping.getTypeHandler() == null ? null : resultMapping.getTypeHandler().getClass());
+    out.writeString(resultMapping.getNestedResultMapId());
+    out.writeString(resultMapping.getNestedQueryId());
+    Set<String> notNullColumns = new TreeSet<String>(resultMapping.getNotNullColumns());
+    out.writeInt(notNullColumns.size());
+    for (String notNullColumn : notNullColumns) {
+      out.writeString(notNullColumn);
+    }
+    out.writeString(resultMapping.getColumnPrefix());
+    out.writeInt(resultMapping.getFlags().size());
+    for (ResultFlag flag : resultMapping.getFlags()) {
+      out.writeEnum(flag);
+    }
+    writeResultMappings(resultMapping.getComposites());
+    out.writeString(resultMapping.getResultSet());
+    out.writeString(resultMapping.getForeignColumn());
+    out.writeBoolean(resultMapping.isLazy());
+  }
+
+  private void writeProperties(Properties properties) throws IOException {
+    Set<String> names = properties == null ? Collections.<String>emptySet()
+        : new TreeSet<String>(properties.stringPropertyNames());
+    out.writeInt(names.size());
+    for (String name : names) {
+      out.writeString(name);
+      out.writeString(properties.getProperty(name));
+    }
+  }
+
+  private void writeClass(Class<?> type) throws IOException {
+    if (type == null) {
+      out.writeString(null);
+      return;
+    }
+    out.writeString(type.getName());
+    if (!type.isPrimitive() && !type.isArray()) {
+      referencedClasses.add(type.getName());
+    }
+  }
+
+  private static String join(String[] values) {
+    if (values == null) {
+      return null;
+    }
+    StringBuilder joined = new StringBuilder();
+    for (String value : values) {
+      if (joined.length() > 0) {
+        joined.append(',');
+      }
+      joined.append(value);
+    }
+    return joined.toString();
+  }
+
+  private static String joinOverrides(List<String> overrides) {
+    if (overrides == null || overrides.isEmpty()) {
+      return null;
+    }
+    StringBuilder joined = new StringBuilder();
+    for (String override : overrides) {
+      if (joined.length() > 0) {
+        joined.append('|');
+      }
+      joined.append(override);
+    }
+    return joined.toString();
+  }
+
+  /**
+   * Gets the distinct elements of a configuration collection, which also holds the short name aliases.
+   */
+  private static <T> Collection<T> distinct(Collection<?> values, Class<T> type) {
+    Map<Object, T> distinct = new IdentityHashMap<Object, T>();
+    for (Object value : values) {
+      // ambiguous short names are mapped to markers
+      if (type.isInstance(value)) {
+        distinct.put(value, type.cast(value));
+      }
+    }
+    return distinct.values();
+  }
+
+  /**
+   * Thrown when the configuration holds an element the snapshot can not restore.
+   */
+  static final class UnsupportedElementException extends Exception {
+
+    private static final long serialVersionUID = 1L;
+
+    UnsupportedElementException(String message) {
+      super(message);
+    }
+
+  }
+
+}
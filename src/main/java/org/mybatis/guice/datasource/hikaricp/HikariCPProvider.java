@@ -0,0 +1,223 @@
+/**
+ *    Copyright 2009-2017 the original author or authors.
+ *
+ *    Licensed under the Apache License, Version 2.0 (the "License");
+ *    you may not use this file except in compliance with the License.
+ *    You may obtain a copy of the License at
+ *
+ *       http://www.apache.org/licenses/LICENSE-2.0
+ *
+ *    Unless required by applicable law or agreed to in writing, software
+ *    distributed under the License is distributed on an "AS IS" BASIS,
+ *    WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ *    See the License for the specific language governing permissions and
+ *    limitations under the License.
+ */
+package org.mybatis.guice.datasource.hikaricp;
+
+import com.zaxxer.hikari.HikariDataSource;
+import com.zaxxer.hikari.metrics.MetricsTrackerFactory;
+
+import java.util.Properties;
+
+import javax.inject.Inject;
+import javax.inject.Named;
+import javax.inject.Provider;
+import javax.sql.DataSource;
+
+/**
+ * Provides the HikariCP DataSource.
+ *
+ * @since 3.10
+ */
+public final class HikariCPProvider implements Provider<DataSource> {
+
+  private final HikariDataSource dataSource = new HikariDataSource();
+
+  @com.google.inject.Inject(optional = true)
+  public void setAllowPoolSuspension(@Named("hikari.allowPoolSuspension") boolean allowPoolSuspension) {
+    dataSource.setAllowPoolSuspension(allowPoolSuspension);
+  }
+
+  @com.google.inject.Inject(optional = true)
+  public void setAutoCommit(@Named("JDBC.autoCommit") boolean autoCommit) {
+    dataSource.setAutoCommit(autoCommit);
+  }
+
+  /**
+   * Sets the MySQL Connector/J {@code cachePrepStmts} data source property.
+   *
+   * @param cachePrepStmts true to enable the driver prepared statement cache
+   */
+  @com.google.inject.Inject(optional = true)
+  public void setCachePrepStmts(@Named("hikari.cachePrepStmts") boolean cachePrepStmts) {
+    dataSource.addDataSourceProperty("cachePrepStmts", String.valueOf(cachePrepStmts));
+  }
+
+  @com.google.inject.Inject(optional = true)
+  public void setCatalog(@Named("hikari.catalog") String catalog) {
+    dataSource.setCatalog(catalog);
+  }
+
+  @com.google.inject.Inject(optional = true)
+  public void setConnectionInitSql(@Named("hikari.connectionInitSql") String connectionInitSql) {
+    dataSource.setConnectionInitSql(connectionInitSql);
+  }
+
+  @com.google.inject.Inject(optional = true)
+  public void setConnectionTestQuery(@Named("hikari.connectionTestQuery") String connectionTestQuery) {
+    dataSource.setConnectionTestQuery(connectionTestQuery);
+  }
+
+  @com.google.inject.Inject(optional = true)
+  public void setConnectionTimeout(@Named("hikari.connectionTimeout") long connectionTimeoutMs) {
+    dataSource.setConnectionTimeout(connectionTimeoutMs);
+  }
+
+  @Inject
+  public void setDriverClassName(@Named("JDBC.driver") String driverClassName) {
+    dataSource.setDriverClassName(driverClassName);
+  }
+
+  @com.google.inject.Inject(optional = true)
+  public void setDriverProperties(@Named("JDBC.driverProperties") Properties driverProperties) {
+    dataSource.setDataSourceProperties(driverProperties);
+  }
+
+  @com.google.inject.Inject(optional = true)
+  public void setHealthCheckProperties(@Named("hikari.healthCheckProperties") Properties healthCheckProperties) {
+    dataSource.setHealthCheckProperties(healthCheckProperties);
+  }
+
+  /**
+   * Sets the Dropwizard {@code HealthCheckRegistry} the pool registers its health checks with.
+   *
+   * @param healthCheckRegistry the health check registry
+   */
+  @com.google.inject.Inject(optional = true)
+  public void setHealthCheckRegistry(@Named("hikari.healthCheckRegistry") Object healthCheckRegistry) {
+    dataSource.setHealthCheckRegistry(healthCheckRegistry);
+  }
+
+  @com.google.inject.Inject(optional = true)
+  public void setIdleTimeout(@Named("hikari.idleTimeout") long idleTimeoutMs) {
+    dataSource.setIdleTimeout(idleTimeoutMs);
+  }
+
+  @com.google.inject.Inject(optional = true)
+  public void setInitializationFailFast(@Named("hikari.initializationFailFast") boolean failFast) {
+    dataSource.setInitializationFailFast(failFast);
+  }
+
+  @com.google.inject.Inject(optional = true)
+  public void setIsolateInternalQueries(@Named("hikari.isolateInternalQueries") boolean isolate) {
+    dataSource.setIsolateInternalQueries(isolate);
+  }
+
+  @Inject
+  public void setJdbcUrl(@Named("JDBC.url") String jdbcUrl) {
+    dataSource.setJdbcUrl(jdbcUrl);
+  }
+
+  @com.google.inject.Inject(optional = true)
+  public void setLeakDetectionThreshold(@Named("hikari.leakDetectionThreshold") long leakDetectionThresholdMs) {
+    dataSource.setLeakDetectionThreshold(leakDetectionThresholdMs);
+  }
+
+  @com.google.inject.Inject(optional = true)
+  public void setMaximumPoolSize(@Named("hikari.maximumPoolSize") int maxPoolSize) {
+    dataSource.setMaximumPoolSize(maxPoolSize);
+  }
+
+  @com.google.inject.Inject(optional = true)
+  public void setMaxLifetime(@Named("hikari.maxLifetime") long maxLifetimeMs) {
+    dataSource.setMaxLifetime(maxLifetimeMs);
+  }
+
+  /**
+   * Sets the Dropwizard {@code MetricRegistry} the pool records its metrics to.
+   *
+   * @param metricRegistry the metric registry
+   */
+  @com.google.inject.Inject(optional = true)
+  public void setMetricRegistry(@Named("hikari.metricRegistry") Object metricRegistry) {
+    dataSource.setMetricRegistry(metricRegistry);
+  }
+
+  @com.google.inject.Inject(optional = true)
+  public void setMetricsTrackerFactory(
+      @Named("hikari.metricsTrackerFactory") MetricsTrackerFactory metricsTrackerFactory) {
+    dataSource.setMetricsTrackerFactory(metricsTrackerFactory);
+  }
+
+  @com.google.inject.Inject(optional = true)
+  public void setMinimumIdle(@Named("hikari.minimumIdle") int minIdle) {
+    dataSource.setMinimumIdle(minIdle);
+  }
+
+  @Inject
+  public void setPassword(@Named("JDBC.password") String password) {
+    dataSource.setPassword(password);
+  }
+
+  @com.google.inject.Inject(optional = true)
+  public void setPoolName(@Named("hikari.poolName") String poolName) {
+    dataSource.setPoolName(poolName);
+  }
+
+  /**
+   * Sets the MySQL Connector/J {@code prepStmtCacheSize} data source property.
+   *
+   * @param prepStmtCacheSize the number of prepared statements cached per connection
+   */
+  @com.google.inject.Inject(optional = true)
+  public void setPrepStmtCacheSize(@Named("hikari.prepStmtCacheSize") int prepStmtCacheSize) {
+    dataSource.addDataSourceProperty("prepStmtCacheSize", String.valueOf(prepStmtCacheSize));
+  }
+
+  /**
+   * Sets the MySQL Connector/J {@code prepStmtCacheSqlLimit} data source property.
+   *
+   * @param prepStmtCacheSqlLimit the maximum length of the cached prepared statements SQL
+   */
+  @com.google.inject.Inject(optional = true)
+  public void setPrepStmtCacheSqlLimit(@Named("hikari.prepStmtCacheSqlLimit") int prepStmtCacheSqlLimit) {
+    dataSource.addDataSourceProperty("prepStmtCacheSqlLimit", String.valueOf(prepStmtCacheSqlLimit));
+  }
+
+  @com.google.inject.Inject(optional = true)
+  public void setReadOnly(@Named("hikari.readOnly") boolean readOnly) {
+    dataSource.setReadOnly(readOnly);
+  }
+
+  @com.google.inject.Inject(optional = true)
+  public void setRegisterMbeans(@Named("hikari.registerMbeans") boolean register) {
+    dataSource.setRegisterMbeans(register);
+  }
+
+  /**
+   * Sets the default transaction isolation, i.e. {@code TRANSACTION_READ_COMMITTED}.
+   *
+   * @param isolationLevel the name of the {@code java.sql.Connection} isolation level constant
+   */
+  @com.google.inject.Inject(optional = true)
+  public void setTransactionIsolation(@Named("hikari.transactionIsolation") String isolationLevel) {
+    dataSource.setTransactionIsolation(isolationLevel);
+  }
+
+  @Inject
+  public void setUsername(@Named("JDBC.username") String username) {
+    dataSource.setUsername(username);
+  }
+
+  @com.google.inject.Inject(optional = true)
+  public void setValidationTimeout(@Named("hikari.validationTimeout") long validationTimeoutMs) {
+    dataSource.setValidationTimeout(validationTimeoutMs);
+  }
+
+  @Override
+  public DataSource get() {
+    return dataSource;
+  }
+
+}
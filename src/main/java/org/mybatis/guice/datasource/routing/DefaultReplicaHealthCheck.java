@@ -0,0 +1,87 @@
+/**
+ *    Copyright 2009-2017 the original author or authors.
+ *
+ *    Licensed under the Apache License, Version 2.0 (the "License");
+ *    you may not use this file except in compliance with the License.
+ *    You may obtain a copy of the License at
+ *
+ *       http://www.apache.org/licenses/LICENSE-2.0
+ *
+ *    Unless required by applicable law or agreed to in writing, software
+ *    distributed under the License is distributed on an "AS IS" BASIS,
+ *    WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ *    See the License for the specific language governing permissions and
+ *    limitations under the License.
+ */
+package org.mybatis.guice.datasource.routing;
+
+import java.sql.Connection;
+import java.sql.ResultSet;
+import java.sql.Statement;
+
+import javax.inject.Named;
+import javax.sql.DataSource;
+
+/**
+ * Considers a replica healthy when one of its connections is valid and, if a lag query is configured, its
+ * replication lag does not exceed the configured maximum.
+ * <p>
+ * The lag query is vendor specific and has to return the replication lag in seconds as the first column of
+ * its first row, i.e. on PostgreSQL
+ * {@code select extract(epoch from now() - pg_last_xact_replay_timestamp())}.
+ * </p>
+ *
+ * @since 3.10
+ */
+public final class DefaultReplicaHealthCheck implements ReplicaHealthCheck {
+
+  private int validationTimeout = 1;
+
+  private String lagQuery;
+
+  private double maxLagSeconds = 10;
+
+  @com.google.inject.Inject(optional = true)
+  public void setValidationTimeout(@Named("routing.healthCheck.validationTimeout") int validationTimeout) {
+    this.validationTimeout = validationTimeout;
+  }
+
+  @com.google.inject.Inject(optional = true)
+  public void setLagQuery(@Named("routing.healthCheck.lagQuery") String lagQuery) {
+    this.lagQuery = lagQuery;
+  }
+
+  @com.google.inject.Inject(optional = true)
+  public void setMaxLagSeconds(@Named("routing.healthCheck.maxLagSeconds") double maxLagSeconds) {
+    this.maxLagSeconds = maxLagSeconds;
+  }
+
+  @Override
+  public boolean isHealthy(DataSource replica) throws Exception {
+    Connection connection = replica.getConnection();
+    try {
+      if (!connection.isValid(validationTimeout)) {
+        return false;
+      }
+      if (lagQuery == null) {
+        return true;
+      }
+
+      Statement statement = connection.createStatement();
+      try {
+        ResultSet resultSet = statement.executeQuery(lagQuery);
+        try {
+          // no lag is reported when the replica did not replay anything yet
+          return !resultSet.next() || resultSet.getDouble(1) <= maxLagSeconds;
+        } finally {
+          resultSet.close();
+        }
+      } finally {
+        statement.close();
+      }
+    } finally {
+      connection.close();
+    }
+  }
+
+}
@@ -0,0 +1,385 @@
+/**
+ *    Copyright 2009-2017 the original author or authors.
+ *
+ *    Licensed under the Apache License, Version 2.0 (the "License");
+ *    you may not use this file except in compliance with the License.
+ *    You may obtain a copy of the License at
+ *
+ *       http://www.apache.org/licenses/LICENSE-2.0
+ *
+ *    Unless required by applicable law or agreed to in writing, software
+ *    distributed under the License is distributed on an "AS IS" BASIS,
+ *    WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ *    See the License for the specific language governing permissions and
+ *    limitations under the License.
+ */
+package org.mybatis.guice.datasource.routing;
+
+import java.io.PrintWriter;
+import java.lang.reflect.InvocationHandler;
+import java.lang.reflect.InvocationTargetException;
+import java.lang.reflect.Method;
+import java.lang.reflect.Proxy;
+import java.sql.Connection;
+import java.sql.SQLException;
+import java.sql.SQLFeatureNotSupportedException;
+import java.util.List;
+import java.util.concurrent.Executors;
+import java.util.concurrent.ScheduledExecutorService;
+import java.util.concurrent.ThreadFactory;
+import java.util.concurrent.TimeUnit;
+import java.util.concurrent.atomic.AtomicBoolean;
+import java.util.concurrent.atomic.AtomicInteger;
+import java.util.concurrent.atomic.AtomicLong;
+import java.util.logging.Logger;
+
+import javax.sql.DataSource;
+
+import org.apache.ibatis.logging.Log;
+import org.apache.ibatis.logging.LogFactory;
+import org.mybatis.guice.transactional.ReadOnlyContext;
+import org.mybatis.guice.transactional.Transactional;
+
+/**
+ * A {@code DataSource} that hands out connections of the writer, unless the current thread runs inside a
+ * {@link Transactional#readOnly()} transaction of the environment this data source belongs to, in which case a
+ * healthy read replica is used.
+ * <p>
+ * When no replica is healthy, or the selected one fails to open a connection, the writer is used. A replica that
+ * failed to open a connection is tried again after the {@link #setReplicaRetryInterval(long, TimeUnit) retry
+ * interval}, one found unhealthy by a health check only when a later check finds it healthy.
+ * </p>
+ *
+ * @since 3.10
+ */
+public class ReadWriteRoutingDataSource implements DataSource {
+
+  private static final Log log = LogFactory.getLog(ReadWriteRoutingDataSource.class);
+
+  private final DataSource writer;
+
+  private final Replica[] replicas;
+
+  private final ReplicaSelection replicaSelection;
+
+  private final AtomicInteger nextReplica = new AtomicInteger();
+
+  private volatile long replicaRetryInterval = TimeUnit.SECONDS.toNanos(30);
+
+  private ScheduledExecutorService healthCheckExecutor;
+
+  public ReadWriteRoutingDataSource(DataSource writer, List<DataSource> readers, ReplicaSelection replicaSelection) {
+    if (writer == null) {
+      throw new IllegalArgumentException("Parameter 'writer' must be not null");
+    }
+    if (readers == null) {
+      throw new IllegalArgumentException("Parameter 'readers' must be not null");
+    }
+    if (replicaSelection == null) {
+      throw new IllegalArgumentException("Parameter 'replicaSelection' must be not null");
+    }
+    this.writer = writer;
+    this.replicas = new Replica[readers.size()];
+    for (int i = 0; i < replicas.length; i++) {
+      replicas[i] = new Replica(i, readers.get(i));
+    }
+    this.replicaSelection = replicaSelection;
+  }
+
+  /**
+   * Gets the writer data source.
+   *
+   * @return the writer data source
+   */
+  public DataSource getWriter() {
+    return writer;
+  }
+
+  /**
+   * Sets how long a read replica that failed to open a connection stays out of rotation before it is tried again,
+   * 30 seconds by default.
+   *
+   * @param interval the retry interval
+   * @param unit the interval unit
+   */
+  public void setReplicaRetryInterval(long interval, TimeUnit unit) {
+    if (interval < 0) {
+      throw new IllegalArgumentException("Parameter 'interval' must be not negative");
+    }
+    if (unit == null) {
+      throw new IllegalArgumentException("Parameter 'unit' must be not null");
+    }
+    this.replicaRetryInterval = unit.toNanos(interval);
+  }
+
+  /**
+   * Checks if the read replica at the given index is in rotation.
+   *
+   * @param index the read replica index
+   * @return true if the replica is in rotation
+   */
+  public boolean isReplicaHealthy(int index) {
+    return replicas[index].healthy;
+  }
+
+  /**
+   * Checks every read replica with the given health check, taking unhealthy ones out of rotation and putting
+   * recovered ones back.
+   *
+   * @param healthCheck the health check
+   */
+  public void checkReplicas(ReplicaHealthCheck healthCheck) {
+    for (Replica replica : replicas) {
+      boolean healthy;
+      try {
+        healthy = healthCheck.isHealthy(replica.dataSource);
+      } catch (Exception e) {
+        if (log.isDebugEnabled()) {
+          log.debug("Read replica " + replica.index + " health check failed: " + e.getMessage());
+        }
+        healthy = false;
+      }
+      replica.setHealthy(healthy);
+    }
+  }
+
+  /**
+   * Starts checking the read replicas periodically, on a dedicated daemon thread.
+   *
+   * @param healthCheck the health check
+   * @param interval the interval between two checks
+   * @param unit the interval unit
+   */
+  public synchronized void startHealthCheck(final ReplicaHealthCheck healthCheck, long interval, TimeUnit unit) {
+    if (healthCheckExecutor != null) {
+      throw new IllegalStateException("Read replicas health check already started");
+    }
+    healthCheckExecutor = Executors.newSingleThreadScheduledExecutor(new ThreadFactory() {
+      @Override
+      public Thread newThread(Runnable runnable) {
+        Thread thread = new Thread(runnable, "mybatis-guice-replica-health-check");
+        thread.setDaemon(true);
+        return thread;
+      }
+    });
+    healthCheckExecutor.scheduleWithFixedDelay(new Runnable() {
+      @Override
+      public void run() {
+        checkReplicas(healthCheck);
+      }
+    }, interval, interval, unit);
+  }
+
+  /**
+   * Stops the periodic health check, if started.
+   */
+  public synchronized void stopHealthCheck() {
+    if (healthCheckExecutor != null) {
+      healthCheckExecutor.shutdownNow();
+      healthCheckExecutor = null;
+    }
+  }
+
+  @Override
+  public Connection getConnection() throws SQLException {
+    return getConnection(null, null, false);
+  }
+
+  @Override
+  public Connection getConnection(String username, String password) throws SQLException {
+    return getConnection(username, password, true);
+  }
+
+  private Connection getConnection(String username, String password, boolean withCredentials) throws SQLException {
+    if (ReadOnlyContext.isReadOnly(this)) {
+      Replica replica = selectReplica();
+      if (replica != null) {
+        try {
+          Connection connection = replica.getConnection(username, password, withCredentials,
+              replicaSelection == ReplicaSelection.LEAST_LOADED);
+          replica.retrySucceeded();
+          return connection;
+        } catch (SQLException e) {
+          log.warn("Read replica " + replica.index + " failed to open a connection, using the writer: "
+              + e.getMessage());
+          replica.failed(System.nanoTime() + replicaRetryInterval);
+        }
+      }
+    }
+    return withCredentials ? writer.getConnection(username, password) : writer.getConnection();
+  }
+
+  private Replica selectReplica() {
+    int count = replicas.length;
+    if (count == 0) {
+      return null;
+    }
+
+    long now = System.nanoTime();
+    for (Replica replica : replicas) {
+      if (replica.acquireRetry(now, replicaRetryInterval)) {
+        return replica;
+      }
+    }
+
+    if (replicaSelection == ReplicaSelection.LEAST_LOADED) {
+      Replica selected = null;
+      for (Replica replica : replicas) {
+        if (replica.healthy && (selected == null || replica.active.get() < selected.active.get())) {
+          selected = replica;
+        }
+      }
+      return selected;
+    }
+
+    int start = (nextReplica.getAndIncrement() & Integer.MAX_VALUE) % count;
+    for (int i = 0; i < count; i++) {
+      Replica replica = replicas[(start + i) % count];
+      if (replica.healthy) {
+        return replica;
+      }
+    }
+    return null;
+  }
+
+  @Override
+  public PrintWriter getLogWriter() throws SQLException {
+    return writer.getLogWriter();
+  }
+
+  @Override
+  public void setLogWriter(PrintWriter out) throws SQLException {
+    writer.setLogWriter(out);
+  }
+
+  @Override
+  public void setLoginTimeout(int seconds) throws SQLException {
+    writer.setLoginTimeout(seconds);
+  }
+
+  @Override
+  public int getLoginTimeout() throws SQLException {
+    return writer.getLoginTimeout();
+  }
+
+  public Logger getParentLogger() throws SQLFeatureNotSupportedException {
+    throw new SQLFeatureNotSupportedException();
+  }
+
+  @Override
+  public <T> T unwrap(Class<T> iface) throws SQLException {
+    if (iface.isInstance(this)) {
+      return iface.cast(this);
+    }
+    return writer.unwrap(iface);
+  }
+
+  @Override
+  public boolean isWrapperFor(Class<?> iface) throws SQLException {
+    return iface.isInstance(this) || writer.isWrapperFor(iface);
+  }
+
+  private static final class Replica {
+
+    final int index;
+
+    final DataSource dataSource;
+
+    final AtomicInteger active = new AtomicInteger();
+
+    final AtomicLong retryAt = new AtomicLong();
+
+    volatile boolean healthy = true;
+
+    volatile boolean retryable;
+
+    Replica(int index, DataSource dataSource) {
+      this.index = index;
+      this.dataSource = dataSource;
+    }
+
+    void setHealthy(boolean healthy) {
+      retryable = false;
+      updateHealthy(healthy);
+    }
+
+    void failed(long retryAt) {
+      this.retryAt.set(retryAt);
+      retryable = true;
+      updateHealthy(false);
+    }
+
+    /**
+     * Lets a single caller try again a replica whose retry interval elapsed, postponing the next retry.
+     */
+    boolean acquireRetry(long now, long retryInterval) {
+      if (!retryable) {
+        return false;
+      }
+      long at = retryAt.get();
+      return now - at >= 0 && retryAt.compareAndSet(at, now + retryInterval);
+    }
+
+    void retrySucceeded() {
+      if (retryable) {
+        setHealthy(true);
+      }
+    }
+
+    private void updateHealthy(boolean healthy) {
+      if (this.healthy != healthy) {
+        if (healthy) {
+          log.warn("Read replica " + index + " is healthy, putting it back in rotation");
+        } else {
+          log.warn("Read replica " + index + " is unhealthy, taking it out of rotation");
+        }
+        this.healthy = healthy;
+      }
+    }
+
+    Connection getConnection(String username, String password, boolean withCredentials, boolean trackActive)
+        throws SQLException {
+      Connection connection = withCredentials ? dataSource.getConnection(username, password)
+          : dataSource.getConnection();
+      if (!trackActive) {
+        return connection;
+      }
+      active.incrementAndGet();
+      return (Connection) Proxy.newProxyInstance(Connection.class.getClassLoader(), new Class<?>[] { Connection.class },
+          new ActiveConnectionHandler(connection, active));
+    }
+
+  }
+
+  /**
+   * Keeps the count of connections in use of a replica, for {@link ReplicaSelection#LEAST_LOADED}.
+   */
+  private static final class ActiveConnectionHandler implements InvocationHandler {
+
+    private final Connection connection;
+
+    private final AtomicInteger active;
+
+    private final AtomicBoolean closed = new AtomicBoolean();
+
+    ActiveConnectionHandler(Connection connection, AtomicInteger active) {
+      this.connection = connection;
+      this.active = active;
+    }
+
+    @Override
+    public Object invoke(Object proxy, Method method, Object[] args) throws Throwable {
+      if ("close".equals(method.getName()) && method.getParameterTypes().length == 0
+          && closed.compareAndSet(false, true)) {
+        active.decrementAndGet();
+      }
+      try {
+        return method.invoke(connection, args);
+      } catch (InvocationTargetException e) {
+        throw e.getCause();
+      }
+    }
+
+  }
+
+}
@@ -0,0 +1,264 @@
+/**
+ *    Copyright 2009-2017 the original author or authors.
+ *
+ *    Licensed under the Apache License, Version 2.0 (the "License");
+ *    you may not use this file except in compliance with the License.
+ *    You may obtain a copy of the License at
+ *
+ *       http://www.apache.org/licenses/LICENSE-2.0
+ *
+ *    Unless required by applicable law or agreed to in writing, software
+ *    distributed under the License is distributed on an "AS IS" BASIS,
+ *    WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ *    See the License for the specific language governing permissions and
+ *    limitations under the License.
+ */
+package org.mybatis.guice.datasource.routing;
+
+import static com.google.inject.name.Names.named;
+
+import com.google.inject.AbstractModule;
+import com.google.inject.Injector;
+import com.google.inject.Key;
+import com.google.inject.PrivateModule;
+import com.google.inject.Scopes;
+import com.google.inject.name.Names;
+
+import java.util.ArrayList;
+import java.util.List;
+import java.util.Properties;
+import java.util.concurrent.TimeUnit;
+
+import javax.inject.Inject;
+import javax.inject.Provider;
+import javax.sql.DataSource;
+
+/**
+ * Binds the {@code DataSource} to a {@link ReadWriteRoutingDataSource}, to be installed instead of setting the
+ * DataSource Provider type of the MyBatis module.
+ * <p>
+ * The writer and every reader are built by their own DataSource Provider type, configured with their own
+ * {@code JDBC.*} and pool properties; these properties must not be bound in the enclosing module too.
+ * </p>
+ *
+ * @since 3.10
+ */
+public final class ReadWriteRoutingDataSourceModule extends AbstractModule {
+
+  private static final String WRITER_NAME = "routing.writer";
+
+  private static final String READER_NAME_PREFIX = "routing.reader.";
+
+  private final Target writer;
+
+  private final List<Target> readers;
+
+  private final ReplicaSelection replicaSelection;
+
+  private final Class<? extends ReplicaHealthCheck> healthCheckClass;
+
+  private final long healthCheckInterval;
+
+  private final TimeUnit healthCheckIntervalUnit;
+
+  private ReadWriteRoutingDataSourceModule(Builder builder) {
+    this.writer = builder.writer;
+    this.readers = new ArrayList<Target>(builder.readers);
+    this.replicaSelection = builder.replicaSelection;
+    this.healthCheckClass = builder.healthCheckClass;
+    this.healthCheckInterval = builder.healthCheckInterval;
+    this.healthCheckIntervalUnit = builder.healthCheckIntervalUnit;
+  }
+
+  @Override
+  protected void configure() {
+    bindTarget(WRITER_NAME, writer);
+    for (int i = 0; i < readers.size(); i++) {
+      bindTarget(READER_NAME_PREFIX + i, readers.get(i));
+    }
+    bind(DataSource.class).toProvider(new RoutingDataSourceProvider(readers.size(), replicaSelection,
+        healthCheckClass, healthCheckInterval, healthCheckIntervalUnit)).in(Scopes.SINGLETON);
+  }
+
+  private void bindTarget(final String name, final Target target) {
+    install(new PrivateModule() {
+      @Override
+      protected void configure() {
+        Names.bindProperties(binder(), target.properties);
+        bind(DataSource.class).annotatedWith(named(name)).toProvider(target.providerType).in(Scopes.SINGLETON);
+        expose(DataSource.class).annotatedWith(named(name));
+      }
+    });
+  }
+
+  private static final class Target {
+
+    final Class<? extends Provider<DataSource>> providerType;
+
+    final Properties properties;
+
+    Target(Class<? extends Provider<DataSource>> providerType, Properties properties) {
+      this.providerType = providerType;
+      this.properties = properties;
+    }
+
+  }
+
+  private static final class RoutingDataSourceProvider implements Provider<DataSource> {
+
+    private final int readersCount;
+
+    private final ReplicaSelection replicaSelection;
+
+    private final Class<? extends ReplicaHealthCheck> healthCheckClass;
+
+    private final long healthCheckInterval;
+
+    private final TimeUnit healthCheckIntervalUnit;
+
+    private Injector injector;
+
+    RoutingDataSourceProvider(int readersCount, ReplicaSelection replicaSelection,
+        Class<? extends ReplicaHealthCheck> healthCheckClass, long healthCheckInterval,
+        TimeUnit healthCheckIntervalUnit) {
+      this.readersCount = readersCount;
+      this.replicaSelection = replicaSelection;
+      this.healthCheckClass = healthCheckClass;
+      this.healthCheckInterval = healthCheckInterval;
+      this.healthCheckIntervalUnit = healthCheckIntervalUnit;
+    }
+
+    @Inject
+    public void setInjector(Injector injector) {
+      this.injector = injector;
+    }
+
+    @Override
+    public DataSource get() {
+      List<DataSource> readers = new ArrayList<DataSource>(readersCount);
+      for (int i = 0; i < readersCount; i++) {
+        readers.add(injector.getInstance(Key.get(DataSource.class, named(READER_NAME_PREFIX + i))));
+      }
+      ReadWriteRoutingDataSource dataSource = new ReadWriteRoutingDataSource(
+          injector.getInstance(Key.get(DataSource.class, named(WRITER_NAME))), readers, replicaSelection);
+      if (readersCount > 0 && healthCheckInterval > 0) {
+        dataSource.startHealthCheck(injector.getInstance(healthCheckClass), healthCheckInterval,
+            healthCheckIntervalUnit);
+      }
+      return dataSource;
+    }
+
+  }
+
+  public static final class Builder {
+
+    private Target writer;
+
+    private final List<Target> readers = new ArrayList<Target>();
+
+    private ReplicaSelection replicaSelection = ReplicaSelection.ROUND_ROBIN;
+
+    private Class<? extends ReplicaHealthCheck> healthCheckClass = DefaultReplicaHealthCheck.class;
+
+    private long healthCheckInterval = 30;
+
+    private TimeUnit healthCheckIntervalUnit = TimeUnit.SECONDS;
+
+    /**
+     * Sets the writer DataSource Provider type and its properties.
+     *
+     * @param providerType the writer DataSource Provider type
+     * @param properties the writer properties, like {@code JDBC.url}
+     * @return the builder
+     */
+    public Builder setWriter(Class<? extends Provider<DataSource>> providerType, Properties properties) {
+      if (providerType == null) {
+        throw new IllegalArgumentException("Parameter 'providerType' must be not null");
+      }
+      if (properties == null) {
+        throw new IllegalArgumentException("Parameter 'properties' must be not null");
+      }
+      this.writer = new Target(providerType, properties);
+      return this;
+    }
+
+    /**
+     * Adds a read replica DataSource Provider type and its properties.
+     *
+     * @param providerType the read replica DataSource Provider type
+     * @param properties the read replica properties, like {@code JDBC.url}
+     * @return the builder
+     */
+    public Builder addReader(Class<? extends Provider<DataSource>> providerType, Properties properties) {
+      if (providerType == null) {
+        throw new IllegalArgumentException("Parameter 'providerType' must be not null");
+      }
+      if (properties == null) {
+        throw new IllegalArgumentException("Parameter 'properties' must be not null");
+      }
+      this.readers.add(new Target(providerType, properties));
+      return this;
+    }
+
+    /**
+     * Sets how read replicas are picked, round robin by default.
+     *
+     * @param replicaSelection the replica selection
+     * @return the builder
+     */
+    public Builder setReplicaSelection(ReplicaSelection replicaSelection) {
+      if (replicaSelection == null) {
+        throw new IllegalArgumentException("Parameter 'replicaSelection' must be not null");
+      }
+      this.replicaSelection = replicaSelection;
+      return this;
+    }
+
+    /**
+     * Sets the read replica health check type, {@link DefaultReplicaHealthCheck} by default.
+     *
+     * @param healthCheckClass the health check type
+     * @return the builder
+     */
+    public Builder setHealthCheckClass(Class<? extends ReplicaHealthCheck> healthCheckClass) {
+      if (healthCheckClass == null) {
+        throw new IllegalArgumentException("Parameter 'healthCheckClass' must be not null");
+      }
+      this.healthCheckClass = healthCheckClass;
+      return this;
+    }
+
+    /**
+     * Sets the interval between two read replica health checks, 30 seconds by default; 0 disables them.
+     *
+     * @param interval the interval
+     * @param unit the interval unit
+     * @return the builder
+     */
+    public Builder setHealthCheckInterval(long interval, TimeUnit unit) {
+      if (interval < 0) {
+        throw new IllegalArgumentException("Parameter 'interval' must be not negative");
+      }
+      if (unit == null) {
+        throw new IllegalArgumentException("Parameter 'unit' must be not null");
+      }
+      this.healthCheckInterval = interval;
+      this.healthCheckIntervalUnit = unit;
+      return this;
+    }
+
+    /**
+     * Creates the module.
+     *
+     * @return the read/write routing data source module
+     */
+    public ReadWriteRoutingDataSourceModule create() {
+      if (writer == null) {
+        throw new IllegalStateException("The writer has to be set");
+      }
+      return new ReadWriteRoutingDataSourceModule(this);
+    }
+
+  }
+
+}
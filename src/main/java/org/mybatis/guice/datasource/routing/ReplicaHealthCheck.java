@@ -0,0 +1,37 @@
+/**
+ *    Copyright 2009-2017 the original author or authors.
+ *
+ *    Licensed under the Apache License, Version 2.0 (the "License");
+ *    you may not use this file except in compliance with the License.
+ *    You may obtain a copy of the License at
+ *
+ *       http://www.apache.org/licenses/LICENSE-2.0
+ *
+ *    Unless required by applicable law or agreed to in writing, software
+ *    distributed under the License is distributed on an "AS IS" BASIS,
+ *    WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ *    See the License for the specific language governing permissions and
+ *    limitations under the License.
+ */
+package org.mybatis.guice.datasource.routing;
+
+import javax.sql.DataSource;
+
+/**
+ * Checks if a read replica can serve read-only transactions; unhealthy replicas are taken out of rotation
+ * until a later check succeeds.
+ *
+ * @since 3.10
+ */
+public interface ReplicaHealthCheck {
+
+  /**
+   * Checks the given read replica.
+   *
+   * @param replica the read replica
+   * @return true if the replica can serve read-only transactions
+   * @throws Exception if the replica cannot be checked, it is considered unhealthy
+   */
+  boolean isHealthy(DataSource replica) throws Exception;
+
+}
@@ -0,0 +1,35 @@
+/**
+ *    Copyright 2009-2017 the original author or authors.
+ *
+ *    Licensed under the Apache License, Version 2.0 (the "License");
+ *    you may not use this file except in compliance with the License.
+ *    You may obtain a copy of the License at
+ *
+ *       http://www.apache.org/licenses/LICENSE-2.0
+ *
+ *    Unless required by applicable law or agreed to in writing, software
+ *    distributed under the License is distributed on an "AS IS" BASIS,
+ *    WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ *    See the License for the specific language governing permissions and
+ *    limitations under the License.
+ */
+package org.mybatis.guice.datasource.routing;
+
+/**
+ * The strategies used to pick the read replica serving a read-only transaction.
+ *
+ * @since 3.10
+ */
+public enum ReplicaSelection {
+
+  /**
+   * Healthy replicas are used in turn.
+   */
+  ROUND_ROBIN,
+
+  /**
+   * The healthy replica with the fewest connections currently in use is used.
+   */
+  LEAST_LOADED
+
+}
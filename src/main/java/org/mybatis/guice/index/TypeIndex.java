@@ -0,0 +1,179 @@
+/**
+ *    Copyright 2009-2017 the original author or authors.
+ *
+ *    Licensed under the Apache License, Version 2.0 (the "License");
+ *    you may not use this file except in compliance with the License.
+ *    You may obtain a copy of the License at
+ *
+ *       http://www.apache.org/licenses/LICENSE-2.0
+ *
+ *    Unless required by applicable law or agreed to in writing, software
+ *    distributed under the License is distributed on an "AS IS" BASIS,
+ *    WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ *    See the License for the specific language governing permissions and
+ *    limitations under the License.
+ */
+package org.mybatis.guice.index;
+
+import java.io.BufferedReader;
+import java.io.IOException;
+import java.io.InputStreamReader;
+import java.net.URL;
+import java.util.ArrayList;
+import java.util.Collections;
+import java.util.Enumeration;
+import java.util.HashSet;
+import java.util.List;
+import java.util.Map;
+import java.util.Set;
+import java.util.WeakHashMap;
+
+import org.apache.ibatis.io.ResolverUtil;
+import org.apache.ibatis.logging.Log;
+import org.apache.ibatis.logging.LogFactory;
+
+/**
+ * Finds classes by package in the indexes written by the {@link TypeIndexProcessor}, instead of scanning the
+ * classpath.
+ * <p>
+ * A package is looked up in the indexes only when every classpath root containing it has an index, so that classes
+ * compiled without the processor are not missed.
+ * </p>
+ *
+ * @since 3.10
+ */
+public final class TypeIndex {
+
+  /**
+   * The index resource, listing a binary type name per line.
+   */
+  public static final String RESOURCE = "META-INF/mybatis-guice/types.idx";
+
+  private static final Log log = LogFactory.getLog(TypeIndex.class);
+
+  private static final Map<ClassLoader, Index> INDEXES = new WeakHashMap<ClassLoader, Index>();
+
+  private TypeIndex() {
+    // do nothing
+  }
+
+  /**
+   * Returns the indexed classes in the given package and its sub packages matching the given test, like
+   * {@link ResolverUtil#find(ResolverUtil.Test, String)} does.
+   *
+   * @param <T> the type of the matching classes
+   * @param test the class filter
+   * @param packageName the package to look into
+   * @return the matching classes, or null if the package is not indexed in every classpath root containing it
+   */
+  public static <T> Set<Class<? extends T>> find(ResolverUtil.Test test, String packageName) {
+    ClassLoader classLoader = getClassLoader();
+    Index index = getIndex(classLoader);
+    if (index.roots.isEmpty() || !index.covers(classLoader, packageName.replace('.', '/'))) {
+      return null;
+    }
+
+    String prefix = packageName.replace('/', '.') + '.';
+    Set<Class<? extends T>> matches = new HashSet<Class<? extends T>>();
+    for (String typeName : index.typeNames) {
+      if (!typeName.startsWith(prefix)) {
+        continue;
+      }
+      try {
+        @SuppressWarnings("unchecked")
+        Class<T> type = (Class<T>) classLoader.loadClass(typeName);
+        if (test.matches(type)) {
+          matches.add(type);
+        }
+      } catch (ClassNotFoundException e) {
+        log.warn("Could not load indexed class '" + typeName + "', ignoring it: " + e.getMessage());
+      } catch (LinkageError e) {
+        log.warn("Could not load indexed class '" + typeName + "', ignoring it: " + e.getMessage());
+      }
+    }
+    return matches;
+  }
+
+  private static ClassLoader getClassLoader() {
+    ClassLoader classLoader = Thread.currentThread().getContextClassLoader();
+    return classLoader != null ? classLoader : TypeIndex.class.getClassLoader();
+  }
+
+  private static Index getIndex(ClassLoader classLoader) {
+    synchronized (INDEXES) {
+      Index index = INDEXES.get(classLoader);
+      if (index == null) {
+        index = readIndex(classLoader);
+        INDEXES.put(classLoader, index);
+      }
+      return index;
+    }
+  }
+
+  private static Index readIndex(ClassLoader classLoader) {
+    List<String> typeNames = new ArrayList<String>();
+    Set<String> roots = new HashSet<String>();
+    try {
+      Enumeration<URL> resources = classLoader.getResources(RESOURCE);
+      while (resources.hasMoreElements()) {
+        URL resource = resources.nextElement();
+        roots.add(rootOf(resource, RESOURCE));
+        BufferedReader reader = new BufferedReader(new InputStreamReader(resource.openStream(), "UTF-8"));
+        try {
+          String line;
+          while ((line = reader.readLine()) != null) {
+            line = line.trim();
+            if (line.length() > 0) {
+              typeNames.add(line);
+            }
+          }
+        } finally {
+          reader.close();
+        }
+      }
+    } catch (IOException e) {
+      log.warn("Could not read the " + RESOURCE + " indexes, classes will be looked up scanning the classpath: "
+          + e.getMessage());
+      return new Index(Collections.<String> emptyList(), Collections.<String> emptySet());
+    }
+    return new Index(typeNames, roots);
+  }
+
+  private static String rootOf(URL url, String path) {
+    String location = url.toExternalForm();
+    if (location.endsWith("/")) {
+      location = location.substring(0, location.length() - 1);
+    }
+    return location.endsWith(path) ? location.substring(0, location.length() - path.length()) : location;
+  }
+
+  private static final class Index {
+
+    final List<String> typeNames;
+
+    final Set<String> roots;
+
+    Index(List<String> typeNames, Set<String> roots) {
+      this.typeNames = typeNames;
+      this.roots = roots;
+    }
+
+    boolean covers(ClassLoader classLoader, String packagePath) {
+      try {
+        Enumeration<URL> packages = classLoader.getResources(packagePath);
+        while (packages.hasMoreElements()) {
+          if (!roots.contains(rootOf(packages.nextElement(), packagePath))) {
+            return false;
+          }
+        }
+        return true;
+      } catch (IOException e) {
+        log.warn("Could not list the classpath roots of package '" + packagePath
+            + "', it will be looked up scanning the classpath: " + e.getMessage());
+        return false;
+      }
+    }
+
+  }
+
+}
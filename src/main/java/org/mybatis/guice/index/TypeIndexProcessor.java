@@ -0,0 +1,98 @@
+/**
+ *    Copyright 2009-2017 the original author or authors.
+ *
+ *    Licensed under the Apache License, Version 2.0 (the "License");
+ *    you may not use this file except in compliance with the License.
+ *    You may obtain a copy of the License at
+ *
+ *       http://www.apache.org/licenses/LICENSE-2.0
+ *
+ *    Unless required by applicable law or agreed to in writing, software
+ *    distributed under the License is distributed on an "AS IS" BASIS,
+ *    WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ *    See the License for the specific language governing permissions and
+ *    limitations under the License.
+ */
+package org.mybatis.guice.index;
+
+import java.io.IOException;
+import java.io.OutputStreamWriter;
+import java.io.Writer;
+import java.util.Set;
+import java.util.TreeSet;
+
+import javax.annotation.processing.AbstractProcessor;
+import javax.annotation.processing.RoundEnvironment;
+import javax.annotation.processing.SupportedAnnotationTypes;
+import javax.lang.model.SourceVersion;
+import javax.lang.model.element.Element;
+import javax.lang.model.element.TypeElement;
+import javax.tools.Diagnostic.Kind;
+import javax.tools.FileObject;
+import javax.tools.StandardLocation;
+
+/**
+ * Writes the binary names of all the compiled types in the {@link TypeIndex#RESOURCE} resource.
+ * <p>
+ * The processor is registered as a service, the compiler discovers it on the classpath unless the processors are
+ * listed explicitly or disabled with {@code -proc:none}. The index is rebuilt by each compilation from the root
+ * elements of its rounds, so that removed or renamed types do not stay listed.
+ * </p>
+ *
+ * @since 3.10
+ */
+@SupportedAnnotationTypes("*")
+public final class TypeIndexProcessor extends AbstractProcessor {
+
+  private final Set<String> typeNames = new TreeSet<String>();
+
+  @Override
+  public SourceVersion getSupportedSourceVersion() {
+    return SourceVersion.latestSupported();
+  }
+
+  @Override
+  public boolean process(Set<? extends TypeElement> annotations, RoundEnvironment roundEnv) {
+    for (Element element : roundEnv.getRootElements()) {
+      collect(element);
+    }
+    if (roundEnv.processingOver()) {
+      writeIndex();
+    }
+    // other processors still have to see the annotations
+    return false;
+  }
+
+  private void collect(Element element) {
+    if (!element.getKind().isClass() && !element.getKind().isInterface()) {
+      return;
+    }
+    typeNames.add(processingEnv.getElementUtils().getBinaryName((TypeElement) element).toString());
+    for (Element enclosed : element.getEnclosedElements()) {
+      collect(enclosed);
+    }
+  }
+
+  private void writeIndex() {
+    if (typeNames.isEmpty()) {
+      return;
+    }
+    try {
+      FileObject resource = processingEnv.getFiler().createResource(StandardLocation.CLASS_OUTPUT, "",
+          TypeIndex.RESOURCE);
+      Writer writer = new OutputStreamWriter(resource.openOutputStream(), "UTF-8");
+      try {
+        for (String typeName : typeNames) {
+          writer.write(typeName);
+          writer.write('\n');
+        }
+      } finally {
+        writer.close();
+      }
+    } catch (IOException e) {
+      processingEnv.getMessager().printMessage(Kind.ERROR,
+          "Could not write " + TypeIndex.RESOURCE + ": " + e.getMessage());
+    }
+  }
+
+}
@@ -17,6 +17,8 @@ package org.mybatis.guice.mappers;
 
 import com.google.common.base.Objects;
 
+import java.lang.reflect.Proxy;
+
 import javax.inject.Inject;
 import javax.inject.Provider;
 
@@ -24,16 +26,23 @@ import org.apache.ibatis.session.SqlSessionManager;
 
 /**
  * A generic MyBatis mapper provider.
+ * <p>
+ * Mapper methods returning a {@link org.apache.ibatis.cursor.Cursor} invoked outside a managed session run on a
+ * dedicated session, closed once the cursor is closed or all its rows are read.
+ * </p>
  */
 public final class MapperProvider<T> implements Provider<T> {
 
   private final Class<T> mapperType;
 
+  private final boolean streaming;
+
   @Inject
   private SqlSessionManager sqlSessionManager;
 
   public MapperProvider(Class<T> mapperType) {
     this.mapperType = mapperType;
+    this.streaming = StreamingMapperHandler.isStreaming(mapperType);
   }
 
   public void setSqlSessionManager(SqlSessionManager sqlSessionManager) {
@@ -42,7 +51,11 @@ public final class MapperProvider<T> implements Provider<T> {
 
   @Override
   public T get() {
-    return this.sqlSessionManager.getMapper(mapperType);
+    if (!streaming) {
+      return this.sqlSessionManager.getMapper(mapperType);
+    }
+    return mapperType.cast(Proxy.newProxyInstance(mapperType.getClassLoader(), new Class<?>[] { mapperType },
+        new StreamingMapperHandler<T>(mapperType, sqlSessionManager)));
   }
 
   @Override
@@ -0,0 +1,109 @@
+/**
+ *    Copyright 2009-2017 the original author or authors.
+ *
+ *    Licensed under the Apache License, Version 2.0 (the "License");
+ *    you may not use this file except in compliance with the License.
+ *    You may obtain a copy of the License at
+ *
+ *       http://www.apache.org/licenses/LICENSE-2.0
+ *
+ *    Unless required by applicable law or agreed to in writing, software
+ *    distributed under the License is distributed on an "AS IS" BASIS,
+ *    WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ *    See the License for the specific language governing permissions and
+ *    limitations under the License.
+ */
+package org.mybatis.guice.mappers;
+
+import java.io.IOException;
+import java.util.Iterator;
+
+import org.apache.ibatis.cursor.Cursor;
+import org.apache.ibatis.session.SqlSession;
+
+/**
+ * A {@link Cursor} owning the session it was opened by: the session is closed together with the cursor, or once
+ * all its rows have been iterated.
+ *
+ * @since 3.10
+ */
+final class SessionCursor<T> implements Cursor<T> {
+
+  private final Cursor<T> cursor;
+
+  private final SqlSession sqlSession;
+
+  private boolean closed;
+
+  SessionCursor(Cursor<T> cursor, SqlSession sqlSession) {
+    this.cursor = cursor;
+    this.sqlSession = sqlSession;
+  }
+
+  @Override
+  public boolean isOpen() {
+    return !closed && cursor.isOpen();
+  }
+
+  @Override
+  public boolean isConsumed() {
+    return cursor.isConsumed();
+  }
+
+  @Override
+  public int getCurrentIndex() {
+    return cursor.getCurrentIndex();
+  }
+
+  @Override
+  public Iterator<T> iterator() {
+    final Iterator<T> iterator = cursor.iterator();
+    return new Iterator<T>() {
+
+      @Override
+      public boolean hasNext() {
+        if (closed) {
+          return false;
+        }
+        boolean hasNext = iterator.hasNext();
+        if (!hasNext) {
+          closeQuietly();
+        }
+        return hasNext;
+      }
+
+      @Override
+      public T next() {
+        return iterator.next();
+      }
+
+      @Override
+      public void remove() {
+        iterator.remove();
+      }
+
+    };
+  }
+
+  @Override
+  public void close() throws IOException {
+    if (closed) {
+      return;
+    }
+    closed = true;
+    try {
+      cursor.close();
+    } finally {
+      sqlSession.close();
+    }
+  }
+
+  private void closeQuietly() {
+    try {
+      close();
+    } catch (IOException e) {
+      // the rows are all read, nothing to recover
+    }
+  }
+
+}
@@ -0,0 +1,98 @@
+/**
+ *    Copyright 2009-2017 the original author or authors.
+ *
+ *    Licensed under the Apache License, Version 2.0 (the "License");
+ *    you may not use this file except in compliance with the License.
+ *    You may obtain a copy of the License at
+ *
+ *       http://www.apache.org/licenses/LICENSE-2.0
+ *
+ *    Unless required by applicable law or agreed to in writing, software
+ *    distributed under the License is distributed on an "AS IS" BASIS,
+ *    WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ *    See the License for the specific language governing permissions and
+ *    limitations under the License.
+ */
+package org.mybatis.guice.mappers;
+
+import java.lang.reflect.InvocationHandler;
+import java.lang.reflect.InvocationTargetException;
+import java.lang.reflect.Method;
+
+import org.apache.ibatis.cursor.Cursor;
+import org.apache.ibatis.session.SqlSession;
+import org.apache.ibatis.session.SqlSessionManager;
+
+/**
+ * Invokes the mapper methods returning a {@link Cursor} outside a managed session on a dedicated session, which
+ * lives as long as the returned cursor; the other methods are invoked on the {@code SqlSessionManager} mapper.
+ *
+ * @since 3.10
+ */
+final class StreamingMapperHandler<T> implements InvocationHandler {
+
+  private final Class<T> mapperType;
+
+  private final SqlSessionManager sqlSessionManager;
+
+  private final T managedMapper;
+
+  StreamingMapperHandler(Class<T> mapperType, SqlSessionManager sqlSessionManager) {
+    this.mapperType = mapperType;
+    this.sqlSessionManager = sqlSessionManager;
+    this.managedMapper = sqlSessionManager.getMapper(mapperType);
+  }
+
+  /**
+   * Checks if the given mapper type declares methods returning a {@link Cursor}.
+   *
+   * @param mapperType the mapper type
+   * @return true if the mapper has to be proxied
+   */
+  static boolean isStreaming(Class<?> mapperType) {
+    for (Method method : mapperType.getMethods()) {
+      if (Cursor.class.isAssignableFrom(method.getReturnType())) {
+        return true;
+      }
+    }
+    return false;
+  }
+
+  @Override
+  public Object invoke(Object proxy, Method method, Object[] args) throws Throwable {
+    if (!Cursor.class.isAssignableFrom(method.getReturnType())) {
+      return invokeMapper(managedMapper, method, args);
+    }
+
+    if (sqlSessionManager.isManagedSessionStarted()) {
+      // the cursor lives as long as the managed session
+      return invokeMapper(managedMapper, method, args);
+    }
+
+    SqlSession sqlSession = sqlSessionManager.openSession();
+    try {
+      Cursor<?> cursor = (Cursor<?>) invokeMapper(sqlSession.getMapper(mapperType), method, args);
+      if (cursor == null) {
+        sqlSession.close();
+        return null;
+      }
+      return newSessionCursor(cursor, sqlSession);
+    } catch (Throwable t) {
+      sqlSession.close();
+      throw t;
+    }
+  }
+
+  private static <E> Cursor<E> newSessionCursor(Cursor<E> cursor, SqlSession sqlSession) {
+    return new SessionCursor<E>(cursor, sqlSession);
+  }
+
+  private static Object invokeMapper(Object mapper, Method method, Object[] args) throws Throwable {
+    try {
+      return method.invoke(mapper, args);
+    } catch (InvocationTargetException e) {
+      throw e.getTargetException();
+    }
+  }
+
+}
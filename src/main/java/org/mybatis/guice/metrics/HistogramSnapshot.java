@@ -0,0 +1,97 @@
+/**
+ *    Copyright 2009-2017 the original author or authors.
+ *
+ *    Licensed under the Apache License, Version 2.0 (the "License");
+ *    you may not use this file except in compliance with the License.
+ *    You may obtain a copy of the License at
+ *
+ *       http://www.apache.org/licenses/LICENSE-2.0
+ *
+ *    Unless required by applicable law or agreed to in writing, software
+ *    distributed under the License is distributed on an "AS IS" BASIS,
+ *    WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ *    See the License for the specific language governing permissions and
+ *    limitations under the License.
+ */
+package org.mybatis.guice.metrics;
+
+import java.util.concurrent.TimeUnit;
+
+/**
+ * A snapshot of a {@link LatencyHistogram}, all values are in nanoseconds.
+ *
+ * @since 3.10
+ */
+public final class HistogramSnapshot {
+
+  private final long[] counts;
+
+  private final long count;
+
+  private final long total;
+
+  private final long max;
+
+  HistogramSnapshot(long[] counts, long count, long total, long max) {
+    this.counts = counts;
+    this.count = count;
+    this.total = total;
+    this.max = max;
+  }
+
+  public long getCount() {
+    return count;
+  }
+
+  public long getTotal() {
+    return total;
+  }
+
+  public long getMax() {
+    return max;
+  }
+
+  public double getMean() {
+    return count == 0 ? 0 : (double) total / count;
+  }
+
+  /**
+   * Returns the latency not exceeded by the given percentage of the recorded latencies.
+   *
+   * @param percentile the percentile, between 0 and 100
+   * @return the latency at the given percentile, 0 if nothing was recorded
+   */
+  public long getValueAtPercentile(double percentile) {
+    if (percentile < 0 || percentile > 100) {
+      throw new IllegalArgumentException("Parameter 'percentile' must be between 0 and 100");
+    }
+    long recorded = 0;
+    for (long bucketCount : counts) {
+      recorded += bucketCount;
+    }
+    if (recorded == 0) {
+      return 0;
+    }
+    long target = Math.max(1, (long) Math.ceil(percentile / 100 * recorded));
+    long cumulated = 0;
+    for (int i = 0; i < counts.length; i++) {
+      cumulated += counts[i];
+      if (cumulated >= target) {
+        return Math.min(LatencyHistogram.bucketUpperBound(i), max);
+      }
+    }
+    return max;
+  }
+
+  @Override
+  public String toString() {
+    return "HistogramSnapshot [count=" + count + ", meanMs=" + toMillis((long) getMean()) + ", p50Ms="
+        + toMillis(getValueAtPercentile(50)) + ", p99Ms=" + toMillis(getValueAtPercentile(99)) + ", maxMs="
+        + toMillis(max) + "]";
+  }
+
+  private static double toMillis(long nanos) {
+    return (double) nanos / TimeUnit.MILLISECONDS.toNanos(1);
+  }
+
+}
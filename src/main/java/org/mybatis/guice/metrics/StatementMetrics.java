@@ -0,0 +1,97 @@
+/**
+ *    Copyright 2009-2017 the original author or authors.
+ *
+ *    Licensed under the Apache License, Version 2.0 (the "License");
+ *    you may not use this file except in compliance with the License.
+ *    You may obtain a copy of the License at
+ *
+ *       http://www.apache.org/licenses/LICENSE-2.0
+ *
+ *    Unless required by applicable law or agreed to in writing, software
+ *    distributed under the License is distributed on an "AS IS" BASIS,
+ *    WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ *    See the License for the specific language governing permissions and
+ *    limitations under the License.
+ */
+package org.mybatis.guice.metrics;
+
+import java.util.concurrent.atomic.AtomicLong;
+
+/**
+ * The metrics of a mapped statement.
+ *
+ * @since 3.10
+ */
+public final class StatementMetrics {
+
+  private final String statementId;
+
+  private final LatencyHistogram latency = new LatencyHistogram();
+
+  private final LatencyHistogram jdbcLatency = new LatencyHistogram();
+
+  private final AtomicLong rowCount = new AtomicLong();
+
+  private final AtomicLong errorCount = new AtomicLong();
+
+  StatementMetrics(String statementId) {
+    this.statementId = statementId;
+  }
+
+  public String getStatementId() {
+    return statementId;
+  }
+
+  /**
+   * Returns the latency of the executor calls, including the ones answered by the caches.
+   *
+   * @return the latency of the executor calls
+   */
+  public LatencyHistogram getLatency() {
+    return latency;
+  }
+
+  /**
+   * Returns the latency of the JDBC statements executions, including the results handling.
+   *
+   * @return the latency of the JDBC statements executions
+   */
+  public LatencyHistogram getJdbcLatency() {
+    return jdbcLatency;
+  }
+
+  /**
+   * Returns the number of rows selected or updated.
+   *
+   * @return the number of rows selected or updated
+   */
+  public long getRowCount() {
+    return rowCount.get();
+  }
+
+  public long getErrorCount() {
+    return errorCount.get();
+  }
+
+  void recordRows(long rows) {
+    rowCount.addAndGet(rows);
+  }
+
+  void recordError() {
+    errorCount.incrementAndGet();
+  }
+
+  void reset() {
+    latency.reset();
+    jdbcLatency.reset();
+    rowCount.set(0);
+    errorCount.set(0);
+  }
+
+  @Override
+  public String toString() {
+    return "StatementMetrics [statementId=" + statementId + ", latency=" + latency.getSnapshot() + ", jdbcLatency="
+        + jdbcLatency.getSnapshot() + ", rowCount=" + rowCount + ", errorCount=" + errorCount + "]";
+  }
+
+}
@@ -0,0 +1,141 @@
+/**
+ *    Copyright 2009-2017 the original author or authors.
+ *
+ *    Licensed under the Apache License, Version 2.0 (the "License");
+ *    you may not use this file except in compliance with the License.
+ *    You may obtain a copy of the License at
+ *
+ *       http://www.apache.org/licenses/LICENSE-2.0
+ *
+ *    Unless required by applicable law or agreed to in writing, software
+ *    distributed under the License is distributed on an "AS IS" BASIS,
+ *    WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ *    See the License for the specific language governing permissions and
+ *    limitations under the License.
+ */
+package org.mybatis.guice.metrics;
+
+import java.sql.Statement;
+import java.util.List;
+import java.util.Properties;
+
+import javax.inject.Inject;
+
+import org.apache.ibatis.cache.CacheKey;
+import org.apache.ibatis.executor.Executor;
+import org.apache.ibatis.executor.statement.StatementHandler;
+import org.apache.ibatis.mapping.BoundSql;
+import org.apache.ibatis.mapping.MappedStatement;
+import org.apache.ibatis.plugin.Interceptor;
+import org.apache.ibatis.plugin.Intercepts;
+import org.apache.ibatis.plugin.Invocation;
+import org.apache.ibatis.plugin.Plugin;
+import org.apache.ibatis.plugin.Signature;
+import org.apache.ibatis.session.ResultHandler;
+import org.apache.ibatis.session.RowBounds;
+
+/**
+ * Records the latency, rows and errors of every mapped statement in the {@link StatementMetricsRegistry}.
+ * <p>
+ * Executor calls are timed as a whole, cache hits included, while the statement handler executions are timed
+ * as the JDBC latency of the mapped statement being executed. Once the metrics of a statement exist, recording
+ * does not allocate.
+ * </p>
+ *
+ * @since 3.10
+ */
+@Intercepts({
+    @Signature(type = Executor.class, method = "query",
+        args = { MappedStatement.class, Object.class, RowBounds.class, ResultHandler.class }),
+    @Signature(type = Executor.class, method = "query",
+        args = { MappedStatement.class, Object.class, RowBounds.class, ResultHandler.class, CacheKey.class,
+            BoundSql.class }),
+    @Signature(type = Executor.class, method = "update", args = { MappedStatement.class, Object.class }),
+    @Signature(type = StatementHandler.class, method = "query", args = { Statement.class, ResultHandler.class }),
+    @Signature(type = StatementHandler.class, method = "update", args = { Statement.class }),
+    @Signature(type = StatementHandler.class, method = "batch", args = { Statement.class }) })
+public final class StatementMetricsInterceptor implements Interceptor {
+
+  private final StatementMetricsRegistry registry;
+
+  /**
+   * The metrics of the statement the current thread executes, to which the JDBC latency is attributed.
+   */
+  private final ThreadLocal<CurrentStatement> currentStatement = new ThreadLocal<CurrentStatement>() {
+    @Override
+    protected CurrentStatement initialValue() {
+      return new CurrentStatement();
+    }
+  };
+
+  @Inject
+  public StatementMetricsInterceptor(StatementMetricsRegistry registry) {
+    this.registry = registry;
+  }
+
+  @Override
+  public Object intercept(Invocation invocation) throws Throwable {
+    if (invocation.getTarget() instanceof Executor) {
+      return interceptExecutor(invocation);
+    }
+    return interceptStatementHandler(invocation);
+  }
+
+  private Object interceptExecutor(Invocation invocation) throws Throwable {
+    MappedStatement mappedStatement = (MappedStatement) invocation.getArgs()[0];
+    StatementMetrics metrics = registry.getMetrics(mappedStatement.getId());
+
+    // nested selects run while the outer statement is executing
+    CurrentStatement current = currentStatement.get();
+    StatementMetrics outer = current.metrics;
+    current.metrics = metrics;
+
+    long start = System.nanoTime();
+    try {
+      Object result = invocation.proceed();
+      if (result instanceof List) {
+        metrics.recordRows(((List<?>) result).size());
+      } else if (result instanceof Integer && ((Integer) result).intValue() > 0) {
+        metrics.recordRows(((Integer) result).intValue());
+      }
+      return result;
+    } catch (Throwable t) {
+      metrics.recordError();
+      throw t;
+    } finally {
+      metrics.getLatency().record(System.nanoTime() - start);
+      current.metrics = outer;
+    }
+  }
+
+  private Object interceptStatementHandler(Invocation invocation) throws Throwable {
+    StatementMetrics metrics = currentStatement.get().metrics;
+    if (metrics == null) {
+      return invocation.proceed();
+    }
+
+    long start = System.nanoTime();
+    try {
+      return invocation.proceed();
+    } finally {
+      metrics.getJdbcLatency().record(System.nanoTime() - start);
+    }
+  }
+
+  @Override
+  public Object plugin(Object target) {
+    return Plugin.wrap(target, this);
+  }
+
+  @Override
+  public void setProperties(Properties properties) {
+    // do nothing
+  }
+
+  private static final class CurrentStatement {
+
+    StatementMetrics metrics;
+
+  }
+
+}
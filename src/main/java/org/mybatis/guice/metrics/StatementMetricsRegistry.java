@@ -0,0 +1,71 @@
+/**
+ *    Copyright 2009-2017 the original author or authors.
+ *
+ *    Licensed under the Apache License, Version 2.0 (the "License");
+ *    you may not use this file except in compliance with the License.
+ *    You may obtain a copy of the License at
+ *
+ *       http://www.apache.org/licenses/LICENSE-2.0
+ *
+ *    Unless required by applicable law or agreed to in writing, software
+ *    distributed under the License is distributed on an "AS IS" BASIS,
+ *    WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ *    See the License for the specific language governing permissions and
+ *    limitations under the License.
+ */
+package org.mybatis.guice.metrics;
+
+import java.util.Collection;
+import java.util.Collections;
+import java.util.concurrent.ConcurrentHashMap;
+import java.util.concurrent.ConcurrentMap;
+
+import javax.inject.Singleton;
+
+/**
+ * Holds the metrics recorded by the {@link StatementMetricsInterceptor}, per mapped statement id.
+ *
+ * @since 3.10
+ */
+@Singleton
+public class StatementMetricsRegistry {
+
+  private final ConcurrentMap<String, StatementMetrics> metrics = new ConcurrentHashMap<String, StatementMetrics>();
+
+  /**
+   * Returns the metrics of the given mapped statement, creating them if needed.
+   *
+   * @param statementId the mapped statement id
+   * @return the mapped statement metrics
+   */
+  public StatementMetrics getMetrics(String statementId) {
+    StatementMetrics statementMetrics = metrics.get(statementId);
+    if (statementMetrics == null) {
+      statementMetrics = new StatementMetrics(statementId);
+      StatementMetrics existing = metrics.putIfAbsent(statementId, statementMetrics);
+      if (existing != null) {
+        statementMetrics = existing;
+      }
+    }
+    return statementMetrics;
+  }
+
+  /**
+   * Returns the metrics of all the mapped statements executed so far.
+   *
+   * @return the metrics of all the mapped statements executed so far
+   */
+  public Collection<StatementMetrics> getAllMetrics() {
+    return Collections.unmodifiableCollection(metrics.values());
+  }
+
+  /**
+   * Clears the recorded metrics.
+   */
+  public void reset() {
+    for (StatementMetrics statementMetrics : metrics.values()) {
+      statementMetrics.reset();
+    }
+  }
+
+}
@@ -22,6 +22,7 @@ import com.google.inject.spi.ProvisionListener;
 import javax.inject.Provider;
 
 import org.mybatis.guice.configuration.ConfigurationProvider;
+import org.mybatis.guice.configuration.settings.CacheConfigurationSetting;
 import org.mybatis.guice.configuration.settings.ConfigurationSetting;
 import org.mybatis.guice.configuration.settings.MapperConfigurationSetting;
 
@@ -72,6 +73,19 @@ public final class ConfigurationProviderProvisionListener implements ProvisionLi
     });
   }
 
+  public static ConfigurationProviderProvisionListener create(final CacheConfigurationSetting cacheConfigurationSetting,
+      final Binder binder) {
+    final MembersInjector<CacheConfigurationSetting> membersInjector = binder
+        .getMembersInjector(CacheConfigurationSetting.class);
+    return new ConfigurationProviderProvisionListener(new ConfigurationProviderProvisionAction() {
+      @Override
+      public void perform(ConfigurationProvider configurationProvider) {
+        membersInjector.injectMembers(cacheConfigurationSetting);
+        configurationProvider.addCacheConfigurationSetting(cacheConfigurationSetting);
+      }
+    });
+  }
+
   private static interface ConfigurationProviderProvisionAction {
     void perform(ConfigurationProvider configurationProvider);
   }
@@ -38,7 +38,7 @@ public final class SqlSessionManagerProvider implements Provider<SqlSessionManag
 
   @Deprecated
   public SqlSessionManagerProvider(SqlSessionFactory sqlSessionFactory) {
-    this.sqlSessionManager = newInstance(sqlSessionFactory);
+    createNewSqlSessionManager(sqlSessionFactory);
   }
 
   /**
@@ -47,8 +47,18 @@ public final class SqlSessionManagerProvider implements Provider<SqlSessionManag
    * @param sqlSessionFactory the sql session factory
    * @since 1.0.1
    */
-  @Inject
   public void createNewSqlSessionManager(SqlSessionFactory sqlSessionFactory) {
+    createNewSqlSessionManager(new SuspendableSqlSessionFactory(sqlSessionFactory));
+  }
+
+  /**
+   * Creates the new sql session manager, whose managed sessions can be suspended.
+   *
+   * @param sqlSessionFactory the sql session factory
+   * @since 3.10
+   */
+  @Inject
+  public void createNewSqlSessionManager(SuspendableSqlSessionFactory sqlSessionFactory) {
     this.sqlSessionManager = newInstance(sqlSessionFactory);
   }
 
@@ -0,0 +1,84 @@
+/**
+ *    Copyright 2009-2017 the original author or authors.
+ *
+ *    Licensed under the Apache License, Version 2.0 (the "License");
+ *    you may not use this file except in compliance with the License.
+ *    You may obtain a copy of the License at
+ *
+ *       http://www.apache.org/licenses/LICENSE-2.0
+ *
+ *    Unless required by applicable law or agreed to in writing, software
+ *    distributed under the License is distributed on an "AS IS" BASIS,
+ *    WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ *    See the License for the specific language governing permissions and
+ *    limitations under the License.
+ */
+package org.mybatis.guice.session;
+
+import java.util.Collections;
+import java.util.Set;
+import java.util.concurrent.ConcurrentHashMap;
+import java.util.concurrent.ConcurrentMap;
+
+import javax.inject.Singleton;
+
+import org.apache.ibatis.mapping.Environment;
+import org.apache.ibatis.session.SqlSessionManager;
+
+/**
+ * The {@code SqlSessionManager}s of an injector, by environment id, reaching across the private modules each
+ * environment is usually bound in.
+ * <p>
+ * Every MyBatis module registers its manager; the registry is bound in the root injector, as it has no dependency.
+ * </p>
+ *
+ * @since 3.10
+ */
+@Singleton
+public final class SqlSessionManagerRegistry {
+
+  private final ConcurrentMap<String, SqlSessionManager> sqlSessionManagers
+      = new ConcurrentHashMap<String, SqlSessionManager>();
+
+  /**
+   * The environment ids registered by several modules.
+   */
+  private final Set<String> ambiguous = Collections.newSetFromMap(new ConcurrentHashMap<String, Boolean>());
+
+  /**
+   * Registers the given manager under the id of its environment; a manager without environment, as an XML
+   * configuration may declare none, is ignored.
+   *
+   * @param sqlSessionManager the session manager
+   */
+  public void register(SqlSessionManager sqlSessionManager) {
+    Environment environment = sqlSessionManager.getConfiguration().getEnvironment();
+    if (environment == null) {
+      return;
+    }
+    String environmentId = environment.getId();
+    SqlSessionManager previous = sqlSessionManagers.putIfAbsent(environmentId, sqlSessionManager);
+    if (previous != null && previous != sqlSessionManager) {
+      ambiguous.add(environmentId);
+    }
+  }
+
+  /**
+   * Returns the manager of the given environment.
+   *
+   * @param environmentId the environment id
+   * @return the manager of the environment
+   * @throws IllegalArgumentException if no module or several modules bind the environment
+   */
+  public SqlSessionManager get(String environmentId) {
+    SqlSessionManager sqlSessionManager = sqlSessionManagers.get(environmentId);
+    if (sqlSessionManager == null) {
+      throw new IllegalArgumentException("No MyBatis module binds the environment '" + environmentId + "'");
+    }
+    if (ambiguous.contains(environmentId)) {
+      throw new IllegalArgumentException("Several MyBatis modules bind the environment '" + environmentId + "'");
+    }
+    return sqlSessionManager;
+  }
+
+}
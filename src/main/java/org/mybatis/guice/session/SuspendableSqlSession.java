@@ -0,0 +1,193 @@
+/**
+ *    Copyright 2009-2017 the original author or authors.
+ *
+ *    Licensed under the Apache License, Version 2.0 (the "License");
+ *    you may not use this file except in compliance with the License.
+ *    You may obtain a copy of the License at
+ *
+ *       http://www.apache.org/licenses/LICENSE-2.0
+ *
+ *    Unless required by applicable law or agreed to in writing, software
+ *    distributed under the License is distributed on an "AS IS" BASIS,
+ *    WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ *    See the License for the specific language governing permissions and
+ *    limitations under the License.
+ */
+package org.mybatis.guice.session;
+
+import java.sql.Connection;
+import java.util.List;
+import java.util.Map;
+
+import org.apache.ibatis.cursor.Cursor;
+import org.apache.ibatis.executor.BatchResult;
+import org.apache.ibatis.session.Configuration;
+import org.apache.ibatis.session.ResultHandler;
+import org.apache.ibatis.session.RowBounds;
+import org.apache.ibatis.session.SqlSession;
+
+/**
+ * A session of a {@link SuspendableSqlSessionFactory}, left open when closed while being suspended.
+ */
+final class SuspendableSqlSession implements SqlSession {
+
+  private final SqlSession sqlSession;
+
+  SuspendableSqlSession(SqlSession sqlSession) {
+    this.sqlSession = sqlSession;
+  }
+
+  @Override
+  public <T> T selectOne(String statement) {
+    return sqlSession.<T> selectOne(statement);
+  }
+
+  @Override
+  public <T> T selectOne(String statement, Object parameter) {
+    return sqlSession.<T> selectOne(statement, parameter);
+  }
+
+  @Override
+  public <E> List<E> selectList(String statement) {
+    return sqlSession.<E> selectList(statement);
+  }
+
+  @Override
+  public <E> List<E> selectList(String statement, Object parameter) {
+    return sqlSession.<E> selectList(statement, parameter);
+  }
+
+  @Override
+  public <E> List<E> selectList(String statement, Object parameter, RowBounds rowBounds) {
+    return sqlSession.<E> selectList(statement, parameter, rowBounds);
+  }
+
+  @Override
+  public <K, V> Map<K, V> selectMap(String statement, String mapKey) {
+    return sqlSession.<K, V> selectMap(statement, mapKey);
+  }
+
+  @Override
+  public <K, V> Map<K, V> selectMap(String statement, Object parameter, String mapKey) {
+    return sqlSession.<K, V> selectMap(statement, parameter, mapKey);
+  }
+
+  @Override
+  public <K, V> Map<K, V> selectMap(String statement, Object parameter, String mapKey, RowBounds rowBounds) {
+    return sqlSession.<K, V> selectMap(statement, parameter, mapKey, rowBounds);
+  }
+
+  @Override
+  public <T> Cursor<T> selectCursor(String statement) {
+    return sqlSession.<T> selectCursor(statement);
+  }
+
+  @Override
+  public <T> Cursor<T> selectCursor(String statement, Object parameter) {
+    return sqlSession.<T> selectCursor(statement, parameter);
+  }
+
+  @Override
+  public <T> Cursor<T> selectCursor(String statement, Object parameter, RowBounds rowBounds) {
+    return sqlSession.<T> selectCursor(statement, parameter, rowBounds);
+  }
+
+  @Override
+  public void select(String statement, Object parameter, ResultHandler handler) {
+    sqlSession.select(statement, parameter, handler);
+  }
+
+  @Override
+  public void select(String statement, ResultHandler handler) {
+    sqlSession.select(statement, handler);
+  }
+
+  @Override
+  public void select(String statement, Object parameter, RowBounds rowBounds, ResultHandler handler) {
+    sqlSession.select(statement, parameter, rowBounds, handler);
+  }
+
+  @Override
+  public int insert(String statement) {
+    return sqlSession.insert(statement);
+  }
+
+  @Override
+  public int insert(String statement, Object parameter) {
+    return sqlSession.insert(statement, parameter);
+  }
+
+  @Override
+  public int update(String statement) {
+    return sqlSession.update(statement);
+  }
+
+  @Override
+  public int update(String statement, Object parameter) {
+    return sqlSession.update(statement, parameter);
+  }
+
+  @Override
+  public int delete(String statement) {
+    return sqlSession.delete(statement);
+  }
+
+  @Override
+  public int delete(String statement, Object parameter) {
+    return sqlSession.delete(statement, parameter);
+  }
+
+  @Override
+  public void commit() {
+    sqlSession.commit();
+  }
+
+  @Override
+  public void commit(boolean force) {
+    sqlSession.commit(force);
+  }
+
+  @Override
+  public void rollback() {
+    sqlSession.rollback();
+  }
+
+  @Override
+  public void rollback(boolean force) {
+    sqlSession.rollback(force);
+  }
+
+  @Override
+  public List<BatchResult> flushStatements() {
+    return sqlSession.flushStatements();
+  }
+
+  @Override
+  public void close() {
+    // the manager closes the managed session to suspend it
+    if (!SuspendableSqlSessionFactory.detach(this)) {
+      sqlSession.close();
+    }
+  }
+
+  @Override
+  public void clearCache() {
+    sqlSession.clearCache();
+  }
+
+  @Override
+  public Configuration getConfiguration() {
+    return sqlSession.getConfiguration();
+  }
+
+  @Override
+  public <T> T getMapper(Class<T> type) {
+    return sqlSession.getMapper(type);
+  }
+
+  @Override
+  public Connection getConnection() {
+    return sqlSession.getConnection();
+  }
+
+}
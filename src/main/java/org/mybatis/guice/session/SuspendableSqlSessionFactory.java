@@ -0,0 +1,195 @@
+/**
+ *    Copyright 2009-2017 the original author or authors.
+ *
+ *    Licensed under the Apache License, Version 2.0 (the "License");
+ *    you may not use this file except in compliance with the License.
+ *    You may obtain a copy of the License at
+ *
+ *       http://www.apache.org/licenses/LICENSE-2.0
+ *
+ *    Unless required by applicable law or agreed to in writing, software
+ *    distributed under the License is distributed on an "AS IS" BASIS,
+ *    WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ *    See the License for the specific language governing permissions and
+ *    limitations under the License.
+ */
+package org.mybatis.guice.session;
+
+import java.sql.Connection;
+
+import javax.inject.Inject;
+
+import org.apache.ibatis.session.Configuration;
+import org.apache.ibatis.session.ExecutorType;
+import org.apache.ibatis.session.SqlSession;
+import org.apache.ibatis.session.SqlSessionException;
+import org.apache.ibatis.session.SqlSessionFactory;
+import org.apache.ibatis.session.SqlSessionManager;
+import org.apache.ibatis.session.TransactionIsolationLevel;
+
+/**
+ * A {@code SqlSessionFactory} whose sessions can be detached from a {@code SqlSessionManager} and bound again to it
+ * later, using only the public API of the manager.
+ * <p>
+ * The sessions are wrapped, so that closing the managed session while it is suspended leaves the wrapped session
+ * open; resuming starts a managed session that hands the suspended one back. The {@code SqlSessionManager} must be
+ * created on this factory.
+ * </p>
+ *
+ * @since 3.10
+ */
+public final class SuspendableSqlSessionFactory implements SqlSessionFactory {
+
+  private final SqlSessionFactory sqlSessionFactory;
+
+  /**
+   * The session being detached in the current thread, {@link #SUSPENDING} until it is closed. It is shared by the
+   * factories, as the manager closes only its own session, and it is always cleared before returning.
+   */
+  private static final ThreadLocal<SqlSession> suspending = new ThreadLocal<SqlSession>();
+
+  /**
+   * The session handed back by the next {@link #openSession()} in the current thread, cleared before returning.
+   */
+  private static final ThreadLocal<SqlSession> resuming = new ThreadLocal<SqlSession>();
+
+  private static final SqlSession SUSPENDING = new SuspendableSqlSession(null);
+
+  @Inject
+  public SuspendableSqlSessionFactory(SqlSessionFactory sqlSessionFactory) {
+    this.sqlSessionFactory = sqlSessionFactory;
+  }
+
+  /**
+   * Detaches the managed session of the given manager from the current thread without closing it.
+   *
+   * @param sqlSessionManager the session manager created on this factory
+   * @return the suspended session, or null if no managed session was started
+   */
+  public SqlSession suspend(SqlSessionManager sqlSessionManager) {
+    return suspendManagedSession(sqlSessionManager);
+  }
+
+  /**
+   * Detaches the managed session of the given manager from the current thread without closing it, whichever
+   * suspendable factory the manager is created on.
+   *
+   * @param sqlSessionManager the session manager created on a suspendable factory
+   * @return the suspended session, or null if no managed session was started
+   */
+  public static SqlSession suspendManagedSession(SqlSessionManager sqlSessionManager) {
+    if (!sqlSessionManager.isManagedSessionStarted()) {
+      return null;
+    }
+
+    SqlSession suspended;
+    suspending.set(SUSPENDING);
+    try {
+      sqlSessionManager.close();
+    } finally {
+      suspended = suspending.get();
+      suspending.remove();
+    }
+    if (suspended == SUSPENDING) {
+      throw new SqlSessionException("The managed session of " + sqlSessionManager
+          + " was closed instead of suspended, the manager is not created on this factory");
+    }
+    return suspended;
+  }
+
+  /**
+   * Binds the given suspended session to the current thread as the managed session of the given manager.
+   *
+   * @param sqlSessionManager the session manager created on this factory
+   * @param suspended the session returned by {@link #suspend(SqlSessionManager)}, may be null
+   */
+  public void resume(SqlSessionManager sqlSessionManager, SqlSession suspended) {
+    resumeManagedSession(sqlSessionManager, suspended);
+  }
+
+  /**
+   * Binds the given suspended session to the current thread as the managed session of the given manager, whichever
+   * suspendable factory the manager is created on.
+   *
+   * @param sqlSessionManager the session manager created on a suspendable factory
+   * @param suspended the session returned by {@link #suspendManagedSession(SqlSessionManager)}, may be null
+   */
+  public static void resumeManagedSession(SqlSessionManager sqlSessionManager, SqlSession suspended) {
+    if (suspended == null) {
+      return;
+    }
+    if (sqlSessionManager.isManagedSessionStarted()) {
+      throw new SqlSessionException("Cannot resume, a managed session is already started");
+    }
+
+    resuming.set(suspended);
+    try {
+      sqlSessionManager.startManagedSession();
+    } finally {
+      resuming.remove();
+    }
+  }
+
+  static boolean detach(SqlSession sqlSession) {
+    if (suspending.get() != SUSPENDING) {
+      return false;
+    }
+    suspending.set(sqlSession);
+    return true;
+  }
+
+  @Override
+  public SqlSession openSession() {
+    SqlSession suspended = resuming.get();
+    if (suspended != null) {
+      resuming.remove();
+      return suspended;
+    }
+    return wrap(sqlSessionFactory.openSession());
+  }
+
+  @Override
+  public SqlSession openSession(boolean autoCommit) {
+    return wrap(sqlSessionFactory.openSession(autoCommit));
+  }
+
+  @Override
+  public SqlSession openSession(Connection connection) {
+    return wrap(sqlSessionFactory.openSession(connection));
+  }
+
+  @Override
+  public SqlSession openSession(TransactionIsolationLevel level) {
+    return wrap(sqlSessionFactory.openSession(level));
+  }
+
+  @Override
+  public SqlSession openSession(ExecutorType execType) {
+    return wrap(sqlSessionFactory.openSession(execType));
+  }
+
+  @Override
+  public SqlSession openSession(ExecutorType execType, boolean autoCommit) {
+    return wrap(sqlSessionFactory.openSession(execType, autoCommit));
+  }
+
+  @Override
+  public SqlSession openSession(ExecutorType execType, TransactionIsolationLevel level) {
+    return wrap(sqlSessionFactory.openSession(execType, level));
+  }
+
+  @Override
+  public SqlSession openSession(ExecutorType execType, Connection connection) {
+    return wrap(sqlSessionFactory.openSession(execType, connection));
+  }
+
+  @Override
+  public Configuration getConfiguration() {
+    return sqlSessionFactory.getConfiguration();
+  }
+
+  private SqlSession wrap(SqlSession sqlSession) {
+    return new SuspendableSqlSession(sqlSession);
+  }
+
+}
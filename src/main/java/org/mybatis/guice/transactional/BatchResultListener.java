@@ -0,0 +1,44 @@
+/**
+ *    Copyright 2009-2017 the original author or authors.
+ *
+ *    Licensed under the Apache License, Version 2.0 (the "License");
+ *    you may not use this file except in compliance with the License.
+ *    You may obtain a copy of the License at
+ *
+ *       http://www.apache.org/licenses/LICENSE-2.0
+ *
+ *    Unless required by applicable law or agreed to in writing, software
+ *    distributed under the License is distributed on an "AS IS" BASIS,
+ *    WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ *    See the License for the specific language governing permissions and
+ *    limitations under the License.
+ */
+package org.mybatis.guice.transactional;
+
+import java.lang.reflect.Method;
+import java.util.List;
+
+import org.apache.ibatis.executor.BatchResult;
+
+/**
+ * Receives the update counts of the statements flushed by the {@link ManagedBatchInterceptor}.
+ * <p>
+ * Results are delivered synchronously on the thread running the transactional method, right after each flush;
+ * every {@link BatchResult} holds the update counts of the consecutive executions of one statement, in the order
+ * of its parameter objects. A listener is used when bound in the injector, i.e.
+ * {@code bind(BatchResultListener.class).to(MyBatchResultListener.class)}.
+ * </p>
+ *
+ * @since 3.10
+ */
+public interface BatchResultListener {
+
+  /**
+   * Notifies the results of a flush.
+   *
+   * @param results the results of the flushed statements, never empty
+   * @param method the transactional method which started the batch
+   */
+  void onFlush(List<BatchResult> results, Method method);
+
+}
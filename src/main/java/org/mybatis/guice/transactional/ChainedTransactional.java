@@ -0,0 +1,74 @@
+/**
+ *    Copyright 2009-2017 the original author or authors.
+ *
+ *    Licensed under the Apache License, Version 2.0 (the "License");
+ *    you may not use this file except in compliance with the License.
+ *    You may obtain a copy of the License at
+ *
+ *       http://www.apache.org/licenses/LICENSE-2.0
+ *
+ *    Unless required by applicable law or agreed to in writing, software
+ *    distributed under the License is distributed on an "AS IS" BASIS,
+ *    WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ *    See the License for the specific language governing permissions and
+ *    limitations under the License.
+ */
+package org.mybatis.guice.transactional;
+
+import java.lang.annotation.ElementType;
+import java.lang.annotation.Retention;
+import java.lang.annotation.RetentionPolicy;
+import java.lang.annotation.Target;
+
+import org.apache.ibatis.session.ExecutorType;
+
+/**
+ * Runs the method in a local transaction on each of the named environments, without XA: the sessions start in the
+ * given order and commit in the reverse one, so the first environment commits last.
+ * <p>
+ * The commit is best effort: if a commit fails after others succeeded, the remaining sessions are rolled back and
+ * the {@link PartialCommitHandler} is notified. Requires the {@code MyBatisChainedTransactionModule}.
+ * </p>
+ *
+ * @since 3.10
+ */
+@Retention(RetentionPolicy.RUNTIME)
+@Target({ ElementType.METHOD, ElementType.TYPE })
+public @interface ChainedTransactional {
+
+  /**
+   * Returns the ids of the environments taking part in the transaction.
+   *
+   * @return the environment ids, in start order.
+   */
+  String[] value();
+
+  /**
+   * Returns the constant indicating the myBatis executor type.
+   *
+   * @return the constant indicating the myBatis executor type.
+   */
+  ExecutorType executorType() default ExecutorType.SIMPLE;
+
+  /**
+   * Returns the constant indicating the transaction isolation level.
+   *
+   * @return the constant indicating the transaction isolation level.
+   */
+  Isolation isolation() default Isolation.DEFAULT;
+
+  /**
+   * Flag to indicate that myBatis has to force the transaction {@code commit().}
+   *
+   * @return false by default, user defined otherwise.
+   */
+  boolean force() default false;
+
+  /**
+   * If true, the transaction will never committed but rather rolled back, useful for testing purposes.
+   *
+   * @return false by default, user defined otherwise.
+   */
+  boolean rollbackOnly() default false;
+
+}
@@ -0,0 +1,204 @@
+/**
+ *    Copyright 2009-2017 the original author or authors.
+ *
+ *    Licensed under the Apache License, Version 2.0 (the "License");
+ *    you may not use this file except in compliance with the License.
+ *    You may obtain a copy of the License at
+ *
+ *       http://www.apache.org/licenses/LICENSE-2.0
+ *
+ *    Unless required by applicable law or agreed to in writing, software
+ *    distributed under the License is distributed on an "AS IS" BASIS,
+ *    WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ *    See the License for the specific language governing permissions and
+ *    limitations under the License.
+ */
+package org.mybatis.guice.transactional;
+
+import java.lang.reflect.Method;
+import java.util.ArrayList;
+import java.util.Collections;
+import java.util.List;
+import java.util.concurrent.ConcurrentHashMap;
+import java.util.concurrent.ConcurrentMap;
+
+import javax.inject.Inject;
+
+import org.aopalliance.intercept.MethodInterceptor;
+import org.aopalliance.intercept.MethodInvocation;
+import org.apache.ibatis.logging.Log;
+import org.apache.ibatis.logging.LogFactory;
+import org.apache.ibatis.session.SqlSessionManager;
+import org.mybatis.guice.session.SqlSessionManagerRegistry;
+
+/**
+ * Method interceptor for {@link ChainedTransactional} annotation.
+ *
+ * @since 3.10
+ */
+public final class ChainedTransactionalMethodInterceptor implements MethodInterceptor {
+
+  /**
+   * This class logger.
+   */
+  private final Log log = LogFactory.getLog(getClass());
+
+  /**
+   * The resolved {@link ChainedTransactional} settings, per intercepted method.
+   */
+  private final ConcurrentMap<Method, ChainedTransactional> annotations
+      = new ConcurrentHashMap<Method, ChainedTransactional>();
+
+  /**
+   * The {@code SqlSessionManager}s of the environments.
+   */
+  @Inject
+  private SqlSessionManagerRegistry registry;
+
+  /**
+   * The optional {@code PartialCommitHandler} reference.
+   */
+  @com.google.inject.Inject(optional = true)
+  private PartialCommitHandler partialCommitHandler;
+
+  public void setRegistry(SqlSessionManagerRegistry registry) {
+    this.registry = registry;
+  }
+
+  /**
+   * Sets the PartialCommitHandler instance.
+   *
+   * @param partialCommitHandler the PartialCommitHandler instance, may be null.
+   */
+  public void setPartialCommitHandler(PartialCommitHandler partialCommitHandler) {
+    this.partialCommitHandler = partialCommitHandler;
+  }
+
+  /**
+   * {@inheritDoc}
+   */
+  @Override
+  public Object invoke(MethodInvocation invocation) throws Throwable {
+    Method method = invocation.getMethod();
+    ChainedTransactional chained = lookup(method);
+
+    // the environments already in a transaction are inherited
+    String[] environmentIds = chained.value();
+    List<String> startedIds = new ArrayList<String>(environmentIds.length);
+    List<SqlSessionManager> started = new ArrayList<SqlSessionManager>(environmentIds.length);
+    List<Boolean> previousReadOnly = new ArrayList<Boolean>(environmentIds.length);
+    try {
+      for (String environmentId : environmentIds) {
+        SqlSessionManager sqlSessionManager = registry.get(environmentId);
+        if (!sqlSessionManager.isManagedSessionStarted()) {
+          // the chained sessions write, even inside a read-only transaction of another environment
+          previousReadOnly.add(
+              ReadOnlyContext.begin(ReadOnlyContext.dataSourceOf(sqlSessionManager.getConfiguration()), false));
+          try {
+            sqlSessionManager.startManagedSession(chained.executorType(),
+                chained.isolation().getTransactionIsolationLevel());
+          } catch (RuntimeException e) {
+            ReadOnlyContext.end(ReadOnlyContext.dataSourceOf(sqlSessionManager.getConfiguration()),
+                previousReadOnly.remove(previousReadOnly.size() - 1));
+            throw e;
+          }
+          startedIds.add(environmentId);
+          started.add(sqlSessionManager);
+        }
+      }
+    } catch (RuntimeException e) {
+      try {
+        rollback(method, startedIds, started, started.size());
+      } finally {
+        close(started, previousReadOnly);
+      }
+      throw e;
+    }
+
+    try {
+      Object object;
+      try {
+        object = invocation.proceed();
+      } catch (Throwable t) {
+        rollback(method, startedIds, started, started.size());
+        throw t;
+      }
+
+      if (chained.rollbackOnly()) {
+        rollback(method, startedIds, started, started.size());
+      } else {
+        commit(method, chained.force(), startedIds, started);
+      }
+      return object;
+    } finally {
+      close(started, previousReadOnly);
+    }
+  }
+
+  /**
+   * Commits the sessions in reverse order, rolling back the remaining ones at the first failure.
+   */
+  private void commit(Method method, boolean force, List<String> startedIds, List<SqlSessionManager> started) {
+    int index = started.size();
+    try {
+      while (index > 0) {
+        started.get(index - 1).commit(force);
+        index--;
+      }
+    } catch (RuntimeException e) {
+      List<String> committed = new ArrayList<String>(startedIds.subList(index, startedIds.size()));
+      List<String> rolledBack = new ArrayList<String>(startedIds.subList(0, index));
+      Collections.reverse(committed);
+      Collections.reverse(rolledBack);
+      log.error("Chained transaction of " + method + " failed to commit " + rolledBack.get(0) + " after committing "
+          + committed, e);
+
+      // the failed session is rolled back too
+      rollback(method, startedIds, started, index);
+      if (!committed.isEmpty() && partialCommitHandler != null) {
+        partialCommitHandler.onPartialCommit(method, committed, rolledBack, e);
+      }
+      throw e;
+    }
+  }
+
+  /**
+   * Rolls back the first given number of sessions in reverse order.
+   */
+  private void rollback(Method method, List<String> startedIds, List<SqlSessionManager> started, int count) {
+    for (int i = count - 1; i >= 0; i--) {
+      try {
+        started.get(i).rollback(true);
+      } catch (RuntimeException e) {
+        log.warn("Chained transaction of " + method + " failed to roll back " + startedIds.get(i) + ": " + e);
+      }
+    }
+  }
+
+  private void close(List<SqlSessionManager> started, List<Boolean> previousReadOnly) {
+    for (int i = started.size() - 1; i >= 0; i--) {
+      SqlSessionManager sqlSessionManager = started.get(i);
+      try {
+        sqlSessionManager.close();
+      } catch (RuntimeException e) {
+        log.warn("Chained transaction failed to close a session: " + e);
+      } finally {
+        ReadOnlyContext.end(ReadOnlyContext.dataSourceOf(sqlSessionManager.getConfiguration()),
+            previousReadOnly.get(i));
+      }
+    }
+  }
+
+  private ChainedTransactional lookup(Method method) {
+    ChainedTransactional chained = annotations.get(method);
+    if (chained == null) {
+      chained = method.getAnnotation(ChainedTransactional.class);
+      if (chained == null) {
+        chained = method.getDeclaringClass().getAnnotation(ChainedTransactional.class);
+      }
+      annotations.putIfAbsent(method, chained);
+    }
+    return chained;
+  }
+
+}
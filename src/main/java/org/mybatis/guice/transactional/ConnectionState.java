@@ -0,0 +1,104 @@
+/**
+ *    Copyright 2009-2017 the original author or authors.
+ *
+ *    Licensed under the Apache License, Version 2.0 (the "License");
+ *    you may not use this file except in compliance with the License.
+ *    You may obtain a copy of the License at
+ *
+ *       http://www.apache.org/licenses/LICENSE-2.0
+ *
+ *    Unless required by applicable law or agreed to in writing, software
+ *    distributed under the License is distributed on an "AS IS" BASIS,
+ *    WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ *    See the License for the specific language governing permissions and
+ *    limitations under the License.
+ */
+package org.mybatis.guice.transactional;
+
+import java.sql.Connection;
+import java.sql.SQLException;
+
+/**
+ * The last known auto-commit, isolation and read-only values of a physical connection, so that setting a value the
+ * connection already has costs no round trip to the database.
+ * <p>
+ * A connection is used by one thread at a time and the pool hands it over to the next one, so the values are not
+ * guarded; a null value is not known yet, or not anymore after a failed change.
+ * </p>
+ *
+ * @since 3.10
+ */
+final class ConnectionState {
+
+  private Boolean autoCommit;
+
+  private Integer transactionIsolation;
+
+  private Boolean readOnly;
+
+  /**
+   * Sets the auto-commit mode of the given connection, unless it already has it.
+   *
+   * @param connection the connection
+   * @param value the auto-commit mode
+   * @return the previous mode if it was changed, null otherwise
+   * @throws SQLException if the mode cannot be read or changed
+   */
+  Boolean setAutoCommit(Connection connection, boolean value) throws SQLException {
+    boolean current = autoCommit != null ? autoCommit : connection.getAutoCommit();
+    autoCommit = current;
+    if (current == value) {
+      return null;
+    }
+    autoCommit = null;
+    connection.setAutoCommit(value);
+    autoCommit = value;
+    return current;
+  }
+
+  /**
+   * Sets the transaction isolation level of the given connection, unless it already has it.
+   *
+   * @param connection the connection
+   * @param value the transaction isolation level
+   * @throws SQLException if the level cannot be read or changed
+   */
+  void setTransactionIsolation(Connection connection, int value) throws SQLException {
+    int current = transactionIsolation != null ? transactionIsolation : connection.getTransactionIsolation();
+    transactionIsolation = current;
+    if (current == value) {
+      return;
+    }
+    transactionIsolation = null;
+    connection.setTransactionIsolation(value);
+    transactionIsolation = value;
+  }
+
+  /**
+   * Sets the read-only mode of the given connection, unless it already has it.
+   *
+   * @param connection the connection
+   * @param value the read-only mode
+   * @throws SQLException if the mode cannot be read or changed
+   */
+  void setReadOnly(Connection connection, boolean value) throws SQLException {
+    boolean current = readOnly != null ? readOnly : connection.isReadOnly();
+    readOnly = current;
+    if (current == value) {
+      return;
+    }
+    readOnly = null;
+    connection.setReadOnly(value);
+    readOnly = value;
+  }
+
+  /**
+   * Forgets all the values, they are read again from the connection on next use.
+   */
+  void reset() {
+    autoCommit = null;
+    transactionIsolation = null;
+    readOnly = null;
+  }
+
+}
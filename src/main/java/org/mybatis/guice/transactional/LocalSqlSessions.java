@@ -0,0 +1,99 @@
+/**
+ *    Copyright 2009-2017 the original author or authors.
+ *
+ *    Licensed under the Apache License, Version 2.0 (the "License");
+ *    you may not use this file except in compliance with the License.
+ *    You may obtain a copy of the License at
+ *
+ *       http://www.apache.org/licenses/LICENSE-2.0
+ *
+ *    Unless required by applicable law or agreed to in writing, software
+ *    distributed under the License is distributed on an "AS IS" BASIS,
+ *    WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ *    See the License for the specific language governing permissions and
+ *    limitations under the License.
+ */
+package org.mybatis.guice.transactional;
+
+import java.lang.reflect.Field;
+
+import javax.inject.Singleton;
+
+import org.apache.ibatis.session.SqlSession;
+import org.apache.ibatis.session.SqlSessionManager;
+
+/**
+ * A {@link SqlSessionBinding} accessing the managed sessions bound to the current thread by the
+ * {@link SqlSessionManager}s by reflection, for the managers not created on a
+ * {@link org.mybatis.guice.session.SuspendableSqlSessionFactory}.
+ * <p>
+ * {@code SqlSessionManager} keeps its managed session in a private {@code ThreadLocal}, which this binding reaches
+ * by reflection: it breaks if MyBatis renames the field and fails under a security manager or module encapsulation,
+ * so it is only used when bound explicitly, and by the XA resources created without a suspendable factory:
+ * </p>
+ * <pre>
+ * bind(SqlSessionBinding.class).to(LocalSqlSessions.class);
+ * </pre>
+ * <p>
+ * The field is looked up once, and its absence fails the creation of the binding, so the injector creation
+ * fails when the interceptors are injected with it.
+ * </p>
+ *
+ * @since 3.10
+ */
+@Singleton
+public final class LocalSqlSessions implements SqlSessionBinding {
+
+  private static volatile LocalSqlSessions instance;
+
+  private final Field localSqlSession;
+
+  public LocalSqlSessions() {
+    try {
+      localSqlSession = SqlSessionManager.class.getDeclaredField("localSqlSession");
+      localSqlSession.setAccessible(true);
+    } catch (Exception e) {
+      throw new IllegalStateException("Impossible to access the managed sessions of SqlSessionManager, bind "
+          + SqlSessionBinding.class.getName() + " to an implementation supporting this MyBatis version", e);
+    }
+  }
+
+  /**
+   * Returns the binding of the XA resources created without a suspendable factory.
+   *
+   * @return the shared instance
+   */
+  static LocalSqlSessions getInstance() {
+    LocalSqlSessions current = instance;
+    if (current == null) {
+      current = new LocalSqlSessions();
+      instance = current;
+    }
+    return current;
+  }
+
+  @Override
+  public SqlSession get(SqlSessionManager sqlSessionManager) {
+    return of(sqlSessionManager).get();
+  }
+
+  @Override
+  public void set(SqlSessionManager sqlSessionManager, SqlSession sqlSession) {
+    ThreadLocal<SqlSession> localSqlSession = of(sqlSessionManager);
+    if (sqlSession == null) {
+      localSqlSession.remove();
+    } else {
+      localSqlSession.set(sqlSession);
+    }
+  }
+
+  @SuppressWarnings("unchecked")
+  private ThreadLocal<SqlSession> of(SqlSessionManager sqlSessionManager) {
+    try {
+      return (ThreadLocal<SqlSession>) localSqlSession.get(sqlSessionManager);
+    } catch (IllegalAccessException e) {
+      throw new IllegalStateException("Impossible to access the managed sessions of " + sqlSessionManager, e);
+    }
+  }
+
+}
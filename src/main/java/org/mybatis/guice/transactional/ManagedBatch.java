@@ -0,0 +1,183 @@
+/**
+ *    Copyright 2009-2017 the original author or authors.
+ *
+ *    Licensed under the Apache License, Version 2.0 (the "License");
+ *    you may not use this file except in compliance with the License.
+ *    You may obtain a copy of the License at
+ *
+ *       http://www.apache.org/licenses/LICENSE-2.0
+ *
+ *    Unless required by applicable law or agreed to in writing, software
+ *    distributed under the License is distributed on an "AS IS" BASIS,
+ *    WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ *    See the License for the specific language governing permissions and
+ *    limitations under the License.
+ */
+package org.mybatis.guice.transactional;
+
+import java.lang.reflect.Method;
+
+import org.apache.ibatis.executor.Executor;
+import org.apache.ibatis.session.Configuration;
+
+/**
+ * The managed batch of the current thread, see {@link Transactional#batchSize()}.
+ * <p>
+ * The batch is started by the transactional interceptor together with the session of the outermost transactional
+ * method and ended once that session is closed; in between, the {@link ManagedBatchInterceptor} of the session
+ * configuration counts the batched statements and flushes them.
+ * </p>
+ *
+ * @since 3.10
+ */
+final class ManagedBatch {
+
+  private static final ThreadLocal<ManagedBatch> CURRENT = new ThreadLocal<ManagedBatch>();
+
+  private final Configuration configuration;
+
+  private final Method method;
+
+  private final int batchSize;
+
+  private final long batchBytes;
+
+  /**
+   * The executor of the session running the batched statements, bound by the first statement.
+   */
+  private Executor executor;
+
+  private int pendingStatements;
+
+  private long pendingBytes;
+
+  private boolean updating;
+
+  private ManagedBatch(Configuration configuration, TransactionalMethodDescriptor transactional) {
+    this.configuration = configuration;
+    this.method = transactional.getMethod();
+    this.batchSize = transactional.getBatchSize();
+    this.batchBytes = transactional.getBatchBytes();
+  }
+
+  /**
+   * Returns the managed batch of the current thread, if it batches the statements of the given configuration
+   * executed by the given executor; the first statement binds the batch to its executor.
+   *
+   * @param configuration the configuration of the executed statement
+   * @param executor the executor of the executed statement
+   * @return the managed batch, or null if the statement is not batched
+   */
+  static ManagedBatch current(Configuration configuration, Executor executor) {
+    ManagedBatch batch = CURRENT.get();
+    if (batch == null || batch.configuration != configuration) {
+      return null;
+    }
+    if (batch.executor == null) {
+      batch.executor = executor;
+    }
+    return batch.executor == executor ? batch : null;
+  }
+
+  /**
+   * Returns the managed batch of the current thread, if it is bound to the given executor.
+   *
+   * @param executor the intercepted executor
+   * @return the managed batch, or null if the executor runs no batched statement
+   */
+  static ManagedBatch current(Executor executor) {
+    ManagedBatch batch = CURRENT.get();
+    return batch != null && batch.executor == executor ? batch : null;
+  }
+
+  /**
+   * Returns the managed batch of the current thread while it executes a batched update.
+   *
+   * @return the managed batch, or null if no batched update is executing
+   */
+  static ManagedBatch updating() {
+    ManagedBatch batch = CURRENT.get();
+    return batch != null && batch.updating ? batch : null;
+  }
+
+  static void begin(Configuration configuration, TransactionalMethodDescriptor transactional) {
+    CURRENT.set(new ManagedBatch(configuration, transactional));
+  }
+
+  static void end() {
+    CURRENT.remove();
+  }
+
+  /**
+   * Returns the managed batch of the current thread, to move it to another thread.
+   *
+   * @return the managed batch, or null if none
+   */
+  static ManagedBatch get() {
+    return CURRENT.get();
+  }
+
+  static void set(ManagedBatch batch) {
+    if (batch == null) {
+      CURRENT.remove();
+    } else {
+      CURRENT.set(batch);
+    }
+  }
+
+  /**
+   * Returns the transactional method which started the batch.
+   *
+   * @return the transactional method which started the batch
+   */
+  Method getMethod() {
+    return method;
+  }
+
+  Configuration getConfiguration() {
+    return configuration;
+  }
+
+  void setUpdating(boolean updating) {
+    this.updating = updating;
+  }
+
+  boolean isMeasuringBytes() {
+    return batchBytes > 0;
+  }
+
+  void addBytes(long bytes) {
+    pendingBytes += bytes;
+  }
+
+  /**
+   * Counts a batched statement.
+   *
+   * @return true if the batch has to be flushed
+   */
+  boolean addStatement() {
+    pendingStatements++;
+    return (batchSize > 0 && pendingStatements >= batchSize) || (batchBytes > 0 && pendingBytes >= batchBytes);
+  }
+
+  boolean hasPendingStatements() {
+    return pendingStatements > 0;
+  }
+
+  int getPendingStatements() {
+    return pendingStatements;
+  }
+
+  long getPendingBytes() {
+    return pendingBytes;
+  }
+
+  /**
+   * Forgets the pending statements, once flushed or rolled back.
+   */
+  void reset() {
+    pendingStatements = 0;
+    pendingBytes = 0;
+  }
+
+}
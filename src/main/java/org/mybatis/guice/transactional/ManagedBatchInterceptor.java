@@ -0,0 +1,220 @@
+/**
+ *    Copyright 2009-2017 the original author or authors.
+ *
+ *    Licensed under the Apache License, Version 2.0 (the "License");
+ *    you may not use this file except in compliance with the License.
+ *    You may obtain a copy of the License at
+ *
+ *       http://www.apache.org/licenses/LICENSE-2.0
+ *
+ *    Unless required by applicable law or agreed to in writing, software
+ *    distributed under the License is distributed on an "AS IS" BASIS,
+ *    WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ *    See the License for the specific language governing permissions and
+ *    limitations under the License.
+ */
+package org.mybatis.guice.transactional;
+
+import java.sql.Statement;
+import java.util.List;
+import java.util.Properties;
+
+import org.apache.ibatis.cache.CacheKey;
+import org.apache.ibatis.executor.BatchResult;
+import org.apache.ibatis.executor.Executor;
+import org.apache.ibatis.executor.statement.StatementHandler;
+import org.apache.ibatis.mapping.BoundSql;
+import org.apache.ibatis.mapping.MappedStatement;
+import org.apache.ibatis.mapping.ParameterMapping;
+import org.apache.ibatis.mapping.ParameterMode;
+import org.apache.ibatis.plugin.Interceptor;
+import org.apache.ibatis.plugin.Intercepts;
+import org.apache.ibatis.plugin.Invocation;
+import org.apache.ibatis.plugin.Plugin;
+import org.apache.ibatis.plugin.Signature;
+import org.apache.ibatis.session.Configuration;
+import org.apache.ibatis.session.ResultHandler;
+import org.apache.ibatis.session.RowBounds;
+
+/**
+ * Flushes the statements batched by the {@link Transactional} methods declaring a {@link Transactional#batchSize()}
+ * or a {@link Transactional#batchBytes()}.
+ * <p>
+ * The batched statements are flushed when the number of statements or the estimated size of their parameters
+ * reaches the declared limit, before any query and before the commit, so that the generated keys are set and the
+ * queries read the batched changes; the update counts of every flush are delivered to the
+ * {@link BatchResultListener}, when bound. Outside the managed batches the plugin only delegates.
+ * </p>
+ *
+ * @since 3.10
+ */
+@Intercepts({
+    @Signature(type = Executor.class, method = "update", args = { MappedStatement.class, Object.class }),
+    @Signature(type = Executor.class, method = "query",
+        args = { MappedStatement.class, Object.class, RowBounds.class, ResultHandler.class }),
+    @Signature(type = Executor.class, method = "query",
+        args = { MappedStatement.class, Object.class, RowBounds.class, ResultHandler.class, CacheKey.class,
+            BoundSql.class }),
+    @Signature(type = Executor.class, method = "queryCursor",
+        args = { MappedStatement.class, Object.class, RowBounds.class }),
+    @Signature(type = Executor.class, method = "flushStatements", args = {}),
+    @Signature(type = Executor.class, method = "commit", args = { boolean.class }),
+    @Signature(type = Executor.class, method = "rollback", args = { boolean.class }),
+    @Signature(type = StatementHandler.class, method = "parameterize", args = { Statement.class }) })
+public final class ManagedBatchInterceptor implements Interceptor {
+
+  /**
+   * The estimated size of the parameters which are neither strings nor arrays.
+   */
+  private static final int VALUE_BYTES = 8;
+
+  /**
+   * The optional {@code BatchResultListener} reference.
+   */
+  @com.google.inject.Inject(optional = true)
+  private BatchResultListener batchResultListener;
+
+  /**
+   * Sets the BatchResultListener instance.
+   *
+   * @param batchResultListener the BatchResultListener instance, may be null.
+   */
+  public void setBatchResultListener(BatchResultListener batchResultListener) {
+    this.batchResultListener = batchResultListener;
+  }
+
+  @Override
+  public Object intercept(Invocation invocation) throws Throwable {
+    if (invocation.getTarget() instanceof StatementHandler) {
+      return parameterize(invocation);
+    }
+
+    Executor executor = (Executor) invocation.getTarget();
+    String methodName = invocation.getMethod().getName();
+    if ("update".equals(methodName)) {
+      return update(invocation, executor);
+    }
+
+    ManagedBatch batch = ManagedBatch.current(executor);
+    if (batch == null) {
+      return invocation.proceed();
+    }
+
+    if ("flushStatements".equals(methodName)) {
+      Object results = invocation.proceed();
+      batch.reset();
+      @SuppressWarnings("unchecked")
+      List<BatchResult> batchResults = (List<BatchResult>) results;
+      notifyListener(batch, batchResults);
+      return results;
+    }
+
+    if ("rollback".equals(methodName)) {
+      batch.reset();
+    } else if (batch.hasPendingStatements()) {
+      // queries and commits have to see the batched changes
+      flush(batch, executor);
+    }
+    return invocation.proceed();
+  }
+
+  private Object update(Invocation invocation, Executor executor) throws Throwable {
+    MappedStatement mappedStatement = (MappedStatement) invocation.getArgs()[0];
+    ManagedBatch batch = ManagedBatch.current(mappedStatement.getConfiguration(), executor);
+    if (batch == null) {
+      return invocation.proceed();
+    }
+
+    Object result;
+    batch.setUpdating(true);
+    try {
+      result = invocation.proceed();
+    } finally {
+      batch.setUpdating(false);
+    }
+    if (batch.addStatement()) {
+      flush(batch, executor);
+    }
+    return result;
+  }
+
+  private void flush(ManagedBatch batch, Executor executor) throws Throwable {
+    List<BatchResult> results = executor.flushStatements();
+    batch.reset();
+    notifyListener(batch, results);
+  }
+
+  private void notifyListener(ManagedBatch batch, List<BatchResult> results) {
+    BatchResultListener listener = this.batchResultListener;
+    if (listener != null && results != null && !results.isEmpty()) {
+      listener.onFlush(results, batch.getMethod());
+    }
+  }
+
+  private static Object parameterize(Invocation invocation) throws Throwable {
+    ManagedBatch batch = ManagedBatch.updating();
+    if (batch != null && batch.isMeasuringBytes()) {
+      StatementHandler statementHandler = (StatementHandler) invocation.getTarget();
+      batch.addBytes(estimateBytes(batch.getConfiguration(), statementHandler.getBoundSql(),
+          statementHandler.getParameterHandler().getParameterObject()));
+    }
+    return invocation.proceed();
+  }
+
+  /**
+   * Estimates the size of the parameters of a statement, resolving their values as the default parameter handler.
+   */
+  static long estimateBytes(Configuration configuration, BoundSql boundSql, Object parameterObject) {
+    List<ParameterMapping> parameterMappings = boundSql.getParameterMappings();
+    if (parameterMappings == null) {
+      return 0;
+    }
+
+    long bytes = 0;
+    for (ParameterMapping parameterMapping : parameterMappings) {
+      if (parameterMapping.getMode() == ParameterMode.OUT) {
+        continue;
+      }
+      String propertyName = parameterMapping.getProperty();
+      Object value;
+      if (boundSql.hasAdditionalParameter(propertyName)) {
+        value = boundSql.getAdditionalParameter(propertyName);
+      } else if (parameterObject == null) {
+        value = null;
+      } else if (configuration.getTypeHandlerRegistry().hasTypeHandler(parameterObject.getClass())) {
+        value = parameterObject;
+      } else {
+        value = configuration.newMetaObject(parameterObject).getValue(propertyName);
+      }
+      bytes += estimateBytes(value);
+    }
+    return bytes;
+  }
+
+  private static long estimateBytes(Object value) {
+    if (value == null) {
+      return 0;
+    }
+    if (value instanceof CharSequence) {
+      return ((CharSequence) value).length() * 2L;
+    }
+    if (value instanceof byte[]) {
+      return ((byte[]) value).length;
+    }
+    if (value instanceof char[]) {
+      return ((char[]) value).length * 2L;
+    }
+    return VALUE_BYTES;
+  }
+
+  @Override
+  public Object plugin(Object target) {
+    return Plugin.wrap(target, this);
+  }
+
+  @Override
+  public void setProperties(Properties properties) {
+    // do nothing
+  }
+
+}
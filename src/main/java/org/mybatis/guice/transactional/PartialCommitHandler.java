@@ -0,0 +1,39 @@
+/**
+ *    Copyright 2009-2017 the original author or authors.
+ *
+ *    Licensed under the Apache License, Version 2.0 (the "License");
+ *    you may not use this file except in compliance with the License.
+ *    You may obtain a copy of the License at
+ *
+ *       http://www.apache.org/licenses/LICENSE-2.0
+ *
+ *    Unless required by applicable law or agreed to in writing, software
+ *    distributed under the License is distributed on an "AS IS" BASIS,
+ *    WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ *    See the License for the specific language governing permissions and
+ *    limitations under the License.
+ */
+package org.mybatis.guice.transactional;
+
+import java.lang.reflect.Method;
+import java.util.List;
+
+/**
+ * Notified when a {@link ChainedTransactional} method committed some of its environments but not all of them, the
+ * data left inconsistent has to be repaired by the application.
+ *
+ * @since 3.10
+ */
+public interface PartialCommitHandler {
+
+  /**
+   * Handles a partial commit.
+   *
+   * @param method the intercepted method
+   * @param committed the ids of the environments committed
+   * @param rolledBack the ids of the environments rolled back, the first one failed to commit
+   * @param cause the commit failure
+   */
+  void onPartialCommit(Method method, List<String> committed, List<String> rolledBack, Throwable cause);
+
+}
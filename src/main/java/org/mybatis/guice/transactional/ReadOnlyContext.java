@@ -0,0 +1,131 @@
+/**
+ *    Copyright 2009-2017 the original author or authors.
+ *
+ *    Licensed under the Apache License, Version 2.0 (the "License");
+ *    you may not use this file except in compliance with the License.
+ *    You may obtain a copy of the License at
+ *
+ *       http://www.apache.org/licenses/LICENSE-2.0
+ *
+ *    Unless required by applicable law or agreed to in writing, software
+ *    distributed under the License is distributed on an "AS IS" BASIS,
+ *    WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ *    See the License for the specific language governing permissions and
+ *    limitations under the License.
+ */
+package org.mybatis.guice.transactional;
+
+import java.util.IdentityHashMap;
+import java.util.Map;
+
+import javax.sql.DataSource;
+
+import org.apache.ibatis.mapping.Environment;
+import org.apache.ibatis.session.Configuration;
+
+/**
+ * Tells whether the current thread runs inside a {@link Transactional#readOnly()} transaction of a given
+ * {@code DataSource}.
+ * <p>
+ * Every outermost transactional method sets the flag of the {@code DataSource} of its environment before its
+ * session is started and restores the previous value once that session is closed, so a routing
+ * {@code DataSource} can check its own flag when the session asks for its connection; the transactions of other
+ * environments running in the same thread do not change it.
+ * </p>
+ *
+ * @since 3.10
+ */
+public final class ReadOnlyContext {
+
+  private static final ThreadLocal<Map<DataSource, Boolean>> READ_ONLY = new ThreadLocal<Map<DataSource, Boolean>>();
+
+  private ReadOnlyContext() {
+    // do nothing
+  }
+
+  /**
+   * Checks if the current thread runs inside a read-only transaction of the given {@code DataSource}.
+   *
+   * @param dataSource the {@code DataSource} of the environment
+   * @return true if the current thread runs inside a read-only transaction of the data source
+   */
+  public static boolean isReadOnly(DataSource dataSource) {
+    Map<DataSource, Boolean> readOnly = READ_ONLY.get();
+    return readOnly != null && Boolean.TRUE.equals(readOnly.get(dataSource));
+  }
+
+  /**
+   * Sets the flag of the given {@code DataSource} for a transaction starting in the current thread.
+   *
+   * @param dataSource the {@code DataSource} of the environment, may be null
+   * @param readOnly the flag of the transaction
+   * @return the previous flag, to pass to {@link #end(DataSource, Boolean)}, or null if not set
+   */
+  static Boolean begin(DataSource dataSource, boolean readOnly) {
+    Map<DataSource, Boolean> flags = READ_ONLY.get();
+    if (flags == null) {
+      if (!readOnly) {
+        return null;
+      }
+      flags = new IdentityHashMap<DataSource, Boolean>();
+      READ_ONLY.set(flags);
+    }
+    return flags.put(dataSource, readOnly);
+  }
+
+  /**
+   * Restores the flag of the given {@code DataSource} once a transaction ended in the current thread.
+   *
+   * @param dataSource the {@code DataSource} of the environment, may be null
+   * @param previous the value returned by {@link #begin(DataSource, boolean)}
+   */
+  static void end(DataSource dataSource, Boolean previous) {
+    Map<DataSource, Boolean> flags = READ_ONLY.get();
+    if (flags == null) {
+      return;
+    }
+    if (previous == null) {
+      flags.remove(dataSource);
+    } else {
+      flags.put(dataSource, previous);
+    }
+    if (flags.isEmpty()) {
+      READ_ONLY.remove();
+    }
+  }
+
+  /**
+   * Returns a copy of the flags of the current thread.
+   *
+   * @return the flags, or null if none is set
+   */
+  static Map<DataSource, Boolean> capture() {
+    Map<DataSource, Boolean> flags = READ_ONLY.get();
+    return flags == null ? null : new IdentityHashMap<DataSource, Boolean>(flags);
+  }
+
+  /**
+   * Replaces the flags of the current thread with a copy of the given ones.
+   *
+   * @param flags the flags returned by {@link #capture()}, may be null
+   */
+  static void apply(Map<DataSource, Boolean> flags) {
+    if (flags == null || flags.isEmpty()) {
+      READ_ONLY.remove();
+    } else {
+      READ_ONLY.set(new IdentityHashMap<DataSource, Boolean>(flags));
+    }
+  }
+
+  /**
+   * Returns the {@code DataSource} of the environment of the given configuration.
+   *
+   * @param configuration the configuration
+   * @return the data source, or null if the configuration has no environment
+   */
+  static DataSource dataSourceOf(Configuration configuration) {
+    Environment environment = configuration.getEnvironment();
+    return environment != null ? environment.getDataSource() : null;
+  }
+
+}
@@ -0,0 +1,94 @@
+/**
+ *    Copyright 2009-2017 the original author or authors.
+ *
+ *    Licensed under the Apache License, Version 2.0 (the "License");
+ *    you may not use this file except in compliance with the License.
+ *    You may obtain a copy of the License at
+ *
+ *       http://www.apache.org/licenses/LICENSE-2.0
+ *
+ *    Unless required by applicable law or agreed to in writing, software
+ *    distributed under the License is distributed on an "AS IS" BASIS,
+ *    WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ *    See the License for the specific language governing permissions and
+ *    limitations under the License.
+ */
+package org.mybatis.guice.transactional;
+
+import java.lang.reflect.Constructor;
+import java.lang.reflect.Modifier;
+import java.util.Arrays;
+
+/**
+ * The constructors used to wrap exceptions into a {@link Transactional#rethrowExceptionsAs()} type.
+ * <p>
+ * They are not cached here: a static cache would pin the application class loader of the exception types, each
+ * {@link TransactionalMethodDescriptor} keeps the constructor it resolved instead.
+ * </p>
+ *
+ * @since 3.10
+ */
+final class RethrowExceptionConstructors {
+
+  static final Class<?>[] CAUSE_TYPES = new Class[] { Throwable.class };
+
+  static final Class<?>[] MESSAGE_CAUSE_TYPES = new Class[] { String.class, Throwable.class };
+
+  private final Constructor<? extends Throwable> causeConstructor;
+
+  private final Constructor<? extends Throwable> messageCauseConstructor;
+
+  private RethrowExceptionConstructors(Class<? extends Throwable> type) {
+    this.causeConstructor = getMatchingConstructor(type, CAUSE_TYPES);
+    this.messageCauseConstructor = getMatchingConstructor(type, MESSAGE_CAUSE_TYPES);
+  }
+
+  /**
+   * Resolves the constructors of the given re-throw type.
+   *
+   * @param type the re-throw exception type
+   * @return the constructors of the given re-throw type
+   */
+  static RethrowExceptionConstructors forType(Class<? extends Throwable> type) {
+    return new RethrowExceptionConstructors(type);
+  }
+
+  static Class<?>[] getArgumentTypes(boolean withMessage) {
+    return withMessage ? MESSAGE_CAUSE_TYPES : CAUSE_TYPES;
+  }
+
+  /**
+   * Returns the constructor taking a {@code (String, Throwable)} pair when {@code withMessage} is true,
+   * or a single {@code Throwable} otherwise.
+   *
+   * @param withMessage true if the exception is created with a custom message
+   * @return the matching constructor, or null if the type hierarchy does not declare an instantiable one
+   */
+  Constructor<? extends Throwable> get(boolean withMessage) {
+    return withMessage ? messageCauseConstructor : causeConstructor;
+  }
+
+  @SuppressWarnings("unchecked")
+  private static <E extends Throwable> Constructor<E> getMatchingConstructor(Class<E> type, Class<?>[] argumentsType) {
+    Class<? super E> currentType = type;
+    while (Object.class != currentType) {
+      for (Constructor<?> constructor : currentType.getConstructors()) {
+        if (Arrays.equals(argumentsType, constructor.getParameterTypes())) {
+          if (Modifier.isAbstract(currentType.getModifiers())) {
+            return null;
+          }
+          try {
+            // exception types are often nested in non public classes
+            constructor.setAccessible(true);
+          } catch (SecurityException e) {
+            // newInstance will report it
+          }
+          return (Constructor<E>) constructor;
+        }
+      }
+      currentType = currentType.getSuperclass();
+    }
+    return null;
+  }
+
+}
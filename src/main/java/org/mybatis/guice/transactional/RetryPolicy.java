@@ -0,0 +1,170 @@
+/**
+ *    Copyright 2009-2017 the original author or authors.
+ *
+ *    Licensed under the Apache License, Version 2.0 (the "License");
+ *    you may not use this file except in compliance with the License.
+ *    You may obtain a copy of the License at
+ *
+ *       http://www.apache.org/licenses/LICENSE-2.0
+ *
+ *    Unless required by applicable law or agreed to in writing, software
+ *    distributed under the License is distributed on an "AS IS" BASIS,
+ *    WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ *    See the License for the specific language governing permissions and
+ *    limitations under the License.
+ */
+package org.mybatis.guice.transactional;
+
+import java.sql.SQLException;
+import java.util.Arrays;
+import java.util.Random;
+
+import javax.transaction.xa.XAException;
+
+/**
+ * The retry settings of a {@link Transactional} method, deciding whether a failed transaction is run again and
+ * how long to wait before.
+ *
+ * @since 3.10
+ */
+final class RetryPolicy {
+
+  private static final Random JITTER = new Random();
+
+  private final int maxAttempts;
+
+  private final long backoff;
+
+  private final long maxBackoff;
+
+  private final String[] sqlStates;
+
+  private final int[] errorCodes;
+
+  private RetryPolicy(int maxAttempts, long backoff, long maxBackoff, String[] sqlStates, int[] errorCodes) {
+    this.maxAttempts = maxAttempts;
+    this.backoff = backoff;
+    this.maxBackoff = Math.max(maxBackoff, backoff);
+    this.sqlStates = sqlStates;
+    this.errorCodes = errorCodes;
+  }
+
+  /**
+   * Resolves the retry policy of the given annotation.
+   *
+   * @param transactional the annotation of the intercepted method
+   * @return the retry policy, or null if the transaction is attempted once only
+   */
+  static RetryPolicy of(Transactional transactional) {
+    if (transactional.maxAttempts() <= 1) {
+      return null;
+    }
+    return new RetryPolicy(transactional.maxAttempts(), Math.max(transactional.retryBackoff(), 0),
+        Math.max(transactional.retryMaxBackoff(), 0), transactional.retrySqlStates().clone(),
+        transactional.retryErrorCodes().clone());
+  }
+
+  int getMaxAttempts() {
+    return maxAttempts;
+  }
+
+  /**
+   * Checks if the transaction failed with the given exception can be attempted again.
+   *
+   * @param t the failure of the given attempt
+   * @param attempt the attempt that failed, starting at 1
+   * @return true if one more attempt is allowed and the failure is retryable
+   */
+  boolean canRetry(Throwable t, int attempt) {
+    return attempt < maxAttempts && isRetryable(t);
+  }
+
+  /**
+   * Checks if one of the {@code SQLException}s causing the given exception has a retryable SQLState or vendor
+   * code, or if an XA branch was rolled back because of a deadlock.
+   *
+   * @param t the failure of the transaction
+   * @return true if the failure is transient
+   */
+  boolean isRetryable(Throwable t) {
+    Throwable cause = t;
+    for (int depth = 0; cause != null && depth < 32; depth++) {
+      if (cause instanceof SQLException) {
+        for (SQLException e = (SQLException) cause; e != null; e = e.getNextException()) {
+          if (isRetryable(e)) {
+            return true;
+          }
+        }
+      } else if (cause instanceof XAException && ((XAException) cause).errorCode == XAException.XA_RBDEADLOCK) {
+        return true;
+      }
+      cause = cause.getCause();
+    }
+    return false;
+  }
+
+  private boolean isRetryable(SQLException e) {
+    String sqlState = e.getSQLState();
+    if (sqlState != null) {
+      for (String retryable : sqlStates) {
+        // a two characters state matches the whole class, "40" is any transaction rollback
+        if (sqlState.startsWith(retryable)) {
+          return true;
+        }
+      }
+    }
+    for (int errorCode : errorCodes) {
+      if (e.getErrorCode() == errorCode) {
+        return true;
+      }
+    }
+    return false;
+  }
+
+  /**
+   * Returns the milliseconds to wait after the given failed attempt: the backoff doubles on every attempt up to the
+   * maximum, and a random part of up to half of it spreads the transactions that collided.
+   *
+   * @param attempt the attempt that failed, starting at 1
+   * @return the milliseconds to wait
+   */
+  long backoff(int attempt) {
+    long delay = backoff;
+    for (int i = 1; i < attempt && delay < maxBackoff; i++) {
+      delay <<= 1;
+    }
+    delay = Math.min(delay, maxBackoff);
+    if (delay <= 1) {
+      return delay;
+    }
+    long half = delay >>> 1;
+    return delay - half + (long) (JITTER.nextDouble() * (half + 1));
+  }
+
+  /**
+   * Waits before the next attempt.
+   *
+   * @param attempt the attempt that failed, starting at 1
+   * @return false if the thread was interrupted while waiting, so that no more attempt is made
+   */
+  boolean await(int attempt) {
+    long delay = backoff(attempt);
+    if (delay <= 0) {
+      return !Thread.currentThread().isInterrupted();
+    }
+    try {
+      Thread.sleep(delay);
+      return true;
+    } catch (InterruptedException e) {
+      Thread.currentThread().interrupt();
+      return false;
+    }
+  }
+
+  @Override
+  public String toString() {
+    return "RetryPolicy [maxAttempts=" + maxAttempts + ", backoff=" + backoff + ", maxBackoff=" + maxBackoff
+        + ", sqlStates=" + Arrays.toString(sqlStates) + ", errorCodes=" + Arrays.toString(errorCodes) + "]";
+  }
+
+}
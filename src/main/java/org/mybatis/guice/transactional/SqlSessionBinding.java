@@ -0,0 +1,53 @@
+/**
+ *    Copyright 2009-2017 the original author or authors.
+ *
+ *    Licensed under the Apache License, Version 2.0 (the "License");
+ *    you may not use this file except in compliance with the License.
+ *    You may obtain a copy of the License at
+ *
+ *       http://www.apache.org/licenses/LICENSE-2.0
+ *
+ *    Unless required by applicable law or agreed to in writing, software
+ *    distributed under the License is distributed on an "AS IS" BASIS,
+ *    WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ *    See the License for the specific language governing permissions and
+ *    limitations under the License.
+ */
+package org.mybatis.guice.transactional;
+
+import org.apache.ibatis.session.SqlSession;
+import org.apache.ibatis.session.SqlSessionManager;
+
+import com.google.inject.ImplementedBy;
+
+/**
+ * Binds the managed sessions of the {@link SqlSessionManager}s to the current thread, so that a transaction can
+ * be suspended or follow a task running on another thread.
+ * <p>
+ * The default implementation suspends and resumes the managed sessions through the public API of the managers
+ * created on a {@link org.mybatis.guice.session.SuspendableSqlSessionFactory}, as the MyBatis modules create them;
+ * {@link LocalSqlSessions} can be bound for other managers.
+ * </p>
+ *
+ * @since 3.10
+ */
+@ImplementedBy(SuspendableSqlSessions.class)
+public interface SqlSessionBinding {
+
+  /**
+   * Returns the managed session bound to the current thread.
+   *
+   * @param sqlSessionManager the session manager
+   * @return the managed session, or null if none is bound
+   */
+  SqlSession get(SqlSessionManager sqlSessionManager);
+
+  /**
+   * Binds the given session to the current thread, or unbinds the current one if the session is null.
+   *
+   * @param sqlSessionManager the session manager
+   * @param sqlSession the managed session, may be null
+   */
+  void set(SqlSessionManager sqlSessionManager, SqlSession sqlSession);
+
+}
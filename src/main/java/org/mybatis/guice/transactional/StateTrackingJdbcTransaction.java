@@ -0,0 +1,98 @@
+/**
+ *    Copyright 2009-2017 the original author or authors.
+ *
+ *    Licensed under the Apache License, Version 2.0 (the "License");
+ *    you may not use this file except in compliance with the License.
+ *    You may obtain a copy of the License at
+ *
+ *       http://www.apache.org/licenses/LICENSE-2.0
+ *
+ *    Unless required by applicable law or agreed to in writing, software
+ *    distributed under the License is distributed on an "AS IS" BASIS,
+ *    WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ *    See the License for the specific language governing permissions and
+ *    limitations under the License.
+ */
+package org.mybatis.guice.transactional;
+
+import java.sql.SQLException;
+
+import javax.sql.DataSource;
+
+import org.apache.ibatis.logging.Log;
+import org.apache.ibatis.logging.LogFactory;
+import org.apache.ibatis.session.TransactionIsolationLevel;
+import org.apache.ibatis.transaction.jdbc.JdbcTransaction;
+
+/**
+ * A {@code JdbcTransaction} that changes the auto-commit mode of its connection only when it differs from the one the
+ * connection has, and restores it on close only when it was changed. When the pool is known to keep the connection
+ * values, the isolation and read-only values are skipped as well, and nothing is restored.
+ *
+ * @since 3.10
+ * @see StateTrackingJdbcTransactionFactory
+ */
+final class StateTrackingJdbcTransaction extends JdbcTransaction {
+
+  private static final Log log = LogFactory.getLog(StateTrackingJdbcTransaction.class);
+
+  private final StateTrackingJdbcTransactionFactory transactionFactory;
+
+  private Boolean previousAutoCommit;
+
+  StateTrackingJdbcTransaction(StateTrackingJdbcTransactionFactory transactionFactory, DataSource ds,
+      TransactionIsolationLevel desiredLevel, boolean desiredAutoCommit) {
+    super(ds, desiredLevel, desiredAutoCommit);
+    this.transactionFactory = transactionFactory;
+  }
+
+  @Override
+  protected void openConnection() throws SQLException {
+    if (log.isDebugEnabled()) {
+      log.debug("Opening JDBC Connection");
+    }
+    connection = dataSource.getConnection();
+    ConnectionState state = transactionFactory.stateOf(connection);
+    boolean poolKeepsConnectionState = transactionFactory.isPoolKeepsConnectionState();
+    try {
+      if (poolKeepsConnectionState) {
+        // the read-only mode cannot change inside a transaction, so before the auto-commit mode; the connection may
+        // still be read-only from the previous transaction
+        state.setReadOnly(connection, ReadOnlyContext.isReadOnly(dataSource));
+      }
+      if (level != null) {
+        if (poolKeepsConnectionState) {
+          state.setTransactionIsolation(connection, level.getLevel());
+        } else {
+          // reading the level first would cost the call it saves
+          connection.setTransactionIsolation(level.getLevel());
+        }
+      }
+      previousAutoCommit = state.setAutoCommit(connection, autoCommmit);
+    } catch (SQLException e) {
+      state.reset();
+      throw e;
+    }
+  }
+
+  /**
+   * Restores the auto-commit mode changed when the connection was opened, instead of reading and forcing it as
+   * {@code JdbcTransaction} does; a pool keeping the values gets them as the transaction left them.
+   */
+  @Override
+  protected void resetAutoCommit() {
+    if (transactionFactory.isPoolKeepsConnectionState() || previousAutoCommit == null) {
+      return;
+    }
+    try {
+      connection.setAutoCommit(previousAutoCommit);
+    } catch (SQLException e) {
+      if (log.isDebugEnabled()) {
+        log.debug("Error resetting autocommit before closing the connection.  Cause: " + e);
+      }
+    } finally {
+      previousAutoCommit = null;
+    }
+  }
+
+}
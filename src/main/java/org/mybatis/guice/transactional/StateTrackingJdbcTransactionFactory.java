@@ -0,0 +1,118 @@
+/**
+ *    Copyright 2009-2017 the original author or authors.
+ *
+ *    Licensed under the Apache License, Version 2.0 (the "License");
+ *    you may not use this file except in compliance with the License.
+ *    You may obtain a copy of the License at
+ *
+ *       http://www.apache.org/licenses/LICENSE-2.0
+ *
+ *    Unless required by applicable law or agreed to in writing, software
+ *    distributed under the License is distributed on an "AS IS" BASIS,
+ *    WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ *    See the License for the specific language governing permissions and
+ *    limitations under the License.
+ */
+package org.mybatis.guice.transactional;
+
+import java.sql.Connection;
+import java.sql.SQLException;
+import java.util.concurrent.ConcurrentMap;
+
+import javax.inject.Named;
+import javax.sql.DataSource;
+
+import org.apache.ibatis.session.TransactionIsolationLevel;
+import org.apache.ibatis.transaction.Transaction;
+import org.apache.ibatis.transaction.jdbc.JdbcTransactionFactory;
+
+import com.google.common.collect.MapMaker;
+
+/**
+ * A {@code JdbcTransactionFactory} whose transactions skip the connection changes that would leave a pooled connection
+ * as it is, saving a round trip to the database on many drivers.
+ * <p>
+ * By default a transaction costs at most the calls of a {@code JdbcTransaction}: the auto-commit mode is changed only
+ * when it differs from the one of the connection the pool lends, and restored on close only when it was changed, so
+ * a pool resetting the returned connections, as HikariCP and Druid do, finds it as it lent it. The isolation level is
+ * set as requested, without reading it first nor restoring it.
+ * </p>
+ * <p>
+ * A pool that hands the connections out with the values the last transaction left can be declared with
+ * {@link #setPoolKeepsConnectionState(boolean)}. The last known auto-commit, isolation and read-only values are then
+ * kept per physical connection, as exposed by {@link Connection#unwrap(Class)}, and left in place when a transaction
+ * is closed, so the next transaction asking for the same values makes no call. A transaction of a
+ * {@code @Transactional(readOnly = true)} method also flags its connection as read-only, until the next read-write
+ * transaction. The connections must not be changed by other code without being restored.
+ * </p>
+ *
+ * @since 3.10
+ */
+public class StateTrackingJdbcTransactionFactory extends JdbcTransactionFactory {
+
+  private final ConcurrentMap<Connection, ConnectionState> states = new MapMaker().weakKeys().makeMap();
+
+  private boolean poolKeepsConnectionState;
+
+  /**
+   * Declares that the pool does not reset the auto-commit, isolation and read-only values of the returned
+   * connections, false by default.
+   *
+   * @param poolKeepsConnectionState true to remember the values of each physical connection across transactions and
+   *          leave them in place on close
+   */
+  @com.google.inject.Inject(optional = true)
+  public void setPoolKeepsConnectionState(
+      @Named("mybatis.stateTracking.poolKeepsConnectionState") boolean poolKeepsConnectionState) {
+    this.poolKeepsConnectionState = poolKeepsConnectionState;
+  }
+
+  boolean isPoolKeepsConnectionState() {
+    return poolKeepsConnectionState;
+  }
+
+  @Override
+  public Transaction newTransaction(DataSource ds, TransactionIsolationLevel level, boolean autoCommit) {
+    return new StateTrackingJdbcTransaction(this, ds, level, autoCommit);
+  }
+
+  /**
+   * Returns the state of the physical connection behind the given one, forgotten on every checkout unless the pool
+   * keeps it.
+   *
+   * @param connection the connection lent by the pool
+   * @return the state of the physical connection
+   */
+  ConnectionState stateOf(Connection connection) {
+    if (!poolKeepsConnectionState) {
+      return new ConnectionState();
+    }
+    Connection physicalConnection = unwrap(connection);
+    ConnectionState state = states.get(physicalConnection);
+    if (state == null) {
+      state = new ConnectionState();
+      ConnectionState existing = states.putIfAbsent(physicalConnection, state);
+      if (existing != null) {
+        state = existing;
+      }
+    }
+    return state;
+  }
+
+  private static Connection unwrap(Connection connection) {
+    try {
+      if (connection.isWrapperFor(Connection.class)) {
+        Connection physicalConnection = connection.unwrap(Connection.class);
+        if (physicalConnection != null) {
+          return physicalConnection;
+        }
+      }
+    } catch (SQLException e) {
+      // the connection is tracked as lent, its state is read again on every checkout
+    } catch (AbstractMethodError e) {
+      // JDBC 3 driver
+    }
+    return connection;
+  }
+
+}
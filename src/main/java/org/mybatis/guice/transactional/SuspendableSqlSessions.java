@@ -0,0 +1,60 @@
+/**
+ *    Copyright 2009-2017 the original author or authors.
+ *
+ *    Licensed under the Apache License, Version 2.0 (the "License");
+ *    you may not use this file except in compliance with the License.
+ *    You may obtain a copy of the License at
+ *
+ *       http://www.apache.org/licenses/LICENSE-2.0
+ *
+ *    Unless required by applicable law or agreed to in writing, software
+ *    distributed under the License is distributed on an "AS IS" BASIS,
+ *    WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ *    See the License for the specific language governing permissions and
+ *    limitations under the License.
+ */
+package org.mybatis.guice.transactional;
+
+import javax.inject.Singleton;
+
+import org.apache.ibatis.session.SqlSession;
+import org.apache.ibatis.session.SqlSessionManager;
+import org.mybatis.guice.session.SuspendableSqlSessionFactory;
+
+/**
+ * The default {@link SqlSessionBinding}, detaching and binding again the managed sessions through the public API
+ * of the {@link SqlSessionManager}s created on a {@link SuspendableSqlSessionFactory}, as the MyBatis modules
+ * create them.
+ *
+ * @since 3.10
+ */
+@Singleton
+final class SuspendableSqlSessions implements SqlSessionBinding {
+
+  private static final SuspendableSqlSessions INSTANCE = new SuspendableSqlSessions();
+
+  /**
+   * Returns the binding used when none is injected.
+   *
+   * @return the shared instance
+   */
+  static SuspendableSqlSessions getInstance() {
+    return INSTANCE;
+  }
+
+  @Override
+  public SqlSession get(SqlSessionManager sqlSessionManager) {
+    // the only way to reach the managed session is to suspend it, it is resumed right away
+    SqlSession sqlSession = SuspendableSqlSessionFactory.suspendManagedSession(sqlSessionManager);
+    SuspendableSqlSessionFactory.resumeManagedSession(sqlSessionManager, sqlSession);
+    return sqlSession;
+  }
+
+  @Override
+  public void set(SqlSessionManager sqlSessionManager, SqlSession sqlSession) {
+    // the session bound so far is detached, not closed, as LocalSqlSessions does
+    SuspendableSqlSessionFactory.suspendManagedSession(sqlSessionManager);
+    SuspendableSqlSessionFactory.resumeManagedSession(sqlSessionManager, sqlSession);
+  }
+
+}
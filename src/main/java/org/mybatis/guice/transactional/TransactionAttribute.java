@@ -15,6 +15,9 @@
  */
 package org.mybatis.guice.transactional;
 
+import java.util.EnumMap;
+import java.util.Map;
+
 import javax.transaction.HeuristicMixedException;
 import javax.transaction.HeuristicRollbackException;
 import javax.transaction.InvalidTransactionException;
@@ -25,6 +28,8 @@ import javax.transaction.SystemException;
 import javax.transaction.Transaction;
 import javax.transaction.TransactionManager;
 
+import org.mybatis.guice.transactional.Transactional.TxType;
+
 public enum TransactionAttribute {
   MANDATORY {
     @Override
@@ -145,10 +150,33 @@ public enum TransactionAttribute {
     }
   };
 
+  private static final Map<TxType, TransactionAttribute> BY_TX_TYPE = new EnumMap<TxType, TransactionAttribute>(
+      TxType.class);
+
+  static {
+    BY_TX_TYPE.put(TxType.REQUIRED, REQUIRED);
+    BY_TX_TYPE.put(TxType.REQUIRES_NEW, REQUIRESNEW);
+    BY_TX_TYPE.put(TxType.MANDATORY, MANDATORY);
+    BY_TX_TYPE.put(TxType.SUPPORTS, SUPPORTS);
+    BY_TX_TYPE.put(TxType.NOT_SUPPORTED, NOTSUPPORTED);
+    BY_TX_TYPE.put(TxType.NEVER, NEVER);
+  }
+
   public static TransactionAttribute fromValue(String value) {
     return valueOf(value.toUpperCase());
   }
 
+  /**
+   * Returns the attribute demarcating the transactions of the given type.
+   *
+   * @param txType the transaction type
+   * @return the attribute of the transaction type
+   * @since 3.10
+   */
+  public static TransactionAttribute fromTxType(TxType txType) {
+    return BY_TX_TYPE.get(txType);
+  }
+
   public TransactionToken begin(TransactionManager man)
       throws SystemException, NotSupportedException, InvalidTransactionException, IllegalStateException {
 
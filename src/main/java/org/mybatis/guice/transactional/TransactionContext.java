@@ -0,0 +1,206 @@
+/**
+ *    Copyright 2009-2017 the original author or authors.
+ *
+ *    Licensed under the Apache License, Version 2.0 (the "License");
+ *    you may not use this file except in compliance with the License.
+ *    You may obtain a copy of the License at
+ *
+ *       http://www.apache.org/licenses/LICENSE-2.0
+ *
+ *    Unless required by applicable law or agreed to in writing, software
+ *    distributed under the License is distributed on an "AS IS" BASIS,
+ *    WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ *    See the License for the specific language governing permissions and
+ *    limitations under the License.
+ */
+package org.mybatis.guice.transactional;
+
+import java.util.IdentityHashMap;
+import java.util.Map;
+import java.util.concurrent.Callable;
+
+import javax.sql.DataSource;
+
+import org.apache.ibatis.session.SqlSession;
+import org.apache.ibatis.session.SqlSessionManager;
+
+/**
+ * The transactional state of a thread, captured so that it can follow a task running on another thread.
+ * <p>
+ * The managed sessions, the {@link ReadOnlyContext} flags and the managed batch of a {@link Transactional} method
+ * are bound to the thread which started them. A task handed over to an executor, virtual thread executors
+ * included, sees them once the captured context is attached, so the mappers and the nested transactional methods
+ * it calls join the transaction:
+ * </p>
+ * <pre>
+ * TransactionContext context = TransactionContext.capture(sqlSessionManager);
+ * executor.submit(context.wrap(task)).get();
+ * </pre>
+ * <p>
+ * A session is not thread safe: the capturing thread must wait for the task and must not use the transaction
+ * meanwhile. No monitor is held while the context is attached.
+ * </p>
+ *
+ * @since 3.10
+ */
+public final class TransactionContext {
+
+  private final SqlSessionBinding sqlSessionBinding;
+
+  private final Map<SqlSessionManager, SqlSession> sqlSessions;
+
+  private final Map<DataSource, Boolean> readOnly;
+
+  private final ManagedBatch managedBatch;
+
+  private TransactionContext(SqlSessionBinding sqlSessionBinding, Map<SqlSessionManager, SqlSession> sqlSessions,
+      Map<DataSource, Boolean> readOnly, ManagedBatch managedBatch) {
+    this.sqlSessionBinding = sqlSessionBinding;
+    this.sqlSessions = sqlSessions;
+    this.readOnly = readOnly;
+    this.managedBatch = managedBatch;
+  }
+
+  /**
+   * Captures the transactional state of the current thread, the managers being created on a
+   * {@link org.mybatis.guice.session.SuspendableSqlSessionFactory}.
+   *
+   * @param sqlSessionManagers the managers whose managed sessions are captured
+   * @return the captured context, which may hold no session
+   */
+  public static TransactionContext capture(SqlSessionManager... sqlSessionManagers) {
+    return capture(SuspendableSqlSessions.getInstance(), sqlSessionManagers);
+  }
+
+  /**
+   * Captures the transactional state of the current thread, reaching the managed sessions through the given
+   * binding.
+   *
+   * @param sqlSessionBinding the binding of the managed sessions
+   * @param sqlSessionManagers the managers whose managed sessions are captured
+   * @return the captured context, which may hold no session
+   */
+  public static TransactionContext capture(SqlSessionBinding sqlSessionBinding,
+      SqlSessionManager... sqlSessionManagers) {
+    Map<SqlSessionManager, SqlSession> sqlSessions = new IdentityHashMap<SqlSessionManager, SqlSession>();
+    for (SqlSessionManager sqlSessionManager : sqlSessionManagers) {
+      sqlSessions.put(sqlSessionManager, sqlSessionBinding.get(sqlSessionManager));
+    }
+    return new TransactionContext(sqlSessionBinding, sqlSessions, ReadOnlyContext.capture(), ManagedBatch.get());
+  }
+
+  /**
+   * Checks if the context holds a managed session.
+   *
+   * @return true if the context holds a managed session
+   */
+  public boolean isTransactional() {
+    for (SqlSession sqlSession : sqlSessions.values()) {
+      if (sqlSession != null) {
+        return true;
+      }
+    }
+    return false;
+  }
+
+  /**
+   * Binds this context to the current thread, replacing its transactional state until the returned scope is
+   * detached.
+   *
+   * @return the scope restoring the previous state of the current thread
+   */
+  public Scope attach() {
+    Scope scope = new Scope(capture(sqlSessionBinding, sqlSessionManagers()));
+    apply();
+    return scope;
+  }
+
+  /**
+   * Wraps the given task so that it runs with this context attached.
+   *
+   * @param task the task to wrap
+   * @return the wrapped task
+   */
+  public Runnable wrap(final Runnable task) {
+    return new Runnable() {
+
+      @Override
+      public void run() {
+        Scope scope = attach();
+        try {
+          task.run();
+        } finally {
+          scope.detach();
+        }
+      }
+
+    };
+  }
+
+  /**
+   * Wraps the given task so that it runs with this context attached.
+   *
+   * @param <V> the task result type
+   * @param task the task to wrap
+   * @return the wrapped task
+   */
+  public <V> Callable<V> wrap(final Callable<V> task) {
+    return new Callable<V>() {
+
+      @Override
+      public V call() throws Exception {
+        Scope scope = attach();
+        try {
+          return task.call();
+        } finally {
+          scope.detach();
+        }
+      }
+
+    };
+  }
+
+  private SqlSessionManager[] sqlSessionManagers() {
+    return sqlSessions.keySet().toArray(new SqlSessionManager[sqlSessions.size()]);
+  }
+
+  private void apply() {
+    for (Map.Entry<SqlSessionManager, SqlSession> entry : sqlSessions.entrySet()) {
+      sqlSessionBinding.set(entry.getKey(), entry.getValue());
+    }
+    ReadOnlyContext.apply(readOnly);
+    ManagedBatch.set(managedBatch);
+  }
+
+  /**
+   * The attachment of a context to a thread.
+   */
+  public static final class Scope {
+
+    private final TransactionContext previous;
+
+    private final Thread thread;
+
+    private boolean detached;
+
+    Scope(TransactionContext previous) {
+      this.previous = previous;
+      this.thread = Thread.currentThread();
+    }
+
+    /**
+     * Restores the transactional state the thread had before the context was attached.
+     */
+    public void detach() {
+      if (Thread.currentThread() != thread) {
+        throw new IllegalStateException("A transaction context has to be detached by the thread it was attached to");
+      }
+      if (!detached) {
+        detached = true;
+        previous.apply();
+      }
+    }
+
+  }
+
+}
@@ -0,0 +1,78 @@
+/**
+ *    Copyright 2009-2017 the original author or authors.
+ *
+ *    Licensed under the Apache License, Version 2.0 (the "License");
+ *    you may not use this file except in compliance with the License.
+ *    You may obtain a copy of the License at
+ *
+ *       http://www.apache.org/licenses/LICENSE-2.0
+ *
+ *    Unless required by applicable law or agreed to in writing, software
+ *    distributed under the License is distributed on an "AS IS" BASIS,
+ *    WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ *    See the License for the specific language governing permissions and
+ *    limitations under the License.
+ */
+package org.mybatis.guice.transactional;
+
+/**
+ * The life-cycle events of a transaction demarcated by a {@link Transactional} method.
+ *
+ * @since 3.10
+ * @see TransactionEventSink
+ */
+public enum TransactionEvent {
+
+  /**
+   * A new transaction has been started for the intercepted method.
+   */
+  BEGIN,
+
+  /**
+   * The intercepted method joined the transaction already active for the current thread.
+   */
+  INHERIT,
+
+  /**
+   * The transaction started for the intercepted method is being committed.
+   */
+  COMMIT,
+
+  /**
+   * The transaction started for the intercepted method is being rolled back.
+   */
+  ROLLBACK,
+
+  /**
+   * The transaction started for the intercepted method terminated its life-cycle.
+   */
+  CLOSE,
+
+  /**
+   * The transaction active for the current thread is suspended while the intercepted method runs in a new one.
+   */
+  SUSPEND,
+
+  /**
+   * The transaction suspended for the intercepted method is bound again to the current thread.
+   */
+  RESUME,
+
+  /**
+   * A savepoint is set in the transaction active for the current thread before the intercepted method runs.
+   */
+  SAVEPOINT,
+
+  /**
+   * The transaction active for the current thread is being rolled back to the savepoint set for the intercepted
+   * method.
+   */
+  ROLLBACK_TO_SAVEPOINT,
+
+  /**
+   * The transaction started for the intercepted method failed with a transient error, the method is run again in a
+   * new transaction.
+   */
+  RETRY
+
+}
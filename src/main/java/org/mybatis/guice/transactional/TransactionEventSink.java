@@ -0,0 +1,41 @@
+/**
+ *    Copyright 2009-2017 the original author or authors.
+ *
+ *    Licensed under the Apache License, Version 2.0 (the "License");
+ *    you may not use this file except in compliance with the License.
+ *    You may obtain a copy of the License at
+ *
+ *       http://www.apache.org/licenses/LICENSE-2.0
+ *
+ *    Unless required by applicable law or agreed to in writing, software
+ *    distributed under the License is distributed on an "AS IS" BASIS,
+ *    WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ *    See the License for the specific language governing permissions and
+ *    limitations under the License.
+ */
+package org.mybatis.guice.transactional;
+
+import java.lang.reflect.Method;
+
+/**
+ * Receives the {@link TransactionEvent}s fired by the transactional interceptors.
+ * <p>
+ * Events are delivered synchronously on the thread running the intercepted method and no message is built
+ * to deliver them, so a sink can be kept enabled in production; implementations should be thread safe and
+ * must not throw. A sink is used by the interceptors when bound in the injector, i.e.
+ * {@code bind(TransactionEventSink.class).to(MyTransactionEventSink.class)}.
+ * </p>
+ *
+ * @since 3.10
+ */
+public interface TransactionEventSink {
+
+  /**
+   * Notifies a transaction life-cycle event.
+   *
+   * @param event the transaction event
+   * @param method the intercepted method demarcating the transaction
+   */
+  void onEvent(TransactionEvent event, Method method);
+
+}
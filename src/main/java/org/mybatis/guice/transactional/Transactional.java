@@ -99,6 +99,94 @@ public @interface Transactional {
    */
   boolean rollbackOnly() default false;
 
+  /**
+   * Flag to indicate that the transaction does not modify data, so that its connection can be obtained from a
+   * read replica, see {@link ReadOnlyContext}.
+   *
+   * This parameter is false by default and only applies to the outermost transactional method.
+   *
+   * @return true if the transaction only reads data.
+   * @since 3.10
+   */
+  boolean readOnly() default false;
+
+  /**
+   * The number of statements after which the batched statements are flushed automatically.
+   *
+   * A value greater than 0 enables the managed batching of the outermost transactional method, which runs with
+   * {@link ExecutorType#BATCH} whatever the {@link #executorType()}; see {@link ManagedBatchInterceptor}.
+   *
+   * This parameter is 0 by default, i.e. no managed batching.
+   *
+   * @return the number of statements after which the batched statements are flushed.
+   * @since 3.10
+   */
+  int batchSize() default 0;
+
+  /**
+   * The estimated amount of bytes of parameters after which the batched statements are flushed automatically.
+   *
+   * A value greater than 0 enables the managed batching as {@link #batchSize()} does; when both are set, the
+   * statements are flushed as soon as one of the limits is reached.
+   *
+   * This parameter is 0 by default, i.e. no limit.
+   *
+   * @return the amount of bytes of parameters after which the batched statements are flushed.
+   * @since 3.10
+   */
+  long batchBytes() default 0;
+
+  /**
+   * The maximum number of times the outermost transactional method is run when its transaction fails with a
+   * transient error, such as a deadlock or a serialization failure, see {@link #retrySqlStates()}.
+   *
+   * The transaction is rolled back and closed before the method runs again, so the method must not have side
+   * effects outside of the transaction. An inner transactional method is never retried on its own.
+   *
+   * This parameter is 1 by default, i.e. no retry.
+   *
+   * @return the maximum number of attempts.
+   * @since 3.10
+   */
+  int maxAttempts() default 1;
+
+  /**
+   * The milliseconds to wait before the second attempt, doubled on every further attempt up to
+   * {@link #retryMaxBackoff()}; a random part of up to half of the wait spreads the transactions that collided.
+   *
+   * @return the milliseconds to wait before the second attempt.
+   * @since 3.10
+   */
+  long retryBackoff() default 100;
+
+  /**
+   * The maximum milliseconds to wait between two attempts.
+   *
+   * @return the maximum milliseconds to wait between two attempts.
+   * @since 3.10
+   */
+  long retryMaxBackoff() default 5000;
+
+  /**
+   * The SQLStates making a failed transaction retryable, a two characters value matches the whole SQLState class.
+   *
+   * The {@code SQLException}s are looked up in the causes of the failure and in their chained exceptions. By default
+   * the serialization failures (40001) and the deadlocks detected by PostgreSQL (40P01) are retried.
+   *
+   * @return the retryable SQLStates.
+   * @since 3.10
+   */
+  String[] retrySqlStates() default { "40001", "40P01" };
+
+  /**
+   * The vendor error codes making a failed transaction retryable, such as 60 (ORA-00060) or 8177 (ORA-08177) with
+   * Oracle.
+   *
+   * @return the retryable vendor error codes, none by default.
+   * @since 3.10
+   */
+  int[] retryErrorCodes() default {};
+
   //
   // from javax.transaction.Transactional
   //
@@ -170,7 +258,20 @@ public @interface Transactional {
      *  <p>If called inside a transaction context, a TransactionalException with
      *  a nested InvalidTransactionException must be thrown.</p>
      */
-    NEVER
+    NEVER,
+
+    /**
+     *  <p>If called outside a transaction context, the interceptor must begin a new
+     *  transaction, as {@link #REQUIRED} does.</p>
+     *  <p>If called inside a transaction context, the managed bean method execution
+     *  must then continue inside this transaction context after a JDBC savepoint,
+     *  and a failure must roll the transaction back to that savepoint only.</p>
+     *  <p>Not part of {@code javax.transaction.Transactional}, only supported by local
+     *  (non-JTA) transactions.</p>
+     *
+     *  @since 3.10
+     */
+    NESTED
   }
 
   /**
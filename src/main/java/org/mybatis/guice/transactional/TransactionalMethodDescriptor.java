@@ -0,0 +1,251 @@
+/**
+ *    Copyright 2009-2017 the original author or authors.
+ *
+ *    Licensed under the Apache License, Version 2.0 (the "License");
+ *    you may not use this file except in compliance with the License.
+ *    You may obtain a copy of the License at
+ *
+ *       http://www.apache.org/licenses/LICENSE-2.0
+ *
+ *    Unless required by applicable law or agreed to in writing, software
+ *    distributed under the License is distributed on an "AS IS" BASIS,
+ *    WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ *    See the License for the specific language governing permissions and
+ *    limitations under the License.
+ */
+package org.mybatis.guice.transactional;
+
+import java.lang.reflect.Constructor;
+import java.lang.reflect.Method;
+import java.util.concurrent.ConcurrentHashMap;
+import java.util.concurrent.ConcurrentMap;
+
+import org.apache.ibatis.session.ExecutorType;
+import org.apache.ibatis.session.TransactionIsolationLevel;
+import org.mybatis.guice.transactional.Transactional.TxType;
+
+/**
+ * The {@link Transactional} settings of an intercepted method, resolved once so that
+ * the interceptors do not have to look up annotations on every invocation.
+ *
+ * @since 3.10
+ */
+final class TransactionalMethodDescriptor {
+
+  private final Method method;
+
+  private final String logPrefix;
+
+  private final ExecutorType executorType;
+
+  private final TransactionIsolationLevel isolationLevel;
+
+  private final boolean force;
+
+  private final boolean rollbackOnly;
+
+  private final boolean readOnly;
+
+  private final TxType txType;
+
+  private final TransactionAttribute transactionAttribute;
+
+  private final int batchSize;
+
+  private final long batchBytes;
+
+  private final RetryPolicy retryPolicy;
+
+  private final Class<?>[] declaredExceptionTypes;
+
+  private final Class<? extends Throwable> rethrowExceptionsAs;
+
+  private final String exceptionMessage;
+
+  private final boolean exceptionMessageFormatted;
+
+  private final Constructor<? extends Throwable> rethrowConstructor;
+
+  private TransactionalMethodDescriptor(Method method, Transactional transactional) {
+    this.method = method;
+    this.logPrefix = "[Intercepted method: " + method.toGenericString() + "]";
+    this.batchSize = Math.max(transactional.batchSize(), 0);
+    this.batchBytes = Math.max(transactional.batchBytes(), 0);
+    this.retryPolicy = RetryPolicy.of(transactional);
+    this.executorType = isManagedBatch() ? ExecutorType.BATCH : transactional.executorType();
+    this.isolationLevel = transactional.isolation().getTransactionIsolationLevel();
+    this.force = transactional.force();
+    this.rollbackOnly = transactional.rollbackOnly();
+    this.readOnly = transactional.readOnly();
+    this.txType = transactional.value();
+    this.transactionAttribute = TransactionAttribute.fromTxType(txType);
+    this.declaredExceptionTypes = method.getExceptionTypes();
+    this.rethrowExceptionsAs = transactional.rethrowExceptionsAs();
+    this.exceptionMessage = transactional.exceptionMessage().length() != 0 ? transactional.exceptionMessage() : null;
+    this.exceptionMessageFormatted = exceptionMessage != null && exceptionMessage.indexOf('%') >= 0;
+    this.rethrowConstructor = RethrowExceptionConstructors.forType(rethrowExceptionsAs)
+        .get(exceptionMessage != null);
+  }
+
+  /**
+   * Resolves the {@link Transactional} settings of the given method, looking at the declaring class
+   * when the method itself is not annotated.
+   *
+   * @param method the intercepted method
+   * @return the resolved descriptor
+   */
+  static TransactionalMethodDescriptor of(Method method) {
+    Transactional transactional = method.getAnnotation(Transactional.class);
+
+    // The annotation may be present at the class level instead
+    if (transactional == null) {
+      transactional = method.getDeclaringClass().getAnnotation(Transactional.class);
+    }
+
+    return new TransactionalMethodDescriptor(method, transactional);
+  }
+
+  /**
+   * Returns the cached descriptor for the given method, resolving and caching it on first use.
+   *
+   * @param cache the descriptors already resolved
+   * @param method the intercepted method
+   * @return the resolved descriptor
+   */
+  static TransactionalMethodDescriptor lookup(ConcurrentMap<Method, TransactionalMethodDescriptor> cache,
+      Method method) {
+    TransactionalMethodDescriptor descriptor = cache.get(method);
+    if (descriptor == null) {
+      descriptor = of(method);
+      TransactionalMethodDescriptor existing = cache.putIfAbsent(method, descriptor);
+      if (existing != null) {
+        descriptor = existing;
+      }
+    }
+    return descriptor;
+  }
+
+  static ConcurrentMap<Method, TransactionalMethodDescriptor> newCache() {
+    return new ConcurrentHashMap<Method, TransactionalMethodDescriptor>();
+  }
+
+  Method getMethod() {
+    return method;
+  }
+
+  /**
+   * Returns the prefix of the debug messages logged while intercepting the method.
+   *
+   * @return the prefix of the debug messages
+   */
+  String getLogPrefix() {
+    return logPrefix;
+  }
+
+  ExecutorType getExecutorType() {
+    return executorType;
+  }
+
+  TransactionIsolationLevel getIsolationLevel() {
+    return isolationLevel;
+  }
+
+  boolean isForce() {
+    return force;
+  }
+
+  boolean isRollbackOnly() {
+    return rollbackOnly;
+  }
+
+  boolean isReadOnly() {
+    return readOnly;
+  }
+
+  TxType getTxType() {
+    return txType;
+  }
+
+  TransactionAttribute getTransactionAttribute() {
+    return transactionAttribute;
+  }
+
+  /**
+   * Checks if the statements of the transaction are batched and flushed by the {@link ManagedBatchInterceptor}.
+   *
+   * @return true if the managed batching is enabled
+   */
+  boolean isManagedBatch() {
+    return batchSize > 0 || batchBytes > 0;
+  }
+
+  int getBatchSize() {
+    return batchSize;
+  }
+
+  long getBatchBytes() {
+    return batchBytes;
+  }
+
+  /**
+   * Returns the policy retrying the transaction of the method when it fails with a transient error.
+   *
+   * @return the retry policy, or null if the transaction is attempted once only
+   */
+  RetryPolicy getRetryPolicy() {
+    return retryPolicy;
+  }
+
+  /**
+   * Checks if the given exception is declared by the intercepted method or is already of the re-throw type.
+   *
+   * @param t the caught exception
+   * @return true if the exception can be propagated as is
+   */
+  boolean isPropagated(Throwable t) {
+    Class<?> thrownType = t.getClass();
+    for (Class<?> exceptionClass : declaredExceptionTypes) {
+      if (exceptionClass.isAssignableFrom(thrownType)) {
+        return true;
+      }
+    }
+    return rethrowExceptionsAs.isAssignableFrom(thrownType);
+  }
+
+  Class<? extends Throwable> getRethrowExceptionsAs() {
+    return rethrowExceptionsAs;
+  }
+
+  /**
+   * Returns the custom error message, or null if none was specified.
+   *
+   * @return the custom error message, or null if none was specified
+   */
+  String getExceptionMessage() {
+    return exceptionMessage;
+  }
+
+  /**
+   * Checks if the custom error message contains format specifiers, i.e. needs the method arguments.
+   *
+   * @return true if the custom error message has to be formatted
+   */
+  boolean isExceptionMessageFormatted() {
+    return exceptionMessageFormatted;
+  }
+
+  /**
+   * Returns the re-throw exception constructor matching the {@link #getRethrowArgumentTypes()},
+   * or null if the re-throw type does not declare it.
+   *
+   * @return the re-throw exception constructor
+   */
+  Constructor<? extends Throwable> getRethrowConstructor() {
+    return rethrowConstructor;
+  }
+
+  Class<?>[] getRethrowArgumentTypes() {
+    return RethrowExceptionConstructors.getArgumentTypes(exceptionMessage != null);
+  }
+
+}
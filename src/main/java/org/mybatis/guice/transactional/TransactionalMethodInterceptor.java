@@ -20,36 +20,78 @@ import static java.lang.Thread.currentThread;
 
 import java.lang.reflect.Constructor;
 import java.lang.reflect.Method;
+import java.sql.Connection;
+import java.sql.SQLException;
+import java.sql.Savepoint;
 import java.util.Arrays;
+import java.util.concurrent.ConcurrentMap;
 
 import javax.inject.Inject;
+import javax.sql.DataSource;
 
 import org.aopalliance.intercept.MethodInterceptor;
 import org.aopalliance.intercept.MethodInvocation;
 import org.apache.ibatis.logging.Log;
 import org.apache.ibatis.logging.LogFactory;
+import org.apache.ibatis.plugin.Interceptor;
+import org.apache.ibatis.session.SqlSession;
 import org.apache.ibatis.session.SqlSessionManager;
+import org.mybatis.guice.session.SuspendableSqlSessionFactory;
+import org.mybatis.guice.transactional.Transactional.TxType;
 
 /**
  * Method interceptor for {@link Transactional} annotation.
  */
 public final class TransactionalMethodInterceptor implements MethodInterceptor {
 
-  private static final Class<?>[] CAUSE_TYPES = new Class[] { Throwable.class };
-
-  private static final Class<?>[] MESSAGE_CAUSE_TYPES = new Class[] { String.class, Throwable.class };
-
   /**
    * This class logger.
    */
   private final Log log = LogFactory.getLog(getClass());
 
+  /**
+   * The resolved {@link Transactional} settings, per intercepted method.
+   */
+  private final ConcurrentMap<Method, TransactionalMethodDescriptor> descriptors = TransactionalMethodDescriptor
+      .newCache();
+
+  /**
+   * Flag to indicate that the {@link ManagedBatchInterceptor} was found in the configuration.
+   */
+  private volatile boolean managedBatchSupported;
+
+  /**
+   * Flag to indicate that the {@link TxType#REQUIRES_NEW} and {@link TxType#NESTED} methods and the retries are
+   * demarcated here.
+   */
+  private boolean localPropagation = true;
+
   /**
    * The {@code SqlSessionManager} reference.
    */
   @Inject
   private SqlSessionManager sqlSessionManager;
 
+  /**
+   * The optional {@code SuspendableSqlSessionFactory} reference, suspends the managed session for
+   * {@link TxType#REQUIRES_NEW} methods.
+   */
+  @com.google.inject.Inject(optional = true)
+  private SuspendableSqlSessionFactory sqlSessionFactory;
+
+  /**
+   * The {@code SqlSessionBinding} reference, suspends the managed session for {@link TxType#REQUIRES_NEW} methods
+   * when no {@code SuspendableSqlSessionFactory} is set.
+   */
+  @com.google.inject.Inject(optional = true)
+  private SqlSessionBinding sqlSessionBinding;
+
+  /**
+   * The optional {@code TransactionEventSink} reference.
+   */
+  @com.google.inject.Inject(optional = true)
+  private TransactionEventSink transactionEventSink;
+
   /**
    * Sets the SqlSessionManager instance.
    *
@@ -59,42 +101,117 @@ public final class TransactionalMethodInterceptor implements MethodInterceptor {
     this.sqlSessionManager = sqlSessionManager;
   }
 
+  /**
+   * Sets the SuspendableSqlSessionFactory instance the SqlSessionManager was created on.
+   *
+   * @param sqlSessionFactory the SuspendableSqlSessionFactory instance, may be null.
+   * @since 3.10
+   */
+  public void setSqlSessionFactory(SuspendableSqlSessionFactory sqlSessionFactory) {
+    this.sqlSessionFactory = sqlSessionFactory;
+  }
+
+  /**
+   * Sets the SqlSessionBinding instance, used when no SuspendableSqlSessionFactory is set.
+   *
+   * @param sqlSessionBinding the SqlSessionBinding instance, the default one if null.
+   * @since 3.10
+   */
+  public void setSqlSessionBinding(SqlSessionBinding sqlSessionBinding) {
+    this.sqlSessionBinding = sqlSessionBinding;
+  }
+
+  /**
+   * Sets whether the {@link TxType#REQUIRES_NEW} and {@link TxType#NESTED} methods and the retries are demarcated
+   * by this interceptor, false when a JTA interceptor runs before it and demarcates them.
+   *
+   * @param localPropagation true by default.
+   * @since 3.10
+   */
+  public void setLocalPropagation(boolean localPropagation) {
+    this.localPropagation = localPropagation;
+  }
+
+  /**
+   * Sets the TransactionEventSink instance.
+   *
+   * @param transactionEventSink the TransactionEventSink instance, may be null.
+   * @since 3.10
+   */
+  public void setTransactionEventSink(TransactionEventSink transactionEventSink) {
+    this.transactionEventSink = transactionEventSink;
+  }
+
   /**
    * {@inheritDoc}
    */
   @Override
   public Object invoke(MethodInvocation invocation) throws Throwable {
     Method interceptedMethod = invocation.getMethod();
-    Transactional transactional = interceptedMethod.getAnnotation(Transactional.class);
+    TransactionalMethodDescriptor transactional = TransactionalMethodDescriptor.lookup(descriptors,
+        interceptedMethod);
+
+    boolean isSessionInherited = this.sqlSessionManager.isManagedSessionStarted();
 
-    // The annotation may be present at the class level instead
-    if (transactional == null) {
-      transactional = interceptedMethod.getDeclaringClass().getAnnotation(Transactional.class);
+    if (isSessionInherited && localPropagation) {
+      if (transactional.getTxType() == TxType.REQUIRES_NEW) {
+        return invokeInNewTransaction(invocation, transactional);
+      }
+      if (transactional.getTxType() == TxType.NESTED) {
+        return invokeNested(invocation, transactional);
+      }
     }
 
-    String debugPrefix = null;
-    if (this.log.isDebugEnabled()) {
-      debugPrefix = format("[Intercepted method: %s]", interceptedMethod.toGenericString());
+    RetryPolicy retryPolicy = transactional.getRetryPolicy();
+    if (isSessionInherited || retryPolicy == null || !localPropagation) {
+      return invoke(invocation, transactional, isSessionInherited);
     }
 
-    boolean isSessionInherited = this.sqlSessionManager.isManagedSessionStarted();
+    // only the outermost transaction is retried, an inner method cannot undo what the outer one did
+    for (int attempt = 1;; attempt++) {
+      try {
+        return invoke(invocation, transactional, false);
+      } catch (Throwable t) {
+        if (!retryPolicy.canRetry(t, attempt)) {
+          throw t;
+        }
+        fireEvent(TransactionEvent.RETRY, transactional);
+        if (!retryPolicy.await(attempt)) {
+          throw t;
+        }
+      }
+    }
+  }
 
+  private Object invoke(MethodInvocation invocation, TransactionalMethodDescriptor transactional,
+      boolean isSessionInherited) throws Throwable {
+    DataSource dataSource = null;
+    Boolean previousReadOnly = null;
     if (isSessionInherited) {
-      if (log.isDebugEnabled()) {
-        log.debug(format("%s - SqlSession already set for thread: %s", debugPrefix, currentThread().getId()));
-      }
+      fireEvent(TransactionEvent.INHERIT, transactional);
     } else {
-      if (log.isDebugEnabled()) {
-        log.debug(
-            format("%s - SqlSession not set for thread: %s, creating a new one", debugPrefix, currentThread().getId()));
+      if (transactional.isManagedBatch()) {
+        checkManagedBatchSupported(transactional);
       }
 
-      sqlSessionManager.startManagedSession(transactional.executorType(),
-          transactional.isolation().getTransactionIsolationLevel());
+      fireEvent(TransactionEvent.BEGIN, transactional);
+
+      // an outer transaction of another environment must not route this one
+      dataSource = ReadOnlyContext.dataSourceOf(sqlSessionManager.getConfiguration());
+      previousReadOnly = ReadOnlyContext.begin(dataSource, transactional.isReadOnly());
+      try {
+        sqlSessionManager.startManagedSession(transactional.getExecutorType(), transactional.getIsolationLevel());
+        if (transactional.isManagedBatch()) {
+          ManagedBatch.begin(sqlSessionManager.getConfiguration(), transactional);
+        }
+      } catch (RuntimeException e) {
+        ReadOnlyContext.end(dataSource, previousReadOnly);
+        throw e;
+      }
     }
 
     Object object = null;
-    boolean needsRollback = transactional.rollbackOnly();
+    boolean needsRollback = transactional.isRollbackOnly();
     try {
       object = invocation.proceed();
     } catch (Throwable t) {
@@ -104,80 +221,243 @@ public final class TransactionalMethodInterceptor implements MethodInterceptor {
       if (!isSessionInherited) {
         try {
           if (needsRollback) {
-            if (log.isDebugEnabled()) {
-              log.debug(debugPrefix + " - SqlSession of thread: " + currentThread().getId() + " rolling back");
-            }
+            fireEvent(TransactionEvent.ROLLBACK, transactional);
 
             sqlSessionManager.rollback(true);
           } else {
-            if (log.isDebugEnabled()) {
-              log.debug(debugPrefix + " - SqlSession of thread: " + currentThread().getId() + " committing");
-            }
+            fireEvent(TransactionEvent.COMMIT, transactional);
 
-            sqlSessionManager.commit(transactional.force());
+            sqlSessionManager.commit(transactional.isForce());
           }
         } finally {
-          if (log.isDebugEnabled()) {
-            log.debug(format("%s - SqlSession of thread: %s terminated its life-cycle, closing it", debugPrefix,
-                currentThread().getId()));
-          }
+          fireEvent(TransactionEvent.CLOSE, transactional);
 
-          sqlSessionManager.close();
+          try {
+            sqlSessionManager.close();
+          } finally {
+            if (transactional.isManagedBatch()) {
+              ManagedBatch.end();
+            }
+            ReadOnlyContext.end(dataSource, previousReadOnly);
+          }
         }
       } else if (log.isDebugEnabled()) {
-        log.debug(format("%s - SqlSession of thread: %s is inherited, skipped close operation", debugPrefix,
-            currentThread().getId()));
+        log.debug(transactional.getLogPrefix() + " - SqlSession of thread: " + currentThread().getId()
+            + " is inherited, skipped close operation");
       }
     }
 
     return object;
   }
 
-  private Throwable convertThrowableIfNeeded(MethodInvocation invocation, Transactional transactional, Throwable t) {
-    Method interceptedMethod = invocation.getMethod();
+  /**
+   * Runs the intercepted method in a new session, on its own connection, while the inherited one is suspended.
+   */
+  private Object invokeInNewTransaction(MethodInvocation invocation, TransactionalMethodDescriptor transactional)
+      throws Throwable {
+    fireEvent(TransactionEvent.SUSPEND, transactional);
+
+    ManagedBatch managedBatch = ManagedBatch.get();
+    SqlSession suspendedSqlSession = suspend();
+    ManagedBatch.set(null);
+    try {
+      // no managed session is started anymore, so the new one is demarcated as an outermost one
+      return invoke(invocation);
+    } finally {
+      fireEvent(TransactionEvent.RESUME, transactional);
+
+      try {
+        resume(suspendedSqlSession);
+      } finally {
+        ManagedBatch.set(managedBatch);
+      }
+    }
+  }
+
+  private SqlSession suspend() {
+    if (sqlSessionFactory != null) {
+      return sqlSessionFactory.suspend(sqlSessionManager);
+    }
+    SqlSessionBinding binding = sqlSessionBinding();
+    SqlSession suspendedSqlSession = binding.get(sqlSessionManager);
+    binding.set(sqlSessionManager, null);
+    return suspendedSqlSession;
+  }
+
+  private void resume(SqlSession suspendedSqlSession) {
+    if (sqlSessionFactory != null) {
+      sqlSessionFactory.resume(sqlSessionManager, suspendedSqlSession);
+    } else {
+      sqlSessionBinding().set(sqlSessionManager, suspendedSqlSession);
+    }
+  }
+
+  private SqlSessionBinding sqlSessionBinding() {
+    return sqlSessionBinding != null ? sqlSessionBinding : SuspendableSqlSessions.getInstance();
+  }
+
+  /**
+   * Runs the intercepted method in the inherited session, rolling it back to a savepoint if the method fails.
+   */
+  private Object invokeNested(MethodInvocation invocation, TransactionalMethodDescriptor transactional)
+      throws Throwable {
+    fireEvent(TransactionEvent.SAVEPOINT, transactional);
+
+    // the statements batched so far belong to the enclosing transaction, not to the savepoint
+    sqlSessionManager.flushStatements();
+    Connection connection = sqlSessionManager.getConnection();
+    Savepoint savepoint = connection.setSavepoint();
 
-    // check the caught exception is declared in the invoked method
-    for (Class<?> exceptionClass : interceptedMethod.getExceptionTypes()) {
-      if (exceptionClass.isAssignableFrom(t.getClass())) {
-        return t;
+    Object object = null;
+    boolean needsRollback = transactional.isRollbackOnly();
+    try {
+      object = invocation.proceed();
+      if (!needsRollback) {
+        // a failing batched statement has to be rolled back to the savepoint as well
+        sqlSessionManager.flushStatements();
       }
+    } catch (Throwable t) {
+      fireEvent(TransactionEvent.ROLLBACK_TO_SAVEPOINT, transactional);
+      try {
+        rollbackToSavepoint(transactional, connection, savepoint);
+      } catch (Exception e) {
+        // the failure of the method is the one the caller has to see
+        log.warn(transactional.getLogPrefix() + " - failed to roll back to savepoint after " + t + ": " + e);
+      }
+      throw convertThrowableIfNeeded(invocation, transactional, t);
+    }
+
+    if (needsRollback) {
+      fireEvent(TransactionEvent.ROLLBACK_TO_SAVEPOINT, transactional);
+
+      rollbackToSavepoint(transactional, connection, savepoint);
+    } else {
+      releaseSavepoint(transactional, connection, savepoint);
     }
+    return object;
+  }
 
-    // check the caught exception is of same rethrow type
-    if (transactional.rethrowExceptionsAs().isAssignableFrom(t.getClass())) {
+  private void rollbackToSavepoint(TransactionalMethodDescriptor transactional, Connection connection,
+      Savepoint savepoint) throws SQLException {
+    try {
+      // the statements still batched were issued after the savepoint, they are undone right away
+      sqlSessionManager.flushStatements();
+    } catch (RuntimeException e) {
+      if (log.isDebugEnabled()) {
+        log.debug(transactional.getLogPrefix() + " - batched statements failed before rolling back to savepoint: "
+            + e);
+      }
+    }
+    try {
+      connection.rollback(savepoint);
+    } finally {
+      // the cached results may come from the statements rolled back
+      sqlSessionManager.clearCache();
+    }
+  }
+
+  private void releaseSavepoint(TransactionalMethodDescriptor transactional, Connection connection,
+      Savepoint savepoint) {
+    try {
+      connection.releaseSavepoint(savepoint);
+    } catch (SQLException e) {
+      // not all the drivers release savepoints, they are released with the transaction anyway
+      if (log.isDebugEnabled()) {
+        log.debug(transactional.getLogPrefix() + " - savepoint not released: " + e);
+      }
+    }
+  }
+
+  private void checkManagedBatchSupported(TransactionalMethodDescriptor transactional) {
+    if (managedBatchSupported) {
+      return;
+    }
+    for (Interceptor interceptor : sqlSessionManager.getConfiguration().getInterceptors()) {
+      if (interceptor instanceof ManagedBatchInterceptor) {
+        managedBatchSupported = true;
+        return;
+      }
+    }
+    throw new IllegalStateException(transactional.getLogPrefix() + " - the batch size requires the "
+        + ManagedBatchInterceptor.class.getName() + " plugin, please add it to the configuration");
+  }
+
+  private void fireEvent(TransactionEvent event, TransactionalMethodDescriptor transactional) {
+    if (log.isDebugEnabled()) {
+      log.debug(transactional.getLogPrefix() + " - SqlSession of thread: " + currentThread().getId()
+          + describe(event));
+    }
+
+    TransactionEventSink sink = this.transactionEventSink;
+    if (sink != null) {
+      sink.onEvent(event, transactional.getMethod());
+    }
+  }
+
+  private static String describe(TransactionEvent event) {
+    switch (event) {
+      case BEGIN:
+        return " not set, creating a new one";
+      case INHERIT:
+        return " already set";
+      case COMMIT:
+        return " committing";
+      case ROLLBACK:
+        return " rolling back";
+      case CLOSE:
+        return " terminated its life-cycle, closing it";
+      case SUSPEND:
+        return " already set, suspending it";
+      case RESUME:
+        return " resuming";
+      case SAVEPOINT:
+        return " already set, setting a savepoint";
+      case ROLLBACK_TO_SAVEPOINT:
+        return " rolling back to savepoint";
+      case RETRY:
+        return " failed with a transient error, retrying";
+      default:
+        return " " + event;
+    }
+  }
+
+  private Throwable convertThrowableIfNeeded(MethodInvocation invocation, TransactionalMethodDescriptor transactional,
+      Throwable t) {
+    // check the caught exception is declared in the invoked method or is of same rethrow type
+    if (transactional.isPropagated(t)) {
       return t;
     }
 
     // rethrow the exception as new exception
     String errorMessage;
     Object[] initargs;
-    Class<?>[] initargsType;
 
-    if (transactional.exceptionMessage().length() != 0) {
-      errorMessage = format(transactional.exceptionMessage(), invocation.getArguments());
+    if (transactional.getExceptionMessage() != null) {
+      errorMessage = transactional.isExceptionMessageFormatted()
+          ? format(transactional.getExceptionMessage(), invocation.getArguments())
+          : transactional.getExceptionMessage();
       initargs = new Object[] { errorMessage, t };
-      initargsType = MESSAGE_CAUSE_TYPES;
     } else {
       initargs = new Object[] { t };
-      initargsType = CAUSE_TYPES;
     }
 
-    Constructor<? extends Throwable> exceptionConstructor = getMatchingConstructor(transactional.rethrowExceptionsAs(),
-        initargsType);
+    Constructor<? extends Throwable> exceptionConstructor = transactional.getRethrowConstructor();
     Throwable rethrowEx = null;
     if (exceptionConstructor != null) {
       try {
         rethrowEx = exceptionConstructor.newInstance(initargs);
       } catch (Exception e) {
         errorMessage = format("Impossible to re-throw '%s', it needs the constructor with %s argument(s).",
-            transactional.rethrowExceptionsAs().getName(), Arrays.toString(initargsType));
+            transactional.getRethrowExceptionsAs().getName(),
+            Arrays.toString(transactional.getRethrowArgumentTypes()));
         log.error(errorMessage, e);
         rethrowEx = new RuntimeException(errorMessage, e);
       }
     } else {
       errorMessage = format("Impossible to re-throw '%s', it needs the constructor with %s or %s argument(s).",
-          transactional.rethrowExceptionsAs().getName(), Arrays.toString(CAUSE_TYPES),
-          Arrays.toString(MESSAGE_CAUSE_TYPES));
+          transactional.getRethrowExceptionsAs().getName(),
+          Arrays.toString(RethrowExceptionConstructors.CAUSE_TYPES),
+          Arrays.toString(RethrowExceptionConstructors.MESSAGE_CAUSE_TYPES));
       log.error(errorMessage);
       rethrowEx = new RuntimeException(errorMessage);
     }
@@ -185,18 +465,4 @@ public final class TransactionalMethodInterceptor implements MethodInterceptor {
     return rethrowEx;
   }
 
-  @SuppressWarnings("unchecked")
-  private static <E extends Throwable> Constructor<E> getMatchingConstructor(Class<E> type, Class<?>[] argumentsType) {
-    Class<? super E> currentType = type;
-    while (Object.class != currentType) {
-      for (Constructor<?> constructor : currentType.getConstructors()) {
-        if (Arrays.equals(argumentsType, constructor.getParameterTypes())) {
-          return (Constructor<E>) constructor;
-        }
-      }
-      currentType = currentType.getSuperclass();
-    }
-    return null;
-  }
-
 }
@@ -0,0 +1,92 @@
+/**
+ *    Copyright 2009-2017 the original author or authors.
+ *
+ *    Licensed under the Apache License, Version 2.0 (the "License");
+ *    you may not use this file except in compliance with the License.
+ *    You may obtain a copy of the License at
+ *
+ *       http://www.apache.org/licenses/LICENSE-2.0
+ *
+ *    Unless required by applicable law or agreed to in writing, software
+ *    distributed under the License is distributed on an "AS IS" BASIS,
+ *    WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ *    See the License for the specific language governing permissions and
+ *    limitations under the License.
+ */
+package org.mybatis.guice.transactional;
+
+import com.google.inject.TypeLiteral;
+import com.google.inject.spi.TypeEncounter;
+import com.google.inject.spi.TypeListener;
+
+import java.lang.reflect.Method;
+import java.lang.reflect.Modifier;
+import java.util.Arrays;
+
+/**
+ * Checks, while the injector is created, that the {@link Transactional#rethrowExceptionsAs()} type of every
+ * transactional method declares the constructor needed to wrap exceptions, so that a misconfigured type fails
+ * at startup and not on the first exception.
+ * <p>
+ * Under JTA transactions, it also checks that the propagation of every transactional method has a
+ * {@link TransactionAttribute}, so that {@code NESTED} fails at startup and not on the first call.
+ * </p>
+ *
+ * @since 3.10
+ */
+public final class TransactionalTypeListener implements TypeListener {
+
+  private final boolean jta;
+
+  public TransactionalTypeListener() {
+    this(false);
+  }
+
+  /**
+   * Instantiates a new listener.
+   *
+   * @param jta true if the methods are intercepted by the {@link TxTransactionalMethodInterceptor} of a JTA
+   *          transaction manager
+   */
+  public TransactionalTypeListener(boolean jta) {
+    this.jta = jta;
+  }
+
+  @Override
+  public <I> void hear(TypeLiteral<I> type, TypeEncounter<I> encounter) {
+    Class<? super I> currentType = type.getRawType();
+    while (currentType != null && Object.class != currentType) {
+      for (Method method : currentType.getDeclaredMethods()) {
+        if (!isInterceptable(method)) {
+          continue;
+        }
+
+        Transactional transactional = method.getAnnotation(Transactional.class);
+        if (transactional == null) {
+          transactional = method.getDeclaringClass().getAnnotation(Transactional.class);
+        }
+
+        if (transactional != null) {
+          boolean withMessage = transactional.exceptionMessage().length() != 0;
+          if (RethrowExceptionConstructors.forType(transactional.rethrowExceptionsAs()).get(withMessage) == null) {
+            encounter.addError("Impossible to re-throw '%s' from %s, it needs the constructor with %s argument(s).",
+                transactional.rethrowExceptionsAs().getName(), method.toGenericString(),
+                Arrays.toString(RethrowExceptionConstructors.getArgumentTypes(withMessage)));
+          }
+          if (jta && TransactionAttribute.fromTxType(transactional.value()) == null) {
+            encounter.addError("%s of %s is not supported by JTA transactions.", transactional.value(),
+                method.toGenericString());
+          }
+        }
+      }
+      currentType = currentType.getSuperclass();
+    }
+  }
+
+  private static boolean isInterceptable(Method method) {
+    int modifiers = method.getModifiers();
+    return !method.isSynthetic() && !Modifier.isStatic(modifiers) && !Modifier.isPrivate(modifiers)
+        && !Modifier.isFinal(modifiers);
+  }
+
+}
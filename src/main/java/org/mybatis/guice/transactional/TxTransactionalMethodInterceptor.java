@@ -15,12 +15,16 @@
  */
 package org.mybatis.guice.transactional;
 
-import static java.lang.String.format;
-
 import java.lang.reflect.Method;
+import java.util.concurrent.ConcurrentHashMap;
+import java.util.concurrent.ConcurrentMap;
 
 import javax.inject.Inject;
 import javax.inject.Provider;
+import javax.transaction.RollbackException;
+import javax.transaction.Synchronization;
+import javax.transaction.SystemException;
+import javax.transaction.Transaction;
 import javax.transaction.TransactionManager;
 import javax.transaction.xa.XAResource;
 
@@ -28,7 +32,9 @@ import org.aopalliance.intercept.MethodInterceptor;
 import org.aopalliance.intercept.MethodInvocation;
 import org.apache.ibatis.logging.Log;
 import org.apache.ibatis.logging.LogFactory;
-import org.mybatis.guice.transactional.Transactional.TxType;
+import org.apache.ibatis.session.SqlSession;
+import org.apache.ibatis.session.SqlSessionManager;
+import org.mybatis.guice.session.SuspendableSqlSessionFactory;
 
 /**
  * Method interceptor for {@link Transactional} annotation.
@@ -40,104 +46,273 @@ public class TxTransactionalMethodInterceptor implements MethodInterceptor {
    */
   private final Log log = LogFactory.getLog(getClass());
 
+  /**
+   * The resolved {@link Transactional} settings, per intercepted method.
+   */
+  private final ConcurrentMap<Method, TransactionalMethodDescriptor> descriptors = TransactionalMethodDescriptor
+      .newCache();
+
+  /**
+   * The active transactions the sessions of the thread joined, with the resource or the synchronization they
+   * registered, joined again by the nested methods.
+   */
+  private final ConcurrentMap<Transaction, Object> joinedTransactions = new ConcurrentHashMap<Transaction, Object>();
+
   @Inject
   private TransactionManager manager;
 
-  @Inject
+  /**
+   * The optional resource enlisted in each transaction, the parent managed session is suspended by a synchronization
+   * of the transaction if none is bound.
+   */
+  @com.google.inject.Inject(optional = true)
   private Provider<XAResource> xaResourceProvider;
 
+  @Inject
+  private SqlSessionManager sqlSessionManager;
+
+  /**
+   * The factory of the session manager, suspending its managed session in the {@code NOT_SUPPORTED} methods.
+   */
+  @Inject
+  private SuspendableSqlSessionFactory sqlSessionFactory;
+
+  /**
+   * The optional {@code TransactionEventSink} reference.
+   */
+  @com.google.inject.Inject(optional = true)
+  private TransactionEventSink transactionEventSink;
+
   public TxTransactionalMethodInterceptor() {
   }
 
+  /**
+   * Sets the TransactionEventSink instance.
+   *
+   * @param transactionEventSink the TransactionEventSink instance, may be null.
+   * @since 3.10
+   */
+  public void setTransactionEventSink(TransactionEventSink transactionEventSink) {
+    this.transactionEventSink = transactionEventSink;
+  }
+
   /**
    * {@inheritDoc}
    */
   @Override
   public Object invoke(MethodInvocation invocation) throws Throwable {
     Method interceptedMethod = invocation.getMethod();
-    Transactional transactional = interceptedMethod.getAnnotation(Transactional.class);
-
-    // The annotation may be present at the class level instead
-    if (transactional == null) {
-      transactional = interceptedMethod.getDeclaringClass().getAnnotation(Transactional.class);
-    }
+    TransactionalMethodDescriptor transactional = TransactionalMethodDescriptor.lookup(descriptors,
+        interceptedMethod);
+    String debugPrefix = transactional.getLogPrefix();
 
-    String debugPrefix = null;
-    if (this.log.isDebugEnabled()) {
-      debugPrefix = String.format("[Intercepted method: %s]", interceptedMethod.toGenericString());
-    }
+    TransactionAttribute attribute = manager != null ? transactional.getTransactionAttribute() : null;
 
-    boolean needsRollback = transactional.rollbackOnly();
-    Object object = null;
-    TransactionAttribute attribute = null;
-
-    if (manager != null) {
-      TxType txType = transactional.value();
-      if (TxType.REQUIRED.equals(txType)) {
-        attribute = TransactionAttribute.REQUIRED;
-      } else if (TxType.REQUIRES_NEW.equals(txType)) {
-        attribute = TransactionAttribute.REQUIRESNEW;
-      } else if (TxType.MANDATORY.equals(txType)) {
-        attribute = TransactionAttribute.MANDATORY;
-      } else if (TxType.SUPPORTS.equals(txType)) {
-        attribute = TransactionAttribute.SUPPORTS;
-      } else if (TxType.NOT_SUPPORTED.equals(txType)) {
-        attribute = null; // FIXME add implementation
-      } else if (TxType.NEVER.equals(txType)) {
-        attribute = TransactionAttribute.NEVER;
-      }
+    if (manager != null && attribute == null) {
+      throw new IllegalStateException(
+          debugPrefix + " - " + transactional.getTxType() + " is not supported by JTA transactions");
     }
 
     if (attribute == null) {
       if (log.isDebugEnabled()) {
-        log.debug(format("%s - skip Tx Transaction", debugPrefix));
+        log.debug(debugPrefix + " - skip Tx Transaction");
       }
 
       // without Tx
-      try {
-        object = invocation.proceed();
-      } catch (Throwable t) {
-        throw t;
-      }
-    } else {
+      return invocation.proceed();
+    }
+
+    RetryPolicy retryPolicy = transactional.getRetryPolicy();
+    for (int attempt = 1;; attempt++) {
       if (log.isDebugEnabled()) {
-        log.debug(format("%s - Tx Transaction %s begin", debugPrefix, attribute.name()));
+        log.debug(debugPrefix + " - Tx Transaction " + attribute.name() + " begin");
       }
 
       // with Tx
       TransactionToken tranToken = attribute.begin(manager);
-
-      log.debug("enlistResource XASqlSessionManager");
-      XAResource xaRes = xaResourceProvider.get();
-      tranToken.getActiveTransaction().enlistResource(xaRes);
-
       try {
-        if (log.isDebugEnabled()) {
-          log.debug(format("%s - Tx Transaction %s (CompletionAllowed %s) call method", debugPrefix, attribute.name(),
-              tranToken.isCompletionAllowed()));
+        return invoke(invocation, transactional, attribute, tranToken);
+      } catch (Throwable t) {
+        // only a transaction begun here is retried, a joined one is completed by the method that began it
+        if (retryPolicy == null || !tranToken.isCompletionAllowed() || !retryPolicy.canRetry(t, attempt)) {
+          throw t;
         }
-        object = invocation.proceed();
-
-        if (needsRollback) {
-          manager.setRollbackOnly();
+        fireEvent(TransactionEvent.RETRY, transactional);
+        if (!retryPolicy.await(attempt)) {
+          throw t;
         }
+      }
+    }
+  }
 
-      } catch (Throwable t) {
-        if (log.isDebugEnabled()) {
-          log.debug(format("%s - Tx Transaction %s (CompletionAllowed %s) rolling back", debugPrefix, attribute.name(),
-              tranToken.isCompletionAllowed()));
-        }
+  private Object invoke(MethodInvocation invocation, TransactionalMethodDescriptor transactional,
+      TransactionAttribute attribute, TransactionToken tranToken) throws Throwable {
+    String debugPrefix = transactional.getLogPrefix();
+    boolean needsRollback = transactional.isRollbackOnly();
+    Object object = null;
+
+    fireEvent(tranToken.isCompletionAllowed() ? TransactionEvent.BEGIN : TransactionEvent.INHERIT, transactional);
+
+    Transaction activeTransaction = tranToken.getActiveTransaction();
+    if (activeTransaction != null) {
+      enlistResource(activeTransaction);
+    }
+
+    SqlSession suspendedSqlSession = null;
+
+    try {
+      // the managed session of a suspended transaction must not be joined either
+      if (activeTransaction == null && tranToken.getSuspendedTransaction() != null) {
+        suspendedSqlSession = sqlSessionFactory.suspend(sqlSessionManager);
+      }
+
+      if (log.isDebugEnabled()) {
+        log.debug(debugPrefix + " - Tx Transaction " + attribute.name() + " (CompletionAllowed "
+            + tranToken.isCompletionAllowed() + ") call method");
+      }
+      object = invocation.proceed();
+
+      if (needsRollback && activeTransaction != null) {
         manager.setRollbackOnly();
-        throw t;
+      }
+
+    } catch (Throwable t) {
+      if (log.isDebugEnabled()) {
+        log.debug(debugPrefix + " - Tx Transaction " + attribute.name() + " (CompletionAllowed "
+            + tranToken.isCompletionAllowed() + ") rolling back");
+      }
+      needsRollback = true;
+      if (activeTransaction != null) {
+        manager.setRollbackOnly();
+      }
+      throw t;
+    } finally {
+      if (log.isDebugEnabled()) {
+        log.debug(debugPrefix + " - Tx Transaction " + attribute.name() + " (CompletionAllowed "
+            + tranToken.isCompletionAllowed() + ") finish");
+      }
+      if (tranToken.isCompletionAllowed()) {
+        fireEvent(needsRollback ? TransactionEvent.ROLLBACK : TransactionEvent.COMMIT, transactional);
+      }
+      try {
+        if (suspendedSqlSession != null) {
+          sqlSessionFactory.resume(sqlSessionManager, suspendedSqlSession);
+        }
       } finally {
-        if (log.isDebugEnabled()) {
-          log.debug(format("%s - Tx Transaction %s (CompletionAllowed %s) finish", debugPrefix, attribute.name(),
-              tranToken.isCompletionAllowed()));
+        try {
+          attribute.finish(manager, tranToken);
+        } finally {
+          if (tranToken.isCompletionAllowed()) {
+            fireEvent(TransactionEvent.CLOSE, transactional);
+          }
         }
-        attribute.finish(manager, tranToken);
       }
     }
     return object;
   }
 
+  /**
+   * Joins the given transaction, unless a method intercepted earlier already did.
+   */
+  private void enlistResource(final Transaction transaction) throws SystemException, RollbackException {
+    if (joinedTransactions.containsKey(transaction)) {
+      if (log.isDebugEnabled()) {
+        log.debug("Transaction already joined");
+      }
+      return;
+    }
+
+    if (xaResourceProvider == null) {
+      suspendUntilCompletion(transaction);
+      return;
+    }
+
+    if (log.isDebugEnabled()) {
+      log.debug("enlistResource XASqlSessionManager");
+    }
+    XAResource xaRes = xaResourceProvider.get();
+    transaction.enlistResource(xaRes);
+
+    if (joinedTransactions.putIfAbsent(transaction, xaRes) == null) {
+      try {
+        transaction.registerSynchronization(new Synchronization() {
+          @Override
+          public void beforeCompletion() {
+            // do nothing
+          }
+
+          @Override
+          public void afterCompletion(int status) {
+            joinedTransactions.remove(transaction);
+          }
+        });
+      } catch (RollbackException e) {
+        joinedTransactions.remove(transaction);
+      } catch (IllegalStateException e) {
+        joinedTransactions.remove(transaction);
+      }
+    }
+  }
+
+  /**
+   * Suspends the managed session of the thread until the given transaction completes, without enlisting a resource of
+   * its own: a transaction on a single data source enlists a single resource, which the transaction manager commits in
+   * one phase.
+   */
+  private void suspendUntilCompletion(final Transaction transaction) throws SystemException, RollbackException {
+    ParentSession parentSession = new ParentSession(transaction);
+    if (joinedTransactions.putIfAbsent(transaction, parentSession) != null) {
+      return;
+    }
+    try {
+      transaction.registerSynchronization(parentSession);
+    } catch (RollbackException e) {
+      joinedTransactions.remove(transaction);
+      throw e;
+    } catch (IllegalStateException e) {
+      joinedTransactions.remove(transaction);
+      throw e;
+    }
+    if (log.isDebugEnabled()) {
+      log.debug("Suspend the managed session until the transaction completes");
+    }
+    parentSession.sqlSession = sqlSessionFactory.suspend(sqlSessionManager);
+  }
+
+  private void fireEvent(TransactionEvent event, TransactionalMethodDescriptor transactional) {
+    TransactionEventSink sink = this.transactionEventSink;
+    if (sink != null) {
+      sink.onEvent(event, transactional.getMethod());
+    }
+  }
+
+  /**
+   * The managed session of the thread suspended while a transaction is active, resumed once it completes.
+   */
+  private final class ParentSession implements Synchronization {
+
+    private final Transaction transaction;
+
+    SqlSession sqlSession;
+
+    ParentSession(Transaction transaction) {
+      this.transaction = transaction;
+    }
+
+    @Override
+    public void beforeCompletion() {
+      // do nothing
+    }
+
+    @Override
+    public void afterCompletion(int status) {
+      joinedTransactions.remove(transaction);
+      if (log.isDebugEnabled()) {
+        log.debug("Resume the managed session, the transaction completed");
+      }
+      sqlSessionFactory.resume(sqlSessionManager, sqlSession);
+    }
+
+  }
+
 }
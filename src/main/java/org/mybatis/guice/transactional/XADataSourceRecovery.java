@@ -0,0 +1,130 @@
+/**
+ *    Copyright 2009-2017 the original author or authors.
+ *
+ *    Licensed under the Apache License, Version 2.0 (the "License");
+ *    you may not use this file except in compliance with the License.
+ *    You may obtain a copy of the License at
+ *
+ *       http://www.apache.org/licenses/LICENSE-2.0
+ *
+ *    Unless required by applicable law or agreed to in writing, software
+ *    distributed under the License is distributed on an "AS IS" BASIS,
+ *    WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ *    See the License for the specific language governing permissions and
+ *    limitations under the License.
+ */
+package org.mybatis.guice.transactional;
+
+import java.sql.SQLException;
+
+import javax.inject.Inject;
+import javax.sql.XAConnection;
+import javax.sql.XADataSource;
+import javax.transaction.SystemException;
+import javax.transaction.TransactionManager;
+
+import org.apache.geronimo.transaction.manager.NamedXAResource;
+import org.apache.geronimo.transaction.manager.NamedXAResourceFactory;
+import org.apache.geronimo.transaction.manager.RecoverableTransactionManager;
+import org.apache.geronimo.transaction.manager.WrapperNamedXAResource;
+import org.apache.ibatis.logging.Log;
+import org.apache.ibatis.logging.LogFactory;
+
+import com.google.inject.ProvisionException;
+
+/**
+ * Registers the {@code XAResource} of an XA data source with the recovery of an Aries or Geronimo transaction manager,
+ * so that the branches a crash left prepared in the database are committed or rolled back as the transaction log
+ * decided, releasing the locks they hold.
+ * <p>
+ * The transaction manager logs each branch under the name of the {@code NamedXAResource} the connection pool
+ * enlisted, the recovery must be registered under the same name.
+ * </p>
+ *
+ * @since 3.10
+ */
+public final class XADataSourceRecovery implements NamedXAResourceFactory {
+
+  private static final Log log = LogFactory.getLog(XADataSourceRecovery.class);
+
+  private final String name;
+
+  private final XADataSource xaDataSource;
+
+  /**
+   * Instantiates a new recovery of the given XA data source.
+   *
+   * @param name the name the connection pool enlists the XA resources of the data source with
+   * @param xaDataSource the XA data source
+   */
+  public XADataSourceRecovery(String name, XADataSource xaDataSource) {
+    this.name = name;
+    this.xaDataSource = xaDataSource;
+  }
+
+  /**
+   * Registers the recovery with the given transaction manager, which recovers the data source right away and again
+   * after a failure.
+   *
+   * @param transactionManager the transaction manager, an Aries or Geronimo one
+   */
+  @Inject
+  public void register(TransactionManager transactionManager) {
+    if (!(transactionManager instanceof RecoverableTransactionManager)) {
+      throw new ProvisionException("Cannot recover the XA data source '" + name + "', the transaction manager "
+          + transactionManager + " is not a " + RecoverableTransactionManager.class.getName());
+    }
+    ((RecoverableTransactionManager) transactionManager).registerNamedXAResourceFactory(this);
+  }
+
+  @Override
+  public String getName() {
+    return name;
+  }
+
+  @Override
+  public NamedXAResource getNamedXAResource() throws SystemException {
+    XAConnection xaConnection = null;
+    try {
+      xaConnection = xaDataSource.getXAConnection();
+      return new RecoveryXAResource(xaConnection, name);
+    } catch (SQLException e) {
+      if (xaConnection != null) {
+        close(xaConnection);
+      }
+      SystemException exception = new SystemException("Cannot open an XA connection to recover '" + name + "'");
+      exception.initCause(e);
+      throw exception;
+    }
+  }
+
+  @Override
+  public void returnNamedXAResource(NamedXAResource namedXAResource) {
+    close(((RecoveryXAResource) namedXAResource).xaConnection);
+  }
+
+  private void close(XAConnection xaConnection) {
+    try {
+      xaConnection.close();
+    } catch (SQLException e) {
+      if (log.isDebugEnabled()) {
+        log.debug("Error closing the XA connection recovering '" + name + "'.  Cause: " + e);
+      }
+    }
+  }
+
+  /**
+   * The {@code XAResource} of a connection opened for the recovery, closed once the recovery is done.
+   */
+  private static final class RecoveryXAResource extends WrapperNamedXAResource {
+
+    final XAConnection xaConnection;
+
+    RecoveryXAResource(XAConnection xaConnection, String name) throws SQLException {
+      super(xaConnection.getXAResource(), name);
+      this.xaConnection = xaConnection;
+    }
+
+  }
+
+}
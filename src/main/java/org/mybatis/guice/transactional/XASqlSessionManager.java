@@ -15,10 +15,10 @@
  */
 package org.mybatis.guice.transactional;
 
-import java.lang.reflect.Field;
 import java.util.Arrays;
-import java.util.IdentityHashMap;
 import java.util.concurrent.ConcurrentHashMap;
+import java.util.concurrent.atomic.AtomicInteger;
+import java.util.concurrent.atomic.AtomicReference;
 
 import javax.transaction.xa.XAException;
 import javax.transaction.xa.XAResource;
@@ -26,8 +26,10 @@ import javax.transaction.xa.Xid;
 
 import org.apache.ibatis.logging.Log;
 import org.apache.ibatis.logging.LogFactory;
+import org.apache.ibatis.mapping.Environment;
 import org.apache.ibatis.session.SqlSession;
 import org.apache.ibatis.session.SqlSessionManager;
+import org.mybatis.guice.session.SuspendableSqlSessionFactory;
 
 public class XASqlSessionManager implements XAResource {
   private static final Log log = LogFactory.getLog(XASqlSessionManager.class);
@@ -38,18 +40,59 @@ public class XASqlSessionManager implements XAResource {
   public static final int PREPARED = 3;
 
   private SqlSessionManager sqlSessionManager;
+  private SuspendableSqlSessionFactory sqlSessionFactory;
   private int transactionTimeout;
   private String id;
   private Xid xid;
-  private int state = NO_TX;
 
-  private static ConcurrentHashMap<GlobalKey, GlobalToken> globalTokens = new ConcurrentHashMap<XASqlSessionManager.GlobalKey, XASqlSessionManager.GlobalToken>();
+  private int state = NO_TX;
 
+  /**
+   * True if the resource joined the branch of another resource of the same resource manager.
+   */
+  private boolean joined;
+
+  /**
+   * The global transaction the resource takes part in, and the token of the suspended parent session.
+   */
+  private GlobalKey globalKey;
+  private GlobalToken globalToken;
+  private Token token;
+
+  private static final ConcurrentHashMap<GlobalKey, GlobalToken> globalTokens = new ConcurrentHashMap<XASqlSessionManager.GlobalKey, XASqlSessionManager.GlobalToken>();
+
+  /**
+   * Instantiates a new XA session manager suspending the parent sessions by reflection.
+   *
+   * @param sqlSessionManager the session manager
+   * @deprecated the parent sessions are reached through the private {@code ThreadLocal} of the
+   *             {@link SqlSessionManager}, made accessible by reflection, which breaks if MyBatis renames the field and
+   *             fails under a security manager or module encapsulation; use
+   *             {@link #XASqlSessionManager(SqlSessionManager, SuspendableSqlSessionFactory)} instead.
+   */
+  @Deprecated
   public XASqlSessionManager(SqlSessionManager sqlSessionManager) {
     this.sqlSessionManager = sqlSessionManager;
     id = sqlSessionManager.getConfiguration().getEnvironment().getId();
   }
 
+  /**
+   * Instantiates a new XA session manager suspending the parent sessions through the factory of the session manager.
+   *
+   * @param sqlSessionManager the session manager
+   * @param sqlSessionFactory the factory the session manager is created on
+   * @throws IllegalArgumentException if the factory is null
+   * @since 3.10
+   */
+  public XASqlSessionManager(SqlSessionManager sqlSessionManager, SuspendableSqlSessionFactory sqlSessionFactory) {
+    if (sqlSessionFactory == null) {
+      throw new IllegalArgumentException("Parameter 'sqlSessionFactory' must be not null");
+    }
+    this.sqlSessionManager = sqlSessionManager;
+    this.sqlSessionFactory = sqlSessionFactory;
+    id = sqlSessionManager.getConfiguration().getEnvironment().getId();
+  }
+
   public String getId() {
     return id;
   }
@@ -109,18 +152,44 @@ public class XASqlSessionManager implements XAResource {
     return true;
   }
 
+  /**
+   * The resource holds no data of its own, the branches left in doubt are recovered through the {@code XAResource}
+   * of the XA data source.
+   */
   @Override
   public void forget(Xid xid) throws XAException {
   }
 
+  /**
+   * The resource holds no data of its own, the branches left in doubt are recovered through the {@code XAResource}
+   * of the XA data source.
+   */
   @Override
   public Xid[] recover(int flags) throws XAException {
     return new Xid[0];
   }
 
+  /**
+   * Two session managers are the same resource manager when they run on the same environment and data source, so
+   * that the transaction manager joins their branches instead of preparing one branch per nested method.
+   * <p>
+   * The {@code XAResource} of the XA data source is enlisted next to this one as another resource manager, so the
+   * transaction is still completed in two phases.
+   * </p>
+   */
   @Override
   public boolean isSameRM(XAResource xares) throws XAException {
-    return this == xares;
+    if (this == xares) {
+      return true;
+    }
+    if (!(xares instanceof XASqlSessionManager)) {
+      return false;
+    }
+
+    Environment environment = sqlSessionManager.getConfiguration().getEnvironment();
+    Environment other = ((XASqlSessionManager) xares).sqlSessionManager.getConfiguration().getEnvironment();
+    return environment == other
+        || (environment.getId().equals(other.getId()) && environment.getDataSource() == other.getDataSource());
   }
 
   @Override
@@ -144,7 +213,12 @@ public class XASqlSessionManager implements XAResource {
         throw new MyBatisXAException(id + ": resource already started on XID " + this.xid, XAException.XAER_PROTO);
       } else {
         if (flag == XAResource.TMJOIN) {
-          throw new MyBatisXAException(id + ": resource not yet started", XAException.XAER_PROTO);
+          // joins the branch of the same resource manager, which is prepared and committed by its owner
+          if (log.isDebugEnabled()) {
+            log.debug(id + ": OK to join the branch of the same RM, XID=" + xid);
+          }
+          this.xid = xid;
+          this.joined = true;
         } else {
           if (log.isDebugEnabled()) {
             log.debug(id + ": OK to start, old state=" + xlatedState() + ", XID=" + xid + ", flag="
@@ -219,6 +293,20 @@ public class XASqlSessionManager implements XAResource {
       }
     }
 
+    if (joined) {
+      try {
+        parentResume(xid);
+      } finally {
+        if (log.isDebugEnabled()) {
+          log.debug(id + ": after end of joined branch reset state to NO_TX");
+        }
+        this.joined = false;
+        this.xid = null;
+        this.state = NO_TX;
+      }
+      return;
+    }
+
     this.state = ENDED;
   }
 
@@ -329,12 +417,15 @@ public class XASqlSessionManager implements XAResource {
             XAException.XAER_PROTO);
       }
     } else if (state == PREPARED) {
-      if (log.isDebugEnabled()) {
-        log.debug(id + ": rollback reset state from PREPARED to NO_TX");
+      if (this.xid.equals(xid)) {
+        if (log.isDebugEnabled()) {
+          log.debug(id + ": OK to rollback prepared, old state=" + xlatedState() + ", XID=" + xid);
+        }
+      } else {
+        throw new MyBatisXAException(
+            id + ": resource already prepared on XID " + this.xid + " - cannot roll it back on another XID " + xid,
+            XAException.XAER_PROTO);
       }
-      this.state = NO_TX;
-      throw new MyBatisXAException(id + ": resource committed during prepare on XID " + this.xid,
-          XAException.XA_HEURCOM);
     }
 
     try {
@@ -349,26 +440,43 @@ public class XASqlSessionManager implements XAResource {
   }
 
   private void parentSuspend(Xid xid) {
+    if (token != null) {
+      if (log.isDebugEnabled()) {
+        log.debug(id + ": parent session already suspended " + xid);
+      }
+      return;
+    }
+
     if (log.isDebugEnabled()) {
       log.debug(id + ": suspend parent session " + xid);
     }
 
-    byte[] trId = xid.getGlobalTransactionId();
-    GlobalKey key = new GlobalKey(trId);
-    GlobalToken globalToken = globalTokens.get(key);
-
-    if (globalToken == null) {
-      if (log.isDebugEnabled()) {
-        log.debug(id + ": add GlobalToken " + key);
+    // the global id is hashed once per branch, resume uses the acquired token
+    GlobalKey key = new GlobalKey(xid.getGlobalTransactionId());
+    for (;;) {
+      GlobalToken candidate = globalTokens.get(key);
+      if (candidate == null) {
+        GlobalToken created = new GlobalToken();
+        candidate = globalTokens.putIfAbsent(key, created);
+        if (candidate == null) {
+          if (log.isDebugEnabled()) {
+            log.debug(id + ": add GlobalToken " + key);
+          }
+          candidate = created;
+        }
       }
 
-      globalTokens.put(key, globalToken = new GlobalToken());
-    } else {
-      if (log.isDebugEnabled()) {
-        log.debug(id + ": present GlobalToken " + key);
+      Token acquired = candidate.acquire(id, sqlSessionManager, sqlSessionFactory);
+      if (acquired != null) {
+        this.globalKey = key;
+        this.globalToken = candidate;
+        this.token = acquired;
+        return;
       }
+
+      // the global token was retired by its last resource meanwhile
+      globalTokens.remove(key, candidate);
     }
-    globalToken.parentSuspend(id, sqlSessionManager);
   }
 
   private void parentResume(Xid xid) {
@@ -376,31 +484,37 @@ public class XASqlSessionManager implements XAResource {
       log.debug(id + ": resume parent session " + xid);
     }
 
-    byte[] trId = xid.getGlobalTransactionId();
-    GlobalKey key = new GlobalKey(trId);
-    GlobalToken globalToken = globalTokens.get(key);
-
-    if (globalToken != null) {
-      globalToken.parentResume(id, sqlSessionManager);
+    Token acquired = this.token;
+    if (acquired == null) {
+      if (log.isDebugEnabled()) {
+        log.debug(id + ": not find GlobalToken " + xid);
+      }
+      return;
+    }
 
-      if (globalToken.isEmpty()) {
-        if (log.isDebugEnabled()) {
-          log.debug(id + ": remove GlobalToken " + key);
-        }
+    GlobalKey key = this.globalKey;
+    GlobalToken owner = this.globalToken;
+    this.globalKey = null;
+    this.globalToken = null;
+    this.token = null;
 
-        globalTokens.remove(key);
-      } else {
-        if (log.isDebugEnabled()) {
-          log.debug(id + ": not remove GlobalToken " + key);
-        }
-      }
-    } else {
+    if (acquired.release(id) && owner.remove(acquired)) {
       if (log.isDebugEnabled()) {
-        log.debug(id + ": not find GlobalToken " + key);
+        log.debug(id + ": remove GlobalToken " + key);
       }
+      globalTokens.remove(key, owner);
     }
   }
 
+  /**
+   * Returns the number of global transactions whose resources suspended a parent session.
+   *
+   * @return the number of global transactions with suspended parent sessions
+   */
+  static int getActiveGlobalTransactions() {
+    return globalTokens.size();
+  }
+
   static class GlobalKey {
     final byte[] globalId;
     final int arrayHash;
@@ -430,10 +544,7 @@ public class XASqlSessionManager implements XAResource {
       }
 
       GlobalKey other = (GlobalKey) obj;
-      if (!Arrays.equals(globalId, other.globalId)) {
-        return false;
-      }
-      return true;
+      return arrayHash == other.arrayHash && Arrays.equals(globalId, other.globalId);
     }
 
     @Override
@@ -448,120 +559,171 @@ public class XASqlSessionManager implements XAResource {
     }
   }
 
+  /**
+   * The tokens of the session managers taking part in a global transaction.
+   * <p>
+   * The tokens are kept in a copy-on-write array, a global transaction rarely has more than a few resources; once
+   * its last token is removed the array is retired, so that the global token is never used again.
+   * </p>
+   */
   static class GlobalToken {
-    private final Log log = LogFactory.getLog(getClass());
-    IdentityHashMap<SqlSessionManager, Token> tokens = new IdentityHashMap<SqlSessionManager, XASqlSessionManager.Token>();
+    private static final Token[] EMPTY = new Token[0];
 
-    public GlobalToken() {
-    }
+    private final Log log = LogFactory.getLog(getClass());
 
-    void parentSuspend(String id, SqlSessionManager sqlSessionManager) {
-      Token token = tokens.get(sqlSessionManager);
+    /**
+     * The live tokens, null once retired.
+     */
+    private final AtomicReference<Token[]> tokens = new AtomicReference<Token[]>(EMPTY);
+
+    /**
+     * Acquires the token of the given session manager, suspending its parent session if the token is created.
+     *
+     * @return the acquired token, or null if the global token is retired
+     */
+    Token acquire(String id, SqlSessionManager sqlSessionManager, SuspendableSqlSessionFactory sqlSessionFactory) {
+      for (;;) {
+        Token[] current = tokens.get();
+        if (current == null) {
+          return null;
+        }
 
-      if (token == null) {
-        if (log.isDebugEnabled()) {
-          log.debug(id + ": add Token " + sqlSessionManager);
+        for (Token token : current) {
+          if (token.sqlSessionManager == sqlSessionManager && token.acquire()) {
+            if (log.isDebugEnabled()) {
+              log.debug(id + ": present Token " + sqlSessionManager);
+            }
+            return token;
+          }
         }
 
-        token = new Token(sqlSessionManager);
-        tokens.put(sqlSessionManager, token);
-      } else {
-        if (log.isDebugEnabled()) {
-          log.debug(id + ": present Token " + sqlSessionManager);
+        Token created = new Token(sqlSessionManager, sqlSessionFactory);
+        Token[] next = Arrays.copyOf(current, current.length + 1);
+        next[current.length] = created;
+        if (tokens.compareAndSet(current, next)) {
+          if (log.isDebugEnabled()) {
+            log.debug(id + ": add Token " + sqlSessionManager);
+          }
+          created.parentSuspend(id);
+          return created;
         }
       }
-      token.parentSuspend(id);
     }
 
-    void parentResume(String id, SqlSessionManager sqlSessionManager) {
-      Token token = tokens.get(sqlSessionManager);
-
-      if (token != null) {
-        token.parentResume(id);
+    /**
+     * Removes the given released token.
+     *
+     * @return true if the global token was retired
+     */
+    boolean remove(Token token) {
+      for (;;) {
+        Token[] current = tokens.get();
+        if (current == null) {
+          return false;
+        }
 
-        // remove last
-        if (token.isFirst()) {
-          if (log.isDebugEnabled()) {
-            log.debug(id + ": remove parent session " + sqlSessionManager);
+        int index = -1;
+        for (int i = 0; i < current.length; i++) {
+          if (current[i] == token) {
+            index = i;
+            break;
           }
+        }
+        if (index < 0) {
+          return false;
+        }
 
-          tokens.remove(sqlSessionManager);
+        Token[] next = null;
+        if (current.length > 1) {
+          next = new Token[current.length - 1];
+          System.arraycopy(current, 0, next, 0, index);
+          System.arraycopy(current, index + 1, next, index, current.length - index - 1);
         }
-      } else {
-        if (log.isDebugEnabled()) {
-          log.debug(id + ": not find parent session " + sqlSessionManager);
+        if (tokens.compareAndSet(current, next)) {
+          return next == null;
         }
       }
     }
-
-    boolean isEmpty() {
-      return tokens.isEmpty();
-    }
   }
 
+  /**
+   * The parent session of a session manager, suspended while the resources of the manager take part in a global
+   * transaction: the first resource suspends it, the last one resumes it.
+   */
   static class Token {
     private final Log log = LogFactory.getLog(getClass());
     final SqlSessionManager sqlSessionManager;
-    ThreadLocal<SqlSession> localSqlSession;
-    SqlSession suspendedSqlSession;
-    int count;
-
-    @SuppressWarnings("unchecked")
-    public Token(SqlSessionManager sqlSessionManager) {
+    final SuspendableSqlSessionFactory sqlSessionFactory;
+    /**
+     * The binding of the managed sessions of a manager not created on a suspendable factory.
+     */
+    final SqlSessionBinding sqlSessionBinding;
+    volatile SqlSession suspendedSqlSession;
+
+    /**
+     * The resources holding the token, 0 once released by all of them.
+     */
+    private final AtomicInteger count = new AtomicInteger(1);
+
+    public Token(SqlSessionManager sqlSessionManager, SuspendableSqlSessionFactory sqlSessionFactory) {
       this.sqlSessionManager = sqlSessionManager;
-      this.count = 0;
-      try {
-        Field field = SqlSessionManager.class.getDeclaredField("localSqlSession");
-        field.setAccessible(true);
-        localSqlSession = (ThreadLocal<SqlSession>) field.get(sqlSessionManager);
-      } catch (Exception e) {
+      this.sqlSessionFactory = sqlSessionFactory;
+      this.sqlSessionBinding = sqlSessionFactory == null ? LocalSqlSessions.getInstance() : null;
+    }
+
+    /**
+     * Acquires the token for one more resource, unless it was released by all of them.
+     *
+     * @return true if acquired
+     */
+    boolean acquire() {
+      for (;;) {
+        int current = count.get();
+        if (current == 0) {
+          return false;
+        }
+        if (count.compareAndSet(current, current + 1)) {
+          return true;
+        }
       }
     }
 
-    boolean isFirst() {
-      return count == 0;
-    }
-
-    void parentSuspend(String id) {
-      if (isFirst()) {
+    /**
+     * Releases the token for one resource, resuming the parent session when the last resource releases it.
+     *
+     * @return true if the token was released by all its resources
+     */
+    boolean release(String id) {
+      if (count.decrementAndGet() > 0) {
         if (log.isDebugEnabled()) {
-          log.debug(id + " suspend parent session");
+          log.debug(id + " skip resume parent session");
         }
+        return false;
+      }
 
-        if (localSqlSession != null) {
-          suspendedSqlSession = localSqlSession.get();
-          localSqlSession.remove();
-        }
+      if (log.isDebugEnabled()) {
+        log.debug(id + " resume parent session");
+      }
+      SqlSession parentSqlSession = suspendedSqlSession;
+      suspendedSqlSession = null;
+      if (sqlSessionFactory != null) {
+        sqlSessionFactory.resume(sqlSessionManager, parentSqlSession);
       } else {
-        if (log.isDebugEnabled()) {
-          log.debug(id + " skip suspend parent session");
-        }
+        sqlSessionBinding.set(sqlSessionManager, parentSqlSession);
       }
-      count++;
+      return true;
     }
 
-    void parentResume(String id) {
-      if (count > 0) {
-        count--;
+    void parentSuspend(String id) {
+      if (log.isDebugEnabled()) {
+        log.debug(id + " suspend parent session");
       }
 
-      if (isFirst()) {
-        if (log.isDebugEnabled()) {
-          log.debug(id + " resume parent session");
-        }
-
-        if (localSqlSession != null) {
-          if (suspendedSqlSession == null) {
-            localSqlSession.remove();
-          } else {
-            localSqlSession.set(suspendedSqlSession);
-            suspendedSqlSession = null;
-          }
-        }
+      if (sqlSessionFactory != null) {
+        suspendedSqlSession = sqlSessionFactory.suspend(sqlSessionManager);
       } else {
-        if (log.isDebugEnabled()) {
-          log.debug(id + " skip resume parent session");
-        }
+        suspendedSqlSession = sqlSessionBinding.get(sqlSessionManager);
+        sqlSessionBinding.set(sqlSessionManager, null);
       }
     }
   }
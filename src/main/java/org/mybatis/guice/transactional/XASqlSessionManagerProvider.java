@@ -20,13 +20,17 @@ import javax.inject.Provider;
 import javax.transaction.xa.XAResource;
 
 import org.apache.ibatis.session.SqlSessionManager;
+import org.mybatis.guice.session.SuspendableSqlSessionFactory;
 
 public class XASqlSessionManagerProvider implements Provider<XAResource> {
   @Inject
   private SqlSessionManager sqlSessionManager;
 
+  @Inject
+  private SuspendableSqlSessionFactory sqlSessionFactory;
+
   @Override
   public XAResource get() {
-    return new XASqlSessionManager(sqlSessionManager);
+    return new XASqlSessionManager(sqlSessionManager, sqlSessionFactory);
   }
 }
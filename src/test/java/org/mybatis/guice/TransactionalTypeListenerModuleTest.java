@@ -0,0 +1,68 @@
+/**
+ *    Copyright 2009-2017 the original author or authors.
+ *
+ *    Licensed under the Apache License, Version 2.0 (the "License");
+ *    you may not use this file except in compliance with the License.
+ *    You may obtain a copy of the License at
+ *
+ *       http://www.apache.org/licenses/LICENSE-2.0
+ *
+ *    Unless required by applicable law or agreed to in writing, software
+ *    distributed under the License is distributed on an "AS IS" BASIS,
+ *    WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ *    See the License for the specific language governing permissions and
+ *    limitations under the License.
+ */
+package org.mybatis.guice;
+
+import static org.junit.Assert.assertEquals;
+import static org.junit.Assert.fail;
+
+import org.junit.Test;
+import org.mybatis.guice.transactional.TransactionalTypeListenerTest.InvalidService;
+
+import com.google.inject.AbstractModule;
+import com.google.inject.CreationException;
+import com.google.inject.Guice;
+import com.google.inject.spi.Element;
+import com.google.inject.spi.Elements;
+import com.google.inject.spi.TypeListenerBinding;
+
+public class TransactionalTypeListenerModuleTest {
+
+  @Test
+  public void bindsListenerOnceWhenInstalledTwice() {
+    int listeners = 0;
+    for (Element element : Elements.getElements(new AbstractModule() {
+      @Override
+      protected void configure() {
+        install(new TransactionalTypeListenerModule());
+        install(new TransactionalTypeListenerModule());
+      }
+    })) {
+      if (element instanceof TypeListenerBinding) {
+        listeners++;
+      }
+    }
+
+    assertEquals(1, listeners);
+  }
+
+  @Test
+  public void reportsErrorsOnceWhenInstalledTwice() {
+    try {
+      Guice.createInjector(new AbstractModule() {
+        @Override
+        protected void configure() {
+          install(new TransactionalTypeListenerModule());
+          install(new TransactionalTypeListenerModule());
+          bind(InvalidService.class);
+        }
+      });
+      fail("Expected CreationException");
+    } catch (CreationException e) {
+      assertEquals(1, e.getErrorMessages().size());
+    }
+  }
+
+}
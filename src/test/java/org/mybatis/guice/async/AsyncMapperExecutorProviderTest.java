@@ -0,0 +1,180 @@
+/**
+ *    Copyright 2009-2017 the original author or authors.
+ *
+ *    Licensed under the Apache License, Version 2.0 (the "License");
+ *    you may not use this file except in compliance with the License.
+ *    You may obtain a copy of the License at
+ *
+ *       http://www.apache.org/licenses/LICENSE-2.0
+ *
+ *    Unless required by applicable law or agreed to in writing, software
+ *    distributed under the License is distributed on an "AS IS" BASIS,
+ *    WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ *    See the License for the specific language governing permissions and
+ *    limitations under the License.
+ */
+package org.mybatis.guice.async;
+
+import static com.google.inject.name.Names.bindProperties;
+import static org.junit.Assert.assertEquals;
+import static org.junit.Assert.assertNotNull;
+import static org.junit.Assert.assertSame;
+import static org.junit.Assert.fail;
+
+import com.google.inject.Guice;
+import com.google.inject.Injector;
+
+import java.util.Properties;
+import java.util.concurrent.Callable;
+import java.util.concurrent.CountDownLatch;
+import java.util.concurrent.ExecutionException;
+import java.util.concurrent.Future;
+import java.util.concurrent.RejectedExecutionException;
+
+import javax.sql.DataSource;
+
+import org.apache.ibatis.datasource.pooled.PooledDataSource;
+import org.apache.ibatis.datasource.unpooled.UnpooledDataSource;
+import org.apache.ibatis.transaction.jdbc.JdbcTransactionFactory;
+import org.junit.Test;
+import org.mybatis.guice.MyBatisModule;
+import org.mybatis.guice.async.AsyncMapperProviderTest.FooMapper;
+import org.mybatis.guice.async.AsyncMapperProviderTest.FooMapperAsync;
+import org.mybatis.guice.datasource.builtin.PooledDataSourceProvider;
+import org.mybatis.guice.datasource.helper.JdbcHelper;
+
+public class AsyncMapperExecutorProviderTest {
+
+  @Test
+  public void readsPoolSize() {
+    PooledDataSource dataSource = new PooledDataSource();
+    dataSource.setPoolMaximumActiveConnections(7);
+
+    assertEquals(7, DataSourcePoolSize.of(dataSource));
+    assertEquals(7, threads(dataSource, 0));
+  }
+
+  @Test
+  public void fallsBackToDefaultThreads() {
+    UnpooledDataSource dataSource = new UnpooledDataSource();
+
+    assertEquals(-1, DataSourcePoolSize.of(dataSource));
+    assertEquals(AsyncMapperExecutorProvider.DEFAULT_THREADS, threads(dataSource, 0));
+  }
+
+  @Test
+  public void prefersBoundThreads() {
+    assertEquals(3, threads(new PooledDataSource(), 3));
+  }
+
+  @Test
+  public void queuesHundredCallsPerThreadByDefault() {
+    AsyncMapperExecutorProvider provider = new AsyncMapperExecutorProvider();
+    provider.setThreads(3);
+    AsyncMapperExecutor executor = provider.get();
+    try {
+      assertEquals(300, executor.getQueueCapacity());
+    } finally {
+      executor.shutdown();
+    }
+
+    provider.setQueueCapacity(5);
+    executor = provider.get();
+    try {
+      assertEquals(5, executor.getQueueCapacity());
+    } finally {
+      executor.shutdown();
+    }
+  }
+
+  @Test
+  public void failsCallsBeyondQueueCapacity() throws Exception {
+    AsyncMapperExecutor executor = new AsyncMapperExecutor(1, 1);
+    final CountDownLatch started = new CountDownLatch(1);
+    final CountDownLatch release = new CountDownLatch(1);
+    try {
+      Future<String> running = executor.submit(new Callable<String>() {
+        @Override
+        public String call() throws Exception {
+          started.countDown();
+          release.await();
+          return "running";
+        }
+      });
+      started.await();
+      Future<String> queued = executor.submit(constant("queued"));
+
+      assertRejected(executor.submit(constant("rejected")));
+
+      release.countDown();
+      assertEquals("running", running.get());
+      assertEquals("queued", queued.get());
+    } finally {
+      release.countDown();
+      executor.shutdown();
+    }
+  }
+
+  @Test
+  public void failsCallsAfterShutdown() throws Exception {
+    AsyncMapperExecutor executor = new AsyncMapperExecutor(1, 1);
+    executor.shutdown();
+
+    assertRejected(executor.submit(constant("rejected")));
+  }
+
+  @Test
+  public void bindsAsyncMappers() {
+    Injector injector = Guice.createInjector(JdbcHelper.HSQLDB_IN_MEMORY_NAMED, new MyBatisModule() {
+      @Override
+      protected void initialize() {
+        final Properties myBatisProperties = new Properties();
+        myBatisProperties.setProperty("mybatis.environment.id", "test");
+        myBatisProperties.setProperty("mybatis.pooled.maximumActiveConnections", "4");
+        bindProperties(binder(), myBatisProperties);
+        bindDataSourceProviderType(PooledDataSourceProvider.class);
+        bindTransactionFactoryType(JdbcTransactionFactory.class);
+        addMapperClass(FooMapper.class);
+        addAsyncMapperClass(FooMapperAsync.class);
+      }
+    });
+
+    assertNotNull(injector.getInstance(FooMapperAsync.class));
+    assertNotNull(injector.getInstance(FooMapper.class));
+    AsyncMapperExecutor executor = injector.getInstance(AsyncMapperExecutor.class);
+    assertSame(executor, injector.getInstance(AsyncMapperExecutor.class));
+    assertEquals(4, executor.getThreads());
+    executor.shutdown();
+  }
+
+  private static Callable<String> constant(final String value) {
+    return new Callable<String>() {
+      @Override
+      public String call() {
+        return value;
+      }
+    };
+  }
+
+  private static void assertRejected(Future<?> future) throws InterruptedException {
+    try {
+      future.get();
+      fail("Expected RejectedExecutionException");
+    } catch (ExecutionException e) {
+      assertEquals(RejectedExecutionException.class, e.getCause().getClass());
+    }
+  }
+
+  private static int threads(DataSource dataSource, int threads) {
+    AsyncMapperExecutorProvider provider = new AsyncMapperExecutorProvider();
+    provider.setDataSource(dataSource);
+    provider.setThreads(threads);
+    AsyncMapperExecutor executor = provider.get();
+    try {
+      return executor.getThreads();
+    } finally {
+      executor.shutdown();
+    }
+  }
+
+}
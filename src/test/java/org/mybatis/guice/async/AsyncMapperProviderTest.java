@@ -0,0 +1,227 @@
+/**
+ *    Copyright 2009-2017 the original author or authors.
+ *
+ *    Licensed under the Apache License, Version 2.0 (the "License");
+ *    you may not use this file except in compliance with the License.
+ *    You may obtain a copy of the License at
+ *
+ *       http://www.apache.org/licenses/LICENSE-2.0
+ *
+ *    Unless required by applicable law or agreed to in writing, software
+ *    distributed under the License is distributed on an "AS IS" BASIS,
+ *    WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ *    See the License for the specific language governing permissions and
+ *    limitations under the License.
+ */
+package org.mybatis.guice.async;
+
+import static org.junit.Assert.assertEquals;
+import static org.junit.Assert.assertFalse;
+import static org.junit.Assert.assertTrue;
+import static org.junit.Assert.fail;
+
+import com.google.common.util.concurrent.ListenableFuture;
+
+import java.lang.reflect.InvocationHandler;
+import java.lang.reflect.Method;
+import java.lang.reflect.Proxy;
+import java.util.ArrayList;
+import java.util.Arrays;
+import java.util.Collections;
+import java.util.List;
+import java.util.concurrent.Callable;
+import java.util.concurrent.ExecutionException;
+import java.util.concurrent.Future;
+
+import org.apache.ibatis.annotations.Param;
+import org.apache.ibatis.annotations.Select;
+import org.apache.ibatis.annotations.Update;
+import org.apache.ibatis.session.Configuration;
+import org.apache.ibatis.session.SqlSession;
+import org.apache.ibatis.session.SqlSessionFactory;
+import org.apache.ibatis.session.SqlSessionManager;
+import org.junit.After;
+import org.junit.Before;
+import org.junit.Test;
+import org.mybatis.guice.transactional.TransactionEvent;
+import org.mybatis.guice.transactional.TransactionEventSink;
+import org.mybatis.guice.transactional.Transactional;
+import org.mybatis.guice.transactional.TransactionalMethodInterceptor;
+
+public class AsyncMapperProviderTest {
+
+  private final List<String> calls = Collections.synchronizedList(new ArrayList<String>());
+
+  private final List<TransactionEvent> events = Collections.synchronizedList(new ArrayList<TransactionEvent>());
+
+  private SqlSessionManager sqlSessionManager;
+
+  private AsyncMapperExecutor executor;
+
+  private FooMapperAsync fooMapper;
+
+  @Before
+  public void setup() {
+    Configuration configuration = new Configuration();
+    configuration.addMapper(FooMapper.class);
+    sqlSessionManager = SqlSessionManager.newInstance(sqlSessionFactory(configuration));
+
+    TransactionalMethodInterceptor interceptor = new TransactionalMethodInterceptor();
+    interceptor.setSqlSessionManager(sqlSessionManager);
+    interceptor.setTransactionEventSink(new TransactionEventSink() {
+      @Override
+      public void onEvent(TransactionEvent event, Method method) {
+        events.add(event);
+      }
+    });
+    executor = new AsyncMapperExecutor(2, interceptor);
+
+    AsyncMapperProvider<FooMapperAsync> provider = new AsyncMapperProvider<FooMapperAsync>(FooMapperAsync.class);
+    provider.setSqlSessionManager(sqlSessionManager);
+    provider.setAsyncMapperExecutor(executor);
+    fooMapper = provider.get();
+  }
+
+  @After
+  public void teardown() {
+    executor.shutdown();
+  }
+
+  @Test
+  public void runsCallsOnExecutorThreads() throws Exception {
+    assertEquals("name-1", fooMapper.selectName(1).get());
+    assertEquals(1, calls.size());
+    assertTrue(calls.get(0), calls.get(0).startsWith("selectOne on mybatis-guice-async-"));
+    assertTrue(events.isEmpty());
+  }
+
+  @Test
+  public void runsTransactionalMethodsInTransaction() throws Exception {
+    assertEquals(Integer.valueOf(1), fooMapper.rename(1, "foo").get());
+    assertEquals(Arrays.asList(TransactionEvent.BEGIN, TransactionEvent.COMMIT, TransactionEvent.CLOSE), events);
+    assertTrue(calls.get(0), calls.get(0).endsWith("managed"));
+  }
+
+  @Test
+  public void failsFutureOnError() throws Exception {
+    try {
+      fooMapper.selectName(-1).get();
+      fail("Expected ExecutionException");
+    } catch (ExecutionException e) {
+      assertEquals(IllegalStateException.class, e.getCause().getClass());
+    }
+  }
+
+  @Test
+  public void rollsBackFailedTransactionalTasks() throws Exception {
+    Future<Object> result = executor.submitTransactional(new Callable<Object>() {
+      @Override
+      public Object call() {
+        throw new IllegalStateException("test");
+      }
+    });
+
+    try {
+      result.get();
+      fail("Expected ExecutionException");
+    } catch (ExecutionException e) {
+      assertTrue(e.getCause() instanceof Exception);
+    }
+    assertEquals(Arrays.asList(TransactionEvent.BEGIN, TransactionEvent.ROLLBACK, TransactionEvent.CLOSE), events);
+  }
+
+  @Test
+  public void handlesObjectMethods() {
+    assertTrue(fooMapper.equals(fooMapper));
+    assertFalse(fooMapper.equals(null));
+    assertEquals("Async mapper " + FooMapperAsync.class.getName(), fooMapper.toString());
+  }
+
+  @Test(expected = IllegalArgumentException.class)
+  public void rejectsSynchronousMethods() {
+    new AsyncMapperProvider<SynchronousAsync>(SynchronousAsync.class);
+  }
+
+  @Test(expected = IllegalArgumentException.class)
+  public void rejectsUnknownMethods() {
+    new AsyncMapperProvider<UnknownAsync>(UnknownAsync.class);
+  }
+
+  @Test(expected = IllegalArgumentException.class)
+  public void rejectsUnannotatedFacades() {
+    new AsyncMapperProvider<FooMapper>(FooMapper.class);
+  }
+
+  private SqlSessionFactory sqlSessionFactory(final Configuration configuration) {
+    return (SqlSessionFactory) Proxy.newProxyInstance(getClass().getClassLoader(),
+        new Class<?>[] { SqlSessionFactory.class }, new InvocationHandler() {
+          @Override
+          public Object invoke(Object proxy, Method method, Object[] args) throws Throwable {
+            if ("getConfiguration".equals(method.getName())) {
+              return configuration;
+            }
+            return sqlSession(configuration);
+          }
+        });
+  }
+
+  private SqlSession sqlSession(final Configuration configuration) {
+    return (SqlSession) Proxy.newProxyInstance(getClass().getClassLoader(), new Class<?>[] { SqlSession.class },
+        new InvocationHandler() {
+          @Override
+          public Object invoke(Object proxy, Method method, Object[] args) throws Throwable {
+            String name = method.getName();
+            if ("getConfiguration".equals(name)) {
+              return configuration;
+            }
+            if (!"selectOne".equals(name) && !"update".equals(name)) {
+              return null;
+            }
+            calls.add(name + " on " + Thread.currentThread().getName()
+                + (sqlSessionManager.isManagedSessionStarted() ? " managed" : ""));
+            if ("update".equals(name)) {
+              return 1;
+            }
+            if (Integer.valueOf(-1).equals(args[1])) {
+              throw new IllegalStateException("test");
+            }
+            return "name-" + args[1];
+          }
+        });
+  }
+
+  public interface FooMapper {
+
+    @Select("SELECT name FROM foo WHERE id = #{id}")
+    String selectName(int id);
+
+    @Update("UPDATE foo SET name = #{name} WHERE id = #{id}")
+    int rename(@Param("id") int id, @Param("name") String name);
+
+  }
+
+  @AsyncMapper(FooMapper.class)
+  public interface FooMapperAsync {
+
+    ListenableFuture<String> selectName(int id);
+
+    @Transactional
+    ListenableFuture<Integer> rename(int id, String name);
+
+  }
+
+  @AsyncMapper(FooMapper.class)
+  public interface SynchronousAsync {
+
+    String selectName(int id);
+
+  }
+
+  @AsyncMapper(FooMapper.class)
+  public interface UnknownAsync {
+
+    Future<String> selectName(long id);
+
+  }
+
+}
@@ -0,0 +1,92 @@
+/**
+ *    Copyright 2009-2017 the original author or authors.
+ *
+ *    Licensed under the Apache License, Version 2.0 (the "License");
+ *    you may not use this file except in compliance with the License.
+ *    You may obtain a copy of the License at
+ *
+ *       http://www.apache.org/licenses/LICENSE-2.0
+ *
+ *    Unless required by applicable law or agreed to in writing, software
+ *    distributed under the License is distributed on an "AS IS" BASIS,
+ *    WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ *    See the License for the specific language governing permissions and
+ *    limitations under the License.
+ */
+package org.mybatis.guice.cache;
+
+import static org.junit.Assert.assertEquals;
+import static org.junit.Assert.assertNull;
+
+import org.junit.Test;
+
+public class ConcurrentLruCacheTest {
+
+  @Test
+  public void putAndGet() {
+    ConcurrentLruCache cache = new ConcurrentLruCache("test");
+    cache.putObject("key", "value");
+
+    assertEquals("value", cache.getObject("key"));
+    assertNull(cache.getObject("other"));
+    assertEquals(1, cache.getSize());
+    assertEquals(1, cache.getStats().getHitCount());
+    assertEquals(1, cache.getStats().getMissCount());
+    assertEquals(0.5, cache.getStats().getHitRate(), 0);
+  }
+
+  @Test
+  public void evictsLeastRecentlyUsedEntries() {
+    ConcurrentLruCache cache = new ConcurrentLruCache("test");
+    cache.setMaximumSize(16);
+    for (int i = 0; i < 1000; i++) {
+      cache.putObject(i, i);
+    }
+
+    assertEquals(16, cache.getSize());
+    assertEquals(984, cache.getStats().getEvictionCount());
+    assertEquals(999, cache.getObject(999));
+  }
+
+  @Test
+  public void evictsByWeight() {
+    ConcurrentLruCache cache = new ConcurrentLruCache("test");
+    cache.setMaximumWeight(16 * 10);
+    cache.setWeigher(new CacheWeigher() {
+      @Override
+      public int weigh(Object key, Object value) {
+        return ((String) value).length();
+      }
+    });
+    for (int i = 0; i < 1000; i++) {
+      cache.putObject(i, "0123456789");
+    }
+
+    assertEquals(16, cache.getSize());
+  }
+
+  @Test
+  public void expiresEntries() throws Exception {
+    ConcurrentLruCache cache = new ConcurrentLruCache("test");
+    cache.setExpireAfterWrite(1);
+    cache.putObject("key", "value");
+    Thread.sleep(5);
+
+    assertNull(cache.getObject("key"));
+    assertEquals(0, cache.getSize());
+    assertEquals(1, cache.getStats().getEvictionCount());
+  }
+
+  @Test
+  public void removeAndClear() {
+    ConcurrentLruCache cache = new ConcurrentLruCache("test");
+    cache.putObject("key1", "value1");
+    cache.putObject("key2", null);
+
+    assertEquals("value1", cache.removeObject("key1"));
+    assertEquals(1, cache.getSize());
+    cache.clear();
+    assertEquals(0, cache.getSize());
+  }
+
+}
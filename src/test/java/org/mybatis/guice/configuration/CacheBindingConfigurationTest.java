@@ -0,0 +1,83 @@
+/**
+ *    Copyright 2009-2017 the original author or authors.
+ *
+ *    Licensed under the Apache License, Version 2.0 (the "License");
+ *    you may not use this file except in compliance with the License.
+ *    You may obtain a copy of the License at
+ *
+ *       http://www.apache.org/licenses/LICENSE-2.0
+ *
+ *    Unless required by applicable law or agreed to in writing, software
+ *    distributed under the License is distributed on an "AS IS" BASIS,
+ *    WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ *    See the License for the specific language governing permissions and
+ *    limitations under the License.
+ */
+package org.mybatis.guice.configuration;
+
+import static org.junit.Assert.assertArrayEquals;
+import static org.junit.Assert.assertEquals;
+import static org.junit.Assert.assertFalse;
+import static org.junit.Assert.assertNull;
+import static org.junit.Assert.assertSame;
+import static org.junit.Assert.assertTrue;
+
+import org.apache.ibatis.annotations.Insert;
+import org.apache.ibatis.annotations.Options;
+import org.apache.ibatis.annotations.Select;
+import org.apache.ibatis.cache.Cache;
+import org.apache.ibatis.cache.impl.PerpetualCache;
+import org.apache.ibatis.executor.keygen.Jdbc3KeyGenerator;
+import org.apache.ibatis.mapping.MappedStatement;
+import org.junit.Before;
+import org.junit.Test;
+
+public class CacheBindingConfigurationTest {
+
+  private CacheBindingConfiguration configuration;
+
+  @Before
+  public void setup() {
+    configuration = new CacheBindingConfiguration();
+  }
+
+  @Test
+  public void givesBoundCacheToNamespaceStatements() {
+    Cache cache = new PerpetualCache(BoundMapper.class.getName());
+    configuration.bindCache(cache);
+    configuration.addMapper(BoundMapper.class);
+    configuration.addMapper(OtherMapper.class);
+
+    MappedStatement select = configuration.getMappedStatement(BoundMapper.class.getName() + ".select");
+    assertSame(cache, select.getCache());
+    assertEquals(Integer.valueOf(100), select.getFetchSize());
+    assertEquals(Integer.valueOf(5), select.getTimeout());
+    assertTrue(select.isUseCache());
+    assertFalse(select.isFlushCacheRequired());
+
+    MappedStatement insert = configuration.getMappedStatement(BoundMapper.class.getName() + ".insert");
+    assertSame(cache, insert.getCache());
+    assertTrue(insert.isFlushCacheRequired());
+    assertArrayEquals(new String[] { "id", "version" }, insert.getKeyProperties());
+    assertArrayEquals(new String[] { "ID", "VERSION" }, insert.getKeyColumns());
+    assertEquals(Jdbc3KeyGenerator.class, insert.getKeyGenerator().getClass());
+
+    assertNull(configuration.getMappedStatement(OtherMapper.class.getName() + ".select").getCache());
+  }
+
+  public interface BoundMapper {
+    @Select("SELECT 1")
+    @Options(fetchSize = 100, timeout = 5)
+    int select();
+
+    @Insert("INSERT INTO t VALUES (1)")
+    @Options(useGeneratedKeys = true, keyProperty = "id,version", keyColumn = "ID,VERSION")
+    int insert();
+  }
+
+  public interface OtherMapper {
+    @Select("SELECT 1")
+    int select();
+  }
+
+}
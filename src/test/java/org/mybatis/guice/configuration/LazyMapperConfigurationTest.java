@@ -0,0 +1,133 @@
+/**
+ *    Copyright 2009-2017 the original author or authors.
+ *
+ *    Licensed under the Apache License, Version 2.0 (the "License");
+ *    you may not use this file except in compliance with the License.
+ *    You may obtain a copy of the License at
+ *
+ *       http://www.apache.org/licenses/LICENSE-2.0
+ *
+ *    Unless required by applicable law or agreed to in writing, software
+ *    distributed under the License is distributed on an "AS IS" BASIS,
+ *    WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ *    See the License for the specific language governing permissions and
+ *    limitations under the License.
+ */
+package org.mybatis.guice.configuration;
+
+import static org.junit.Assert.assertEquals;
+import static org.junit.Assert.assertFalse;
+import static org.junit.Assert.assertNotNull;
+import static org.junit.Assert.assertTrue;
+
+import java.util.ArrayList;
+import java.util.List;
+import java.util.concurrent.Callable;
+import java.util.concurrent.CountDownLatch;
+import java.util.concurrent.ExecutorService;
+import java.util.concurrent.Executors;
+import java.util.concurrent.Future;
+
+import org.apache.ibatis.annotations.Result;
+import org.apache.ibatis.annotations.ResultMap;
+import org.apache.ibatis.annotations.Results;
+import org.apache.ibatis.annotations.Select;
+import org.apache.ibatis.mapping.MappedStatement;
+import org.junit.Before;
+import org.junit.Test;
+import org.mybatis.guice.configuration.settings.MapperConfigurationSetting;
+import org.mybatis.guice.sample.domain.User;
+import org.mybatis.guice.sample.mapper.UserMapper;
+
+public class LazyMapperConfigurationTest {
+
+  private LazyMapperConfiguration configuration;
+
+  @Before
+  public void setUp() {
+    configuration = new LazyMapperConfiguration();
+    new MapperConfigurationSetting(UserMapper.class).applyConfigurationSetting(configuration);
+    new MapperConfigurationSetting(UserResultMapper.class).applyConfigurationSetting(configuration);
+    new MapperConfigurationSetting(ReferencingMapper.class).applyConfigurationSetting(configuration);
+  }
+
+  @Test
+  public void registersMappersWithoutCompilingThem() {
+    assertEquals(3, configuration.getPendingMappers().size());
+    assertTrue(configuration.hasMapper(UserMapper.class));
+    assertTrue(configuration.getCompiledStatementNames().isEmpty());
+    assertFalse(configuration.isResourceLoaded("org/mybatis/guice/sample/mapper/UserMapper.xml"));
+  }
+
+  @Test
+  public void compilesMapperOnFirstUse() {
+    assertNotNull(configuration.getMapper(UserMapper.class, null));
+
+    assertTrue(configuration.isResourceLoaded("org/mybatis/guice/sample/mapper/UserMapper.xml"));
+    assertFalse(configuration.getPendingMappers().contains(UserMapper.class));
+    assertEquals(2, configuration.getPendingMappers().size());
+  }
+
+  @Test
+  public void compilesNamespaceOnStatementLookup() {
+    MappedStatement statement = configuration.getMappedStatement(UserResultMapper.class.getName() + ".selectUser");
+
+    assertNotNull(statement);
+    assertTrue(configuration.getPendingMappers().contains(UserMapper.class));
+    assertFalse(configuration.getPendingMappers().contains(UserResultMapper.class));
+  }
+
+  @Test
+  public void compilesReferencedNamespaces() {
+    MappedStatement statement = configuration.getMappedStatement(ReferencingMapper.class.getName() + ".select");
+
+    assertEquals(UserResultMapper.class.getName() + ".userResult", statement.getResultMaps().get(0).getId());
+    assertFalse(configuration.getPendingMappers().contains(UserResultMapper.class));
+  }
+
+  @Test
+  public void compilesAllMappersForStatementNames() {
+    assertTrue(configuration.getMappedStatementNames().contains(UserMapper.class.getName() + ".getUser"));
+    assertTrue(configuration.getPendingMappers().isEmpty());
+  }
+
+  @Test
+  public void compilesMapperOnceUnderConcurrentUse() throws Exception {
+    final String id = UserMapper.class.getName() + ".getUser";
+    final CountDownLatch start = new CountDownLatch(1);
+    ExecutorService executor = Executors.newFixedThreadPool(8);
+    try {
+      List<Future<MappedStatement>> statements = new ArrayList<Future<MappedStatement>>();
+      for (int i = 0; i < 8; i++) {
+        statements.add(executor.submit(new Callable<MappedStatement>() {
+          @Override
+          public MappedStatement call() throws Exception {
+            start.await();
+            return configuration.getMappedStatement(id);
+          }
+        }));
+      }
+      start.countDown();
+
+      MappedStatement statement = statements.get(0).get();
+      for (Future<MappedStatement> future : statements) {
+        assertTrue(statement == future.get());
+      }
+    } finally {
+      executor.shutdownNow();
+    }
+  }
+
+  public interface UserResultMapper {
+    @Results(id = "userResult", value = @Result(property = "id", column = "user_id"))
+    @Select("select user_id from users")
+    User selectUser();
+  }
+
+  public interface ReferencingMapper {
+    @ResultMap("org.mybatis.guice.configuration.LazyMapperConfigurationTest$UserResultMapper.userResult")
+    @Select("select user_id from users")
+    User select();
+  }
+
+}
@@ -0,0 +1,79 @@
+/**
+ *    Copyright 2009-2017 the original author or authors.
+ *
+ *    Licensed under the Apache License, Version 2.0 (the "License");
+ *    you may not use this file except in compliance with the License.
+ *    You may obtain a copy of the License at
+ *
+ *       http://www.apache.org/licenses/LICENSE-2.0
+ *
+ *    Unless required by applicable law or agreed to in writing, software
+ *    distributed under the License is distributed on an "AS IS" BASIS,
+ *    WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ *    See the License for the specific language governing permissions and
+ *    limitations under the License.
+ */
+package org.mybatis.guice.configuration;
+
+import static org.junit.Assert.assertEquals;
+import static org.junit.Assert.assertTrue;
+
+import java.util.ArrayList;
+import java.util.Arrays;
+import java.util.HashSet;
+import java.util.List;
+import java.util.Set;
+import java.util.TreeSet;
+
+import org.apache.ibatis.annotations.Select;
+import org.apache.ibatis.session.Configuration;
+import org.junit.Test;
+import org.mybatis.guice.configuration.settings.MapperConfigurationSetting;
+import org.mybatis.guice.sample.mapper.UserMapper;
+
+public class ParallelMapperRegistrationTest {
+
+  @Test
+  public void registersSameStatementsAsSerialRegistration() throws Throwable {
+    Configuration serial = new Configuration();
+    for (MapperConfigurationSetting setting : settings()) {
+      setting.applyConfigurationSetting(serial);
+    }
+
+    Configuration parallel = new Configuration();
+    new ParallelMapperRegistration(4).register(parallel, settings());
+
+    assertEquals(new HashSet<Class<?>>(serial.getMapperRegistry().getMappers()),
+        new HashSet<Class<?>>(parallel.getMapperRegistry().getMappers()));
+    assertEquals(new TreeSet<String>(serial.getMappedStatementNames()),
+        new TreeSet<String>(parallel.getMappedStatementNames()));
+    assertTrue(parallel.isResourceLoaded("org/mybatis/guice/sample/mapper/UserMapper.xml"));
+    assertTrue(parallel.hasStatement(UserMapper.class.getName() + ".getUser"));
+    assertTrue(parallel.hasStatement(AnnotatedMapper.class.getName() + ".selectOne"));
+  }
+
+  @Test
+  public void skipsRegisteredMappers() throws Throwable {
+    Configuration configuration = new Configuration();
+    configuration.addMapper(UserMapper.class);
+    Set<String> statements = new TreeSet<String>(configuration.getMappedStatementNames());
+
+    new ParallelMapperRegistration(2).register(configuration,
+        Arrays.asList(new MapperConfigurationSetting(UserMapper.class)));
+
+    assertEquals(statements, new TreeSet<String>(configuration.getMappedStatementNames()));
+  }
+
+  private static List<MapperConfigurationSetting> settings() {
+    List<MapperConfigurationSetting> settings = new ArrayList<MapperConfigurationSetting>();
+    settings.add(new MapperConfigurationSetting(UserMapper.class));
+    settings.add(new MapperConfigurationSetting(AnnotatedMapper.class));
+    return settings;
+  }
+
+  public interface AnnotatedMapper {
+    @Select("select 1")
+    int selectOne();
+  }
+
+}
@@ -0,0 +1,122 @@
+/**
+ *    Copyright 2009-2017 the original author or authors.
+ *
+ *    Licensed under the Apache License, Version 2.0 (the "License");
+ *    you may not use this file except in compliance with the License.
+ *    You may obtain a copy of the License at
+ *
+ *       http://www.apache.org/licenses/LICENSE-2.0
+ *
+ *    Unless required by applicable law or agreed to in writing, software
+ *    distributed under the License is distributed on an "AS IS" BASIS,
+ *    WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ *    See the License for the specific language governing permissions and
+ *    limitations under the License.
+ */
+package org.mybatis.guice.configuration.settings;
+
+import static org.junit.Assert.assertEquals;
+import static org.junit.Assert.assertNotSame;
+import static org.junit.Assert.assertSame;
+
+import com.google.inject.Guice;
+
+import java.util.ArrayList;
+import java.util.Arrays;
+import java.util.List;
+import java.util.Properties;
+
+import org.apache.ibatis.annotations.CacheNamespace;
+import org.apache.ibatis.annotations.Select;
+import org.apache.ibatis.cache.Cache;
+import org.apache.ibatis.cache.CacheException;
+import org.apache.ibatis.cache.decorators.LoggingCache;
+import org.apache.ibatis.session.Configuration;
+import org.junit.Before;
+import org.junit.Test;
+import org.mybatis.guice.cache.ConcurrentLruCache;
+import org.mybatis.guice.configuration.CacheBindingConfiguration;
+
+public class CacheConfigurationSettingTest {
+
+  private Configuration configuration;
+
+  @Before
+  public void setup() {
+    configuration = new CacheBindingConfiguration();
+  }
+
+  @Test
+  public void applyConfigurationSetting() {
+    Properties properties = new Properties();
+    properties.setProperty("maximumSize", "10");
+    CacheConfigurationSetting setting = newSetting(UncachedMapper.class.getName(), properties, false);
+
+    setting.applyConfigurationSetting(configuration);
+    configuration.addMapper(UncachedMapper.class);
+
+    Cache cache = configuration.getCache(UncachedMapper.class.getName());
+    assertEquals(LoggingCache.class, cache.getClass());
+    assertSame(cache, configuration.getMappedStatement(UncachedMapper.class.getName() + ".selectOne").getCache());
+
+    // the cached objects are copies
+    List<String> value = new ArrayList<String>(Arrays.asList("a"));
+    cache.putObject("key", value);
+    assertEquals(value, cache.getObject("key"));
+    assertNotSame(value, cache.getObject("key"));
+  }
+
+  @Test
+  public void applyConfigurationSetting_ReadOnly() {
+    newSetting(UncachedMapper.class.getName(), null, true).applyConfigurationSetting(configuration);
+    configuration.addMapper(UncachedMapper.class);
+
+    Cache cache = configuration.getCache(UncachedMapper.class.getName());
+    Object value = new Object();
+    cache.putObject("key", value);
+    assertSame(value, cache.getObject("key"));
+  }
+
+  @Test(expected = CacheException.class)
+  public void applyConfigurationSetting_CacheAlreadyDeclared() {
+    configuration.addMapper(CachedMapper.class);
+    newSetting(CachedMapper.class.getName(), null, false).applyConfigurationSetting(configuration);
+  }
+
+  @Test(expected = CacheException.class)
+  public void applyConfigurationSetting_CacheDeclaredLater() {
+    newSetting(CachedMapper.class.getName(), null, false).applyConfigurationSetting(configuration);
+    configuration.addMapper(CachedMapper.class);
+  }
+
+  @Test(expected = CacheException.class)
+  public void applyConfigurationSetting_PlainConfiguration() {
+    newSetting(UncachedMapper.class.getName(), null, false).applyConfigurationSetting(new Configuration());
+  }
+
+  @Test(expected = CacheException.class)
+  public void applyConfigurationSetting_UnknownProperty() {
+    Properties properties = new Properties();
+    properties.setProperty("unknown", "10");
+    newSetting(UncachedMapper.class.getName(), properties, false).applyConfigurationSetting(configuration);
+  }
+
+  private static CacheConfigurationSetting newSetting(String namespace, Properties properties, boolean readOnly) {
+    CacheConfigurationSetting setting = new CacheConfigurationSetting(namespace, ConcurrentLruCache.class,
+        properties, readOnly);
+    Guice.createInjector().injectMembers(setting);
+    return setting;
+  }
+
+  public interface UncachedMapper {
+    @Select("SELECT 1")
+    int selectOne();
+  }
+
+  @CacheNamespace
+  public interface CachedMapper {
+    @Select("SELECT 1")
+    int selectOne();
+  }
+
+}
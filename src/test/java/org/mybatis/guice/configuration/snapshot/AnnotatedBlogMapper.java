@@ -0,0 +1,37 @@
+/**
+ *    Copyright 2009-2017 the original author or authors.
+ *
+ *    Licensed under the Apache License, Version 2.0 (the "License");
+ *    you may not use this file except in compliance with the License.
+ *    You may obtain a copy of the License at
+ *
+ *       http://www.apache.org/licenses/LICENSE-2.0
+ *
+ *    Unless required by applicable law or agreed to in writing, software
+ *    distributed under the License is distributed on an "AS IS" BASIS,
+ *    WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ *    See the License for the specific language governing permissions and
+ *    limitations under the License.
+ */
+package org.mybatis.guice.configuration.snapshot;
+
+import org.apache.ibatis.annotations.CacheNamespace;
+import org.apache.ibatis.annotations.Insert;
+import org.apache.ibatis.annotations.Options;
+import org.apache.ibatis.annotations.Select;
+import org.apache.ibatis.cache.decorators.FifoCache;
+
+@CacheNamespace(eviction = FifoCache.class, size = 128, readWrite = false)
+public interface AnnotatedBlogMapper {
+
+  @Select("select title from blog where id = #{id}")
+  String selectTitle(int id);
+
+  @Select("<script>select count(*) from post <where><if test='subject != null'>subject = #{subject}</if></where></script>")
+  int countPosts(Blog.Post post);
+
+  @Insert("insert into post (subject) values (#{subject})")
+  @Options(useGeneratedKeys = true, keyProperty = "id")
+  int insertPost(Blog.Post post);
+
+}
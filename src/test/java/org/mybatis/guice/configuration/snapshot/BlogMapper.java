@@ -0,0 +1,31 @@
+/**
+ *    Copyright 2009-2017 the original author or authors.
+ *
+ *    Licensed under the Apache License, Version 2.0 (the "License");
+ *    you may not use this file except in compliance with the License.
+ *    You may obtain a copy of the License at
+ *
+ *       http://www.apache.org/licenses/LICENSE-2.0
+ *
+ *    Unless required by applicable law or agreed to in writing, software
+ *    distributed under the License is distributed on an "AS IS" BASIS,
+ *    WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ *    See the License for the specific language governing permissions and
+ *    limitations under the License.
+ */
+package org.mybatis.guice.configuration.snapshot;
+
+import java.util.List;
+import java.util.Map;
+
+public interface BlogMapper {
+
+  Blog selectBlog(int id);
+
+  List<Blog> searchBlogs(Map<String, Object> criteria);
+
+  int insertAuthor(Blog.Author author);
+
+  int updateBlog(Blog blog);
+
+}
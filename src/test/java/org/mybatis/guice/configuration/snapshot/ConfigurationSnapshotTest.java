@@ -0,0 +1,303 @@
+/**
+ *    Copyright 2009-2017 the original author or authors.
+ *
+ *    Licensed under the Apache License, Version 2.0 (the "License");
+ *    you may not use this file except in compliance with the License.
+ *    You may obtain a copy of the License at
+ *
+ *       http://www.apache.org/licenses/LICENSE-2.0
+ *
+ *    Unless required by applicable law or agreed to in writing, software
+ *    distributed under the License is distributed on an "AS IS" BASIS,
+ *    WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ *    See the License for the specific language governing permissions and
+ *    limitations under the License.
+ */
+package org.mybatis.guice.configuration.snapshot;
+
+import static org.junit.Assert.assertArrayEquals;
+import static org.junit.Assert.assertEquals;
+import static org.junit.Assert.assertFalse;
+import static org.junit.Assert.assertNotNull;
+import static org.junit.Assert.assertNull;
+import static org.junit.Assert.assertSame;
+import static org.junit.Assert.assertTrue;
+
+import com.google.inject.Guice;
+import com.google.inject.Injector;
+
+import java.io.ByteArrayInputStream;
+import java.io.ByteArrayOutputStream;
+import java.io.File;
+import java.io.FileOutputStream;
+import java.io.IOException;
+import java.io.InputStream;
+import java.util.ArrayList;
+import java.util.Arrays;
+import java.util.HashMap;
+import java.util.HashSet;
+import java.util.List;
+import java.util.Map;
+import java.util.TreeSet;
+
+import org.apache.ibatis.annotations.SelectProvider;
+import org.apache.ibatis.builder.StaticSqlSource;
+import org.apache.ibatis.builder.xml.XMLConfigBuilder;
+import org.apache.ibatis.cache.Cache;
+import org.apache.ibatis.executor.keygen.SelectKeyGenerator;
+import org.apache.ibatis.io.Resources;
+import org.apache.ibatis.mapping.BoundSql;
+import org.apache.ibatis.mapping.MappedStatement;
+import org.apache.ibatis.mapping.ParameterMapping;
+import org.apache.ibatis.mapping.ResultMap;
+import org.apache.ibatis.mapping.ResultMapping;
+import org.apache.ibatis.session.Configuration;
+import org.apache.ibatis.session.SqlSessionFactory;
+import org.junit.Before;
+import org.junit.Rule;
+import org.junit.Test;
+import org.junit.rules.TemporaryFolder;
+import org.mybatis.guice.XMLMyBatisModule;
+
+public class ConfigurationSnapshotTest {
+
+  private static final String CONFIG_RESOURCE = "org/mybatis/guice/configuration/snapshot/snapshot-config.xml";
+
+  @Rule
+  public TemporaryFolder folder = new TemporaryFolder();
+
+  private byte[] document;
+
+  private String key;
+
+  private File file;
+
+  @Before
+  public void setup() throws IOException {
+    document = read(Resources.getResourceAsStream(CONFIG_RESOURCE));
+    key = ConfigurationSnapshot.key(document, null, null);
+    file = new File(folder.getRoot(), "mybatis.snapshot");
+  }
+
+  @Test
+  public void restoresSavedConfiguration() throws Exception {
+    Configuration parsed = build(document);
+    assertTrue(ConfigurationSnapshot.save(file, key, parsed, null));
+
+    ConfigurationSnapshot snapshot = ConfigurationSnapshot.load(file, key, null);
+    assertNotNull(snapshot);
+    Configuration restored = build(ConfigurationSnapshot.withoutMappers(document));
+    assertTrue(restored.getMappedStatementNames().isEmpty());
+    assertTrue(snapshot.restore(restored));
+
+    assertEquals(new HashSet<Class<?>>(parsed.getMapperRegistry().getMappers()),
+        new HashSet<Class<?>>(restored.getMapperRegistry().getMappers()));
+    assertEquals(new TreeSet<String>(parsed.getMappedStatementNames()),
+        new TreeSet<String>(restored.getMappedStatementNames()));
+    assertEquals(new TreeSet<String>(parsed.getResultMapNames()), new TreeSet<String>(restored.getResultMapNames()));
+    for (String id : parsed.getMappedStatementNames()) {
+      if (id.indexOf('.') >= 0) {
+        assertSameStatement(parsed.getMappedStatement(id), restored.getMappedStatement(id));
+      }
+    }
+  }
+
+  @Test
+  public void restoresCachesAndKeyGenerators() throws Exception {
+    assertTrue(ConfigurationSnapshot.save(file, key, build(document), null));
+    Configuration restored = build(ConfigurationSnapshot.withoutMappers(document));
+    assertTrue(ConfigurationSnapshot.load(file, key, null).restore(restored));
+
+    Cache cache = restored.getCache(BlogMapper.class.getName());
+    assertSame(cache, restored.getMappedStatement(BlogMapper.class.getName() + ".selectBlog").getCache());
+    assertNotNull(restored.getCache(AnnotatedBlogMapper.class.getName()));
+
+    MappedStatement insert = restored.getMappedStatement(BlogMapper.class.getName() + ".insertAuthor");
+    assertSame(restored.getKeyGenerator(BlogMapper.class.getName() + ".insertAuthor!selectKey"),
+        insert.getKeyGenerator());
+    assertTrue(insert.getKeyGenerator() instanceof SelectKeyGenerator);
+
+    // mappers are bound without being parsed again
+    assertNotNull(restored.getMapper(BlogMapper.class, null));
+  }
+
+  @Test
+  public void restoresDynamicSql() throws Exception {
+    Configuration parsed = build(document);
+    assertTrue(ConfigurationSnapshot.save(file, key, parsed, null));
+    Configuration restored = build(ConfigurationSnapshot.withoutMappers(document));
+    assertTrue(ConfigurationSnapshot.load(file, key, null).restore(restored));
+
+    Map<String, Object> criteria = new HashMap<String, Object>();
+    criteria.put("title", "snapshot");
+    criteria.put("ids", Arrays.asList(1, 2, 3));
+    criteria.put("orderBy", "b.title");
+    String id = BlogMapper.class.getName() + ".searchBlogs";
+    BoundSql boundSql = restored.getMappedStatement(id).getBoundSql(criteria);
+
+    assertEquals(parsed.getMappedStatement(id).getBoundSql(criteria).getSql(), boundSql.getSql());
+    assertTrue(boundSql.getSql().contains("b.id in"));
+    assertEquals(4, boundSql.getParameterMappings().size());
+    assertEquals("%snapshot%", boundSql.getAdditionalParameter("pattern"));
+  }
+
+  @Test
+  public void ignoresSnapshotsOfOtherConfigurations() throws Exception {
+    assertNull(ConfigurationSnapshot.load(file, key, null));
+
+    assertTrue(ConfigurationSnapshot.save(file, key, build(document), null));
+    assertNull(ConfigurationSnapshot.load(file, ConfigurationSnapshot.key(document, "other", null), null));
+
+    FileOutputStream outputStream = new FileOutputStream(file);
+    try {
+      outputStream.write(new byte[] { 1, 2, 3 });
+    } finally {
+      outputStream.close();
+    }
+    assertNull(ConfigurationSnapshot.load(file, key, null));
+  }
+
+  @Test
+  public void doesNotSnapshotUnsupportedElements() throws Exception {
+    Configuration configuration = build(document);
+    configuration.addMapper(ProviderMapper.class);
+
+    assertFalse(ConfigurationSnapshot.save(file, key, configuration, null));
+    assertFalse(file.exists());
+  }
+
+  @Test
+  public void doesNotSnapshotScannedPackages() throws Exception {
+    assertTrue(ConfigurationSnapshot.isSupported(document));
+
+    byte[] scanning = new String(document, "UTF-8")
+        .replace("<mappers>", "<mappers>\n    <package name=\"org.mybatis.guice.configuration.snapshot\"/>")
+        .getBytes("UTF-8");
+    assertFalse(ConfigurationSnapshot.isSupported(scanning));
+  }
+
+  @Test
+  public void removesMappers() throws Exception {
+    String withoutMappers = new String(ConfigurationSnapshot.withoutMappers(document), "UTF-8");
+
+    assertFalse(withoutMappers.contains("<mappers"));
+    assertTrue(withoutMappers.contains("mybatis-3-config.dtd"));
+  }
+
+  @Test
+  public void xmlModuleWritesThenRestoresSnapshot() {
+    Configuration parsed = newInjector().getInstance(SqlSessionFactory.class).getConfiguration();
+    assertTrue(file.isFile());
+
+    Injector injector = newInjector();
+    Configuration restored = injector.getInstance(SqlSessionFactory.class).getConfiguration();
+    assertEquals(new TreeSet<String>(parsed.getMappedStatementNames()),
+        new TreeSet<String>(restored.getMappedStatementNames()));
+    assertNotNull(injector.getInstance(BlogMapper.class));
+    // restored raw sources are plain static sources
+    assertSame(StaticSqlSource.class,
+        restored.getMappedStatement(BlogMapper.class.getName() + ".selectBlog").getSqlSource().getClass());
+  }
+
+  private Injector newInjector() {
+    return Guice.createInjector(new XMLMyBatisModule() {
+      @Override
+      protected void initialize() {
+        setClassPathResource(CONFIG_RESOURCE);
+        useConfigurationSnapshot(file);
+      }
+    });
+  }
+
+  private static void assertSameStatement(MappedStatement expected, MappedStatement actual) {
+    String id = expected.getId();
+    assertEquals(id, expected.getSqlCommandType(), actual.getSqlCommandType());
+    assertEquals(id, expected.getStatementType(), actual.getStatementType());
+    assertEquals(id, expected.getResource(), actual.getResource());
+    assertEquals(id, expected.getFetchSize(), actual.getFetchSize());
+    assertEquals(id, expected.getTimeout(), actual.getTimeout());
+    assertEquals(id, expected.isFlushCacheRequired(), actual.isFlushCacheRequired());
+    assertEquals(id, expected.isUseCache(), actual.isUseCache());
+    assertEquals(id, expected.hasNestedResultMaps(), actual.hasNestedResultMaps());
+    assertEquals(id, expected.getCache() == null, actual.getCache() == null);
+    assertEquals(id, expected.getKeyGenerator().getClass(), actual.getKeyGenerator().getClass());
+    assertArrayEquals(id, expected.getKeyProperties(), actual.getKeyProperties());
+    assertEquals(id, expected.getLang().getClass(), actual.getLang().getClass());
+    assertEquals(id, expected.getParameterMap().getId(), actual.getParameterMap().getId());
+    assertEquals(id, describe(expected.getParameterMap().getParameterMappings()),
+        describe(actual.getParameterMap().getParameterMappings()));
+
+    assertEquals(id, expected.getResultMaps().size(), actual.getResultMaps().size());
+    for (int i = 0; i < expected.getResultMaps().size(); i++) {
+      assertSameResultMap(expected.getResultMaps().get(i), actual.getResultMaps().get(i));
+    }
+
+    if (expected.getSqlSource().getClass() != org.apache.ibatis.scripting.xmltags.DynamicSqlSource.class) {
+      BoundSql expectedSql = expected.getBoundSql(null);
+      BoundSql actualSql = actual.getBoundSql(null);
+      assertEquals(id, expectedSql.getSql(), actualSql.getSql());
+      assertEquals(id, describe(expectedSql.getParameterMappings()), describe(actualSql.getParameterMappings()));
+    }
+  }
+
+  private static void assertSameResultMap(ResultMap expected, ResultMap actual) {
+    assertEquals(expected.getId(), actual.getId());
+    assertEquals(expected.getType(), actual.getType());
+    assertEquals(expected.hasNestedResultMaps(), actual.hasNestedResultMaps());
+    assertEquals(expected.getMappedColumns(), actual.getMappedColumns());
+    assertEquals(describeResults(expected.getResultMappings()), describeResults(actual.getResultMappings()));
+    assertEquals(expected.getDiscriminator() == null, actual.getDiscriminator() == null);
+    if (expected.getDiscriminator() != null) {
+      assertEquals(expected.getDiscriminator().getDiscriminatorMap(), actual.getDiscriminator().getDiscriminatorMap());
+    }
+  }
+
+  private static List<String> describe(List<ParameterMapping> parameterMappings) {
+    List<String> descriptions = new ArrayList<String>();
+    for (ParameterMapping mapping : parameterMappings) {
+      descriptions.add(mapping.getProperty() + ":" + mapping.getMode() + ":" + mapping.getJavaType() + ":"
+          + mapping.getJdbcType() + ":" + mapping.getTypeHandler().getClass().getName());
+    }
+    return descriptions;
+  }
+
+  private static List<String> describeResults(List<ResultMapping> resultMappings) {
+    List<String> descriptions = new ArrayList<String>();
+    for (ResultMapping mapping : resultMappings) {
+      descriptions.add(mapping.getProperty() + ":" + mapping.getColumn() + ":" + mapping.getJavaType() + ":"
+          + mapping.getFlags() + ":" + mapping.getNestedResultMapId() + ":"
+          + (mapping.getTypeHandler() == null ? null : mapping.getTypeHandler().getClass().getName()));
+    }
+    return descriptions;
+  }
+
+  private static Configuration build(byte[] document) {
+    return new XMLConfigBuilder(new ByteArrayInputStream(document)).parse();
+  }
+
+  private static byte[] read(InputStream inputStream) throws IOException {
+    try {
+      ByteArrayOutputStream content = new ByteArrayOutputStream();
+      byte[] buffer = new byte[1024];
+      int read;
+      while ((read = inputStream.read(buffer)) != -1) {
+        content.write(buffer, 0, read);
+      }
+      return content.toByteArray();
+    } finally {
+      inputStream.close();
+    }
+  }
+
+  public interface ProviderMapper {
+    @SelectProvider(type = SqlProvider.class, method = "select")
+    int select();
+  }
+
+  public static class SqlProvider {
+    public String select() {
+      return "select 1";
+    }
+  }
+
+}
@@ -0,0 +1,143 @@
+/**
+ *    Copyright 2009-2017 the original author or authors.
+ *
+ *    Licensed under the Apache License, Version 2.0 (the "License");
+ *    you may not use this file except in compliance with the License.
+ *    You may obtain a copy of the License at
+ *
+ *       http://www.apache.org/licenses/LICENSE-2.0
+ *
+ *    Unless required by applicable law or agreed to in writing, software
+ *    distributed under the License is distributed on an "AS IS" BASIS,
+ *    WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ *    See the License for the specific language governing permissions and
+ *    limitations under the License.
+ */
+package org.mybatis.guice.datasource.hikaricp;
+
+import static org.junit.Assert.assertEquals;
+
+import com.google.inject.AbstractModule;
+import com.google.inject.Guice;
+import com.google.inject.Injector;
+import com.google.inject.name.Names;
+
+import com.zaxxer.hikari.HikariDataSource;
+import com.zaxxer.hikari.metrics.MetricsTrackerFactory;
+import org.junit.Rule;
+import org.junit.Test;
+import org.mockito.Mock;
+import org.mockito.junit.MockitoJUnit;
+import org.mockito.junit.MockitoRule;
+
+import java.util.Properties;
+
+public class HikariCPProviderTest {
+  @Rule
+  public MockitoRule mockitoRule = MockitoJUnit.rule();
+  @Mock
+  private MetricsTrackerFactory metricsTrackerFactory;
+
+  @Test
+  public void get() {
+    final String driver = "org.hsqldb.jdbc.JDBCDriver";
+    final String url = "jdbc:hsqldb:mem:testdb";
+    final String username = "test_user";
+    final String password = "test_password";
+    final boolean autoCommit = false;
+    final Properties driverProperties = new Properties();
+    driverProperties.setProperty("my_property", "true");
+    final boolean allowPoolSuspension = true;
+    final boolean cachePrepStmts = true;
+    final String catalog = "test_catalog";
+    final String connectionInitSql = "CREATE TABLE test(id INT NOT NULL);";
+    final String connectionTestQuery = "SELECT 1";
+    final long connectionTimeout = 1000;
+    final Properties healthCheckProperties = new Properties();
+    healthCheckProperties.setProperty("connectivityCheckTimeoutMs", "1000");
+    final long idleTimeout = 20000;
+    final boolean initializationFailFast = false;
+    final boolean isolateInternalQueries = true;
+    final long leakDetectionThreshold = 5000;
+    final int maximumPoolSize = 30;
+    final long maxLifetime = 60000;
+    final int minimumIdle = 5;
+    final String poolName = "testPoolName";
+    final int prepStmtCacheSize = 250;
+    final int prepStmtCacheSqlLimit = 2048;
+    final boolean readOnly = true;
+    final boolean registerMbeans = true;
+    final String transactionIsolation = "TRANSACTION_READ_COMMITTED";
+    final long validationTimeout = 500;
+    Injector injector = Guice.createInjector(new AbstractModule() {
+      @Override
+      protected void configure() {
+        bindConstant().annotatedWith(Names.named("JDBC.driver")).to(driver);
+        bindConstant().annotatedWith(Names.named("JDBC.url")).to(url);
+        bindConstant().annotatedWith(Names.named("JDBC.username")).to(username);
+        bindConstant().annotatedWith(Names.named("JDBC.password")).to(password);
+        bindConstant().annotatedWith(Names.named("JDBC.autoCommit")).to(autoCommit);
+        bind(Properties.class).annotatedWith(Names.named("JDBC.driverProperties")).toInstance(driverProperties);
+        bindConstant().annotatedWith(Names.named("hikari.allowPoolSuspension")).to(allowPoolSuspension);
+        bindConstant().annotatedWith(Names.named("hikari.cachePrepStmts")).to(cachePrepStmts);
+        bindConstant().annotatedWith(Names.named("hikari.catalog")).to(catalog);
+        bindConstant().annotatedWith(Names.named("hikari.connectionInitSql")).to(connectionInitSql);
+        bindConstant().annotatedWith(Names.named("hikari.connectionTestQuery")).to(connectionTestQuery);
+        bindConstant().annotatedWith(Names.named("hikari.connectionTimeout")).to(connectionTimeout);
+        bind(Properties.class).annotatedWith(Names.named("hikari.healthCheckProperties"))
+            .toInstance(healthCheckProperties);
+        bindConstant().annotatedWith(Names.named("hikari.idleTimeout")).to(idleTimeout);
+        bindConstant().annotatedWith(Names.named("hikari.initializationFailFast")).to(initializationFailFast);
+        bindConstant().annotatedWith(Names.named("hikari.isolateInternalQueries")).to(isolateInternalQueries);
+        bindConstant().annotatedWith(Names.named("hikari.leakDetectionThreshold")).to(leakDetectionThreshold);
+        bindConstant().annotatedWith(Names.named("hikari.maximumPoolSize")).to(maximumPoolSize);
+        bindConstant().annotatedWith(Names.named("hikari.maxLifetime")).to(maxLifetime);
+        bind(MetricsTrackerFactory.class).annotatedWith(Names.named("hikari.metricsTrackerFactory"))
+            .toInstance(metricsTrackerFactory);
+        bindConstant().annotatedWith(Names.named("hikari.minimumIdle")).to(minimumIdle);
+        bindConstant().annotatedWith(Names.named("hikari.poolName")).to(poolName);
+        bindConstant().annotatedWith(Names.named("hikari.prepStmtCacheSize")).to(prepStmtCacheSize);
+        bindConstant().annotatedWith(Names.named("hikari.prepStmtCacheSqlLimit")).to(prepStmtCacheSqlLimit);
+        bindConstant().annotatedWith(Names.named("hikari.readOnly")).to(readOnly);
+        bindConstant().annotatedWith(Names.named("hikari.registerMbeans")).to(registerMbeans);
+        bindConstant().annotatedWith(Names.named("hikari.transactionIsolation")).to(transactionIsolation);
+        bindConstant().annotatedWith(Names.named("hikari.validationTimeout")).to(validationTimeout);
+      }
+    });
+    HikariCPProvider provider = injector.getInstance(HikariCPProvider.class);
+
+    HikariDataSource dataSource = (HikariDataSource) provider.get();
+
+    assertEquals(driver, dataSource.getDriverClassName());
+    assertEquals(url, dataSource.getJdbcUrl());
+    assertEquals(username, dataSource.getUsername());
+    assertEquals(password, dataSource.getPassword());
+    assertEquals(autoCommit, dataSource.isAutoCommit());
+    assertEquals("true", dataSource.getDataSourceProperties().getProperty("my_property"));
+    assertEquals(allowPoolSuspension, dataSource.isAllowPoolSuspension());
+    assertEquals(String.valueOf(cachePrepStmts), dataSource.getDataSourceProperties().getProperty("cachePrepStmts"));
+    assertEquals(catalog, dataSource.getCatalog());
+    assertEquals(connectionInitSql, dataSource.getConnectionInitSql());
+    assertEquals(connectionTestQuery, dataSource.getConnectionTestQuery());
+    assertEquals(connectionTimeout, dataSource.getConnectionTimeout());
+    assertEquals(healthCheckProperties, dataSource.getHealthCheckProperties());
+    assertEquals(idleTimeout, dataSource.getIdleTimeout());
+    assertEquals(initializationFailFast, dataSource.isInitializationFailFast());
+    assertEquals(isolateInternalQueries, dataSource.isIsolateInternalQueries());
+    assertEquals(leakDetectionThreshold, dataSource.getLeakDetectionThreshold());
+    assertEquals(maximumPoolSize, dataSource.getMaximumPoolSize());
+    assertEquals(maxLifetime, dataSource.getMaxLifetime());
+    assertEquals(metricsTrackerFactory, dataSource.getMetricsTrackerFactory());
+    assertEquals(minimumIdle, dataSource.getMinimumIdle());
+    assertEquals(poolName, dataSource.getPoolName());
+    assertEquals(String.valueOf(prepStmtCacheSize),
+        dataSource.getDataSourceProperties().getProperty("prepStmtCacheSize"));
+    assertEquals(String.valueOf(prepStmtCacheSqlLimit),
+        dataSource.getDataSourceProperties().getProperty("prepStmtCacheSqlLimit"));
+    assertEquals(readOnly, dataSource.isReadOnly());
+    assertEquals(registerMbeans, dataSource.isRegisterMbeans());
+    assertEquals(transactionIsolation, dataSource.getTransactionIsolation());
+    assertEquals(validationTimeout, dataSource.getValidationTimeout());
+  }
+
+}
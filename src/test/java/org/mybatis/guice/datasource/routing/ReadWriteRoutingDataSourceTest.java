@@ -0,0 +1,177 @@
+/**
+ *    Copyright 2009-2017 the original author or authors.
+ *
+ *    Licensed under the Apache License, Version 2.0 (the "License");
+ *    you may not use this file except in compliance with the License.
+ *    You may obtain a copy of the License at
+ *
+ *       http://www.apache.org/licenses/LICENSE-2.0
+ *
+ *    Unless required by applicable law or agreed to in writing, software
+ *    distributed under the License is distributed on an "AS IS" BASIS,
+ *    WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ *    See the License for the specific language governing permissions and
+ *    limitations under the License.
+ */
+package org.mybatis.guice.datasource.routing;
+
+import static org.junit.Assert.assertEquals;
+import static org.junit.Assert.assertFalse;
+import static org.junit.Assert.assertSame;
+import static org.junit.Assert.assertTrue;
+import static org.mockito.Mockito.when;
+import static org.mybatis.guice.transactional.ReadOnlyContextTestSupport.callReadOnly;
+
+import java.sql.Connection;
+import java.sql.SQLException;
+import java.util.Arrays;
+import java.util.concurrent.Callable;
+import java.util.concurrent.TimeUnit;
+
+import javax.sql.DataSource;
+
+import org.junit.Before;
+import org.junit.Rule;
+import org.junit.Test;
+import org.mockito.Mock;
+import org.mockito.junit.MockitoJUnit;
+import org.mockito.junit.MockitoRule;
+
+public class ReadWriteRoutingDataSourceTest {
+  @Rule
+  public MockitoRule mockitoRule = MockitoJUnit.rule();
+  @Mock
+  private DataSource writer;
+  @Mock
+  private DataSource reader1;
+  @Mock
+  private DataSource reader2;
+  @Mock
+  private Connection writerConnection;
+  @Mock
+  private Connection reader1Connection;
+  @Mock
+  private Connection reader2Connection;
+
+  @Before
+  public void setup() throws SQLException {
+    when(writer.getConnection()).thenReturn(writerConnection);
+    when(reader1.getConnection()).thenReturn(reader1Connection);
+    when(reader2.getConnection()).thenReturn(reader2Connection);
+  }
+
+  @Test
+  public void usesWriterOutsideReadOnlyTransactions() throws Exception {
+    ReadWriteRoutingDataSource dataSource = new ReadWriteRoutingDataSource(writer, Arrays.asList(reader1, reader2),
+        ReplicaSelection.ROUND_ROBIN);
+
+    assertSame(writerConnection, dataSource.getConnection());
+  }
+
+  @Test
+  public void roundRobinsReplicasInReadOnlyTransactions() throws Exception {
+    when(reader1Connection.getCatalog()).thenReturn("reader1");
+    when(reader2Connection.getCatalog()).thenReturn("reader2");
+    ReadWriteRoutingDataSource dataSource = new ReadWriteRoutingDataSource(writer, Arrays.asList(reader1, reader2),
+        ReplicaSelection.ROUND_ROBIN);
+
+    assertEquals("reader1", readOnlyConnection(dataSource).getCatalog());
+    assertEquals("reader2", readOnlyConnection(dataSource).getCatalog());
+    assertEquals("reader1", readOnlyConnection(dataSource).getCatalog());
+  }
+
+  @Test
+  public void handsOutReplicaConnectionsUnwrappedUnlessLeastLoaded() throws Exception {
+    ReadWriteRoutingDataSource dataSource = new ReadWriteRoutingDataSource(writer, Arrays.asList(reader1),
+        ReplicaSelection.ROUND_ROBIN);
+
+    assertSame(reader1Connection, readOnlyConnection(dataSource));
+  }
+
+  @Test
+  public void picksLeastLoadedReplica() throws Exception {
+    when(reader1Connection.getCatalog()).thenReturn("reader1");
+    when(reader2Connection.getCatalog()).thenReturn("reader2");
+    ReadWriteRoutingDataSource dataSource = new ReadWriteRoutingDataSource(writer, Arrays.asList(reader1, reader2),
+        ReplicaSelection.LEAST_LOADED);
+
+    Connection first = readOnlyConnection(dataSource);
+    assertEquals("reader1", first.getCatalog());
+    assertEquals("reader2", readOnlyConnection(dataSource).getCatalog());
+    first.close();
+    assertEquals("reader1", readOnlyConnection(dataSource).getCatalog());
+  }
+
+  @Test
+  public void fallsBackToWriterWhenReplicaFails() throws Exception {
+    when(reader1.getConnection()).thenThrow(new SQLException("down"));
+    ReadWriteRoutingDataSource dataSource = new ReadWriteRoutingDataSource(writer, Arrays.asList(reader1),
+        ReplicaSelection.ROUND_ROBIN);
+
+    assertSame(writerConnection, readOnlyConnection(dataSource));
+    assertFalse(dataSource.isReplicaHealthy(0));
+    assertSame(writerConnection, readOnlyConnection(dataSource));
+  }
+
+  @Test
+  public void retriesFailedReplicaAfterInterval() throws Exception {
+    when(reader1.getConnection()).thenThrow(new SQLException("down")).thenReturn(reader1Connection);
+    ReadWriteRoutingDataSource dataSource = new ReadWriteRoutingDataSource(writer, Arrays.asList(reader1),
+        ReplicaSelection.ROUND_ROBIN);
+    dataSource.setReplicaRetryInterval(0, TimeUnit.SECONDS);
+
+    assertSame(writerConnection, readOnlyConnection(dataSource));
+    assertFalse(dataSource.isReplicaHealthy(0));
+    assertSame(reader1Connection, readOnlyConnection(dataSource));
+    assertTrue(dataSource.isReplicaHealthy(0));
+  }
+
+  @Test
+  public void doesNotRetryReplicaFoundUnhealthyByHealthCheck() throws Exception {
+    ReadWriteRoutingDataSource dataSource = new ReadWriteRoutingDataSource(writer, Arrays.asList(reader1),
+        ReplicaSelection.ROUND_ROBIN);
+    dataSource.setReplicaRetryInterval(0, TimeUnit.SECONDS);
+
+    dataSource.checkReplicas(new ReplicaHealthCheck() {
+      @Override
+      public boolean isHealthy(DataSource replica) {
+        return false;
+      }
+    });
+
+    assertSame(writerConnection, readOnlyConnection(dataSource));
+    assertFalse(dataSource.isReplicaHealthy(0));
+  }
+
+  @Test
+  public void healthCheckPutsReplicaBackInRotation() throws Exception {
+    ReadWriteRoutingDataSource dataSource = new ReadWriteRoutingDataSource(writer, Arrays.asList(reader1),
+        ReplicaSelection.LEAST_LOADED);
+
+    dataSource.checkReplicas(new ReplicaHealthCheck() {
+      @Override
+      public boolean isHealthy(DataSource replica) throws Exception {
+        throw new SQLException("unreachable");
+      }
+    });
+    assertFalse(dataSource.isReplicaHealthy(0));
+
+    dataSource.checkReplicas(new ReplicaHealthCheck() {
+      @Override
+      public boolean isHealthy(DataSource replica) {
+        return true;
+      }
+    });
+    assertTrue(dataSource.isReplicaHealthy(0));
+  }
+
+  private static Connection readOnlyConnection(final DataSource dataSource) throws Exception {
+    return callReadOnly(dataSource, new Callable<Connection>() {
+      @Override
+      public Connection call() throws Exception {
+        return dataSource.getConnection();
+      }
+    });
+  }
+
+}
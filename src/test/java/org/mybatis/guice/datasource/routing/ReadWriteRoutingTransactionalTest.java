@@ -0,0 +1,185 @@
+/**
+ *    Copyright 2009-2017 the original author or authors.
+ *
+ *    Licensed under the Apache License, Version 2.0 (the "License");
+ *    you may not use this file except in compliance with the License.
+ *    You may obtain a copy of the License at
+ *
+ *       http://www.apache.org/licenses/LICENSE-2.0
+ *
+ *    Unless required by applicable law or agreed to in writing, software
+ *    distributed under the License is distributed on an "AS IS" BASIS,
+ *    WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ *    See the License for the specific language governing permissions and
+ *    limitations under the License.
+ */
+package org.mybatis.guice.datasource.routing;
+
+import static org.junit.Assert.assertEquals;
+
+import java.lang.reflect.InvocationHandler;
+import java.lang.reflect.Method;
+import java.lang.reflect.Proxy;
+import java.sql.Connection;
+import java.util.ArrayList;
+import java.util.Arrays;
+import java.util.List;
+
+import javax.inject.Inject;
+import javax.inject.Provider;
+import javax.sql.DataSource;
+
+import org.apache.ibatis.session.SqlSessionManager;
+import org.apache.ibatis.transaction.jdbc.JdbcTransactionFactory;
+import org.junit.Before;
+import org.junit.Test;
+import org.mybatis.guice.MyBatisModule;
+import org.mybatis.guice.transactional.Transactional;
+
+import com.google.inject.Guice;
+import com.google.inject.Injector;
+import com.google.inject.PrivateModule;
+
+public class ReadWriteRoutingTransactionalTest {
+
+  private final List<String> served = new ArrayList<String>();
+
+  private Injector injector;
+
+  @Before
+  public void setup() {
+    injector = Guice.createInjector(environmentModule("a", ServiceA.class), environmentModule("b", ServiceB.class));
+  }
+
+  @Test
+  public void readOnlyTransactionUsesReplica() {
+    injector.getInstance(ServiceA.class).read();
+    injector.getInstance(ServiceA.class).write();
+
+    assertEquals(Arrays.asList("a-reader", "a-writer"), served);
+  }
+
+  @Test
+  public void readOnlyFlagDoesNotLeakToOtherEnvironment() {
+    injector.getInstance(ServiceA.class).readThenWriteOther();
+
+    assertEquals(Arrays.asList("a-reader", "b-writer"), served);
+  }
+
+  @Test
+  public void readOnlyFlagFollowsEachEnvironment() {
+    injector.getInstance(ServiceB.class).writeThenReadOther();
+
+    assertEquals(Arrays.asList("b-writer", "a-reader"), served);
+  }
+
+  @Test
+  public void readOnlyFlagIsClearedAfterTransaction() {
+    injector.getInstance(ServiceA.class).readThenWriteOther();
+    injector.getInstance(ServiceB.class).write();
+    injector.getInstance(ServiceA.class).write();
+
+    assertEquals(Arrays.asList("a-reader", "b-writer", "b-writer", "a-writer"), served);
+  }
+
+  private PrivateModule environmentModule(final String environmentId, final Class<?> serviceType) {
+    return new PrivateModule() {
+
+      @Override
+      protected void configure() {
+        install(new MyBatisModule() {
+
+          @Override
+          protected void initialize() {
+            environmentId(environmentId);
+            bindDataSourceProvider(new Provider<DataSource>() {
+              @Override
+              public DataSource get() {
+                return new ReadWriteRoutingDataSource(dataSource(environmentId + "-writer"),
+                    Arrays.asList(dataSource(environmentId + "-reader")), ReplicaSelection.ROUND_ROBIN);
+              }
+            });
+            bindTransactionFactoryType(JdbcTransactionFactory.class);
+          }
+        });
+        bind(serviceType);
+        expose(serviceType);
+      }
+    };
+  }
+
+  private DataSource dataSource(final String name) {
+    return (DataSource) Proxy.newProxyInstance(getClass().getClassLoader(), new Class<?>[] { DataSource.class },
+        new InvocationHandler() {
+          @Override
+          public Object invoke(Object proxy, Method method, Object[] args) throws Throwable {
+            if ("getConnection".equals(method.getName())) {
+              served.add(name);
+              return connection();
+            }
+            throw new UnsupportedOperationException(method.getName());
+          }
+        });
+  }
+
+  private Connection connection() {
+    return (Connection) Proxy.newProxyInstance(getClass().getClassLoader(), new Class<?>[] { Connection.class },
+        new InvocationHandler() {
+          @Override
+          public Object invoke(Object proxy, Method method, Object[] args) throws Throwable {
+            Class<?> returnType = method.getReturnType();
+            if (returnType == boolean.class) {
+              return Boolean.FALSE;
+            }
+            if (returnType == int.class) {
+              return 0;
+            }
+            return null;
+          }
+        });
+  }
+
+  public static class ServiceA {
+    @Inject
+    SqlSessionManager sqlSessionManager;
+
+    @Inject
+    ServiceB serviceB;
+
+    @Transactional(readOnly = true)
+    public void read() {
+      sqlSessionManager.getConnection();
+    }
+
+    @Transactional
+    public void write() {
+      sqlSessionManager.getConnection();
+    }
+
+    @Transactional(readOnly = true)
+    public void readThenWriteOther() {
+      sqlSessionManager.getConnection();
+      serviceB.write();
+    }
+  }
+
+  public static class ServiceB {
+    @Inject
+    SqlSessionManager sqlSessionManager;
+
+    @Inject
+    Provider<ServiceA> serviceA;
+
+    @Transactional
+    public void write() {
+      sqlSessionManager.getConnection();
+    }
+
+    @Transactional
+    public void writeThenReadOther() {
+      sqlSessionManager.getConnection();
+      serviceA.get().read();
+    }
+  }
+
+}
@@ -0,0 +1,126 @@
+/**
+ *    Copyright 2009-2017 the original author or authors.
+ *
+ *    Licensed under the Apache License, Version 2.0 (the "License");
+ *    you may not use this file except in compliance with the License.
+ *    You may obtain a copy of the License at
+ *
+ *       http://www.apache.org/licenses/LICENSE-2.0
+ *
+ *    Unless required by applicable law or agreed to in writing, software
+ *    distributed under the License is distributed on an "AS IS" BASIS,
+ *    WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ *    See the License for the specific language governing permissions and
+ *    limitations under the License.
+ */
+package org.mybatis.guice.index;
+
+import static org.junit.Assert.assertEquals;
+import static org.junit.Assert.assertTrue;
+
+import java.io.BufferedReader;
+import java.io.File;
+import java.io.FileInputStream;
+import java.io.FileOutputStream;
+import java.io.IOException;
+import java.io.InputStreamReader;
+import java.io.OutputStreamWriter;
+import java.io.Writer;
+import java.net.URL;
+import java.util.ArrayList;
+import java.util.Arrays;
+import java.util.Enumeration;
+import java.util.List;
+
+import javax.annotation.processing.Processor;
+import javax.tools.JavaCompiler;
+import javax.tools.StandardJavaFileManager;
+import javax.tools.ToolProvider;
+
+import org.junit.Rule;
+import org.junit.Test;
+import org.junit.rules.TemporaryFolder;
+
+public class TypeIndexProcessorTest {
+
+  @Rule
+  public TemporaryFolder folder = new TemporaryFolder();
+
+  @Test
+  public void writesIndex() throws Exception {
+    File output = folder.newFolder("classes");
+
+    compile(output, "com/acme/FooMapper.java", "package com.acme; public interface FooMapper { class Nested {} }");
+
+    assertEquals(Arrays.asList("com.acme.FooMapper", "com.acme.FooMapper$Nested"), readIndex(output));
+  }
+
+  @Test
+  public void rebuildsIndex() throws Exception {
+    File output = folder.newFolder("classes");
+
+    compile(output, "com/acme/FooMapper.java", "package com.acme; public interface FooMapper {}");
+    compile(output, "com/acme/BarMapper.java", "package com.acme; public interface BarMapper {}");
+
+    assertEquals(Arrays.asList("com.acme.BarMapper"), readIndex(output));
+  }
+
+  @Test
+  public void isRegisteredAsService() throws Exception {
+    List<String> processors = new ArrayList<String>();
+    Enumeration<URL> services = getClass().getClassLoader()
+        .getResources("META-INF/services/" + Processor.class.getName());
+    while (services.hasMoreElements()) {
+      BufferedReader reader = new BufferedReader(new InputStreamReader(services.nextElement().openStream(), "UTF-8"));
+      try {
+        String line;
+        while ((line = reader.readLine()) != null) {
+          processors.add(line.trim());
+        }
+      } finally {
+        reader.close();
+      }
+    }
+
+    assertTrue(processors.contains(TypeIndexProcessor.class.getName()));
+  }
+
+  private void compile(File output, String path, String source) throws IOException {
+    File sourceFile = new File(folder.getRoot(), path);
+    sourceFile.getParentFile().mkdirs();
+    Writer writer = new OutputStreamWriter(new FileOutputStream(sourceFile), "UTF-8");
+    try {
+      writer.write(source);
+    } finally {
+      writer.close();
+    }
+
+    JavaCompiler compiler = ToolProvider.getSystemJavaCompiler();
+    StandardJavaFileManager fileManager = compiler.getStandardFileManager(null, null, null);
+    try {
+      JavaCompiler.CompilationTask task = compiler.getTask(null, fileManager, null,
+          Arrays.asList("-d", output.getAbsolutePath(), "-proc:only"), null,
+          fileManager.getJavaFileObjects(sourceFile));
+      task.setProcessors(Arrays.asList(new TypeIndexProcessor()));
+      assertTrue(task.call());
+    } finally {
+      fileManager.close();
+    }
+  }
+
+  private static List<String> readIndex(File output) throws IOException {
+    File index = new File(output, TypeIndex.RESOURCE);
+    byte[] content = new byte[(int) index.length()];
+    FileInputStream input = new FileInputStream(index);
+    try {
+      int read = 0;
+      while (read < content.length) {
+        read += input.read(content, read, content.length - read);
+      }
+    } finally {
+      input.close();
+    }
+    return Arrays.asList(new String(content, "UTF-8").split("\n"));
+  }
+
+}
@@ -0,0 +1,137 @@
+/**
+ *    Copyright 2009-2017 the original author or authors.
+ *
+ *    Licensed under the Apache License, Version 2.0 (the "License");
+ *    you may not use this file except in compliance with the License.
+ *    You may obtain a copy of the License at
+ *
+ *       http://www.apache.org/licenses/LICENSE-2.0
+ *
+ *    Unless required by applicable law or agreed to in writing, software
+ *    distributed under the License is distributed on an "AS IS" BASIS,
+ *    WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ *    See the License for the specific language governing permissions and
+ *    limitations under the License.
+ */
+package org.mybatis.guice.index;
+
+import static org.junit.Assert.assertEquals;
+import static org.junit.Assert.assertNull;
+import static org.junit.Assert.assertTrue;
+
+import java.io.File;
+import java.io.FileOutputStream;
+import java.io.IOException;
+import java.io.OutputStreamWriter;
+import java.io.Writer;
+import java.net.URL;
+import java.net.URLClassLoader;
+import java.util.Arrays;
+import java.util.HashSet;
+import java.util.Set;
+
+import javax.tools.JavaCompiler;
+import javax.tools.StandardJavaFileManager;
+import javax.tools.ToolProvider;
+
+import org.apache.ibatis.io.ResolverUtil;
+import org.junit.Rule;
+import org.junit.Test;
+import org.junit.rules.TemporaryFolder;
+
+public class TypeIndexTest {
+
+  @Rule
+  public TemporaryFolder folder = new TemporaryFolder();
+
+  @Test
+  public void findsIndexedClasses() throws Exception {
+    File indexed = folder.newFolder("indexed");
+    compile(indexed, "com/acme/FooMapper.java", "package com.acme; public interface FooMapper {}");
+    compile(indexed, "com/acme/Foo.java", "package com.acme; public class Foo {}");
+    writeIndex(indexed, "com.acme.FooMapper\ncom.acme.Foo\ncom.acme.Missing\n");
+
+    Set<Class<?>> classes = find(new ResolverUtil.Test() {
+      @Override
+      public boolean matches(Class<?> type) {
+        return type.isInterface();
+      }
+    }, "com.acme", indexed);
+
+    assertEquals(1, classes.size());
+    assertEquals("com.acme.FooMapper", classes.iterator().next().getName());
+    assertTrue(find(new ResolverUtil.IsA(Object.class), "com.other", indexed).isEmpty());
+  }
+
+  @Test
+  public void scansPackagesSpanningRootsWithoutIndex() throws Exception {
+    File indexed = folder.newFolder("indexed");
+    compile(indexed, "com/acme/FooMapper.java", "package com.acme; public interface FooMapper {}");
+    writeIndex(indexed, "com.acme.FooMapper\n");
+    File notIndexed = folder.newFolder("notIndexed");
+    compile(notIndexed, "com/acme/BarMapper.java", "package com.acme; public interface BarMapper {}");
+
+    assertNull(find(new ResolverUtil.IsA(Object.class), "com.acme", indexed, notIndexed));
+  }
+
+  @Test
+  public void findsPackagesOfIndexedRootsOnly() throws Exception {
+    File indexed = folder.newFolder("indexed");
+    compile(indexed, "com/acme/FooMapper.java", "package com.acme; public interface FooMapper {}");
+    writeIndex(indexed, "com.acme.FooMapper\n");
+    File notIndexed = folder.newFolder("notIndexed");
+    compile(notIndexed, "com/other/BarMapper.java", "package com.other; public interface BarMapper {}");
+
+    Set<Class<?>> classes = find(new ResolverUtil.IsA(Object.class), "com.acme", indexed, notIndexed);
+
+    assertEquals(1, classes.size());
+    assertEquals("com.acme.FooMapper", classes.iterator().next().getName());
+  }
+
+  private static Set<Class<?>> find(ResolverUtil.Test test, String packageName, File... roots) throws Exception {
+    URL[] urls = new URL[roots.length];
+    for (int i = 0; i < roots.length; i++) {
+      urls[i] = roots[i].toURI().toURL();
+    }
+    Thread thread = Thread.currentThread();
+    ClassLoader contextClassLoader = thread.getContextClassLoader();
+    thread.setContextClassLoader(new URLClassLoader(urls, TypeIndexTest.class.getClassLoader()));
+    try {
+      Set<Class<? extends Object>> classes = TypeIndex.find(test, packageName);
+      return classes == null ? null : new HashSet<Class<?>>(classes);
+    } finally {
+      thread.setContextClassLoader(contextClassLoader);
+    }
+  }
+
+  private void compile(File output, String path, String source) throws IOException {
+    File sourceFile = new File(folder.getRoot(), path);
+    write(sourceFile, source);
+
+    JavaCompiler compiler = ToolProvider.getSystemJavaCompiler();
+    StandardJavaFileManager fileManager = compiler.getStandardFileManager(null, null, null);
+    try {
+      // the TypeIndexProcessor service is on the classpath, the indexes are written by the tests
+      assertTrue(compiler.getTask(null, fileManager, null,
+          Arrays.asList("-d", output.getAbsolutePath(), "-proc:none"), null,
+          fileManager.getJavaFileObjects(sourceFile)).call());
+    } finally {
+      fileManager.close();
+    }
+  }
+
+  private static void writeIndex(File root, String content) throws IOException {
+    write(new File(root, TypeIndex.RESOURCE), content);
+  }
+
+  private static void write(File file, String content) throws IOException {
+    file.getParentFile().mkdirs();
+    Writer writer = new OutputStreamWriter(new FileOutputStream(file), "UTF-8");
+    try {
+      writer.write(content);
+    } finally {
+      writer.close();
+    }
+  }
+
+}
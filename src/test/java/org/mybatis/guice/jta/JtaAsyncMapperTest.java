@@ -0,0 +1,115 @@
+/**
+ *    Copyright 2009-2017 the original author or authors.
+ *
+ *    Licensed under the Apache License, Version 2.0 (the "License");
+ *    you may not use this file except in compliance with the License.
+ *    You may obtain a copy of the License at
+ *
+ *       http://www.apache.org/licenses/LICENSE-2.0
+ *
+ *    Unless required by applicable law or agreed to in writing, software
+ *    distributed under the License is distributed on an "AS IS" BASIS,
+ *    WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ *    See the License for the specific language governing permissions and
+ *    limitations under the License.
+ */
+package org.mybatis.guice.jta;
+
+import static org.junit.Assert.assertEquals;
+
+import com.google.common.util.concurrent.ListenableFuture;
+import com.google.inject.Guice;
+import com.google.inject.Injector;
+
+import java.util.concurrent.Callable;
+
+import javax.sql.DataSource;
+import javax.transaction.Status;
+
+import org.apache.aries.transaction.AriesTransactionManager;
+import org.apache.aries.transaction.internal.AriesTransactionManagerImpl;
+import org.apache.ibatis.logging.LogFactory;
+import org.junit.After;
+import org.junit.AfterClass;
+import org.junit.Before;
+import org.junit.BeforeClass;
+import org.junit.Test;
+import org.mybatis.guice.MyBatisJtaModule;
+import org.mybatis.guice.async.AsyncMapper;
+import org.mybatis.guice.async.AsyncMapperExecutor;
+import org.mybatis.guice.transactional.Transactional;
+
+public class JtaAsyncMapperTest {
+  private static final String NAME_DB = "target/db4";
+  private static final String URL_DB = "jdbc:derby:" + NAME_DB;
+
+  static AriesTransactionManager manager;
+  static DataSource dataSource;
+
+  private Injector injector;
+
+  @BeforeClass
+  public static void setUpBeforeClass() throws Exception {
+    LogFactory.useSlf4jLogging();
+
+    manager = new AriesTransactionManagerImpl();
+    dataSource = BaseDB.createXADataSource(NAME_DB, URL_DB, manager);
+  }
+
+  @AfterClass
+  public static void tearDownAfterClass() throws Exception {
+    BaseDB.dropTable(URL_DB);
+  }
+
+  @Before
+  public void setup() {
+    injector = Guice.createInjector(new MyBatisJtaModule(manager) {
+
+      @Override
+      protected void initialize() {
+        environmentId("db4");
+        bindDataSourceProvider(new ProviderImpl<DataSource>(dataSource));
+        bindDefaultTransactionProvider();
+
+        addAsyncMapperClass(JtaMapperAsync.class);
+      }
+    });
+  }
+
+  @After
+  public void tearDown() throws Exception {
+    injector.getInstance(AsyncMapperExecutor.class).shutdown();
+    BaseDB.clearTable(URL_DB);
+  }
+
+  @Test
+  public void transactionalTasksRunInJtaTransaction() throws Exception {
+    ListenableFuture<Integer> status = injector.getInstance(AsyncMapperExecutor.class)
+        .submitTransactional(new Callable<Integer>() {
+          @Override
+          public Integer call() throws Exception {
+            return manager.getStatus();
+          }
+        });
+
+    assertEquals(Integer.valueOf(Status.STATUS_ACTIVE), status.get());
+  }
+
+  @Test
+  public void transactionalCallsCommitJtaTransaction() throws Exception {
+    TableRow row = new TableRow();
+    row.setId(1);
+    row.setName("name 1");
+
+    assertEquals(Integer.valueOf(1), injector.getInstance(JtaMapperAsync.class).insertTable(row).get());
+    assertEquals(1, BaseDB.readRows(URL_DB, NAME_DB).size());
+  }
+
+  @AsyncMapper(JtaMapper.class)
+  public interface JtaMapperAsync {
+
+    @Transactional
+    ListenableFuture<Integer> insertTable(TableRow row);
+
+  }
+}
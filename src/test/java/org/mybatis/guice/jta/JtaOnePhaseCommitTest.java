@@ -0,0 +1,130 @@
+/**
+ *    Copyright 2009-2017 the original author or authors.
+ *
+ *    Licensed under the Apache License, Version 2.0 (the "License");
+ *    you may not use this file except in compliance with the License.
+ *    You may obtain a copy of the License at
+ *
+ *       http://www.apache.org/licenses/LICENSE-2.0
+ *
+ *    Unless required by applicable law or agreed to in writing, software
+ *    distributed under the License is distributed on an "AS IS" BASIS,
+ *    WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ *    See the License for the specific language governing permissions and
+ *    limitations under the License.
+ */
+package org.mybatis.guice.jta;
+
+import static org.junit.Assert.assertEquals;
+
+import java.util.ArrayList;
+import java.util.Collection;
+import java.util.List;
+
+import javax.sql.DataSource;
+import javax.transaction.xa.Xid;
+
+import org.apache.aries.transaction.AriesTransactionManager;
+import org.apache.aries.transaction.internal.AriesTransactionManagerImpl;
+import org.apache.geronimo.transaction.manager.Recovery;
+import org.apache.geronimo.transaction.manager.TransactionBranchInfo;
+import org.apache.geronimo.transaction.manager.TransactionLog;
+import org.apache.geronimo.transaction.manager.XidFactory;
+import org.apache.ibatis.logging.LogFactory;
+import org.junit.AfterClass;
+import org.junit.BeforeClass;
+import org.junit.Test;
+import org.mybatis.guice.MyBatisJtaModule;
+
+import com.google.inject.Guice;
+
+public class JtaOnePhaseCommitTest {
+  private static final String NAME_DB = "target/db3";
+  private static final String URL_DB = "jdbc:derby:" + NAME_DB;
+
+  static PreparedTransactionLog transactionLog;
+  static AriesTransactionManager manager;
+  static DataSource dataSource;
+
+  @BeforeClass
+  public static void setUpBeforeClass() throws Exception {
+    LogFactory.useSlf4jLogging();
+
+    transactionLog = new PreparedTransactionLog();
+    manager = new AriesTransactionManagerImpl(60, transactionLog);
+    dataSource = BaseDB.createXADataSource(NAME_DB, URL_DB, manager);
+  }
+
+  @AfterClass
+  public static void tearDownAfterClass() throws Exception {
+    BaseDB.dropTable(URL_DB);
+  }
+
+  @Test
+  public void singleDataSourceCommitsInOnePhase() throws Exception {
+    JtaService1Impl service = Guice.createInjector(new MyBatisJtaModule(manager) {
+
+      @Override
+      protected void initialize() {
+        environmentId("db3");
+        bindDataSourceProvider(new ProviderImpl<DataSource>(dataSource));
+        bindDefaultTransactionProvider();
+
+        addMapperClass(JtaMapper.class);
+      }
+    }).getInstance(JtaService1Impl.class);
+
+    TableRow row = new TableRow();
+    row.setId(1);
+    row.setName("name 1");
+    service.insertTable(row);
+
+    assertEquals(0, transactionLog.prepared.size());
+    assertEquals(1, BaseDB.readRows(URL_DB, NAME_DB).size());
+  }
+
+  /**
+   * A transaction log recording the two-phase commits, a one-phase commit is not logged.
+   */
+  static class PreparedTransactionLog implements TransactionLog {
+    final List<Xid> prepared = new ArrayList<Xid>();
+
+    @Override
+    public void begin(Xid xid) {
+    }
+
+    @Override
+    public Object prepare(Xid xid, List<? extends TransactionBranchInfo> branches) {
+      prepared.add(xid);
+      return xid;
+    }
+
+    @Override
+    public void commit(Xid xid, Object logMark) {
+    }
+
+    @Override
+    public void rollback(Xid xid, Object logMark) {
+    }
+
+    @Override
+    public Collection<Recovery.XidBranchesPair> recover(XidFactory xidFactory) {
+      return new ArrayList<Recovery.XidBranchesPair>();
+    }
+
+    @Override
+    public String getXMLStats() {
+      return null;
+    }
+
+    @Override
+    public int getAverageForceTime() {
+      return 0;
+    }
+
+    @Override
+    public int getAverageBytesPerForce() {
+      return 0;
+    }
+  }
+}
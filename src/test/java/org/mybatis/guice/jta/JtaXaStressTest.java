@@ -0,0 +1,194 @@
+/**
+ *    Copyright 2009-2017 the original author or authors.
+ *
+ *    Licensed under the Apache License, Version 2.0 (the "License");
+ *    you may not use this file except in compliance with the License.
+ *    You may obtain a copy of the License at
+ *
+ *       http://www.apache.org/licenses/LICENSE-2.0
+ *
+ *    Unless required by applicable law or agreed to in writing, software
+ *    distributed under the License is distributed on an "AS IS" BASIS,
+ *    WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ *    See the License for the specific language governing permissions and
+ *    limitations under the License.
+ */
+package org.mybatis.guice.jta;
+
+import static org.junit.Assert.assertEquals;
+
+import java.util.ArrayList;
+import java.util.List;
+import java.util.concurrent.Callable;
+import java.util.concurrent.ExecutorService;
+import java.util.concurrent.Executors;
+import java.util.concurrent.Future;
+
+import javax.sql.DataSource;
+
+import org.apache.aries.transaction.AriesTransactionManager;
+import org.apache.aries.transaction.internal.AriesTransactionManagerImpl;
+import org.apache.ibatis.logging.LogFactory;
+import org.apache.ibatis.mapping.VendorDatabaseIdProvider;
+import org.junit.After;
+import org.junit.AfterClass;
+import org.junit.Before;
+import org.junit.BeforeClass;
+import org.junit.Rule;
+import org.junit.Test;
+import org.junit.rules.TestName;
+import org.mybatis.guice.MyBatisJtaModule;
+import org.slf4j.Logger;
+import org.slf4j.LoggerFactory;
+
+import com.google.inject.Guice;
+import com.google.inject.Injector;
+import com.google.inject.PrivateModule;
+
+public class JtaXaStressTest {
+  private static final Logger LOGGER = LoggerFactory.getLogger(JtaXaStressTest.class);
+
+  static AriesTransactionManager manager;
+  static DataSource dataSource1;
+  static DataSource dataSource2;
+
+  @BeforeClass
+  public static void setUpBeforeClass() throws Exception {
+    Class.forName("org.apache.derby.jdbc.EmbeddedDriver").newInstance();
+
+    manager = new AriesTransactionManagerImpl();
+
+    dataSource1 = BaseDB.createXADataSource(BaseDB.NAME_DB1, BaseDB.URL_DB1, manager);
+    dataSource2 = BaseDB.createXADataSource(BaseDB.NAME_DB2, BaseDB.URL_DB2, manager);
+  }
+
+  @AfterClass
+  public static void tearDownAfterClass() throws Exception {
+    BaseDB.dropTable(BaseDB.URL_DB1);
+    BaseDB.dropTable(BaseDB.URL_DB2);
+  }
+
+  @Rule
+  public TestName testName = new TestName();
+  private Injector injector;
+
+  JtaProcess process;
+
+  @Before
+  public void setup() throws Exception {
+    LOGGER.info("********************************************************************************");
+    LOGGER.info("Testing: " + testName.getMethodName() + "(" + getClass().getName() + ")");
+    LOGGER.info("********************************************************************************");
+    LogFactory.useSlf4jLogging();
+
+    LOGGER.info("create injector");
+    injector = Guice.createInjector(new PrivateModule() {
+
+      @Override
+      protected void configure() {
+        install(new MyBatisJtaModule(manager) {
+
+          @Override
+          protected void initialize() {
+            environmentId("db1");
+            bindDataSourceProvider(new ProviderImpl<DataSource>(dataSource1));
+            bindDefaultTransactionProvider();
+            bindDatabaseIdProvider(new VendorDatabaseIdProvider());
+
+            addMapperClass(JtaMapper.class);
+
+            bind(JtaService1Impl.class);
+          }
+        });
+
+        expose(JtaService1Impl.class);
+      };
+    }, new PrivateModule() {
+
+      @Override
+      protected void configure() {
+        install(new MyBatisJtaModule(manager) {
+
+          @Override
+          protected void initialize() {
+            environmentId("db2");
+            bindDataSourceProvider(new ProviderImpl<DataSource>(dataSource2));
+            bindDefaultTransactionProvider();
+            bindDatabaseIdProvider(new VendorDatabaseIdProvider());
+
+            addMapperClass(JtaMapper.class);
+
+            bind(JtaService2Impl.class);
+            bind(JtaProcess.class);
+          }
+        });
+
+        expose(JtaService2Impl.class);
+        expose(JtaProcess.class);
+      };
+    });
+
+    injector.injectMembers(this);
+    process = injector.getInstance(JtaProcess.class);
+  }
+
+  @After
+  public void tearDown() throws Exception {
+    BaseDB.clearTable(BaseDB.URL_DB1);
+    BaseDB.clearTable(BaseDB.URL_DB2);
+
+    LOGGER.info("********************************************************************************");
+    LOGGER.info("Testing done: " + testName.getMethodName() + "(" + getClass().getName() + ")");
+    LOGGER.info("********************************************************************************");
+  }
+
+  private static final int TRANSACTIONS = 2000;
+
+  private static final int THREADS = 16;
+
+  /**
+   * runs TRANSACTIONS global transactions on THREADS threads, half REQUIRED and half REQUIRES_NEW
+   *   insert(id=i) to db1 and db2
+   *
+   * have TRANSACTIONS rows in each database
+   */
+  @Test
+  public void testConcurrentTransactions() throws Exception {
+    ExecutorService executor = Executors.newFixedThreadPool(THREADS);
+    try {
+      List<Future<Void>> futures = new ArrayList<Future<Void>>();
+      for (int i = 0; i < TRANSACTIONS; i++) {
+        final int offset = i;
+        futures.add(executor.submit(new Callable<Void>() {
+          @Override
+          public Void call() throws Exception {
+            if (offset % 2 == 0) {
+              process.required(offset);
+            } else {
+              process.requiresNew(offset);
+            }
+            return null;
+          }
+        }));
+      }
+      for (Future<Void> future : futures) {
+        future.get();
+      }
+    } finally {
+      executor.shutdownNow();
+    }
+
+    checkCountRows(TRANSACTIONS);
+  }
+
+  private void checkCountRows(int count) throws Exception {
+    String name = testName.getMethodName();
+    List<Integer> readRows = BaseDB.readRows(BaseDB.URL_DB1, BaseDB.NAME_DB1);
+    LOGGER.info("{} db1 check count rows {}:{}", new Object[] { name, count, readRows.size() });
+    assertEquals(name + " db1 count rows", count, readRows.size());
+
+    readRows = BaseDB.readRows(BaseDB.URL_DB2, BaseDB.NAME_DB2);
+    LOGGER.info("{} db2 check count rows {}:{}", new Object[] { name, count, readRows.size() });
+    assertEquals(name + " db2 count rows", count, readRows.size());
+  }
+}
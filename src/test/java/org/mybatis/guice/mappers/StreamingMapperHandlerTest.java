@@ -0,0 +1,233 @@
+/**
+ *    Copyright 2009-2017 the original author or authors.
+ *
+ *    Licensed under the Apache License, Version 2.0 (the "License");
+ *    you may not use this file except in compliance with the License.
+ *    You may obtain a copy of the License at
+ *
+ *       http://www.apache.org/licenses/LICENSE-2.0
+ *
+ *    Unless required by applicable law or agreed to in writing, software
+ *    distributed under the License is distributed on an "AS IS" BASIS,
+ *    WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ *    See the License for the specific language governing permissions and
+ *    limitations under the License.
+ */
+package org.mybatis.guice.mappers;
+
+import static org.junit.Assert.assertEquals;
+import static org.junit.Assert.assertFalse;
+import static org.junit.Assert.assertTrue;
+import static org.junit.Assert.fail;
+
+import java.lang.reflect.InvocationHandler;
+import java.lang.reflect.Method;
+import java.lang.reflect.Proxy;
+import java.util.ArrayList;
+import java.util.Arrays;
+import java.util.Iterator;
+import java.util.List;
+
+import org.apache.ibatis.annotations.Select;
+import org.apache.ibatis.cursor.Cursor;
+import org.apache.ibatis.session.Configuration;
+import org.apache.ibatis.session.SqlSession;
+import org.apache.ibatis.session.SqlSessionFactory;
+import org.apache.ibatis.session.SqlSessionManager;
+import org.junit.Before;
+import org.junit.Test;
+
+public class StreamingMapperHandlerTest {
+
+  private final List<String> events = new ArrayList<String>();
+
+  private Configuration configuration;
+
+  private SqlSessionManager sqlSessionManager;
+
+  private MapperProvider<StreamingMapper> mapperProvider;
+
+  @Before
+  public void setup() {
+    configuration = new Configuration();
+    configuration.addMapper(StreamingMapper.class);
+    sqlSessionManager = SqlSessionManager.newInstance(sqlSessionFactory());
+    mapperProvider = new MapperProvider<StreamingMapper>(StreamingMapper.class);
+    mapperProvider.setSqlSessionManager(sqlSessionManager);
+  }
+
+  @Test
+  public void closesSessionWithCursor() throws Exception {
+    Cursor<String> cursor = mapperProvider.get().selectAll();
+
+    assertEquals(Arrays.asList("open"), events);
+    assertTrue(cursor.isOpen());
+
+    cursor.close();
+    cursor.close();
+
+    assertFalse(cursor.isOpen());
+    assertEquals(Arrays.asList("open", "cursor closed", "session closed"), events);
+  }
+
+  @Test
+  public void closesSessionOnceConsumed() {
+    Cursor<String> cursor = mapperProvider.get().selectAll();
+
+    List<String> rows = new ArrayList<String>();
+    for (String row : cursor) {
+      rows.add(row);
+    }
+
+    assertEquals(Arrays.asList("a", "b"), rows);
+    assertEquals(Arrays.asList("open", "cursor closed", "session closed"), events);
+  }
+
+  @Test
+  public void closesSessionOnError() {
+    try {
+      mapperProvider.get().selectFailing();
+      fail("Expected IllegalStateException");
+    } catch (IllegalStateException e) {
+      assertEquals("test", e.getMessage());
+    }
+
+    assertEquals(Arrays.asList("open", "session closed"), events);
+  }
+
+  @Test
+  public void usesManagedSessionWhenStarted() {
+    sqlSessionManager.startManagedSession();
+    try {
+      mapperProvider.get().selectAll();
+    } finally {
+      sqlSessionManager.close();
+    }
+
+    // the managed session is the only one opened
+    assertEquals(Arrays.asList("open", "session closed"), events);
+  }
+
+  @Test
+  public void doesNotProxyOtherMappers() {
+    assertFalse(StreamingMapperHandler.isStreaming(Runnable.class));
+    assertTrue(StreamingMapperHandler.isStreaming(StreamingMapper.class));
+  }
+
+  private SqlSessionFactory sqlSessionFactory() {
+    return (SqlSessionFactory) Proxy.newProxyInstance(getClass().getClassLoader(),
+        new Class<?>[] { SqlSessionFactory.class }, new InvocationHandler() {
+          @Override
+          public Object invoke(Object proxy, Method method, Object[] args) throws Throwable {
+            if ("getConfiguration".equals(method.getName())) {
+              return configuration;
+            }
+            events.add("open");
+            return sqlSession();
+          }
+        });
+  }
+
+  private SqlSession sqlSession() {
+    return (SqlSession) Proxy.newProxyInstance(getClass().getClassLoader(), new Class<?>[] { SqlSession.class },
+        new InvocationHandler() {
+          @Override
+          public Object invoke(Object proxy, Method method, Object[] args) throws Throwable {
+            if ("close".equals(method.getName())) {
+              events.add("session closed");
+            } else if ("getMapper".equals(method.getName())) {
+              return mapper();
+            } else if ("selectCursor".equals(method.getName())) {
+              return new ListCursor(events, "a", "b");
+            }
+            return null;
+          }
+        });
+  }
+
+  private StreamingMapper mapper() {
+    return (StreamingMapper) Proxy.newProxyInstance(getClass().getClassLoader(),
+        new Class<?>[] { StreamingMapper.class }, new InvocationHandler() {
+          @Override
+          public Object invoke(Object proxy, Method method, Object[] args) throws Throwable {
+            if ("selectFailing".equals(method.getName())) {
+              throw new IllegalStateException("test");
+            }
+            return new ListCursor(events, "a", "b");
+          }
+        });
+  }
+
+  public interface StreamingMapper {
+
+    @Select("SELECT name FROM test")
+    Cursor<String> selectAll();
+
+    @Select("SELECT name FROM test")
+    Cursor<String> selectFailing();
+
+  }
+
+  private static final class ListCursor implements Cursor<String> {
+
+    private final List<String> events;
+
+    private final List<String> rows;
+
+    private boolean open = true;
+
+    private int index = -1;
+
+    ListCursor(List<String> events, String... rows) {
+      this.events = events;
+      this.rows = Arrays.asList(rows);
+    }
+
+    @Override
+    public boolean isOpen() {
+      return open;
+    }
+
+    @Override
+    public boolean isConsumed() {
+      return index == rows.size() - 1;
+    }
+
+    @Override
+    public int getCurrentIndex() {
+      return index;
+    }
+
+    @Override
+    public Iterator<String> iterator() {
+      return new Iterator<String>() {
+
+        @Override
+        public boolean hasNext() {
+          return index + 1 < rows.size();
+        }
+
+        @Override
+        public String next() {
+          return rows.get(++index);
+        }
+
+        @Override
+        public void remove() {
+          throw new UnsupportedOperationException();
+        }
+
+      };
+    }
+
+    @Override
+    public void close() {
+      if (open) {
+        open = false;
+        events.add("cursor closed");
+      }
+    }
+
+  }
+
+}
@@ -0,0 +1,67 @@
+/**
+ *    Copyright 2009-2017 the original author or authors.
+ *
+ *    Licensed under the Apache License, Version 2.0 (the "License");
+ *    you may not use this file except in compliance with the License.
+ *    You may obtain a copy of the License at
+ *
+ *       http://www.apache.org/licenses/LICENSE-2.0
+ *
+ *    Unless required by applicable law or agreed to in writing, software
+ *    distributed under the License is distributed on an "AS IS" BASIS,
+ *    WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ *    See the License for the specific language governing permissions and
+ *    limitations under the License.
+ */
+package org.mybatis.guice.metrics;
+
+import static org.junit.Assert.assertEquals;
+import static org.junit.Assert.assertTrue;
+
+import org.junit.Test;
+
+public class LatencyHistogramTest {
+
+  @Test
+  public void bucketsCoverAllValues() {
+    long previousUpperBound = -1;
+    for (int i = 0; i <= LatencyHistogram.bucketIndex(Long.MAX_VALUE); i++) {
+      assertEquals(previousUpperBound + 1, LatencyHistogram.bucketLowerBound(i));
+      assertEquals(i, LatencyHistogram.bucketIndex(LatencyHistogram.bucketLowerBound(i)));
+      assertEquals(i, LatencyHistogram.bucketIndex(LatencyHistogram.bucketUpperBound(i)));
+      previousUpperBound = LatencyHistogram.bucketUpperBound(i);
+    }
+    assertEquals(Long.MAX_VALUE, previousUpperBound);
+  }
+
+  @Test
+  public void percentiles() {
+    LatencyHistogram histogram = new LatencyHistogram();
+    for (long i = 1; i <= 1000; i++) {
+      histogram.record(i * 1000);
+    }
+
+    HistogramSnapshot snapshot = histogram.getSnapshot();
+    assertEquals(1000, snapshot.getCount());
+    assertEquals(1000000, snapshot.getMax());
+    assertEquals(500500, snapshot.getMean(), 0);
+    assertWithinRelativeError(500000, snapshot.getValueAtPercentile(50));
+    assertWithinRelativeError(990000, snapshot.getValueAtPercentile(99));
+    assertEquals(1000000, snapshot.getValueAtPercentile(100));
+  }
+
+  @Test
+  public void reset() {
+    LatencyHistogram histogram = new LatencyHistogram();
+    histogram.record(10);
+    histogram.reset();
+
+    assertEquals(0, histogram.getSnapshot().getCount());
+    assertEquals(0, histogram.getSnapshot().getValueAtPercentile(50));
+  }
+
+  private static void assertWithinRelativeError(long expected, long actual) {
+    assertTrue("expected " + expected + " but was " + actual, Math.abs(actual - expected) <= expected / 16);
+  }
+
+}
@@ -0,0 +1,101 @@
+/**
+ *    Copyright 2009-2017 the original author or authors.
+ *
+ *    Licensed under the Apache License, Version 2.0 (the "License");
+ *    you may not use this file except in compliance with the License.
+ *    You may obtain a copy of the License at
+ *
+ *       http://www.apache.org/licenses/LICENSE-2.0
+ *
+ *    Unless required by applicable law or agreed to in writing, software
+ *    distributed under the License is distributed on an "AS IS" BASIS,
+ *    WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ *    See the License for the specific language governing permissions and
+ *    limitations under the License.
+ */
+package org.mybatis.guice.metrics;
+
+import static org.junit.Assert.assertEquals;
+import static org.junit.Assert.fail;
+
+import java.lang.reflect.InvocationHandler;
+import java.lang.reflect.InvocationTargetException;
+import java.lang.reflect.Method;
+import java.lang.reflect.Proxy;
+import java.sql.SQLException;
+import java.util.Arrays;
+
+import org.apache.ibatis.builder.StaticSqlSource;
+import org.apache.ibatis.executor.Executor;
+import org.apache.ibatis.mapping.MappedStatement;
+import org.apache.ibatis.mapping.SqlCommandType;
+import org.apache.ibatis.plugin.Invocation;
+import org.apache.ibatis.session.Configuration;
+import org.apache.ibatis.session.ResultHandler;
+import org.apache.ibatis.session.RowBounds;
+import org.junit.Before;
+import org.junit.Test;
+
+public class StatementMetricsInterceptorTest {
+
+  private StatementMetricsRegistry registry;
+
+  private StatementMetricsInterceptor interceptor;
+
+  private MappedStatement mappedStatement;
+
+  @Before
+  public void setup() {
+    registry = new StatementMetricsRegistry();
+    interceptor = new StatementMetricsInterceptor(registry);
+    Configuration configuration = new Configuration();
+    mappedStatement = new MappedStatement.Builder(configuration, "test.select",
+        new StaticSqlSource(configuration, "SELECT 1"), SqlCommandType.SELECT).build();
+  }
+
+  @Test
+  public void recordsQueries() throws Throwable {
+    Executor executor = executor(Arrays.asList(1, 2, 3));
+    Method query = Executor.class.getMethod("query", MappedStatement.class, Object.class, RowBounds.class,
+        ResultHandler.class);
+
+    interceptor.intercept(new Invocation(executor, query,
+        new Object[] { mappedStatement, null, RowBounds.DEFAULT, Executor.NO_RESULT_HANDLER }));
+
+    StatementMetrics metrics = registry.getMetrics("test.select");
+    assertEquals(1, metrics.getLatency().getSnapshot().getCount());
+    assertEquals(3, metrics.getRowCount());
+    assertEquals(0, metrics.getErrorCount());
+  }
+
+  @Test
+  public void recordsErrors() throws Throwable {
+    Executor executor = executor(new SQLException("test"));
+    Method update = Executor.class.getMethod("update", MappedStatement.class, Object.class);
+
+    try {
+      interceptor.intercept(new Invocation(executor, update, new Object[] { mappedStatement, null }));
+      fail();
+    } catch (InvocationTargetException e) {
+      assertEquals(SQLException.class, e.getCause().getClass());
+    }
+
+    StatementMetrics metrics = registry.getMetrics("test.select");
+    assertEquals(1, metrics.getLatency().getSnapshot().getCount());
+    assertEquals(1, metrics.getErrorCount());
+  }
+
+  private static Executor executor(final Object result) {
+    return (Executor) Proxy.newProxyInstance(Executor.class.getClassLoader(), new Class<?>[] { Executor.class },
+        new InvocationHandler() {
+          @Override
+          public Object invoke(Object proxy, Method method, Object[] args) throws Throwable {
+            if (result instanceof Throwable) {
+              throw (Throwable) result;
+            }
+            return result;
+          }
+        });
+  }
+
+}
@@ -0,0 +1,98 @@
+/**
+ *    Copyright 2009-2017 the original author or authors.
+ *
+ *    Licensed under the Apache License, Version 2.0 (the "License");
+ *    you may not use this file except in compliance with the License.
+ *    You may obtain a copy of the License at
+ *
+ *       http://www.apache.org/licenses/LICENSE-2.0
+ *
+ *    Unless required by applicable law or agreed to in writing, software
+ *    distributed under the License is distributed on an "AS IS" BASIS,
+ *    WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ *    See the License for the specific language governing permissions and
+ *    limitations under the License.
+ */
+package org.mybatis.guice.multidstest;
+
+import static org.junit.Assert.assertFalse;
+import static org.junit.Assert.assertTrue;
+
+import java.lang.reflect.InvocationHandler;
+import java.lang.reflect.Method;
+import java.lang.reflect.Proxy;
+
+import javax.inject.Inject;
+import javax.inject.Provider;
+import javax.sql.DataSource;
+
+import org.apache.ibatis.transaction.jdbc.JdbcTransactionFactory;
+import org.junit.Test;
+import org.mybatis.guice.MyBatisChainedTransactionModule;
+import org.mybatis.guice.MyBatisModule;
+import org.mybatis.guice.session.SqlSessionManagerRegistry;
+import org.mybatis.guice.transactional.ChainedTransactional;
+
+import com.google.inject.AbstractModule;
+import com.google.inject.Guice;
+import com.google.inject.Injector;
+import com.google.inject.PrivateModule;
+
+public class ChainedTransactionalTest {
+
+  @Test
+  public void testChainedTransactionSpansPrivateModules() {
+    Injector injector = Guice.createInjector(new MyBatisChainedTransactionModule(), schemaModule("schema1"),
+        schemaModule("schema2"), new AbstractModule() {
+          @Override
+          protected void configure() {
+            bind(ChainedService.class);
+          }
+        });
+
+    ChainedService chainedService = injector.getInstance(ChainedService.class);
+    assertTrue(chainedService.inTransaction());
+    assertFalse(chainedService.registry.get("schema1").isManagedSessionStarted());
+    assertFalse(chainedService.registry.get("schema2").isManagedSessionStarted());
+  }
+
+  private static PrivateModule schemaModule(final String environmentId) {
+    return new PrivateModule() {
+
+      @Override
+      protected void configure() {
+        install(new MyBatisModule() {
+
+          @Override
+          protected void initialize() {
+            environmentId(environmentId);
+            bindDataSourceProvider(new Provider<DataSource>() {
+              @Override
+              public DataSource get() {
+                return (DataSource) Proxy.newProxyInstance(getClass().getClassLoader(),
+                    new Class<?>[] { DataSource.class }, new InvocationHandler() {
+                      @Override
+                      public Object invoke(Object proxy, Method method, Object[] args) throws Throwable {
+                        throw new UnsupportedOperationException();
+                      }
+                    });
+              }
+            });
+            bindTransactionFactoryType(JdbcTransactionFactory.class);
+          }
+        });
+      }
+    };
+  }
+
+  public static class ChainedService {
+    @Inject
+    SqlSessionManagerRegistry registry;
+
+    @ChainedTransactional({ "schema1", "schema2" })
+    public boolean inTransaction() {
+      return registry.get("schema1").isManagedSessionStarted() && registry.get("schema2").isManagedSessionStarted();
+    }
+  }
+
+}
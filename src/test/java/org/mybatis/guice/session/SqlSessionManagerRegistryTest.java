@@ -0,0 +1,84 @@
+/**
+ *    Copyright 2009-2017 the original author or authors.
+ *
+ *    Licensed under the Apache License, Version 2.0 (the "License");
+ *    you may not use this file except in compliance with the License.
+ *    You may obtain a copy of the License at
+ *
+ *       http://www.apache.org/licenses/LICENSE-2.0
+ *
+ *    Unless required by applicable law or agreed to in writing, software
+ *    distributed under the License is distributed on an "AS IS" BASIS,
+ *    WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ *    See the License for the specific language governing permissions and
+ *    limitations under the License.
+ */
+package org.mybatis.guice.session;
+
+import static org.junit.Assert.assertSame;
+
+import java.lang.reflect.InvocationHandler;
+import java.lang.reflect.Method;
+import java.lang.reflect.Proxy;
+
+import javax.sql.DataSource;
+
+import org.apache.ibatis.mapping.Environment;
+import org.apache.ibatis.session.Configuration;
+import org.apache.ibatis.session.SqlSessionFactory;
+import org.apache.ibatis.session.SqlSessionManager;
+import org.apache.ibatis.transaction.jdbc.JdbcTransactionFactory;
+import org.junit.Test;
+
+public class SqlSessionManagerRegistryTest {
+
+  private final SqlSessionManagerRegistry registry = new SqlSessionManagerRegistry();
+
+  @Test
+  public void findsManagerByEnvironment() {
+    SqlSessionManager db1 = sqlSessionManager("db1");
+    SqlSessionManager db2 = sqlSessionManager("db2");
+    registry.register(db1);
+    registry.register(db2);
+    registry.register(db1);
+
+    assertSame(db1, registry.get("db1"));
+    assertSame(db2, registry.get("db2"));
+  }
+
+  @Test(expected = IllegalArgumentException.class)
+  public void rejectsUnknownEnvironment() {
+    registry.register(sqlSessionManager("db1"));
+
+    registry.get("db2");
+  }
+
+  @Test(expected = IllegalArgumentException.class)
+  public void rejectsAmbiguousEnvironment() {
+    registry.register(sqlSessionManager("db1"));
+    registry.register(sqlSessionManager("db1"));
+
+    registry.get("db1");
+  }
+
+  private static SqlSessionManager sqlSessionManager(String environmentId) {
+    DataSource dataSource = (DataSource) Proxy.newProxyInstance(SqlSessionManagerRegistryTest.class.getClassLoader(),
+        new Class<?>[] { DataSource.class }, new InvocationHandler() {
+          @Override
+          public Object invoke(Object proxy, Method method, Object[] args) throws Throwable {
+            return null;
+          }
+        });
+    final Configuration configuration = new Configuration(
+        new Environment(environmentId, new JdbcTransactionFactory(), dataSource));
+    return SqlSessionManager.newInstance((SqlSessionFactory) Proxy.newProxyInstance(
+        SqlSessionManagerRegistryTest.class.getClassLoader(), new Class<?>[] { SqlSessionFactory.class },
+        new InvocationHandler() {
+          @Override
+          public Object invoke(Object proxy, Method method, Object[] args) throws Throwable {
+            return configuration;
+          }
+        }));
+  }
+
+}
@@ -0,0 +1,177 @@
+/**
+ *    Copyright 2009-2017 the original author or authors.
+ *
+ *    Licensed under the Apache License, Version 2.0 (the "License");
+ *    you may not use this file except in compliance with the License.
+ *    You may obtain a copy of the License at
+ *
+ *       http://www.apache.org/licenses/LICENSE-2.0
+ *
+ *    Unless required by applicable law or agreed to in writing, software
+ *    distributed under the License is distributed on an "AS IS" BASIS,
+ *    WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ *    See the License for the specific language governing permissions and
+ *    limitations under the License.
+ */
+package org.mybatis.guice.session;
+
+import static org.junit.Assert.assertEquals;
+import static org.junit.Assert.assertFalse;
+import static org.junit.Assert.assertNull;
+import static org.junit.Assert.assertSame;
+import static org.junit.Assert.assertTrue;
+import static org.junit.Assert.fail;
+
+import java.lang.reflect.InvocationHandler;
+import java.lang.reflect.Method;
+import java.lang.reflect.Proxy;
+import java.util.ArrayList;
+import java.util.List;
+
+import org.apache.ibatis.session.Configuration;
+import org.apache.ibatis.session.SqlSession;
+import org.apache.ibatis.session.SqlSessionException;
+import org.apache.ibatis.session.SqlSessionFactory;
+import org.apache.ibatis.session.SqlSessionManager;
+import org.junit.After;
+import org.junit.Before;
+import org.junit.Test;
+
+public class SuspendableSqlSessionFactoryTest {
+
+  private final List<String> calls = new ArrayList<String>();
+
+  private SuspendableSqlSessionFactory sqlSessionFactory;
+
+  private SqlSessionManager sqlSessionManager;
+
+  @Before
+  public void setup() {
+    sqlSessionFactory = new SuspendableSqlSessionFactory(sqlSessionFactory());
+    sqlSessionManager = SqlSessionManager.newInstance(sqlSessionFactory);
+  }
+
+  @After
+  public void teardown() {
+    if (sqlSessionManager.isManagedSessionStarted()) {
+      sqlSessionManager.close();
+    }
+  }
+
+  @Test
+  public void suspendsAndResumesManagedSession() {
+    sqlSessionManager.startManagedSession();
+    SqlSession suspended = sqlSessionFactory.suspend(sqlSessionManager);
+
+    assertFalse(sqlSessionManager.isManagedSessionStarted());
+    assertFalse(calls.contains("close"));
+
+    sqlSessionManager.startManagedSession();
+    sqlSessionManager.commit();
+    sqlSessionManager.close();
+    assertEquals(2, calls.size());
+
+    sqlSessionFactory.resume(sqlSessionManager, suspended);
+    assertTrue(sqlSessionManager.isManagedSessionStarted());
+    sqlSessionManager.rollback();
+    sqlSessionManager.close();
+
+    assertEquals(4, calls.size());
+    assertEquals("rollback", calls.get(2));
+    assertEquals("close", calls.get(3));
+  }
+
+  @Test
+  public void suspendsNothingWithoutManagedSession() {
+    assertNull(sqlSessionFactory.suspend(sqlSessionManager));
+
+    sqlSessionFactory.resume(sqlSessionManager, null);
+    assertFalse(sqlSessionManager.isManagedSessionStarted());
+  }
+
+  @Test
+  public void closesSessionsNotSuspended() {
+    SqlSession sqlSession = sqlSessionFactory.openSession();
+    sqlSession.close();
+
+    assertEquals(1, calls.size());
+    assertEquals("close", calls.get(0));
+  }
+
+  @Test
+  public void resumeRequiresNoManagedSession() {
+    sqlSessionManager.startManagedSession();
+    SqlSession suspended = sqlSessionFactory.suspend(sqlSessionManager);
+    sqlSessionManager.startManagedSession();
+
+    try {
+      sqlSessionFactory.resume(sqlSessionManager, suspended);
+      fail("Expected SqlSessionException");
+    } catch (SqlSessionException e) {
+      assertTrue(sqlSessionManager.isManagedSessionStarted());
+    }
+    suspended.close();
+  }
+
+  @Test
+  public void suspendRequiresManagerOnFactory() {
+    SqlSessionManager other = SqlSessionManager.newInstance(sqlSessionFactory());
+    other.startManagedSession();
+
+    try {
+      sqlSessionFactory.suspend(other);
+      fail("Expected SqlSessionException");
+    } catch (SqlSessionException e) {
+      assertFalse(other.isManagedSessionStarted());
+    }
+  }
+
+  @Test
+  public void suspendsManagersOfAnySuspendableFactory() {
+    SqlSessionManager other = SqlSessionManager.newInstance(new SuspendableSqlSessionFactory(sqlSessionFactory()));
+    other.startManagedSession();
+
+    SqlSession suspended = SuspendableSqlSessionFactory.suspendManagedSession(other);
+    assertFalse(other.isManagedSessionStarted());
+    assertFalse(calls.contains("close"));
+
+    SuspendableSqlSessionFactory.resumeManagedSession(other, suspended);
+    assertTrue(other.isManagedSessionStarted());
+    other.close();
+  }
+
+  @Test
+  public void resumedSessionIsOpenedOnce() {
+    sqlSessionManager.startManagedSession();
+    SqlSession suspended = sqlSessionFactory.suspend(sqlSessionManager);
+    sqlSessionFactory.resume(sqlSessionManager, suspended);
+
+    assertSame(suspended.getConfiguration(), sqlSessionFactory.getConfiguration());
+    assertTrue(sqlSessionFactory.openSession() != suspended);
+  }
+
+  private SqlSessionFactory sqlSessionFactory() {
+    final Configuration configuration = new Configuration();
+    return (SqlSessionFactory) Proxy.newProxyInstance(getClass().getClassLoader(),
+        new Class<?>[] { SqlSessionFactory.class }, new InvocationHandler() {
+          @Override
+          public Object invoke(Object proxy, Method method, Object[] args) throws Throwable {
+            if ("getConfiguration".equals(method.getName())) {
+              return configuration;
+            }
+            return Proxy.newProxyInstance(getClass().getClassLoader(), new Class<?>[] { SqlSession.class },
+                new InvocationHandler() {
+                  @Override
+                  public Object invoke(Object proxy, Method method, Object[] args) throws Throwable {
+                    if ("getConfiguration".equals(method.getName())) {
+                      return configuration;
+                    }
+                    calls.add(method.getName());
+                    return null;
+                  }
+                });
+          }
+        });
+  }
+
+}
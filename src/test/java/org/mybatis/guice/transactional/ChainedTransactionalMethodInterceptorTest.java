@@ -0,0 +1,233 @@
+/**
+ *    Copyright 2009-2017 the original author or authors.
+ *
+ *    Licensed under the Apache License, Version 2.0 (the "License");
+ *    you may not use this file except in compliance with the License.
+ *    You may obtain a copy of the License at
+ *
+ *       http://www.apache.org/licenses/LICENSE-2.0
+ *
+ *    Unless required by applicable law or agreed to in writing, software
+ *    distributed under the License is distributed on an "AS IS" BASIS,
+ *    WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ *    See the License for the specific language governing permissions and
+ *    limitations under the License.
+ */
+package org.mybatis.guice.transactional;
+
+import static org.junit.Assert.assertEquals;
+import static org.junit.Assert.assertFalse;
+import static org.junit.Assert.assertNull;
+import static org.junit.Assert.assertSame;
+import static org.junit.Assert.assertTrue;
+import static org.junit.Assert.fail;
+
+import java.io.IOException;
+import java.lang.reflect.AccessibleObject;
+import java.lang.reflect.InvocationHandler;
+import java.lang.reflect.Method;
+import java.lang.reflect.Proxy;
+import java.util.ArrayList;
+import java.util.Arrays;
+import java.util.List;
+import java.util.concurrent.Callable;
+
+import javax.sql.DataSource;
+
+import org.aopalliance.intercept.MethodInvocation;
+import org.apache.ibatis.mapping.Environment;
+import org.apache.ibatis.session.Configuration;
+import org.apache.ibatis.session.SqlSession;
+import org.apache.ibatis.session.SqlSessionFactory;
+import org.apache.ibatis.session.SqlSessionManager;
+import org.apache.ibatis.transaction.jdbc.JdbcTransactionFactory;
+import org.junit.Before;
+import org.junit.Test;
+import org.mybatis.guice.session.SqlSessionManagerRegistry;
+
+public class ChainedTransactionalMethodInterceptorTest {
+
+  private final List<String> calls = new ArrayList<String>();
+
+  private String failingCommit;
+
+  private SqlSessionManager db1;
+
+  private SqlSessionManager db2;
+
+  private SqlSessionManager db3;
+
+  private ChainedTransactionalMethodInterceptor interceptor;
+
+  @Before
+  public void setup() {
+    db1 = SqlSessionManager.newInstance(sqlSessionFactory("db1"));
+    db2 = SqlSessionManager.newInstance(sqlSessionFactory("db2"));
+    db3 = SqlSessionManager.newInstance(sqlSessionFactory("db3"));
+    SqlSessionManagerRegistry registry = new SqlSessionManagerRegistry();
+    registry.register(db1);
+    registry.register(db2);
+    registry.register(db3);
+    interceptor = new ChainedTransactionalMethodInterceptor();
+    interceptor.setRegistry(registry);
+  }
+
+  @Test
+  public void commitsInReverseOrder() throws Throwable {
+    Object result = interceptor.invoke(invocation("chained", new Callable<Object>() {
+      @Override
+      public Object call() {
+        assertTrue(db1.isManagedSessionStarted() && db2.isManagedSessionStarted() && db3.isManagedSessionStarted());
+        return "done";
+      }
+    }));
+
+    assertEquals("done", result);
+    assertEquals(Arrays.asList("db3.commit", "db2.commit", "db1.commit", "db3.close", "db2.close", "db1.close"),
+        calls);
+    assertFalse(db1.isManagedSessionStarted() || db2.isManagedSessionStarted() || db3.isManagedSessionStarted());
+  }
+
+  @Test
+  public void rollsBackOnFailure() throws Throwable {
+    try {
+      interceptor.invoke(invocation("chained", new Callable<Object>() {
+        @Override
+        public Object call() throws Exception {
+          throw new IOException();
+        }
+      }));
+      fail("Expected IOException");
+    } catch (IOException e) {
+      assertEquals(Arrays.asList("db3.rollback", "db2.rollback", "db1.rollback", "db3.close", "db2.close",
+          "db1.close"), calls);
+    }
+  }
+
+  @Test
+  public void reportsPartialCommit() throws Throwable {
+    final List<Object> reported = new ArrayList<Object>();
+    interceptor.setPartialCommitHandler(new PartialCommitHandler() {
+      @Override
+      public void onPartialCommit(Method method, List<String> committed, List<String> rolledBack, Throwable cause) {
+        reported.add(method.getName());
+        reported.add(committed);
+        reported.add(rolledBack);
+      }
+    });
+    failingCommit = "db2";
+
+    try {
+      interceptor.invoke(invocation("chained", null));
+      fail("Expected IllegalStateException");
+    } catch (IllegalStateException e) {
+      assertEquals(Arrays.asList("db3.commit", "db2.commit", "db2.rollback", "db1.rollback", "db3.close",
+          "db2.close", "db1.close"), calls);
+      assertEquals(Arrays.asList("chained", Arrays.asList("db3"), Arrays.asList("db2", "db1")), reported);
+    }
+  }
+
+  @Test
+  public void failedFirstCommitIsNotPartial() throws Throwable {
+    interceptor.setPartialCommitHandler(new PartialCommitHandler() {
+      @Override
+      public void onPartialCommit(Method method, List<String> committed, List<String> rolledBack, Throwable cause) {
+        fail("Nothing was committed");
+      }
+    });
+    failingCommit = "db3";
+
+    try {
+      interceptor.invoke(invocation("chained", null));
+      fail("Expected IllegalStateException");
+    } catch (IllegalStateException e) {
+      assertTrue(calls.contains("db1.rollback"));
+    }
+  }
+
+  @Test
+  public void inheritsStartedSessions() throws Throwable {
+    db2.startManagedSession();
+    SqlSession inherited = LocalSqlSessions.getInstance().get(db2);
+
+    interceptor.invoke(invocation("chained", null));
+
+    assertEquals(Arrays.asList("db3.commit", "db1.commit", "db3.close", "db1.close"), calls);
+    assertSame(inherited, LocalSqlSessions.getInstance().get(db2));
+    db2.close();
+  }
+
+  @Test
+  public void resolvesClassAnnotation() throws Throwable {
+    interceptor.invoke(invocation("rollbackOnly", null));
+
+    assertEquals(Arrays.asList("db1.rollback", "db1.close"), calls);
+    assertNull(LocalSqlSessions.getInstance().get(db1));
+  }
+
+  private static MethodInvocation invocation(String methodName, final Callable<Object> body) throws Exception {
+    final Method method = ChainedService.class.getMethod(methodName);
+    return (MethodInvocation) Proxy.newProxyInstance(ChainedTransactionalMethodInterceptorTest.class.getClassLoader(),
+        new Class<?>[] { MethodInvocation.class }, new InvocationHandler() {
+          @Override
+          public Object invoke(Object proxy, Method invoked, Object[] args) throws Throwable {
+            if ("getMethod".equals(invoked.getName())) {
+              return method;
+            }
+            if ("getArguments".equals(invoked.getName())) {
+              return new Object[0];
+            }
+            if ("getStaticPart".equals(invoked.getName())) {
+              return (AccessibleObject) method;
+            }
+            if ("proceed".equals(invoked.getName()) && body != null) {
+              return body.call();
+            }
+            return null;
+          }
+        });
+  }
+
+  private SqlSessionFactory sqlSessionFactory(final String environmentId) {
+    DataSource dataSource = (DataSource) Proxy.newProxyInstance(getClass().getClassLoader(),
+        new Class<?>[] { DataSource.class }, new InvocationHandler() {
+          @Override
+          public Object invoke(Object proxy, Method method, Object[] args) throws Throwable {
+            return null;
+          }
+        });
+    final Configuration configuration = new Configuration(
+        new Environment(environmentId, new JdbcTransactionFactory(), dataSource));
+    return (SqlSessionFactory) Proxy.newProxyInstance(getClass().getClassLoader(),
+        new Class<?>[] { SqlSessionFactory.class }, new InvocationHandler() {
+          @Override
+          public Object invoke(Object proxy, Method method, Object[] args) throws Throwable {
+            if ("getConfiguration".equals(method.getName())) {
+              return configuration;
+            }
+            return Proxy.newProxyInstance(getClass().getClassLoader(), new Class<?>[] { SqlSession.class },
+                new InvocationHandler() {
+                  @Override
+                  public Object invoke(Object proxy, Method method, Object[] args) throws Throwable {
+                    calls.add(environmentId + "." + method.getName());
+                    if ("commit".equals(method.getName()) && environmentId.equals(failingCommit)) {
+                      throw new IllegalStateException("commit failed");
+                    }
+                    return null;
+                  }
+                });
+          }
+        });
+  }
+
+  @ChainedTransactional(value = "db1", rollbackOnly = true)
+  private static class ChainedService {
+    @ChainedTransactional({ "db1", "db2", "db3" })
+    public void chained() {
+    }
+
+    public void rollbackOnly() {
+    }
+  }
+
+}
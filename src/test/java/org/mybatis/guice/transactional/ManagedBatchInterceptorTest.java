@@ -0,0 +1,300 @@
+/**
+ *    Copyright 2009-2017 the original author or authors.
+ *
+ *    Licensed under the Apache License, Version 2.0 (the "License");
+ *    you may not use this file except in compliance with the License.
+ *    You may obtain a copy of the License at
+ *
+ *       http://www.apache.org/licenses/LICENSE-2.0
+ *
+ *    Unless required by applicable law or agreed to in writing, software
+ *    distributed under the License is distributed on an "AS IS" BASIS,
+ *    WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ *    See the License for the specific language governing permissions and
+ *    limitations under the License.
+ */
+package org.mybatis.guice.transactional;
+
+import static org.junit.Assert.assertEquals;
+import static org.junit.Assert.assertNull;
+
+import java.lang.reflect.InvocationHandler;
+import java.lang.reflect.Method;
+import java.lang.reflect.Proxy;
+import java.sql.Statement;
+import java.util.ArrayList;
+import java.util.Arrays;
+import java.util.Collections;
+import java.util.HashMap;
+import java.util.List;
+import java.util.Map;
+
+import org.apache.ibatis.builder.StaticSqlSource;
+import org.apache.ibatis.executor.BatchExecutor;
+import org.apache.ibatis.executor.BatchResult;
+import org.apache.ibatis.executor.Executor;
+import org.apache.ibatis.executor.parameter.ParameterHandler;
+import org.apache.ibatis.executor.statement.StatementHandler;
+import org.apache.ibatis.mapping.BoundSql;
+import org.apache.ibatis.mapping.MappedStatement;
+import org.apache.ibatis.mapping.ParameterMapping;
+import org.apache.ibatis.mapping.SqlCommandType;
+import org.apache.ibatis.plugin.Invocation;
+import org.apache.ibatis.session.Configuration;
+import org.apache.ibatis.session.ResultHandler;
+import org.apache.ibatis.session.RowBounds;
+import org.junit.After;
+import org.junit.Before;
+import org.junit.Test;
+
+public class ManagedBatchInterceptorTest {
+
+  private final List<String> calls = new ArrayList<String>();
+
+  private final List<List<BatchResult>> flushes = new ArrayList<List<BatchResult>>();
+
+  private ManagedBatchInterceptor interceptor;
+
+  private Configuration configuration;
+
+  private MappedStatement insert;
+
+  private MappedStatement select;
+
+  @Before
+  public void setup() {
+    interceptor = new ManagedBatchInterceptor();
+    interceptor.setBatchResultListener(new BatchResultListener() {
+      @Override
+      public void onFlush(List<BatchResult> results, Method method) {
+        assertEquals(BatchedService.class, method.getDeclaringClass());
+        flushes.add(results);
+      }
+    });
+    configuration = new Configuration();
+    List<ParameterMapping> parameterMappings = new ArrayList<ParameterMapping>();
+    parameterMappings.add(new ParameterMapping.Builder(configuration, "name", String.class).build());
+    parameterMappings.add(new ParameterMapping.Builder(configuration, "data", byte[].class).build());
+    parameterMappings.add(new ParameterMapping.Builder(configuration, "id", Integer.class).build());
+    insert = new MappedStatement.Builder(configuration, "test.insert",
+        new StaticSqlSource(configuration, "INSERT INTO test VALUES (?, ?, ?)", parameterMappings),
+        SqlCommandType.INSERT).build();
+    select = new MappedStatement.Builder(configuration, "test.select",
+        new StaticSqlSource(configuration, "SELECT * FROM test"), SqlCommandType.SELECT).build();
+  }
+
+  @After
+  public void teardown() {
+    ManagedBatch.end();
+  }
+
+  @Test
+  public void flushesEveryBatchSize() throws Throwable {
+    begin("batched");
+    Executor executor = executor();
+
+    for (int i = 0; i < 5; i++) {
+      update(executor, parameter("abc"));
+    }
+
+    assertEquals(2, flushes.size());
+    assertEquals(insert, flushes.get(0).get(0).getMappedStatement());
+    assertEquals(2, count("flushStatements"));
+  }
+
+  @Test
+  public void flushesBeforeQueriesAndCommit() throws Throwable {
+    begin("batched");
+    Executor executor = executor();
+
+    update(executor, parameter("abc"));
+    query(executor);
+    query(executor);
+    update(executor, parameter("abc"));
+    invoke(executor, "commit", new Class<?>[] { boolean.class }, true);
+
+    assertEquals(2, flushes.size());
+    assertEquals(
+        Arrays.asList("update", "flushStatements", "query", "query", "update", "flushStatements", "commit"),
+        calls);
+  }
+
+  @Test
+  public void discardsRolledBackStatements() throws Throwable {
+    begin("batched");
+    Executor executor = executor();
+
+    update(executor, parameter("abc"));
+    invoke(executor, "rollback", new Class<?>[] { boolean.class }, true);
+    query(executor);
+
+    assertEquals(0, flushes.size());
+    assertEquals(0, count("flushStatements"));
+  }
+
+  @Test
+  public void reportsExplicitFlushes() throws Throwable {
+    begin("batched");
+    Executor executor = executor();
+
+    update(executor, parameter("abc"));
+    invoke(executor, "flushStatements", new Class<?>[0]);
+    query(executor);
+
+    assertEquals(1, flushes.size());
+    assertEquals(1, count("flushStatements"));
+  }
+
+  @Test
+  public void flushesEveryBatchBytes() throws Throwable {
+    begin("sized");
+    Executor executor = executor();
+
+    // 2 * 20 chars + 10 bytes + 8 bytes
+    update(executor, parameter("abcdefghijklmnopqrst"));
+    assertEquals(0, flushes.size());
+    update(executor, parameter("abcdefghijklmnopqrst"));
+    assertEquals(1, flushes.size());
+    assertNull(ManagedBatch.updating());
+  }
+
+  @Test
+  public void onlyDelegatesOutsideBatches() throws Throwable {
+    Executor executor = executor();
+
+    for (int i = 0; i < 5; i++) {
+      update(executor, parameter("abc"));
+    }
+    query(executor);
+    invoke(executor, "commit", new Class<?>[] { boolean.class }, true);
+
+    assertEquals(0, flushes.size());
+    assertEquals(0, count("flushStatements"));
+  }
+
+  @Test
+  public void ignoresOtherConfigurations() throws Throwable {
+    ManagedBatch.begin(new Configuration(), descriptor("batched"));
+    Executor executor = executor();
+
+    for (int i = 0; i < 5; i++) {
+      update(executor, parameter("abc"));
+    }
+
+    assertEquals(0, flushes.size());
+  }
+
+  @Test
+  public void estimatesParameterBytes() {
+    BoundSql boundSql = insert.getBoundSql(parameter("abcd"));
+
+    assertEquals(8 + 10 + 8, ManagedBatchInterceptor.estimateBytes(configuration, boundSql, parameter("abcd")));
+  }
+
+  @Test
+  public void estimatesSimpleParameterBytes() {
+    BoundSql boundSql = new BoundSql(configuration, "SELECT ?",
+        Collections.singletonList(new ParameterMapping.Builder(configuration, "value", String.class).build()),
+        "abcd");
+
+    assertEquals(8, ManagedBatchInterceptor.estimateBytes(configuration, boundSql, "abcd"));
+  }
+
+  private void begin(String methodName) throws Exception {
+    ManagedBatch.begin(configuration, descriptor(methodName));
+  }
+
+  private static TransactionalMethodDescriptor descriptor(String methodName) throws Exception {
+    return TransactionalMethodDescriptor.of(BatchedService.class.getMethod(methodName));
+  }
+
+  private static Map<String, Object> parameter(String name) {
+    Map<String, Object> parameter = new HashMap<String, Object>();
+    parameter.put("name", name);
+    parameter.put("data", new byte[10]);
+    parameter.put("id", 1);
+    return parameter;
+  }
+
+  private int count(String call) {
+    return Collections.frequency(calls, call);
+  }
+
+  private void update(Executor executor, Object parameter) throws Throwable {
+    invoke(executor, "update", new Class<?>[] { MappedStatement.class, Object.class }, insert, parameter);
+  }
+
+  private void query(Executor executor) throws Throwable {
+    invoke(executor, "query",
+        new Class<?>[] { MappedStatement.class, Object.class, RowBounds.class, ResultHandler.class }, select, null,
+        RowBounds.DEFAULT, Executor.NO_RESULT_HANDLER);
+  }
+
+  private Object invoke(Executor executor, String name, Class<?>[] parameterTypes, Object... args)
+      throws Throwable {
+    return interceptor.intercept(new Invocation(executor, Executor.class.getMethod(name, parameterTypes), args));
+  }
+
+  /**
+   * An executor recording its calls, which parameterizes a statement handler on update as the batch executor.
+   */
+  private Executor executor() {
+    return (Executor) Proxy.newProxyInstance(Executor.class.getClassLoader(), new Class<?>[] { Executor.class },
+        new InvocationHandler() {
+          @Override
+          public Object invoke(Object proxy, Method method, Object[] args) throws Throwable {
+            calls.add(method.getName());
+            if ("update".equals(method.getName())) {
+              interceptor.intercept(new Invocation(statementHandler((MappedStatement) args[0], args[1]),
+                  StatementHandler.class.getMethod("parameterize", Statement.class), new Object[] { null }));
+              return BatchExecutor.BATCH_UPDATE_RETURN_VALUE;
+            }
+            if ("flushStatements".equals(method.getName())) {
+              BatchResult result = new BatchResult(insert, "INSERT INTO test VALUES (?, ?, ?)");
+              result.setUpdateCounts(new int[] { 1 });
+              return Collections.singletonList(result);
+            }
+            if ("query".equals(method.getName())) {
+              return Collections.emptyList();
+            }
+            return null;
+          }
+        });
+  }
+
+  private static StatementHandler statementHandler(final MappedStatement mappedStatement, final Object parameter) {
+    final ParameterHandler parameterHandler = (ParameterHandler) Proxy.newProxyInstance(
+        ParameterHandler.class.getClassLoader(), new Class<?>[] { ParameterHandler.class }, new InvocationHandler() {
+          @Override
+          public Object invoke(Object proxy, Method method, Object[] args) throws Throwable {
+            return "getParameterObject".equals(method.getName()) ? parameter : null;
+          }
+        });
+    return (StatementHandler) Proxy.newProxyInstance(StatementHandler.class.getClassLoader(),
+        new Class<?>[] { StatementHandler.class }, new InvocationHandler() {
+          @Override
+          public Object invoke(Object proxy, Method method, Object[] args) throws Throwable {
+            if ("getBoundSql".equals(method.getName())) {
+              return mappedStatement.getBoundSql(parameter);
+            }
+            if ("getParameterHandler".equals(method.getName())) {
+              return parameterHandler;
+            }
+            return null;
+          }
+        });
+  }
+
+  private static class BatchedService {
+
+    @Transactional(batchSize = 2)
+    public void batched() {
+    }
+
+    @Transactional(batchBytes = 100)
+    public void sized() {
+    }
+
+  }
+
+}
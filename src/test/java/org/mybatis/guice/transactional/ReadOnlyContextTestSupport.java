@@ -0,0 +1,40 @@
+/**
+ *    Copyright 2009-2017 the original author or authors.
+ *
+ *    Licensed under the Apache License, Version 2.0 (the "License");
+ *    you may not use this file except in compliance with the License.
+ *    You may obtain a copy of the License at
+ *
+ *       http://www.apache.org/licenses/LICENSE-2.0
+ *
+ *    Unless required by applicable law or agreed to in writing, software
+ *    distributed under the License is distributed on an "AS IS" BASIS,
+ *    WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ *    See the License for the specific language governing permissions and
+ *    limitations under the License.
+ */
+package org.mybatis.guice.transactional;
+
+import java.util.concurrent.Callable;
+
+import javax.sql.DataSource;
+
+/**
+ * Runs code as if inside a {@link Transactional#readOnly()} transaction, for the tests of other packages.
+ */
+public final class ReadOnlyContextTestSupport {
+
+  private ReadOnlyContextTestSupport() {
+    // do nothing
+  }
+
+  public static <T> T callReadOnly(DataSource dataSource, Callable<T> callable) throws Exception {
+    Boolean previous = ReadOnlyContext.begin(dataSource, true);
+    try {
+      return callable.call();
+    } finally {
+      ReadOnlyContext.end(dataSource, previous);
+    }
+  }
+
+}
@@ -0,0 +1,136 @@
+/**
+ *    Copyright 2009-2017 the original author or authors.
+ *
+ *    Licensed under the Apache License, Version 2.0 (the "License");
+ *    you may not use this file except in compliance with the License.
+ *    You may obtain a copy of the License at
+ *
+ *       http://www.apache.org/licenses/LICENSE-2.0
+ *
+ *    Unless required by applicable law or agreed to in writing, software
+ *    distributed under the License is distributed on an "AS IS" BASIS,
+ *    WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ *    See the License for the specific language governing permissions and
+ *    limitations under the License.
+ */
+package org.mybatis.guice.transactional;
+
+import static org.junit.Assert.assertEquals;
+import static org.junit.Assert.assertFalse;
+import static org.junit.Assert.assertNull;
+import static org.junit.Assert.assertTrue;
+
+import java.sql.BatchUpdateException;
+import java.sql.SQLException;
+
+import javax.transaction.xa.XAException;
+
+import org.apache.ibatis.exceptions.PersistenceException;
+import org.junit.Test;
+
+public class RetryPolicyTest {
+
+  @Test
+  public void attemptsOnceByDefault() throws Exception {
+    assertNull(policy("defaults"));
+  }
+
+  @Test
+  public void retriesDefaultSqlStates() throws Exception {
+    RetryPolicy policy = policy("retried");
+
+    assertTrue(policy.isRetryable(new PersistenceException(new SQLException("serialization", "40001"))));
+    assertTrue(policy.isRetryable(new RuntimeException(new SQLException("deadlock", "40P01"))));
+    assertFalse(policy.isRetryable(new PersistenceException(new SQLException("constraint", "23505"))));
+    assertFalse(policy.isRetryable(new PersistenceException(new SQLException("no state"))));
+    assertFalse(policy.isRetryable(new IllegalStateException()));
+  }
+
+  @Test
+  public void retriesChainedExceptions() throws Exception {
+    BatchUpdateException batchFailure = new BatchUpdateException("batch", "XX000", new int[0]);
+    batchFailure.setNextException(new SQLException("deadlock", "40P01"));
+
+    assertTrue(policy("retried").isRetryable(new PersistenceException(batchFailure)));
+  }
+
+  @Test
+  public void retriesDeadlockedXaBranch() throws Exception {
+    assertTrue(policy("retried").isRetryable(new XAException(XAException.XA_RBDEADLOCK)));
+    assertFalse(policy("retried").isRetryable(new XAException(XAException.XAER_RMERR)));
+  }
+
+  @Test
+  public void retriesCustomStatesAndErrorCodes() throws Exception {
+    RetryPolicy policy = policy("custom");
+
+    assertTrue(policy.isRetryable(new SQLException("rollback", "40002")));
+    assertTrue(policy.isRetryable(new SQLException("ORA-00060", "61000", 60)));
+    assertFalse(policy.isRetryable(new SQLException("ORA-00001", "23000", 1)));
+  }
+
+  @Test
+  public void stopsAfterMaxAttempts() throws Exception {
+    RetryPolicy policy = policy("retried");
+    SQLException deadlock = new SQLException("deadlock", "40001");
+
+    assertTrue(policy.canRetry(deadlock, 1));
+    assertTrue(policy.canRetry(deadlock, 2));
+    assertFalse(policy.canRetry(deadlock, 3));
+  }
+
+  @Test
+  public void backsOffExponentiallyWithJitter() throws Exception {
+    RetryPolicy policy = policy("custom");
+
+    for (int i = 0; i < 100; i++) {
+      assertBetween(50, 100, policy.backoff(1));
+      assertBetween(100, 200, policy.backoff(2));
+      assertBetween(150, 300, policy.backoff(3));
+      assertBetween(150, 300, policy.backoff(40));
+    }
+  }
+
+  @Test
+  public void doesNotWaitWhenInterrupted() throws Exception {
+    Thread.currentThread().interrupt();
+    try {
+      assertFalse(policy("custom").await(1));
+      assertTrue(Thread.currentThread().isInterrupted());
+    } finally {
+      Thread.interrupted();
+    }
+  }
+
+  @Test
+  public void resolvedByDescriptor() throws Exception {
+    assertEquals(3, TransactionalMethodDescriptor.of(Annotated.class.getMethod("retried")).getRetryPolicy()
+        .getMaxAttempts());
+    assertNull(TransactionalMethodDescriptor.of(Annotated.class.getMethod("defaults")).getRetryPolicy());
+  }
+
+  private static void assertBetween(long min, long max, long actual) {
+    assertTrue(actual + " < " + min, actual >= min);
+    assertTrue(actual + " > " + max, actual <= max);
+  }
+
+  private static RetryPolicy policy(String methodName) throws Exception {
+    return RetryPolicy.of(Annotated.class.getMethod(methodName).getAnnotation(Transactional.class));
+  }
+
+  private static class Annotated {
+    @Transactional
+    public void defaults() {
+    }
+
+    @Transactional(maxAttempts = 3)
+    public void retried() {
+    }
+
+    @Transactional(maxAttempts = 5, retryBackoff = 100, retryMaxBackoff = 300, retrySqlStates = "40",
+        retryErrorCodes = { 60, 8177 })
+    public void custom() {
+    }
+  }
+
+}
@@ -0,0 +1,319 @@
+/**
+ *    Copyright 2009-2017 the original author or authors.
+ *
+ *    Licensed under the Apache License, Version 2.0 (the "License");
+ *    you may not use this file except in compliance with the License.
+ *    You may obtain a copy of the License at
+ *
+ *       http://www.apache.org/licenses/LICENSE-2.0
+ *
+ *    Unless required by applicable law or agreed to in writing, software
+ *    distributed under the License is distributed on an "AS IS" BASIS,
+ *    WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ *    See the License for the specific language governing permissions and
+ *    limitations under the License.
+ */
+package org.mybatis.guice.transactional;
+
+import static java.util.Arrays.asList;
+import static org.junit.Assert.assertEquals;
+import static org.junit.Assert.assertFalse;
+import static org.junit.Assert.assertTrue;
+import static org.junit.Assert.fail;
+
+import java.lang.reflect.InvocationHandler;
+import java.lang.reflect.InvocationTargetException;
+import java.lang.reflect.Method;
+import java.lang.reflect.Proxy;
+import java.sql.Connection;
+import java.sql.SQLException;
+import java.util.ArrayList;
+import java.util.Collections;
+import java.util.List;
+
+import javax.sql.DataSource;
+
+import org.apache.ibatis.session.TransactionIsolationLevel;
+import org.apache.ibatis.transaction.Transaction;
+import org.junit.Before;
+import org.junit.Test;
+
+import com.google.inject.AbstractModule;
+import com.google.inject.Guice;
+import com.google.inject.name.Names;
+
+public class StateTrackingJdbcTransactionFactoryTest {
+
+  private final List<String> calls = new ArrayList<String>();
+
+  private final StateTrackingJdbcTransactionFactory transactionFactory = new StateTrackingJdbcTransactionFactory();
+
+  private PhysicalConnection physicalConnection;
+
+  private DataSource dataSource;
+
+  private boolean resetsOnReturn;
+
+  @Before
+  public void setUp() {
+    physicalConnection = new PhysicalConnection();
+    dataSource = pool(physicalConnection);
+  }
+
+  @Test
+  public void skipsAutoCommitOfPoolWithoutAutoCommit() throws Exception {
+    physicalConnection.autoCommit = false;
+
+    runTransaction(null);
+    runTransaction(null);
+
+    assertEquals(asList("getAutoCommit", "getAutoCommit"), calls);
+    assertFalse(physicalConnection.autoCommit);
+  }
+
+  @Test
+  public void restoresChangedAutoCommit() throws Exception {
+    runTransaction(null);
+    runTransaction(null);
+
+    assertEquals(asList("getAutoCommit", "setAutoCommit(false)", "setAutoCommit(true)", "getAutoCommit",
+        "setAutoCommit(false)", "setAutoCommit(true)"), calls);
+    assertTrue(physicalConnection.autoCommit);
+  }
+
+  @Test
+  public void setsIsolationWithoutReadingNorRestoringIt() throws Exception {
+    physicalConnection.autoCommit = false;
+
+    runTransaction(TransactionIsolationLevel.SERIALIZABLE);
+
+    assertEquals(asList("setTransactionIsolation(8)", "getAutoCommit"), calls);
+    assertEquals(Connection.TRANSACTION_SERIALIZABLE, physicalConnection.transactionIsolation);
+  }
+
+  @Test
+  public void setsValuesAgainAfterPoolResetOnReturn() throws Exception {
+    resetsOnReturn = true;
+    runTransaction(TransactionIsolationLevel.SERIALIZABLE);
+
+    Transaction transaction = transactionFactory.newTransaction(dataSource, TransactionIsolationLevel.SERIALIZABLE,
+        false);
+    try {
+      transaction.getConnection();
+      assertFalse(physicalConnection.autoCommit);
+      assertEquals(Connection.TRANSACTION_SERIALIZABLE, physicalConnection.transactionIsolation);
+    } finally {
+      transaction.close();
+    }
+  }
+
+  @Test
+  public void leavesReadOnlyModeOfLentConnections() throws Exception {
+    physicalConnection.autoCommit = false;
+
+    runReadOnlyTransaction();
+    runTransaction(null);
+
+    assertEquals(asList("getAutoCommit", "getAutoCommit"), calls);
+    assertFalse(physicalConnection.readOnly);
+  }
+
+  @Test
+  public void leavesAutoCommitThePoolKeeps() throws Exception {
+    transactionFactory.setPoolKeepsConnectionState(true);
+
+    runTransaction(null);
+    runTransaction(null);
+
+    assertEquals(asList("isReadOnly", "getAutoCommit", "setAutoCommit(false)"), calls);
+    assertFalse(physicalConnection.autoCommit);
+  }
+
+  @Test
+  public void skipsIsolationThePoolKeeps() throws Exception {
+    transactionFactory.setPoolKeepsConnectionState(true);
+    physicalConnection.autoCommit = false;
+
+    runTransaction(TransactionIsolationLevel.SERIALIZABLE);
+    runTransaction(TransactionIsolationLevel.SERIALIZABLE);
+
+    assertEquals(asList("isReadOnly", "getTransactionIsolation", "setTransactionIsolation(8)", "getAutoCommit"),
+        calls);
+    assertEquals(Connection.TRANSACTION_SERIALIZABLE, physicalConnection.transactionIsolation);
+  }
+
+  @Test
+  public void clearsReadOnlyThePoolKeeps() throws Exception {
+    transactionFactory.setPoolKeepsConnectionState(true);
+    physicalConnection.autoCommit = false;
+
+    runReadOnlyTransaction();
+    runTransaction(null);
+    runTransaction(null);
+
+    assertEquals(asList("isReadOnly", "setReadOnly(true)", "getAutoCommit", "setReadOnly(false)"), calls);
+    assertFalse(physicalConnection.readOnly);
+  }
+
+  @Test
+  public void readsStateAgainAfterFailure() throws Exception {
+    transactionFactory.setPoolKeepsConnectionState(true);
+    physicalConnection.autoCommit = false;
+    runTransaction(TransactionIsolationLevel.SERIALIZABLE);
+    calls.clear();
+    physicalConnection.failure = new SQLException("connection reset");
+
+    try {
+      runTransaction(TransactionIsolationLevel.REPEATABLE_READ);
+      fail("Expected SQLException");
+    } catch (SQLException e) {
+      // Success.
+    }
+    physicalConnection.failure = null;
+    runTransaction(TransactionIsolationLevel.REPEATABLE_READ);
+
+    assertEquals(asList("setTransactionIsolation(4)", "isReadOnly", "getTransactionIsolation",
+        "setTransactionIsolation(4)", "getAutoCommit"), calls);
+  }
+
+  @Test
+  public void tracksEachPhysicalConnection() throws Exception {
+    transactionFactory.setPoolKeepsConnectionState(true);
+    PhysicalConnection other = new PhysicalConnection();
+    other.autoCommit = false;
+    physicalConnection.autoCommit = false;
+
+    runTransaction(null);
+    dataSource = pool(other);
+    runTransaction(null);
+
+    assertEquals(asList("isReadOnly", "getAutoCommit", "isReadOnly", "getAutoCommit"), calls);
+  }
+
+  @Test
+  public void readsPoolKeepsConnectionStateFromBoundConstant() {
+    StateTrackingJdbcTransactionFactory injected = Guice.createInjector(new AbstractModule() {
+      @Override
+      protected void configure() {
+        bindConstant().annotatedWith(Names.named("mybatis.stateTracking.poolKeepsConnectionState")).to(true);
+      }
+    }).getInstance(StateTrackingJdbcTransactionFactory.class);
+
+    assertTrue(injected.isPoolKeepsConnectionState());
+    assertFalse(new StateTrackingJdbcTransactionFactory().isPoolKeepsConnectionState());
+  }
+
+  private void runReadOnlyTransaction() throws SQLException {
+    Boolean previous = ReadOnlyContext.begin(dataSource, true);
+    try {
+      runTransaction(null);
+    } finally {
+      ReadOnlyContext.end(dataSource, previous);
+    }
+  }
+
+  private void runTransaction(TransactionIsolationLevel level) throws SQLException {
+    Transaction transaction = transactionFactory.newTransaction(dataSource, level, false);
+    try {
+      transaction.getConnection();
+    } finally {
+      transaction.close();
+    }
+  }
+
+  private DataSource pool(final PhysicalConnection physicalConnection) {
+    final Connection physical = (Connection) Proxy.newProxyInstance(getClass().getClassLoader(),
+        new Class<?>[] { Connection.class }, physicalConnection);
+    return (DataSource) Proxy.newProxyInstance(getClass().getClassLoader(), new Class<?>[] { DataSource.class },
+        new InvocationHandler() {
+          @Override
+          public Object invoke(Object proxy, Method method, Object[] args) throws Throwable {
+            if (!"getConnection".equals(method.getName())) {
+              throw new UnsupportedOperationException(method.getName());
+            }
+            // a new handle on every checkout, as the pools do
+            return Proxy.newProxyInstance(getClass().getClassLoader(), new Class<?>[] { Connection.class },
+                new InvocationHandler() {
+                  @Override
+                  public Object invoke(Object proxy, Method method, Object[] args) throws Throwable {
+                    if ("isWrapperFor".equals(method.getName())) {
+                      return true;
+                    }
+                    if ("unwrap".equals(method.getName())) {
+                      return physical;
+                    }
+                    if ("close".equals(method.getName())) {
+                      if (resetsOnReturn) {
+                        physicalConnection.reset();
+                      }
+                      return null;
+                    }
+                    try {
+                      return method.invoke(physical, args);
+                    } catch (InvocationTargetException e) {
+                      throw e.getCause();
+                    }
+                  }
+                });
+          }
+        });
+  }
+
+  private class PhysicalConnection implements InvocationHandler {
+
+    boolean autoCommit = true;
+
+    int transactionIsolation = Connection.TRANSACTION_READ_COMMITTED;
+
+    boolean readOnly;
+
+    SQLException failure;
+
+    /**
+     * Resets the values to the pool defaults, as the pools do when a connection is returned.
+     */
+    void reset() {
+      autoCommit = true;
+      transactionIsolation = Connection.TRANSACTION_READ_COMMITTED;
+      readOnly = false;
+    }
+
+    @Override
+    public Object invoke(Object proxy, Method method, Object[] args) throws Throwable {
+      String name = method.getName();
+      if ("hashCode".equals(name)) {
+        return System.identityHashCode(proxy);
+      }
+      if ("equals".equals(name)) {
+        return proxy == args[0];
+      }
+      if ("toString".equals(name)) {
+        return "physicalConnection";
+      }
+      if (asList("commit", "rollback").contains(name)) {
+        return null;
+      }
+      calls.add(args == null ? name : name + "(" + args[0] + ")");
+      if (failure != null) {
+        throw failure;
+      }
+      if ("getAutoCommit".equals(name)) {
+        return autoCommit;
+      }
+      if ("setAutoCommit".equals(name)) {
+        autoCommit = (Boolean) args[0];
+      } else if ("getTransactionIsolation".equals(name)) {
+        return transactionIsolation;
+      } else if ("setTransactionIsolation".equals(name)) {
+        transactionIsolation = (Integer) args[0];
+      } else if ("isReadOnly".equals(name)) {
+        return readOnly;
+      } else if ("setReadOnly".equals(name)) {
+        readOnly = (Boolean) args[0];
+      }
+      return null;
+    }
+
+  }
+
+}
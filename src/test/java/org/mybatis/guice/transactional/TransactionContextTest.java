@@ -0,0 +1,276 @@
+/**
+ *    Copyright 2009-2017 the original author or authors.
+ *
+ *    Licensed under the Apache License, Version 2.0 (the "License");
+ *    you may not use this file except in compliance with the License.
+ *    You may obtain a copy of the License at
+ *
+ *       http://www.apache.org/licenses/LICENSE-2.0
+ *
+ *    Unless required by applicable law or agreed to in writing, software
+ *    distributed under the License is distributed on an "AS IS" BASIS,
+ *    WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ *    See the License for the specific language governing permissions and
+ *    limitations under the License.
+ */
+package org.mybatis.guice.transactional;
+
+import static org.junit.Assert.assertEquals;
+import static org.junit.Assert.assertFalse;
+import static org.junit.Assert.assertNull;
+import static org.junit.Assert.assertSame;
+import static org.junit.Assert.assertTrue;
+import static org.junit.Assert.fail;
+
+import java.lang.reflect.AccessibleObject;
+import java.lang.reflect.InvocationHandler;
+import java.lang.reflect.Method;
+import java.lang.reflect.Proxy;
+import java.util.ArrayList;
+import java.util.Arrays;
+import java.util.HashMap;
+import java.util.List;
+import java.util.Map;
+import java.util.concurrent.Callable;
+import java.util.concurrent.ExecutionException;
+import java.util.concurrent.ExecutorService;
+import java.util.concurrent.Executors;
+
+import javax.sql.DataSource;
+
+import org.aopalliance.intercept.MethodInvocation;
+import org.apache.ibatis.session.Configuration;
+import org.apache.ibatis.session.SqlSession;
+import org.apache.ibatis.session.SqlSessionFactory;
+import org.apache.ibatis.session.SqlSessionManager;
+import org.junit.After;
+import org.junit.Before;
+import org.junit.Test;
+import org.mybatis.guice.session.SuspendableSqlSessionFactory;
+
+import com.google.inject.AbstractModule;
+import com.google.inject.Guice;
+
+public class TransactionContextTest {
+
+  private SqlSessionManager sqlSessionManager;
+
+  private ExecutorService executor;
+
+  private final DataSource dataSource = (DataSource) Proxy.newProxyInstance(getClass().getClassLoader(),
+      new Class<?>[] { DataSource.class }, new InvocationHandler() {
+        @Override
+        public Object invoke(Object proxy, Method method, Object[] args) throws Throwable {
+          return null;
+        }
+      });
+
+  @Before
+  public void setup() {
+    sqlSessionManager = SqlSessionManager.newInstance(new SuspendableSqlSessionFactory(sqlSessionFactory()));
+    executor = Executors.newSingleThreadExecutor();
+  }
+
+  @After
+  public void teardown() {
+    executor.shutdownNow();
+    if (sqlSessionManager.isManagedSessionStarted()) {
+      sqlSessionManager.close();
+    }
+    ReadOnlyContext.end(dataSource, null);
+  }
+
+  @Test
+  public void followsTaskOnAnotherThread() throws Exception {
+    sqlSessionManager.startManagedSession();
+    ReadOnlyContext.begin(dataSource, true);
+    final SqlSession sqlSession = LocalSqlSessions.getInstance().get(sqlSessionManager);
+    TransactionContext context = TransactionContext.capture(sqlSessionManager);
+
+    assertTrue(context.isTransactional());
+    assertTrue(executor.submit(context.wrap(new Callable<Boolean>() {
+      @Override
+      public Boolean call() {
+        return sqlSessionManager.isManagedSessionStarted() && LocalSqlSessions.getInstance().get(sqlSessionManager) == sqlSession
+            && ReadOnlyContext.isReadOnly(dataSource);
+      }
+    })).get());
+
+    // the worker thread gets back its own state
+    assertFalse(executor.submit(new Callable<Boolean>() {
+      @Override
+      public Boolean call() {
+        return sqlSessionManager.isManagedSessionStarted() || ReadOnlyContext.isReadOnly(dataSource);
+      }
+    }).get());
+    assertSame(sqlSession, LocalSqlSessions.getInstance().get(sqlSessionManager));
+  }
+
+  @Test
+  public void nestedTransactionalMethodsInherit() throws Exception {
+    final TransactionalMethodInterceptor interceptor = new TransactionalMethodInterceptor();
+    interceptor.setSqlSessionManager(sqlSessionManager);
+    final List<TransactionEvent> events = new ArrayList<TransactionEvent>();
+    interceptor.setTransactionEventSink(new TransactionEventSink() {
+      @Override
+      public void onEvent(TransactionEvent event, Method method) {
+        events.add(event);
+      }
+    });
+
+    sqlSessionManager.startManagedSession();
+    executor.submit(TransactionContext.capture(sqlSessionManager).wrap(new Callable<Object>() {
+      @Override
+      public Object call() throws Exception {
+        try {
+          return interceptor.invoke(invocation());
+        } catch (Throwable t) {
+          throw new ExecutionException(t);
+        }
+      }
+    })).get();
+
+    assertEquals(Arrays.asList(TransactionEvent.INHERIT), events);
+  }
+
+  @Test
+  public void detachRestoresPreviousState() {
+    TransactionContext empty = TransactionContext.capture(sqlSessionManager);
+    assertFalse(empty.isTransactional());
+
+    sqlSessionManager.startManagedSession();
+    SqlSession sqlSession = LocalSqlSessions.getInstance().get(sqlSessionManager);
+    TransactionContext.Scope scope = empty.attach();
+
+    assertFalse(sqlSessionManager.isManagedSessionStarted());
+
+    scope.detach();
+    scope.detach();
+
+    assertSame(sqlSession, LocalSqlSessions.getInstance().get(sqlSessionManager));
+  }
+
+  @Test
+  public void detachRequiresAttachingThread() throws Exception {
+    final TransactionContext.Scope scope = TransactionContext.capture(sqlSessionManager).attach();
+
+    try {
+      executor.submit(new Runnable() {
+        @Override
+        public void run() {
+          scope.detach();
+        }
+      }).get();
+      fail("Expected IllegalStateException");
+    } catch (ExecutionException e) {
+      assertEquals(IllegalStateException.class, e.getCause().getClass());
+    }
+    scope.detach();
+  }
+
+  @Test
+  public void usesGivenBinding() throws Exception {
+    final SqlSession sqlSession = sqlSessionManager.openSession();
+    final Map<SqlSessionManager, SqlSession> bound = new HashMap<SqlSessionManager, SqlSession>();
+    bound.put(sqlSessionManager, sqlSession);
+    final SqlSessionBinding binding = new SqlSessionBinding() {
+      @Override
+      public SqlSession get(SqlSessionManager sqlSessionManager) {
+        return bound.get(sqlSessionManager);
+      }
+
+      @Override
+      public void set(SqlSessionManager sqlSessionManager, SqlSession sqlSession) {
+        bound.put(sqlSessionManager, sqlSession);
+      }
+    };
+    TransactionContext context = TransactionContext.capture(binding, sqlSessionManager);
+    bound.clear();
+
+    TransactionContext.Scope scope = context.attach();
+    assertSame(sqlSession, bound.get(sqlSessionManager));
+    assertFalse(sqlSessionManager.isManagedSessionStarted());
+    scope.detach();
+    assertNull(bound.get(sqlSessionManager));
+  }
+
+  @Test
+  public void injectsSuspendableBindingByDefault() {
+    assertSame(SuspendableSqlSessions.class, Guice.createInjector().getInstance(SqlSessionBinding.class).getClass());
+  }
+
+  @Test
+  public void injectsReflectiveBindingWhenBound() {
+    SqlSessionBinding binding = Guice.createInjector(new AbstractModule() {
+      @Override
+      protected void configure() {
+        bind(SqlSessionBinding.class).to(LocalSqlSessions.class);
+      }
+    }).getInstance(SqlSessionBinding.class);
+
+    assertSame(LocalSqlSessions.class, binding.getClass());
+  }
+
+  @Test
+  public void followsTaskWithReflectiveBinding() throws Exception {
+    final SqlSessionManager plainSqlSessionManager = SqlSessionManager.newInstance(sqlSessionFactory());
+    plainSqlSessionManager.startManagedSession();
+    SqlSession sqlSession = LocalSqlSessions.getInstance().get(plainSqlSessionManager);
+    TransactionContext context = TransactionContext.capture(new LocalSqlSessions(), plainSqlSessionManager);
+
+    assertSame(sqlSession, executor.submit(context.wrap(new Callable<SqlSession>() {
+      @Override
+      public SqlSession call() {
+        return LocalSqlSessions.getInstance().get(plainSqlSessionManager);
+      }
+    })).get());
+    plainSqlSessionManager.close();
+  }
+
+  private static MethodInvocation invocation() throws Exception {
+    final Method method = TransactionalService.class.getMethod("transaction");
+    return (MethodInvocation) Proxy.newProxyInstance(TransactionContextTest.class.getClassLoader(),
+        new Class<?>[] { MethodInvocation.class }, new InvocationHandler() {
+          @Override
+          public Object invoke(Object proxy, Method invoked, Object[] args) throws Throwable {
+            if ("getMethod".equals(invoked.getName())) {
+              return method;
+            }
+            if ("getArguments".equals(invoked.getName())) {
+              return new Object[0];
+            }
+            if ("getStaticPart".equals(invoked.getName())) {
+              return (AccessibleObject) method;
+            }
+            return null;
+          }
+        });
+  }
+
+  private static SqlSessionFactory sqlSessionFactory() {
+    final Configuration configuration = new Configuration();
+    return (SqlSessionFactory) Proxy.newProxyInstance(TransactionContextTest.class.getClassLoader(),
+        new Class<?>[] { SqlSessionFactory.class }, new InvocationHandler() {
+          @Override
+          public Object invoke(Object proxy, Method method, Object[] args) throws Throwable {
+            if ("getConfiguration".equals(method.getName())) {
+              return configuration;
+            }
+            return Proxy.newProxyInstance(TransactionContextTest.class.getClassLoader(),
+                new Class<?>[] { SqlSession.class }, new InvocationHandler() {
+                  @Override
+                  public Object invoke(Object proxy, Method method, Object[] args) throws Throwable {
+                    return null;
+                  }
+                });
+          }
+        });
+  }
+
+  private static class TransactionalService {
+    @Transactional
+    public void transaction() {
+    }
+  }
+
+}
@@ -0,0 +1,134 @@
+/**
+ *    Copyright 2009-2017 the original author or authors.
+ *
+ *    Licensed under the Apache License, Version 2.0 (the "License");
+ *    you may not use this file except in compliance with the License.
+ *    You may obtain a copy of the License at
+ *
+ *       http://www.apache.org/licenses/LICENSE-2.0
+ *
+ *    Unless required by applicable law or agreed to in writing, software
+ *    distributed under the License is distributed on an "AS IS" BASIS,
+ *    WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ *    See the License for the specific language governing permissions and
+ *    limitations under the License.
+ */
+package org.mybatis.guice.transactional;
+
+import static org.junit.Assert.assertEquals;
+import static org.junit.Assert.assertFalse;
+import static org.junit.Assert.assertNotNull;
+import static org.junit.Assert.assertNull;
+import static org.junit.Assert.assertSame;
+import static org.junit.Assert.assertTrue;
+
+import java.io.IOException;
+import java.lang.reflect.Method;
+import java.util.concurrent.ConcurrentMap;
+
+import org.apache.ibatis.session.ExecutorType;
+import org.apache.ibatis.session.TransactionIsolationLevel;
+import org.junit.Test;
+
+public class TransactionalMethodDescriptorTest {
+
+  @Test
+  public void resolvesMethodAnnotation() throws Exception {
+    TransactionalMethodDescriptor descriptor = TransactionalMethodDescriptor
+        .of(MethodAnnotationCustom.class.getMethod("transaction"));
+
+    assertEquals(ExecutorType.REUSE, descriptor.getExecutorType());
+    assertEquals(TransactionIsolationLevel.REPEATABLE_READ, descriptor.getIsolationLevel());
+    assertTrue(descriptor.isForce());
+    assertTrue(descriptor.isRollbackOnly());
+    assertEquals("test message", descriptor.getExceptionMessage());
+    assertEquals(UnsupportedOperationException.class, descriptor.getRethrowExceptionsAs());
+    assertNotNull(descriptor.getRethrowConstructor());
+  }
+
+  @Test
+  public void resolvesClassAnnotation() throws Exception {
+    TransactionalMethodDescriptor descriptor = TransactionalMethodDescriptor
+        .of(ClassAnnotation.class.getMethod("transaction"));
+
+    assertEquals(ExecutorType.BATCH, descriptor.getExecutorType());
+    assertNull(descriptor.getIsolationLevel());
+    assertFalse(descriptor.isForce());
+    assertNull(descriptor.getExceptionMessage());
+  }
+
+  @Test
+  public void managedBatchUsesBatchExecutor() throws Exception {
+    TransactionalMethodDescriptor descriptor = TransactionalMethodDescriptor
+        .of(ManagedBatchAnnotation.class.getMethod("transaction"));
+
+    assertTrue(descriptor.isManagedBatch());
+    assertEquals(ExecutorType.BATCH, descriptor.getExecutorType());
+    assertEquals(500, descriptor.getBatchSize());
+    assertFalse(TransactionalMethodDescriptor.of(ClassAnnotation.class.getMethod("transaction")).isManagedBatch());
+  }
+
+  @Test
+  public void resolvesTransactionAttribute() throws Exception {
+    assertEquals(TransactionAttribute.NOTSUPPORTED,
+        TransactionalMethodDescriptor.of(NotSupportedAnnotation.class.getMethod("transaction"))
+            .getTransactionAttribute());
+    assertEquals(TransactionAttribute.REQUIRED,
+        TransactionalMethodDescriptor.of(ClassAnnotation.class.getMethod("transaction")).getTransactionAttribute());
+    for (Transactional.TxType txType : Transactional.TxType.values()) {
+      if (txType != Transactional.TxType.NESTED) {
+        assertNotNull(TransactionAttribute.fromTxType(txType));
+      }
+    }
+    // JTA has no nested transactions
+    assertNull(TransactionAttribute.fromTxType(Transactional.TxType.NESTED));
+  }
+
+  @Test
+  public void propagatesDeclaredExceptions() throws Exception {
+    TransactionalMethodDescriptor descriptor = TransactionalMethodDescriptor
+        .of(ClassAnnotation.class.getMethod("transaction"));
+
+    assertTrue(descriptor.isPropagated(new IOException()));
+    assertTrue(descriptor.isPropagated(new IllegalStateException()));
+    assertFalse(descriptor.isPropagated(new Error()));
+  }
+
+  @Test
+  public void lookupCachesDescriptor() throws Exception {
+    ConcurrentMap<Method, TransactionalMethodDescriptor> cache = TransactionalMethodDescriptor.newCache();
+    Method method = ClassAnnotation.class.getMethod("transaction");
+
+    TransactionalMethodDescriptor descriptor = TransactionalMethodDescriptor.lookup(cache, method);
+
+    assertSame(descriptor, TransactionalMethodDescriptor.lookup(cache, method));
+    assertEquals(1, cache.size());
+  }
+
+  private static class MethodAnnotationCustom {
+    @Transactional(executorType = ExecutorType.REUSE, isolation = Isolation.REPEATABLE_READ, force = true,
+        rollbackOnly = true, rethrowExceptionsAs = UnsupportedOperationException.class,
+        exceptionMessage = "test message")
+    public void transaction() {
+    }
+  }
+
+  private static class ManagedBatchAnnotation {
+    @Transactional(batchSize = 500)
+    public void transaction() {
+    }
+  }
+
+  private static class NotSupportedAnnotation {
+    @Transactional(Transactional.TxType.NOT_SUPPORTED)
+    public void transaction() {
+    }
+  }
+
+  @Transactional(executorType = ExecutorType.BATCH)
+  private static class ClassAnnotation {
+    @SuppressWarnings("unused")
+    public void transaction() throws IOException {
+    }
+  }
+}
@@ -23,8 +23,10 @@ import static org.mockito.Mockito.verify;
 import static org.mockito.Mockito.when;
 
 import org.aopalliance.intercept.MethodInvocation;
+import org.apache.ibatis.session.Configuration;
 import org.apache.ibatis.session.ExecutorType;
 import org.apache.ibatis.session.SqlSessionManager;
+import org.apache.ibatis.session.TransactionIsolationLevel;
 import org.junit.Before;
 import org.junit.Rule;
 import org.junit.Test;
@@ -33,6 +35,10 @@ import org.mockito.junit.MockitoJUnit;
 import org.mockito.junit.MockitoRule;
 
 import java.lang.reflect.Method;
+import java.util.ArrayList;
+import java.util.Arrays;
+import java.util.Collections;
+import java.util.List;
 
 public class TransactionalMethodInterceptorTest {
   private TransactionalMethodInterceptor transactionalMethodInterceptor;
@@ -47,6 +53,7 @@ public class TransactionalMethodInterceptorTest {
   public void beforeTest() {
     transactionalMethodInterceptor = new TransactionalMethodInterceptor();
     transactionalMethodInterceptor.setSqlSessionManager(sqlSessionManager);
+    when(sqlSessionManager.getConfiguration()).thenReturn(new Configuration());
   }
 
   @Test
@@ -209,6 +216,84 @@ public class TransactionalMethodInterceptorTest {
     verify(sqlSessionManager).close();
   }
 
+  @Test
+  public void invoke_ManagedBatch() throws Throwable {
+    Method method = MethodAnnotationManagedBatch.class.getMethod("transaction");
+    when(invocation.getMethod()).thenReturn(method);
+    when(invocation.proceed()).thenReturn(true);
+    Configuration configuration = new Configuration();
+    configuration.addInterceptor(new ManagedBatchInterceptor());
+    when(sqlSessionManager.getConfiguration()).thenReturn(configuration);
+
+    Object returned = transactionalMethodInterceptor.invoke(invocation);
+
+    assertEquals(true, returned);
+    verify(sqlSessionManager).startManagedSession(ExecutorType.BATCH, (TransactionIsolationLevel) null);
+    verify(sqlSessionManager).commit(false);
+    verify(sqlSessionManager).close();
+  }
+
+  @Test
+  public void invoke_ManagedBatch_PluginMissing() throws Throwable {
+    Method method = MethodAnnotationManagedBatch.class.getMethod("transaction");
+    when(invocation.getMethod()).thenReturn(method);
+    when(sqlSessionManager.getConfiguration()).thenReturn(new Configuration());
+
+    try {
+      transactionalMethodInterceptor.invoke(invocation);
+      fail("Expected IllegalStateException");
+    } catch (IllegalStateException e) {
+      // Success.
+    }
+
+    verify(sqlSessionManager, never()).startManagedSession(ExecutorType.BATCH, (TransactionIsolationLevel) null);
+    verify(invocation, never()).proceed();
+  }
+
+  @Test
+  public void invoke_FiresTransactionEvents() throws Throwable {
+    Method method = MethodAnnotation.class.getMethod("transaction");
+    when(invocation.getMethod()).thenReturn(method);
+    when(invocation.proceed()).thenReturn(true);
+    RecordingTransactionEventSink sink = new RecordingTransactionEventSink();
+    transactionalMethodInterceptor.setTransactionEventSink(sink);
+
+    transactionalMethodInterceptor.invoke(invocation);
+
+    assertEquals(Arrays.asList(TransactionEvent.BEGIN, TransactionEvent.COMMIT, TransactionEvent.CLOSE), sink.events);
+    assertEquals(Collections.nCopies(3, method), sink.methods);
+  }
+
+  @Test
+  public void invoke_FiresTransactionEvents_SessionInherited() throws Throwable {
+    Method method = MethodAnnotation.class.getMethod("transaction");
+    when(invocation.getMethod()).thenReturn(method);
+    when(invocation.proceed()).thenThrow(new RuntimeException("test"));
+    when(sqlSessionManager.isManagedSessionStarted()).thenReturn(true);
+    RecordingTransactionEventSink sink = new RecordingTransactionEventSink();
+    transactionalMethodInterceptor.setTransactionEventSink(sink);
+
+    try {
+      transactionalMethodInterceptor.invoke(invocation);
+      fail("Expected RuntimeException");
+    } catch (RuntimeException e) {
+      // Success.
+    }
+
+    assertEquals(Arrays.asList(TransactionEvent.INHERIT), sink.events);
+  }
+
+  private static class RecordingTransactionEventSink implements TransactionEventSink {
+    final List<TransactionEvent> events = new ArrayList<TransactionEvent>();
+    final List<Method> methods = new ArrayList<Method>();
+
+    @Override
+    public void onEvent(TransactionEvent event, Method method) {
+      events.add(event);
+      methods.add(method);
+    }
+  }
+
   private static class MethodAnnotation {
     @Transactional
     public void transaction() {
@@ -233,6 +318,12 @@ public class TransactionalMethodInterceptorTest {
     }
   }
 
+  private static class MethodAnnotationManagedBatch {
+    @Transactional(batchSize = 100)
+    public void transaction() {
+    }
+  }
+
   @Transactional
   private static class ClassAnnotation {
     @SuppressWarnings("unused")
@@ -0,0 +1,338 @@
+/**
+ *    Copyright 2009-2017 the original author or authors.
+ *
+ *    Licensed under the Apache License, Version 2.0 (the "License");
+ *    you may not use this file except in compliance with the License.
+ *    You may obtain a copy of the License at
+ *
+ *       http://www.apache.org/licenses/LICENSE-2.0
+ *
+ *    Unless required by applicable law or agreed to in writing, software
+ *    distributed under the License is distributed on an "AS IS" BASIS,
+ *    WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ *    See the License for the specific language governing permissions and
+ *    limitations under the License.
+ */
+package org.mybatis.guice.transactional;
+
+import static java.util.Arrays.asList;
+import static org.junit.Assert.assertEquals;
+import static org.junit.Assert.assertFalse;
+import static org.junit.Assert.assertNotSame;
+import static org.junit.Assert.assertSame;
+import static org.junit.Assert.fail;
+
+import java.lang.reflect.InvocationHandler;
+import java.lang.reflect.Method;
+import java.lang.reflect.Proxy;
+import java.sql.Connection;
+import java.sql.SQLException;
+import java.sql.Savepoint;
+import java.util.ArrayList;
+import java.util.Collections;
+import java.util.List;
+
+import javax.sql.DataSource;
+
+import org.aopalliance.intercept.MethodInvocation;
+import org.apache.ibatis.mapping.Environment;
+import org.apache.ibatis.session.Configuration;
+import org.apache.ibatis.session.SqlSessionManager;
+import org.apache.ibatis.session.defaults.DefaultSqlSessionFactory;
+import org.apache.ibatis.transaction.jdbc.JdbcTransactionFactory;
+import org.junit.Before;
+import org.junit.Test;
+import org.mybatis.guice.session.SuspendableSqlSessionFactory;
+import org.mybatis.guice.transactional.Transactional.TxType;
+
+public class TransactionalPropagationTest {
+
+  private final List<String> statements = Collections.synchronizedList(new ArrayList<String>());
+
+  private final List<TransactionEvent> events = new ArrayList<TransactionEvent>();
+
+  private DefaultSqlSessionFactory sqlSessionFactory;
+
+  private SqlSessionManager sqlSessionManager;
+
+  private TransactionalMethodInterceptor interceptor;
+
+  private boolean savepointRollbackFails;
+
+  @Before
+  public void setUp() {
+    sqlSessionFactory = new DefaultSqlSessionFactory(
+        new Configuration(new Environment("test", new JdbcTransactionFactory(), dataSource())));
+    SuspendableSqlSessionFactory suspendableSqlSessionFactory = new SuspendableSqlSessionFactory(sqlSessionFactory);
+    sqlSessionManager = SqlSessionManager.newInstance(suspendableSqlSessionFactory);
+
+    interceptor = new TransactionalMethodInterceptor();
+    interceptor.setSqlSessionManager(sqlSessionManager);
+    interceptor.setSqlSessionFactory(suspendableSqlSessionFactory);
+    interceptor.setTransactionEventSink(new TransactionEventSink() {
+      @Override
+      public void onEvent(TransactionEvent event, Method method) {
+        events.add(event);
+      }
+    });
+  }
+
+  @Test
+  public void nestedFailureRollsBackToSavepoint() throws Throwable {
+    invoke("required", new Body() {
+      @Override
+      public Object run() throws Throwable {
+        sqlSessionManager.getConnection();
+        try {
+          invoke("nested", failure());
+          fail("Expected IllegalStateException");
+        } catch (IllegalStateException e) {
+          // Success.
+        }
+        return null;
+      }
+    });
+
+    assertEquals(asList("c1.setSavepoint", "c1.rollback(savepoint)", "c1.commit", "c1.close"), statements);
+    assertEquals(asList(TransactionEvent.BEGIN, TransactionEvent.SAVEPOINT, TransactionEvent.ROLLBACK_TO_SAVEPOINT,
+        TransactionEvent.COMMIT, TransactionEvent.CLOSE), events);
+  }
+
+  @Test
+  public void nestedFailureSurvivesFailedRollbackToSavepoint() throws Throwable {
+    savepointRollbackFails = true;
+    invoke("required", new Body() {
+      @Override
+      public Object run() throws Throwable {
+        sqlSessionManager.getConnection();
+        try {
+          invoke("nested", failure());
+          fail("Expected IllegalStateException");
+        } catch (IllegalStateException e) {
+          // Success.
+        }
+        return null;
+      }
+    });
+
+    assertEquals(asList("c1.setSavepoint", "c1.rollback(savepoint)", "c1.commit", "c1.close"), statements);
+  }
+
+  @Test
+  public void nestedSuccessReleasesSavepoint() throws Throwable {
+    invoke("required", new Body() {
+      @Override
+      public Object run() throws Throwable {
+        return invoke("nested", connection());
+      }
+    });
+
+    assertEquals(asList("c1.setSavepoint", "c1.releaseSavepoint", "c1.commit", "c1.close"), statements);
+  }
+
+  @Test
+  public void nestedRollbackOnlyRollsBackToSavepoint() throws Throwable {
+    invoke("required", new Body() {
+      @Override
+      public Object run() throws Throwable {
+        return invoke("nestedRollbackOnly", connection());
+      }
+    });
+
+    assertEquals(asList("c1.setSavepoint", "c1.rollback(savepoint)", "c1.commit", "c1.close"), statements);
+  }
+
+  @Test
+  public void nestedWithoutTransactionBeginsOne() throws Throwable {
+    invoke("nested", connection());
+
+    assertEquals(asList("c1.commit", "c1.close"), statements);
+    assertFalse(sqlSessionManager.isManagedSessionStarted());
+  }
+
+  @Test
+  public void requiresNewRunsOnAnotherConnection() throws Throwable {
+    invoke("required", new Body() {
+      @Override
+      public Object run() throws Throwable {
+        Connection outer = sqlSessionManager.getConnection();
+        Connection inner = (Connection) invoke("requiresNew", connection());
+        assertNotSame(outer, inner);
+        assertSame(outer, sqlSessionManager.getConnection());
+        return null;
+      }
+    });
+
+    assertEquals(asList("c2.commit", "c2.close", "c1.commit", "c1.close"), statements);
+    assertEquals(asList(TransactionEvent.BEGIN, TransactionEvent.SUSPEND, TransactionEvent.BEGIN,
+        TransactionEvent.COMMIT, TransactionEvent.CLOSE, TransactionEvent.RESUME, TransactionEvent.COMMIT,
+        TransactionEvent.CLOSE), events);
+  }
+
+  @Test
+  public void requiresNewFailureLeavesOuterTransaction() throws Throwable {
+    invoke("required", new Body() {
+      @Override
+      public Object run() throws Throwable {
+        sqlSessionManager.getConnection();
+        try {
+          invoke("requiresNew", failure());
+          fail("Expected IllegalStateException");
+        } catch (IllegalStateException e) {
+          // Success.
+        }
+        return null;
+      }
+    });
+
+    assertEquals(asList("c2.rollback", "c2.close", "c1.commit", "c1.close"), statements);
+  }
+
+  @Test
+  public void requiresNewSuspendsWithReflectiveBinding() throws Throwable {
+    sqlSessionManager = SqlSessionManager.newInstance(sqlSessionFactory);
+    interceptor.setSqlSessionManager(sqlSessionManager);
+    interceptor.setSqlSessionFactory(null);
+    interceptor.setSqlSessionBinding(new LocalSqlSessions());
+
+    requiresNewRunsOnAnotherConnection();
+  }
+
+  @Test
+  public void requiresNewJoinsWithoutLocalPropagation() throws Throwable {
+    interceptor.setLocalPropagation(false);
+
+    invoke("required", new Body() {
+      @Override
+      public Object run() throws Throwable {
+        Connection outer = sqlSessionManager.getConnection();
+        assertSame(outer, invoke("requiresNew", connection()));
+        return null;
+      }
+    });
+
+    assertEquals(asList("c1.commit", "c1.close"), statements);
+  }
+
+  private Body connection() {
+    return new Body() {
+      @Override
+      public Object run() {
+        return sqlSessionManager.getConnection();
+      }
+    };
+  }
+
+  private Body failure() {
+    return new Body() {
+      @Override
+      public Object run() {
+        sqlSessionManager.getConnection();
+        throw new IllegalStateException("test");
+      }
+    };
+  }
+
+  private Object invoke(String methodName, final Body body) throws Throwable {
+    final Method method = Service.class.getMethod(methodName);
+    return interceptor.invoke((MethodInvocation) Proxy.newProxyInstance(getClass().getClassLoader(),
+        new Class<?>[] { MethodInvocation.class }, new InvocationHandler() {
+          @Override
+          public Object invoke(Object proxy, Method invoked, Object[] args) throws Throwable {
+            if ("getMethod".equals(invoked.getName())) {
+              return method;
+            }
+            if ("getArguments".equals(invoked.getName())) {
+              return new Object[0];
+            }
+            if ("proceed".equals(invoked.getName())) {
+              return body.run();
+            }
+            return null;
+          }
+        }));
+  }
+
+  private DataSource dataSource() {
+    return (DataSource) Proxy.newProxyInstance(getClass().getClassLoader(), new Class<?>[] { DataSource.class },
+        new InvocationHandler() {
+          private int connections;
+
+          @Override
+          public Object invoke(Object proxy, Method method, Object[] args) throws Throwable {
+            if ("getConnection".equals(method.getName())) {
+              return connection("c" + ++connections);
+            }
+            throw new UnsupportedOperationException(method.getName());
+          }
+        });
+  }
+
+  private Connection connection(final String name) {
+    return (Connection) Proxy.newProxyInstance(getClass().getClassLoader(), new Class<?>[] { Connection.class },
+        new InvocationHandler() {
+          private boolean autoCommit = true;
+
+          @Override
+          public Object invoke(Object proxy, Method method, Object[] args) throws Throwable {
+            String methodName = method.getName();
+            if ("getAutoCommit".equals(methodName)) {
+              return autoCommit;
+            }
+            if ("setAutoCommit".equals(methodName)) {
+              autoCommit = (Boolean) args[0];
+            } else if ("setSavepoint".equals(methodName)) {
+              statements.add(name + "." + methodName);
+              return Proxy.newProxyInstance(getClass().getClassLoader(), new Class<?>[] { Savepoint.class },
+                  new InvocationHandler() {
+                    @Override
+                    public Object invoke(Object proxy, Method method, Object[] args) {
+                      return null;
+                    }
+                  });
+            } else if ("rollback".equals(methodName) && args != null) {
+              statements.add(name + ".rollback(savepoint)");
+              if (savepointRollbackFails) {
+                throw new SQLException("savepoint lost");
+              }
+            } else if (asList("commit", "rollback", "close", "releaseSavepoint").contains(methodName)) {
+              statements.add(name + "." + methodName);
+            } else if ("hashCode".equals(methodName)) {
+              return System.identityHashCode(proxy);
+            } else if ("equals".equals(methodName)) {
+              return proxy == args[0];
+            } else if (method.getReturnType() == boolean.class) {
+              return false;
+            } else if (method.getReturnType() == int.class) {
+              return 0;
+            }
+            return null;
+          }
+        });
+  }
+
+  interface Body {
+    Object run() throws Throwable;
+  }
+
+  public static class Service {
+
+    @Transactional(force = true)
+    public void required() {
+    }
+
+    @Transactional(value = TxType.REQUIRES_NEW, force = true)
+    public void requiresNew() {
+    }
+
+    @Transactional(value = TxType.NESTED, force = true)
+    public void nested() {
+    }
+
+    @Transactional(value = TxType.NESTED, rollbackOnly = true)
+    public void nestedRollbackOnly() {
+    }
+
+  }
+
+}
@@ -0,0 +1,172 @@
+/**
+ *    Copyright 2009-2017 the original author or authors.
+ *
+ *    Licensed under the Apache License, Version 2.0 (the "License");
+ *    you may not use this file except in compliance with the License.
+ *    You may obtain a copy of the License at
+ *
+ *       http://www.apache.org/licenses/LICENSE-2.0
+ *
+ *    Unless required by applicable law or agreed to in writing, software
+ *    distributed under the License is distributed on an "AS IS" BASIS,
+ *    WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ *    See the License for the specific language governing permissions and
+ *    limitations under the License.
+ */
+package org.mybatis.guice.transactional;
+
+import static java.util.Arrays.asList;
+import static org.junit.Assert.assertEquals;
+import static org.junit.Assert.assertFalse;
+import static org.junit.Assert.fail;
+
+import java.lang.reflect.InvocationHandler;
+import java.lang.reflect.Method;
+import java.lang.reflect.Proxy;
+import java.sql.SQLException;
+import java.util.ArrayList;
+import java.util.List;
+
+import org.aopalliance.intercept.MethodInvocation;
+import org.apache.ibatis.exceptions.PersistenceException;
+import org.apache.ibatis.session.Configuration;
+import org.apache.ibatis.session.SqlSession;
+import org.apache.ibatis.session.SqlSessionFactory;
+import org.apache.ibatis.session.SqlSessionManager;
+import org.junit.Before;
+import org.junit.Test;
+
+public class TransactionalRetryTest {
+
+  private final List<TransactionEvent> events = new ArrayList<TransactionEvent>();
+
+  private int attempts;
+
+  private SqlSessionManager sqlSessionManager;
+
+  private TransactionalMethodInterceptor interceptor;
+
+  @Before
+  public void setUp() {
+    sqlSessionManager = SqlSessionManager.newInstance(sqlSessionFactory());
+    interceptor = new TransactionalMethodInterceptor();
+    interceptor.setSqlSessionManager(sqlSessionManager);
+    interceptor.setTransactionEventSink(new TransactionEventSink() {
+      @Override
+      public void onEvent(TransactionEvent event, Method method) {
+        events.add(event);
+      }
+    });
+  }
+
+  @Test
+  public void retriesUntilSuccess() throws Throwable {
+    assertEquals("done", interceptor.invoke(invocation("retried", 2, deadlock())));
+
+    assertEquals(3, attempts);
+    assertEquals(asList(TransactionEvent.BEGIN, TransactionEvent.ROLLBACK, TransactionEvent.CLOSE,
+        TransactionEvent.RETRY, TransactionEvent.BEGIN, TransactionEvent.ROLLBACK, TransactionEvent.CLOSE,
+        TransactionEvent.RETRY, TransactionEvent.BEGIN, TransactionEvent.COMMIT, TransactionEvent.CLOSE), events);
+    assertFalse(sqlSessionManager.isManagedSessionStarted());
+  }
+
+  @Test
+  public void givesUpAfterMaxAttempts() throws Throwable {
+    try {
+      interceptor.invoke(invocation("retried", 5, deadlock()));
+      fail("Expected PersistenceException");
+    } catch (PersistenceException e) {
+      assertEquals(3, attempts);
+    }
+  }
+
+  @Test
+  public void doesNotRetryOtherFailures() throws Throwable {
+    try {
+      interceptor.invoke(invocation("retried", 5, new PersistenceException(new SQLException("duplicate", "23505"))));
+      fail("Expected PersistenceException");
+    } catch (PersistenceException e) {
+      assertEquals(1, attempts);
+    }
+  }
+
+  @Test
+  public void doesNotRetryInheritedTransaction() throws Throwable {
+    sqlSessionManager.startManagedSession();
+    try {
+      interceptor.invoke(invocation("retried", 5, deadlock()));
+      fail("Expected PersistenceException");
+    } catch (PersistenceException e) {
+      assertEquals(1, attempts);
+    } finally {
+      sqlSessionManager.close();
+    }
+  }
+
+  @Test
+  public void doesNotRetryWithoutLocalPropagation() throws Throwable {
+    interceptor.setLocalPropagation(false);
+    try {
+      interceptor.invoke(invocation("retried", 5, deadlock()));
+      fail("Expected PersistenceException");
+    } catch (PersistenceException e) {
+      assertEquals(1, attempts);
+    }
+  }
+
+  private static RuntimeException deadlock() {
+    return new PersistenceException(new SQLException("deadlock", "40001"));
+  }
+
+  private MethodInvocation invocation(String methodName, final int failures, final RuntimeException failure)
+      throws Exception {
+    final Method method = Service.class.getMethod(methodName);
+    return (MethodInvocation) Proxy.newProxyInstance(getClass().getClassLoader(),
+        new Class<?>[] { MethodInvocation.class }, new InvocationHandler() {
+          @Override
+          public Object invoke(Object proxy, Method invoked, Object[] args) throws Throwable {
+            if ("getMethod".equals(invoked.getName())) {
+              return method;
+            }
+            if ("getArguments".equals(invoked.getName())) {
+              return new Object[0];
+            }
+            if ("proceed".equals(invoked.getName())) {
+              if (attempts++ < failures) {
+                throw failure;
+              }
+              return "done";
+            }
+            return null;
+          }
+        });
+  }
+
+  private static SqlSessionFactory sqlSessionFactory() {
+    final Configuration configuration = new Configuration();
+    return (SqlSessionFactory) Proxy.newProxyInstance(TransactionalRetryTest.class.getClassLoader(),
+        new Class<?>[] { SqlSessionFactory.class }, new InvocationHandler() {
+          @Override
+          public Object invoke(Object proxy, Method method, Object[] args) throws Throwable {
+            if ("getConfiguration".equals(method.getName())) {
+              return configuration;
+            }
+            return Proxy.newProxyInstance(TransactionalRetryTest.class.getClassLoader(),
+                new Class<?>[] { SqlSession.class }, new InvocationHandler() {
+                  @Override
+                  public Object invoke(Object proxy, Method method, Object[] args) throws Throwable {
+                    return null;
+                  }
+                });
+          }
+        });
+  }
+
+  public static class Service {
+    @Transactional(maxAttempts = 3, retryBackoff = 1)
+    public String retried() {
+      return null;
+    }
+  }
+
+}
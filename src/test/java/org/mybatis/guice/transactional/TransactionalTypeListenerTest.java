@@ -0,0 +1,146 @@
+/**
+ *    Copyright 2009-2017 the original author or authors.
+ *
+ *    Licensed under the Apache License, Version 2.0 (the "License");
+ *    you may not use this file except in compliance with the License.
+ *    You may obtain a copy of the License at
+ *
+ *       http://www.apache.org/licenses/LICENSE-2.0
+ *
+ *    Unless required by applicable law or agreed to in writing, software
+ *    distributed under the License is distributed on an "AS IS" BASIS,
+ *    WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ *    See the License for the specific language governing permissions and
+ *    limitations under the License.
+ */
+package org.mybatis.guice.transactional;
+
+import static com.google.inject.matcher.Matchers.any;
+import static org.junit.Assert.assertEquals;
+import static org.junit.Assert.assertNotNull;
+import static org.junit.Assert.assertTrue;
+import static org.junit.Assert.fail;
+
+import com.google.inject.AbstractModule;
+import com.google.inject.CreationException;
+import com.google.inject.Guice;
+import com.google.inject.Injector;
+
+import org.junit.Test;
+
+public class TransactionalTypeListenerTest {
+
+  @Test
+  public void acceptsValidRethrowType() {
+    Injector injector = Guice.createInjector(new ListenerModule(ValidService.class));
+
+    assertNotNull(injector.getInstance(ValidService.class));
+  }
+
+  @Test
+  public void rejectsAbstractRethrowType() {
+    try {
+      Guice.createInjector(new ListenerModule(InvalidService.class));
+      fail("Expected CreationException");
+    } catch (CreationException e) {
+      assertEquals(1, e.getErrorMessages().size());
+      assertTrue(e.getMessage().contains(AbstractException.class.getName()));
+    }
+  }
+
+  @Test
+  public void rejectsClassLevelAbstractRethrowTypeWithMessage() {
+    try {
+      Guice.createInjector(new ListenerModule(InvalidMessageService.class));
+      fail("Expected CreationException");
+    } catch (CreationException e) {
+      assertTrue(e.getMessage().contains(AbstractMessageException.class.getName()));
+    }
+  }
+
+  @Test
+  public void acceptsNestedWithoutJta() {
+    Injector injector = Guice.createInjector(new ListenerModule(NestedService.class));
+
+    assertNotNull(injector.getInstance(NestedService.class));
+  }
+
+  @Test
+  public void rejectsNestedUnderJta() {
+    try {
+      Guice.createInjector(new ListenerModule(NestedService.class, true));
+      fail("Expected CreationException");
+    } catch (CreationException e) {
+      assertEquals(1, e.getErrorMessages().size());
+      assertTrue(e.getMessage().contains("NESTED"));
+    }
+  }
+
+  private static final class ListenerModule extends AbstractModule {
+    private final Class<?> serviceType;
+    private final boolean jta;
+
+    ListenerModule(Class<?> serviceType) {
+      this(serviceType, false);
+    }
+
+    ListenerModule(Class<?> serviceType, boolean jta) {
+      this.serviceType = serviceType;
+      this.jta = jta;
+    }
+
+    @Override
+    protected void configure() {
+      bindListener(any(), new TransactionalTypeListener(jta));
+      bind(serviceType);
+    }
+  }
+
+  public static class ValidService {
+    @Transactional(rethrowExceptionsAs = CauseOnlyException.class)
+    public void transaction() {
+    }
+  }
+
+  public static class InvalidService {
+    @Transactional(rethrowExceptionsAs = AbstractException.class)
+    public void transaction() {
+    }
+  }
+
+  public static class NestedService {
+    @Transactional(Transactional.TxType.NESTED)
+    public void transaction() {
+    }
+  }
+
+  @Transactional(rethrowExceptionsAs = AbstractMessageException.class, exceptionMessage = "failed %s")
+  public static class InvalidMessageService {
+    public void transaction(String argument) {
+    }
+  }
+
+  public abstract static class AbstractException extends RuntimeException {
+    private static final long serialVersionUID = 1L;
+
+    public AbstractException(Throwable cause) {
+      super(cause);
+    }
+  }
+
+  public abstract static class AbstractMessageException extends RuntimeException {
+    private static final long serialVersionUID = 1L;
+
+    public AbstractMessageException(String message, Throwable cause) {
+      super(message, cause);
+    }
+  }
+
+  public static class CauseOnlyException extends RuntimeException {
+    private static final long serialVersionUID = 1L;
+
+    public CauseOnlyException(Throwable cause) {
+      super(cause);
+    }
+  }
+}
@@ -0,0 +1,354 @@
+/**
+ *    Copyright 2009-2017 the original author or authors.
+ *
+ *    Licensed under the Apache License, Version 2.0 (the "License");
+ *    you may not use this file except in compliance with the License.
+ *    You may obtain a copy of the License at
+ *
+ *       http://www.apache.org/licenses/LICENSE-2.0
+ *
+ *    Unless required by applicable law or agreed to in writing, software
+ *    distributed under the License is distributed on an "AS IS" BASIS,
+ *    WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ *    See the License for the specific language governing permissions and
+ *    limitations under the License.
+ */
+package org.mybatis.guice.transactional;
+
+import static org.junit.Assert.assertEquals;
+import static org.junit.Assert.assertFalse;
+import static org.junit.Assert.assertSame;
+import static org.junit.Assert.assertTrue;
+import static org.junit.Assert.fail;
+
+import java.lang.reflect.AccessibleObject;
+import java.lang.reflect.InvocationHandler;
+import java.lang.reflect.Method;
+import java.lang.reflect.Proxy;
+import java.sql.SQLException;
+import java.util.ArrayList;
+import java.util.Collections;
+import java.util.List;
+import java.util.concurrent.atomic.AtomicInteger;
+
+import javax.transaction.Status;
+import javax.transaction.Synchronization;
+import javax.transaction.Transaction;
+import javax.transaction.TransactionManager;
+import javax.transaction.xa.XAResource;
+
+import org.aopalliance.intercept.MethodInvocation;
+import org.apache.ibatis.exceptions.PersistenceException;
+import org.apache.ibatis.session.Configuration;
+import org.apache.ibatis.session.SqlSession;
+import org.apache.ibatis.session.SqlSessionFactory;
+import org.apache.ibatis.session.SqlSessionManager;
+import org.junit.After;
+import org.junit.Before;
+import org.junit.Test;
+import org.mybatis.guice.session.SuspendableSqlSessionFactory;
+
+import com.google.inject.AbstractModule;
+import com.google.inject.Guice;
+
+public class TxTransactionalMethodInterceptorTest {
+
+  private final List<String> calls = new ArrayList<String>();
+
+  private final List<Synchronization> synchronizations = new ArrayList<Synchronization>();
+
+  private final Transaction transaction = proxy(Transaction.class, "transaction");
+
+  private SuspendableSqlSessionFactory sqlSessionFactory;
+
+  private SqlSessionManager sqlSessionManager;
+
+  private TxTransactionalMethodInterceptor interceptor;
+
+  @Before
+  public void setup() {
+    sqlSessionFactory = new SuspendableSqlSessionFactory(sqlSessionFactory());
+    sqlSessionManager = SqlSessionManager.newInstance(sqlSessionFactory);
+    interceptor = interceptor(true);
+  }
+
+  private TxTransactionalMethodInterceptor interceptor(final boolean bindXAResource) {
+    TxTransactionalMethodInterceptor interceptor = new TxTransactionalMethodInterceptor();
+    Guice.createInjector(new AbstractModule() {
+      @Override
+      protected void configure() {
+        bind(TransactionManager.class).toInstance(transactionManager());
+        if (bindXAResource) {
+          bind(XAResource.class).toInstance(proxy(XAResource.class, "xaResource"));
+        }
+        bind(SqlSessionManager.class).toInstance(sqlSessionManager);
+        bind(SuspendableSqlSessionFactory.class).toInstance(sqlSessionFactory);
+      }
+    }).injectMembers(interceptor);
+    return interceptor;
+  }
+
+  @After
+  public void teardown() {
+    if (sqlSessionManager.isManagedSessionStarted()) {
+      sqlSessionManager.close();
+    }
+  }
+
+  @Test
+  public void notSupportedSuspendsTransactionAndSession() throws Throwable {
+    sqlSessionManager.startManagedSession();
+    SqlSession parent = LocalSqlSessions.getInstance().get(sqlSessionManager);
+
+    interceptor.invoke(invocation("notSupported", new Runnable() {
+      @Override
+      public void run() {
+        assertFalse(sqlSessionManager.isManagedSessionStarted());
+      }
+    }));
+
+    assertEquals("suspend", calls.get(0));
+    assertEquals("resume", calls.get(calls.size() - 1));
+    assertFalse(calls.contains("enlistResource"));
+    assertSame(parent, LocalSqlSessions.getInstance().get(sqlSessionManager));
+  }
+
+  @Test
+  public void notSupportedFailureDoesNotMarkRollback() throws Throwable {
+    try {
+      interceptor.invoke(invocation("notSupported", new Runnable() {
+        @Override
+        public void run() {
+          throw new IllegalArgumentException();
+        }
+      }));
+      fail("Expected IllegalArgumentException");
+    } catch (IllegalArgumentException e) {
+      assertFalse(calls.contains("setRollbackOnly"));
+      assertTrue(calls.contains("resume"));
+    }
+  }
+
+  @Test
+  public void requiredEnlistsResource() throws Throwable {
+    interceptor.invoke(invocation("required", new Runnable() {
+      @Override
+      public void run() {
+      }
+    }));
+
+    assertTrue(calls.contains("enlistResource"));
+    assertFalse(calls.contains("suspend"));
+  }
+
+  @Test
+  public void nestedMethodsEnlistOnce() throws Throwable {
+    interceptor.invoke(invocation("required", new Runnable() {
+      @Override
+      public void run() {
+        try {
+          interceptor.invoke(invocation("required", new Runnable() {
+            @Override
+            public void run() {
+            }
+          }));
+        } catch (Throwable t) {
+          throw new AssertionError(t);
+        }
+      }
+    }));
+
+    assertEquals(1, Collections.frequency(calls, "enlistResource"));
+    assertEquals(1, Collections.frequency(calls, "registerSynchronization"));
+  }
+
+  @Test
+  public void withoutXAResourceSuspendsSessionUntilCompletion() throws Throwable {
+    final TxTransactionalMethodInterceptor interceptor = interceptor(false);
+    sqlSessionManager.startManagedSession();
+    SqlSession parent = LocalSqlSessions.getInstance().get(sqlSessionManager);
+
+    interceptor.invoke(invocation("required", new Runnable() {
+      @Override
+      public void run() {
+        assertFalse(sqlSessionManager.isManagedSessionStarted());
+        try {
+          interceptor.invoke(invocation("required", new Runnable() {
+            @Override
+            public void run() {
+            }
+          }));
+        } catch (Throwable t) {
+          throw new AssertionError(t);
+        }
+      }
+    }));
+
+    assertFalse(calls.contains("enlistResource"));
+    assertEquals(1, synchronizations.size());
+    assertFalse(sqlSessionManager.isManagedSessionStarted());
+
+    synchronizations.get(0).afterCompletion(Status.STATUS_COMMITTED);
+
+    assertSame(parent, LocalSqlSessions.getInstance().get(sqlSessionManager));
+  }
+
+  @Test
+  public void nestedIsNotSupported() throws Throwable {
+    try {
+      interceptor.invoke(invocation("nested", new Runnable() {
+        @Override
+        public void run() {
+          fail("NESTED must not run under JTA");
+        }
+      }));
+      fail("Expected IllegalStateException");
+    } catch (IllegalStateException e) {
+      assertTrue(calls.isEmpty());
+    }
+  }
+
+  @Test
+  public void retriesTransactionBegunHere() throws Throwable {
+    final AtomicInteger attempts = new AtomicInteger();
+
+    interceptor.invoke(invocation("requiresNewRetried", new Runnable() {
+      @Override
+      public void run() {
+        if (attempts.incrementAndGet() < 3) {
+          throw new PersistenceException(new SQLException("deadlock", "40001"));
+        }
+      }
+    }));
+
+    assertEquals(3, attempts.get());
+    assertEquals(3, Collections.frequency(calls, "begin"));
+    assertEquals(3, Collections.frequency(calls, "resume"));
+  }
+
+  @Test
+  public void doesNotRetryJoinedTransaction() throws Throwable {
+    final AtomicInteger attempts = new AtomicInteger();
+
+    try {
+      interceptor.invoke(invocation("requiredRetried", new Runnable() {
+        @Override
+        public void run() {
+          attempts.incrementAndGet();
+          throw new PersistenceException(new SQLException("deadlock", "40001"));
+        }
+      }));
+      fail("Expected PersistenceException");
+    } catch (PersistenceException e) {
+      assertEquals(1, attempts.get());
+      assertTrue(calls.contains("setRollbackOnly"));
+    }
+  }
+
+  private TransactionManager transactionManager() {
+    return (TransactionManager) Proxy.newProxyInstance(getClass().getClassLoader(),
+        new Class<?>[] { TransactionManager.class }, new InvocationHandler() {
+          @Override
+          public Object invoke(Object proxy, Method method, Object[] args) throws Throwable {
+            calls.add(method.getName());
+            if ("getStatus".equals(method.getName())) {
+              calls.remove(calls.size() - 1);
+              return Status.STATUS_ACTIVE;
+            }
+            if ("getTransaction".equals(method.getName()) || "suspend".equals(method.getName())) {
+              return transaction;
+            }
+            return null;
+          }
+        });
+  }
+
+  @SuppressWarnings("unchecked")
+  private <T> T proxy(Class<T> type, final String name) {
+    return (T) Proxy.newProxyInstance(getClass().getClassLoader(), new Class<?>[] { type }, new InvocationHandler() {
+      @Override
+      public Object invoke(Object proxy, Method method, Object[] args) throws Throwable {
+        if ("toString".equals(method.getName())) {
+          return name;
+        }
+        if ("hashCode".equals(method.getName())) {
+          return System.identityHashCode(proxy);
+        }
+        if ("equals".equals(method.getName())) {
+          return proxy == args[0];
+        }
+        calls.add(method.getName());
+        if ("registerSynchronization".equals(method.getName())) {
+          synchronizations.add((Synchronization) args[0]);
+        }
+        return "enlistResource".equals(method.getName()) ? Boolean.TRUE : null;
+      }
+    });
+  }
+
+  private static MethodInvocation invocation(String methodName, final Runnable body) throws Exception {
+    final Method method = TransactionalService.class.getMethod(methodName);
+    return (MethodInvocation) Proxy.newProxyInstance(TxTransactionalMethodInterceptorTest.class.getClassLoader(),
+        new Class<?>[] { MethodInvocation.class }, new InvocationHandler() {
+          @Override
+          public Object invoke(Object proxy, Method invoked, Object[] args) throws Throwable {
+            if ("getMethod".equals(invoked.getName())) {
+              return method;
+            }
+            if ("getArguments".equals(invoked.getName())) {
+              return new Object[0];
+            }
+            if ("getStaticPart".equals(invoked.getName())) {
+              return (AccessibleObject) method;
+            }
+            if ("proceed".equals(invoked.getName())) {
+              body.run();
+            }
+            return null;
+          }
+        });
+  }
+
+  private static SqlSessionFactory sqlSessionFactory() {
+    final Configuration configuration = new Configuration();
+    return (SqlSessionFactory) Proxy.newProxyInstance(TxTransactionalMethodInterceptorTest.class.getClassLoader(),
+        new Class<?>[] { SqlSessionFactory.class }, new InvocationHandler() {
+          @Override
+          public Object invoke(Object proxy, Method method, Object[] args) throws Throwable {
+            if ("getConfiguration".equals(method.getName())) {
+              return configuration;
+            }
+            return Proxy.newProxyInstance(TxTransactionalMethodInterceptorTest.class.getClassLoader(),
+                new Class<?>[] { SqlSession.class }, new InvocationHandler() {
+                  @Override
+                  public Object invoke(Object proxy, Method method, Object[] args) throws Throwable {
+                    return null;
+                  }
+                });
+          }
+        });
+  }
+
+  private static class TransactionalService {
+    @Transactional(Transactional.TxType.NOT_SUPPORTED)
+    public void notSupported() {
+    }
+
+    @Transactional
+    public void required() {
+    }
+
+    @Transactional(Transactional.TxType.NESTED)
+    public void nested() {
+    }
+
+    @Transactional(value = Transactional.TxType.REQUIRES_NEW, maxAttempts = 3, retryBackoff = 1)
+    public void requiresNewRetried() {
+    }
+
+    @Transactional(maxAttempts = 3, retryBackoff = 1)
+    public void requiredRetried() {
+    }
+  }
+
+}
@@ -0,0 +1,198 @@
+/**
+ *    Copyright 2009-2017 the original author or authors.
+ *
+ *    Licensed under the Apache License, Version 2.0 (the "License");
+ *    you may not use this file except in compliance with the License.
+ *    You may obtain a copy of the License at
+ *
+ *       http://www.apache.org/licenses/LICENSE-2.0
+ *
+ *    Unless required by applicable law or agreed to in writing, software
+ *    distributed under the License is distributed on an "AS IS" BASIS,
+ *    WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ *    See the License for the specific language governing permissions and
+ *    limitations under the License.
+ */
+package org.mybatis.guice.transactional;
+
+import static org.junit.Assert.assertEquals;
+import static org.junit.Assert.assertTrue;
+import static org.junit.Assert.fail;
+
+import java.sql.Connection;
+import java.sql.ResultSet;
+import java.sql.Statement;
+import java.util.ArrayList;
+import java.util.Collection;
+import java.util.LinkedHashMap;
+import java.util.List;
+import java.util.Map;
+
+import javax.sql.XAConnection;
+import javax.transaction.TransactionManager;
+import javax.transaction.xa.XAResource;
+import javax.transaction.xa.Xid;
+
+import org.apache.derby.jdbc.EmbeddedXADataSource;
+import org.apache.geronimo.transaction.manager.GeronimoTransactionManager;
+import org.apache.geronimo.transaction.manager.Recovery;
+import org.apache.geronimo.transaction.manager.TransactionBranchInfo;
+import org.apache.geronimo.transaction.manager.TransactionBranchInfoImpl;
+import org.apache.geronimo.transaction.manager.TransactionLog;
+import org.apache.geronimo.transaction.manager.XidFactory;
+import org.apache.geronimo.transaction.manager.XidFactoryImpl;
+import org.junit.After;
+import org.junit.Before;
+import org.junit.Test;
+import org.mockito.Mockito;
+
+import com.google.inject.ProvisionException;
+
+public class XADataSourceRecoveryTest {
+
+  private final byte[] tmId = "tm".getBytes();
+
+  private EmbeddedXADataSource xaDataSource;
+
+  @Before
+  public void setup() throws Exception {
+    xaDataSource = new EmbeddedXADataSource();
+    xaDataSource.setDatabaseName("memory:xarecovery");
+    xaDataSource.setCreateDatabase("create");
+    execute("create table recovered (id integer not null)");
+  }
+
+  @After
+  public void teardown() throws Exception {
+    execute("drop table recovered");
+  }
+
+  @Test
+  public void completesBranchesLeftPreparedInTheDatabase() throws Exception {
+    InMemoryTransactionLog transactionLog = new InMemoryTransactionLog();
+    XidFactory xidFactory = new XidFactoryImpl(tmId);
+    Xid globalXid = xidFactory.createXid();
+    Xid branchXid = xidFactory.createBranch(globalXid, 1);
+
+    // the transaction manager logs its commit decision once the branch is prepared, then crashes
+    XAConnection xaConnection = xaDataSource.getXAConnection();
+    XAResource xaResource = xaConnection.getXAResource();
+    xaResource.start(branchXid, XAResource.TMNOFLAGS);
+    Statement statement = xaConnection.getConnection().createStatement();
+    statement.executeUpdate("insert into recovered (id) values (1)");
+    statement.close();
+    xaResource.end(branchXid, XAResource.TMSUCCESS);
+    assertEquals(XAResource.XA_OK, xaResource.prepare(branchXid));
+    List<TransactionBranchInfo> branches = new ArrayList<TransactionBranchInfo>();
+    branches.add(new TransactionBranchInfoImpl(branchXid, "db1"));
+    transactionLog.prepare(globalXid, branches);
+    xaConnection.close();
+
+    // restart, the transactions begun before the new xid factory are the ones to recover
+    Thread.sleep(10);
+    GeronimoTransactionManager manager = new GeronimoTransactionManager(60, new XidFactoryImpl(tmId),
+        transactionLog);
+    new XADataSourceRecovery("db1", xaDataSource).register(manager);
+
+    assertTrue(transactionLog.prepared.isEmpty());
+    xaConnection = xaDataSource.getXAConnection();
+    try {
+      assertEquals(0, xaConnection.getXAResource().recover(XAResource.TMSTARTRSCAN | XAResource.TMENDRSCAN).length);
+    } finally {
+      xaConnection.close();
+    }
+    assertEquals(1, count());
+  }
+
+  @Test
+  public void requiresRecoverableTransactionManager() {
+    try {
+      new XADataSourceRecovery("db1", xaDataSource).register(Mockito.mock(TransactionManager.class));
+      fail("Expected ProvisionException");
+    } catch (ProvisionException e) {
+      // Success.
+    }
+  }
+
+  private void execute(String sql) throws Exception {
+    Connection connection = xaDataSource.getXAConnection().getConnection();
+    try {
+      Statement statement = connection.createStatement();
+      statement.execute(sql);
+      statement.close();
+    } finally {
+      connection.close();
+    }
+  }
+
+  private int count() throws Exception {
+    Connection connection = xaDataSource.getXAConnection().getConnection();
+    try {
+      Statement statement = connection.createStatement();
+      ResultSet resultSet = statement.executeQuery("select count(*) from recovered");
+      resultSet.next();
+      int count = resultSet.getInt(1);
+      statement.close();
+      return count;
+    } finally {
+      connection.close();
+    }
+  }
+
+  /**
+   * A transaction log surviving the restart of the transaction manager.
+   */
+  private static class InMemoryTransactionLog implements TransactionLog {
+    final Map<Xid, List<? extends TransactionBranchInfo>> prepared
+        = new LinkedHashMap<Xid, List<? extends TransactionBranchInfo>>();
+
+    @Override
+    public void begin(Xid xid) {
+    }
+
+    @Override
+    public Object prepare(Xid xid, List<? extends TransactionBranchInfo> branches) {
+      prepared.put(xid, branches);
+      return xid;
+    }
+
+    @Override
+    public void commit(Xid xid, Object logMark) {
+      prepared.remove(xid);
+    }
+
+    @Override
+    public void rollback(Xid xid, Object logMark) {
+      prepared.remove(xid);
+    }
+
+    @Override
+    public Collection<Recovery.XidBranchesPair> recover(XidFactory xidFactory) {
+      List<Recovery.XidBranchesPair> pairs = new ArrayList<Recovery.XidBranchesPair>();
+      for (Map.Entry<Xid, List<? extends TransactionBranchInfo>> entry : prepared.entrySet()) {
+        Recovery.XidBranchesPair pair = new Recovery.XidBranchesPair(entry.getKey(), entry.getKey());
+        for (TransactionBranchInfo branch : entry.getValue()) {
+          pair.addBranch(branch);
+        }
+        pairs.add(pair);
+      }
+      return pairs;
+    }
+
+    @Override
+    public String getXMLStats() {
+      return null;
+    }
+
+    @Override
+    public int getAverageForceTime() {
+      return 0;
+    }
+
+    @Override
+    public int getAverageBytesPerForce() {
+      return 0;
+    }
+  }
+
+}
@@ -0,0 +1,330 @@
+/**
+ *    Copyright 2009-2017 the original author or authors.
+ *
+ *    Licensed under the Apache License, Version 2.0 (the "License");
+ *    you may not use this file except in compliance with the License.
+ *    You may obtain a copy of the License at
+ *
+ *       http://www.apache.org/licenses/LICENSE-2.0
+ *
+ *    Unless required by applicable law or agreed to in writing, software
+ *    distributed under the License is distributed on an "AS IS" BASIS,
+ *    WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ *    See the License for the specific language governing permissions and
+ *    limitations under the License.
+ */
+package org.mybatis.guice.transactional;
+
+import static org.junit.Assert.assertEquals;
+import static org.junit.Assert.assertFalse;
+import static org.junit.Assert.assertNull;
+import static org.junit.Assert.assertSame;
+import static org.junit.Assert.assertTrue;
+import static org.junit.Assert.fail;
+
+import java.lang.reflect.InvocationHandler;
+import java.lang.reflect.Method;
+import java.lang.reflect.Proxy;
+import java.nio.ByteBuffer;
+import java.util.ArrayList;
+import java.util.List;
+import java.util.concurrent.Callable;
+import java.util.concurrent.ExecutorService;
+import java.util.concurrent.Executors;
+import java.util.concurrent.Future;
+import java.util.concurrent.atomic.AtomicLong;
+
+import javax.sql.DataSource;
+import javax.transaction.xa.XAResource;
+import javax.transaction.xa.Xid;
+
+import org.apache.ibatis.mapping.Environment;
+import org.apache.ibatis.session.Configuration;
+import org.apache.ibatis.session.SqlSession;
+import org.apache.ibatis.session.SqlSessionFactory;
+import org.apache.ibatis.session.SqlSessionManager;
+import org.apache.ibatis.transaction.jdbc.JdbcTransactionFactory;
+import org.junit.After;
+import org.junit.Before;
+import org.junit.Test;
+import org.mybatis.guice.session.SuspendableSqlSessionFactory;
+
+// the resources created without a suspendable factory reach the sessions by reflection
+@SuppressWarnings("deprecation")
+public class XASqlSessionManagerTest {
+
+  private static final AtomicLong transactions = new AtomicLong();
+
+  private SqlSessionManager sqlSessionManager1;
+  private SqlSessionManager sqlSessionManager2;
+
+  private SuspendableSqlSessionFactory sqlSessionFactory2;
+
+  @Before
+  public void setup() {
+    sqlSessionManager1 = SqlSessionManager.newInstance(sqlSessionFactory("db1"));
+    sqlSessionFactory2 = new SuspendableSqlSessionFactory(sqlSessionFactory("db2"));
+    sqlSessionManager2 = SqlSessionManager.newInstance(sqlSessionFactory2);
+  }
+
+  @After
+  public void teardown() {
+    assertEquals(0, XASqlSessionManager.getActiveGlobalTransactions());
+  }
+
+  @Test
+  public void suspendsAndResumesParentSession() throws Exception {
+    sqlSessionManager1.startManagedSession();
+    SqlSession parent = LocalSqlSessions.getInstance().get(sqlSessionManager1);
+
+    XASqlSessionManager resource = new XASqlSessionManager(sqlSessionManager1);
+    Xid xid = newXid();
+    resource.start(xid, XAResource.TMNOFLAGS);
+    assertNull(LocalSqlSessions.getInstance().get(sqlSessionManager1));
+    assertEquals(1, XASqlSessionManager.getActiveGlobalTransactions());
+
+    resource.end(xid, XAResource.TMSUCCESS);
+    resource.commit(xid, true);
+
+    assertSame(parent, LocalSqlSessions.getInstance().get(sqlSessionManager1));
+    sqlSessionManager1.close();
+  }
+
+  @Test
+  public void suspendsThroughSuspendableFactory() throws Exception {
+    sqlSessionManager2.startManagedSession();
+    SqlSession parent = LocalSqlSessions.getInstance().get(sqlSessionManager2);
+
+    XASqlSessionManager resource = new XASqlSessionManager(sqlSessionManager2, sqlSessionFactory2);
+    Xid xid = newXid();
+    resource.start(xid, XAResource.TMNOFLAGS);
+    assertFalse(sqlSessionManager2.isManagedSessionStarted());
+
+    // the branch runs on its own managed session
+    sqlSessionManager2.startManagedSession();
+    sqlSessionManager2.close();
+
+    resource.end(xid, XAResource.TMSUCCESS);
+    resource.commit(xid, true);
+
+    assertSame(parent, LocalSqlSessions.getInstance().get(sqlSessionManager2));
+    sqlSessionManager2.close();
+  }
+
+  @Test
+  public void requiresSuspendableFactory() {
+    try {
+      new XASqlSessionManager(sqlSessionManager2, null);
+      fail("Expected IllegalArgumentException");
+    } catch (IllegalArgumentException e) {
+      // Success.
+    }
+  }
+
+  @Test
+  public void sameEnvironmentIsSameResourceManager() throws Exception {
+    XASqlSessionManager resource = new XASqlSessionManager(sqlSessionManager1);
+
+    assertTrue(resource.isSameRM(new XASqlSessionManager(sqlSessionManager1)));
+    assertFalse(resource.isSameRM(new XASqlSessionManager(sqlSessionManager2)));
+    assertFalse(resource.isSameRM((XAResource) Proxy.newProxyInstance(getClass().getClassLoader(),
+        new Class<?>[] { XAResource.class }, new InvocationHandler() {
+          @Override
+          public Object invoke(Object proxy, Method method, Object[] args) throws Throwable {
+            return null;
+          }
+        })));
+  }
+
+  @Test
+  public void joinsBranchOfSameResourceManager() throws Exception {
+    sqlSessionManager1.startManagedSession();
+    SqlSession parent = LocalSqlSessions.getInstance().get(sqlSessionManager1);
+
+    XASqlSessionManager owner = new XASqlSessionManager(sqlSessionManager1);
+    XASqlSessionManager joined = new XASqlSessionManager(sqlSessionManager1);
+    Xid xid = newXid();
+    owner.start(xid, XAResource.TMNOFLAGS);
+    joined.start(xid, XAResource.TMJOIN);
+    assertEquals(XASqlSessionManager.STARTED, joined.getState());
+
+    joined.end(xid, XAResource.TMSUCCESS);
+    owner.end(xid, XAResource.TMSUCCESS);
+    assertEquals(XASqlSessionManager.NO_TX, joined.getState());
+    assertNull(LocalSqlSessions.getInstance().get(sqlSessionManager1));
+
+    owner.commit(xid, true);
+    assertSame(parent, LocalSqlSessions.getInstance().get(sqlSessionManager1));
+    sqlSessionManager1.close();
+  }
+
+  @Test
+  public void joinDoesNotSuspendTwice() throws Exception {
+    sqlSessionManager1.startManagedSession();
+    SqlSession parent = LocalSqlSessions.getInstance().get(sqlSessionManager1);
+
+    XASqlSessionManager resource = new XASqlSessionManager(sqlSessionManager1);
+    Xid xid = newXid();
+    resource.start(xid, XAResource.TMNOFLAGS);
+    resource.end(xid, XAResource.TMSUCCESS);
+    resource.start(xid, XAResource.TMJOIN);
+    resource.end(xid, XAResource.TMSUCCESS);
+    resource.rollback(xid);
+
+    assertSame(parent, LocalSqlSessions.getInstance().get(sqlSessionManager1));
+    sqlSessionManager1.close();
+  }
+
+  @Test
+  public void lastResourceResumesParentSession() throws Exception {
+    sqlSessionManager1.startManagedSession();
+    SqlSession parent = LocalSqlSessions.getInstance().get(sqlSessionManager1);
+
+    XASqlSessionManager first = new XASqlSessionManager(sqlSessionManager1);
+    XASqlSessionManager second = new XASqlSessionManager(sqlSessionManager1);
+    Xid xid = newXid();
+    first.start(xid, XAResource.TMNOFLAGS);
+    second.start(xid, XAResource.TMNOFLAGS);
+    first.end(xid, XAResource.TMSUCCESS);
+    second.end(xid, XAResource.TMSUCCESS);
+    first.prepare(xid);
+    second.prepare(xid);
+
+    first.commit(xid, false);
+    assertNull(LocalSqlSessions.getInstance().get(sqlSessionManager1));
+
+    second.commit(xid, false);
+    assertSame(parent, LocalSqlSessions.getInstance().get(sqlSessionManager1));
+    sqlSessionManager1.close();
+  }
+
+  @Test
+  public void rollsBackPreparedBranch() throws Exception {
+    sqlSessionManager1.startManagedSession();
+    SqlSession parent = LocalSqlSessions.getInstance().get(sqlSessionManager1);
+
+    XASqlSessionManager resource = new XASqlSessionManager(sqlSessionManager1);
+    Xid xid = newXid();
+    resource.start(xid, XAResource.TMNOFLAGS);
+    resource.end(xid, XAResource.TMSUCCESS);
+    resource.prepare(xid);
+
+    resource.rollback(xid);
+
+    assertEquals(XASqlSessionManager.NO_TX, resource.getState());
+    assertSame(parent, LocalSqlSessions.getInstance().get(sqlSessionManager1));
+    sqlSessionManager1.close();
+
+    // the resource is usable again
+    Xid next = newXid();
+    resource.start(next, XAResource.TMNOFLAGS);
+    resource.end(next, XAResource.TMSUCCESS);
+    resource.commit(next, true);
+  }
+
+  @Test
+  public void concurrentGlobalTransactions() throws Exception {
+    ExecutorService executor = Executors.newFixedThreadPool(16);
+    try {
+      List<Future<Void>> futures = new ArrayList<Future<Void>>();
+      for (int i = 0; i < 5000; i++) {
+        futures.add(executor.submit(new Callable<Void>() {
+          @Override
+          public Void call() throws Exception {
+            globalTransaction();
+            return null;
+          }
+        }));
+      }
+      for (Future<Void> future : futures) {
+        future.get();
+      }
+    } finally {
+      executor.shutdownNow();
+    }
+  }
+
+  private void globalTransaction() throws Exception {
+    sqlSessionManager1.startManagedSession();
+    sqlSessionManager2.startManagedSession();
+    SqlSession parent1 = LocalSqlSessions.getInstance().get(sqlSessionManager1);
+    SqlSession parent2 = LocalSqlSessions.getInstance().get(sqlSessionManager2);
+    try {
+      Xid xid = newXid();
+      XASqlSessionManager[] resources = new XASqlSessionManager[] { new XASqlSessionManager(sqlSessionManager1),
+          new XASqlSessionManager(sqlSessionManager1),
+          new XASqlSessionManager(sqlSessionManager2, sqlSessionFactory2),
+          new XASqlSessionManager(sqlSessionManager2, sqlSessionFactory2) };
+      for (XASqlSessionManager resource : resources) {
+        resource.start(xid, XAResource.TMNOFLAGS);
+      }
+      assertNull(LocalSqlSessions.getInstance().get(sqlSessionManager1));
+      assertNull(LocalSqlSessions.getInstance().get(sqlSessionManager2));
+
+      for (XASqlSessionManager resource : resources) {
+        resource.end(xid, XAResource.TMSUCCESS);
+      }
+      for (XASqlSessionManager resource : resources) {
+        resource.prepare(xid);
+      }
+      for (XASqlSessionManager resource : resources) {
+        resource.commit(xid, false);
+      }
+
+      assertSame(parent1, LocalSqlSessions.getInstance().get(sqlSessionManager1));
+      assertSame(parent2, LocalSqlSessions.getInstance().get(sqlSessionManager2));
+    } finally {
+      sqlSessionManager1.close();
+      sqlSessionManager2.close();
+    }
+  }
+
+  private static Xid newXid() {
+    final byte[] globalId = ByteBuffer.allocate(8).putLong(transactions.incrementAndGet()).array();
+    return new Xid() {
+      @Override
+      public int getFormatId() {
+        return 0;
+      }
+
+      @Override
+      public byte[] getGlobalTransactionId() {
+        return globalId.clone();
+      }
+
+      @Override
+      public byte[] getBranchQualifier() {
+        return new byte[0];
+      }
+    };
+  }
+
+  private static SqlSessionFactory sqlSessionFactory(String environmentId) {
+    DataSource dataSource = (DataSource) Proxy.newProxyInstance(XASqlSessionManagerTest.class.getClassLoader(),
+        new Class<?>[] { DataSource.class }, new InvocationHandler() {
+          @Override
+          public Object invoke(Object proxy, Method method, Object[] args) throws Throwable {
+            return null;
+          }
+        });
+    final Configuration configuration = new Configuration(
+        new Environment(environmentId, new JdbcTransactionFactory(), dataSource));
+    return (SqlSessionFactory) Proxy.newProxyInstance(XASqlSessionManagerTest.class.getClassLoader(),
+        new Class<?>[] { SqlSessionFactory.class }, new InvocationHandler() {
+          @Override
+          public Object invoke(Object proxy, Method method, Object[] args) throws Throwable {
+            if ("getConfiguration".equals(method.getName())) {
+              return configuration;
+            }
+            return Proxy.newProxyInstance(XASqlSessionManagerTest.class.getClassLoader(),
+                new Class<?>[] { SqlSession.class }, new InvocationHandler() {
+                  @Override
+                  public Object invoke(Object proxy, Method method, Object[] args) throws Throwable {
+                    return null;
+                  }
+                });
+          }
+        });
+  }
+
+}